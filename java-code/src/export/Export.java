@@ -95,9 +95,11 @@ public class Export {
             int sumVehicles = vehWrapper.getVehicleCount();		// total vehicles DONE
             int sumTLS = trafWrapper.getTrafficLightCount();	// total traffic lights DONE
             int sumEdges = edgeWrapper.getEdgeCount();			// total edges DONE
-            double sumWaitTime = 0;							// total waiting time of all cars up till now DONE
-            int sumLanes = 0;								// total lanes DONE
-            int sumHaltingVehs = 0;							// total congested vehicles DONE
+            // Lanes, waiting time and halting vehicles of all edges, fetched in one TraCI batch
+            EdgeWrapper.EdgeTotals edgeTotals = edgeWrapper.getEdgeTotals();
+            double sumWaitTime = edgeTotals.waitingTimeSum;	// total waiting time of all cars up till now DONE
+            int sumLanes = edgeTotals.lanes;				// total lanes DONE
+            int sumHaltingVehs = edgeTotals.haltingVehicles;	// total congested vehicles DONE
 //            String slowestEdge = "";						// name of most congested edge DONE
 //            int slowestEdgeVehCount = 0;					// number of congested vehicles on the most congested edge DONE
 //            String fastestEdge = "";						// name of the fastest edge DONE
@@ -105,47 +107,18 @@ public class Export {
 //            int numBusstops = ui.getInfWrapper().getBusStopIds().size();	// number of bus stops
             double avgVehPerEdge = edgeWrapper.getAvgVehiclesPerEdge();	// avg numVehPerEdge DONE
 
-            // PERF NOTE:
-            // - This loop used to feel slow mostly because of getNumVehicle(eID) (see below).
-            // - We still iterate edges once, but we avoid any O(edges*vehicles) recomputation.
-            List<String> eIDs = edgeWrapper.getEdgeIDs();
-            int eIDsize = eIDs.size();
-            int ii = 1;
-            double quo = 0;
-            for (String eID : eIDs) {
-                if ((double)ii / eIDsize >= quo) {
-                    System.out.printf("\tcompleted %.1f%%\n", quo * 100);
-                    quo += 0.1;
-                }
-                sumLanes += edgeWrapper.getLaneNumberOfEdge(eID);
-                ii++;
-
-                // IMPORTANT PERF:
-                // Do NOT call edgeWrapper.getNumVehicle(eID) here.
-                // In EdgeWrapper it triggers updateEdgeData(), which loops ALL edges * ALL vehicles each time.
-                // Using TraCI last-step vehicle count keeps this loop cheap.
-                if (edgeWrapper.getLastStepVehicleNumber(eID) == 0) continue; // skip empty edges to speed up
-                sumWaitTime += edgeWrapper.getWaitingTimeSum(eID);
-                int ca = edgeWrapper.getLastStepHaltingNumber(eID);
-                sumHaltingVehs += ca;
-//            	if (ca > slowestEdgeVehCount) {
-//            		slowestEdge = eID;
-//            		slowestEdgeVehCount = ca;
-//            	}
-//            	double cad = ui.getEdgeWrapper().getLastStepMeanSpeed(eID);
-//            	if (cad > fastestEdgeSpeed) {
-//            		fastestEdge = eID;
-//            		fastestEdgeSpeed = cad;
-//            	}
-            }
             String fastestVeh = "";			// DONE
             double fastestVehSpeed = 0;		// DONE
             String slowestVeh = "";			// DONE
             double slowestVehSpeed = 1000; // so that it catches the slowest one instead of being 0 all the time	DONE
             double avgVehSpeed = 0;			// DONE
-            for (String vID : vehWrapper.getVehicleIds()) {
-                // PERF: read speed once per vehicle (avoid repeated wrapper calls).
-                double speed = vehWrapper.getSpeed(vID);
+            // PERF: read all speeds in one round trip instead of one per vehicle.
+            List<String> vIDs = vehWrapper.getVehicleIds();
+            double[] speeds = new double[vIDs.size()];
+            vehWrapper.getSpeeds(vIDs, speeds);
+            for (int i = 0; i < vIDs.size(); i++) {
+                String vID = vIDs.get(i);
+                double speed = Double.isNaN(speeds[i]) ? 0 : speeds[i];
                 avgVehSpeed += speed;
                 if (speed > fastestVehSpeed) {
                     fastestVeh = vID;
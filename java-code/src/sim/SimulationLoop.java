@@ -0,0 +1,459 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SimulationLoop
+ * ----------------
+ * Steps SUMO and builds {@link StepSnapshot}s on a dedicated thread.
+ *
+ * Follows the single-threaded executor design of {@link VehicleSimulator}:
+ * every TraCI call made by the loop runs on one "simulation-loop" thread, so
+ * TraCI latency never blocks the JavaFX thread. Other code that must talk to
+ * SUMO in step with the loop (e.g. vehicle injection) is handed over with
+ * {@link #submit(Runnable)} and runs between two steps.
+ *
+ * Handoff:
+ * - Each finished snapshot is published through a {@link SnapshotPublisher}
+ *   and stamped with an epoch.
+ * - Any number of readers call {@link #getLatestSnapshot()} (or wait on
+ *   {@link #getPublisher()}) and always get the newest complete snapshot without
+ *   locking; intermediate snapshots they were too slow for are skipped.
+ *
+ * Pacing: while running, wall-clock time accrues as a debt of steps. Each tick
+ * runs as many steps as are owed, up to {@link #setMaxCatchUpSteps(int)}, so step
+ * lengths shorter than a timer tick or a TraCI round trip still run in real time.
+ * Time beyond that budget is dropped and reported through
+ * {@link #getRealTimeLagSeconds()} and a rate-limited warning. Snapshots are
+ * published after every tick that stepped by default; a lower rate can be set
+ * with {@link #setPublishInterval(long)} (e.g. {@link #REDUCED_PUBLISH_INTERVAL_NS}),
+ * and the map animates vehicles between them. Vehicle states still arrive with every
+ * step through the TraCI subscriptions; steps in between only skip building the
+ * snapshot and the per-traffic-light and per-edge polls that go with it.
+ *
+ * Turbo mode ({@link #setTurbo(boolean)}) steps SUMO back to back with its GUI
+ * delay set to 0, ignoring the step interval. Building a snapshot (vehicle rows,
+ * signals, edge speeds) is then decimated: one is published per
+ * turbo publish interval (about one per frame) and optionally every N steps, so
+ * the UI never slows the stepping down. Pausing or leaving turbo mode publishes
+ * the current step right away.
+ */
+public final class SimulationLoop {
+    private static final Logger LOGGER = Logger.getLogger(SimulationLoop.class.getName());
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 500; // max wait for executor shutdown
+    public static final long DEFAULT_TURBO_PUBLISH_INTERVAL_NS = 16_666_667L; // ~one frame at 60 Hz
+    public static final long DEFAULT_PUBLISH_INTERVAL_NS = 0L;                 // every step in real-time mode
+    public static final long REDUCED_PUBLISH_INTERVAL_NS = 200_000_000L;       // 5 Hz, opt-in
+    private static final int DEFAULT_MAX_CATCH_UP_STEPS = 8;                    // steps per tick when behind
+    private static final long DRIFT_WARNING_INTERVAL_NS = 5_000_000_000L;       // rate limit for drift warnings
+
+    private final TraCIConnector traci;
+    private final VehicleManager manager;
+    private final TrafficLightWrapper trafficLights;
+    private final EdgeWrapper edges;
+
+    private final SnapshotPublisher publisher = new SnapshotPublisher();
+    private final ScheduledExecutorService executor;
+
+    // Written by the UI thread, read by the loop thread
+    private volatile boolean running;
+    private volatile long stepIntervalNs;
+    private volatile String watchedTrafficLightId;
+    private volatile boolean collectEdgeMeanSpeeds;
+    private volatile boolean turbo;
+    private volatile long turboPublishIntervalNs = DEFAULT_TURBO_PUBLISH_INTERVAL_NS;
+    private volatile int turboPublishEverySteps; // 0 = time-based only
+    private volatile int maxCatchUpSteps = DEFAULT_MAX_CATCH_UP_STEPS;
+    private volatile long publishIntervalNs = DEFAULT_PUBLISH_INTERVAL_NS; // real-time mode; 0 = every tick that stepped
+
+    // Written by the loop thread, read by the UI thread
+    private volatile long driftNs;   // real-time debt not yet stepped off
+    private volatile long droppedNs; // real time given up because the catch-up budget was exceeded
+
+    // Loop thread only
+    private ScheduledFuture<?> nextTick;
+    private List<String> trafficLightIds; // static for a loaded network, fetched once
+    private boolean turboApplied;   // turbo state last sent to SUMO
+    private int stepsSincePublish;  // steps not yet covered by a published snapshot
+    private long lastPublishNs;
+    private long lastTickNs;
+    private long debtNs;            // wall-clock time owed to the simulation
+    private long lastDriftWarningNs;
+
+    /**
+     * @param manager vehicle manager building the vehicle part of each snapshot (non-null)
+     * @param trafficLights traffic light wrapper; null to skip signal states
+     * @param edges edge wrapper; null to skip edge mean speeds
+     * @param stepIntervalNs initial wall-clock time between two steps
+     */
+    public SimulationLoop(VehicleManager manager, TrafficLightWrapper trafficLights, EdgeWrapper edges, long stepIntervalNs) {
+        this.manager = Objects.requireNonNull(manager, "manager");
+        this.traci = manager.getTraCI();
+        this.trafficLights = trafficLights;
+        this.edges = edges;
+        this.stepIntervalNs = Math.max(0L, stepIntervalNs);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simulation-loop");
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler((th, ex) -> LOGGER.log(Level.SEVERE, "Uncaught in simulation thread", ex));
+            return t;
+        });
+    }
+
+    /**
+     * Starts stepping continuously, one step per step interval.
+     */
+    public void start() {
+        if (running) return;
+        running = true;
+        execute(this::startTicking);
+    }
+
+    /**
+     * Stops continuous stepping after the current step. Submitted tasks still run.
+     */
+    public void pause() {
+        running = false;
+        execute(() -> {
+            if (nextTick != null) {
+                nextTick.cancel(false);
+                nextTick = null;
+            }
+            if (stepsSincePublish > 0) publish(); // turbo or the publish interval may have skipped the last steps
+        });
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Performs a single step and publishes its snapshot (used while paused).
+     */
+    public void stepOnce() {
+        execute(this::stepAndPublish);
+    }
+
+    /**
+     * Publishes a fresh snapshot of the current step without stepping.
+     */
+    public void refresh() {
+        execute(this::publish);
+    }
+
+    /**
+     * Runs a task on the simulation thread between two steps.
+     */
+    public void submit(Runnable task) {
+        Objects.requireNonNull(task, "task");
+        execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Simulation task failed", e);
+            }
+        });
+    }
+
+    /**
+     * @return newest complete snapshot; never null
+     */
+    public StepSnapshot getLatestSnapshot() {
+        return publisher.latest();
+    }
+
+    /**
+     * @return publisher of this loop's snapshots, for readers that track epochs or wait for steps
+     */
+    public SnapshotPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Sets the wall-clock time between two steps while running.
+     */
+    public void setStepIntervalNanos(long stepIntervalNs) {
+        this.stepIntervalNs = Math.max(0L, stepIntervalNs);
+    }
+
+    /**
+     * Sets how many steps a single tick may run to catch up with real time.
+     * Larger budgets keep small step lengths in real time but make ticks (and
+     * snapshot intervals) longer when SUMO is slow.
+     * @param steps maximum steps per tick, at least 1
+     */
+    public void setMaxCatchUpSteps(int steps) {
+        this.maxCatchUpSteps = Math.max(1, steps);
+    }
+
+    /**
+     * @return wall-clock seconds the simulation currently owes and will still catch up
+     */
+    public double getDriftSeconds() {
+        return driftNs / 1e9;
+    }
+
+    /**
+     * @return wall-clock seconds given up since the last start because the catch-up budget was exceeded
+     */
+    public double getDroppedSeconds() {
+        return droppedNs / 1e9;
+    }
+
+    /**
+     * @return total seconds the simulation is behind the wall clock (drift plus dropped time)
+     */
+    public double getRealTimeLagSeconds() {
+        return (driftNs + droppedNs) / 1e9;
+    }
+
+    /**
+     * Enables turbo mode: no GUI delay, no pacing, decimated snapshot publication.
+     * Takes effect with the next step.
+     */
+    public void setTurbo(boolean enabled) {
+        this.turbo = enabled;
+    }
+
+    public boolean isTurbo() {
+        return turbo;
+    }
+
+    /**
+     * Sets how often snapshots are published in turbo mode.
+     * @param intervalNs minimum wall-clock time between two snapshots, e.g. one frame
+     * @param everySteps additionally publish every N steps; 0 for time-based only
+     */
+    public void setTurboPublishing(long intervalNs, int everySteps) {
+        this.turboPublishIntervalNs = Math.max(0L, intervalNs);
+        this.turboPublishEverySteps = Math.max(0, everySteps);
+    }
+
+    /**
+     * Sets how often snapshots are published in real-time mode. Steps in between still
+     * receive their vehicle subscription results, but build no snapshot and skip the
+     * traffic light and edge speed polls.
+     * A lower rate also delays the vehicle table, charts, traffic light panel and newly
+     * injected vehicles, not just the map positions.
+     * @param intervalNs minimum wall-clock time between two snapshots (default 0, which
+     *                   publishes after every tick that stepped)
+     */
+    public void setPublishInterval(long intervalNs) {
+        this.publishIntervalNs = Math.max(0L, intervalNs);
+    }
+
+    /**
+     * Sets the traffic light whose phase index and duration are fetched each step.
+     */
+    public void setWatchedTrafficLight(String tlId) {
+        this.watchedTrafficLightId = tlId;
+    }
+
+    /**
+     * Enables fetching the mean speed of occupied edges each step.
+     */
+    public void setCollectEdgeMeanSpeeds(boolean enabled) {
+        this.collectEdgeMeanSpeeds = enabled;
+    }
+
+    /**
+     * Stops the loop and its thread. Waits up to SHUTDOWN_TIMEOUT_MS for the current step.
+     */
+    public void shutdown() {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    // ---------------- internal ----------------
+
+    // Tasks arriving after shutdown() are dropped; the connection is going away anyway.
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            LOGGER.fine("Simulation loop already shut down; task dropped");
+        }
+    }
+
+    // ---------------- simulation thread ----------------
+
+    private void tick() {
+        nextTick = null;
+        if (!running) return;
+        long nowNs = System.nanoTime();
+        boolean fast = turbo;
+        if (fast != turboApplied) applyTurbo(fast);
+        boolean ok;
+        long delayNs;
+        if (fast) {
+            ok = stepDecimated();
+            lastTickNs = nowNs;
+            debtNs = 0L; // real-time accounting restarts when turbo ends
+            // Turbo still goes through the scheduler so submitted tasks and pause() get their turn.
+            delayNs = 0L;
+        } else {
+            ok = stepRealTime(nowNs);
+            delayNs = Math.max(0L, stepIntervalNs - debtNs - (System.nanoTime() - nowNs));
+        }
+        if (!ok) {
+            running = false;
+            return;
+        }
+        if (running && !executor.isShutdown()) {
+            try {
+                nextTick = executor.schedule(this::tick, delayNs, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ignored) {
+                running = false; // shut down between the check and the schedule call
+            }
+        }
+    }
+
+    private void startTicking() {
+        lastTickNs = System.nanoTime();
+        debtNs = stepIntervalNs; // first step is due right away
+        driftNs = 0L;
+        droppedNs = 0L;
+        tick();
+    }
+
+    /*
+     * Real-time pacing: wall-clock time since the last tick is added to a debt,
+     * and one step is run per step interval of debt. A tick that finds several
+     * intervals owed (slow steps, small step lengths, a late timer) runs several
+     * steps and publishes once at the end. Debt beyond the catch-up budget is
+     * dropped and counted as lost time, so an overloaded simulation slows down
+     * instead of spiralling.
+     */
+    private boolean stepRealTime(long nowNs) {
+        long intervalNs = stepIntervalNs;
+        debtNs += nowNs - lastTickNs;
+        lastTickNs = nowNs;
+        if (intervalNs <= 0L) {
+            debtNs = 0L;
+            return stepAndPublish();
+        }
+        int budget = maxCatchUpSteps;
+        int steps = (int) Math.min(budget, debtNs / intervalNs);
+        for (int i = 0; i < steps; i++) {
+            if (!stepOnly()) return false;
+            debtNs -= intervalNs;
+        }
+        if (steps > 0 && nowNs - lastPublishNs >= publishIntervalNs) publish();
+
+        long maxDebtNs = budget * intervalNs;
+        if (debtNs > maxDebtNs) {
+            long lost = debtNs - maxDebtNs;
+            debtNs = maxDebtNs;
+            droppedNs += lost;
+            if (nowNs - lastDriftWarningNs >= DRIFT_WARNING_INTERVAL_NS) {
+                lastDriftWarningNs = nowNs;
+                LOGGER.warning(String.format("Simulation is %.1f s behind real time (catch-up budget %d steps per tick)",
+                        getRealTimeLagSeconds(), budget));
+            }
+        }
+        driftNs = debtNs;
+        return true;
+    }
+
+    private boolean stepAndPublish() {
+        if (!stepOnly()) return false;
+        publish();
+        return true;
+    }
+
+    // Steps without building a snapshot.
+    private boolean stepOnly() {
+        if (!traci.isConnected()) return false;
+        if (!traci.step()) {
+            LOGGER.fine("Simulation step failed");
+            return false;
+        }
+        stepsSincePublish++;
+        return true;
+    }
+
+    // Steps without building a snapshot unless one is due.
+    private boolean stepDecimated() {
+        if (!stepOnly()) return false;
+        int everySteps = turboPublishEverySteps;
+        if ((everySteps > 0 && stepsSincePublish >= everySteps)
+                || System.nanoTime() - lastPublishNs >= turboPublishIntervalNs) {
+            publish();
+        }
+        return true;
+    }
+
+    private void applyTurbo(boolean fast) {
+        turboApplied = fast;
+        traci.setStepDelayMs(fast ? 0 : traci.getStepLengthMs()); // ignored by the command-line binary
+        if (!fast && stepsSincePublish > 0) publish();
+        LOGGER.info(fast ? "Turbo mode on" : "Turbo mode off");
+    }
+
+    private void publish() {
+        stepsSincePublish = 0;
+        lastPublishNs = System.nanoTime();
+        if (!traci.isConnected()) return;
+        try {
+            StepSnapshot vehicles = manager.captureSnapshot();
+            publisher.publish(new StepSnapshot(vehicles.step, vehicles.simTimeSeconds, vehicles.getTable(),
+                    collectTrafficLights(), collectEdgeMeanSpeeds(vehicles.getTable())));
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return;
+            }
+            LOGGER.log(Level.WARNING, "Failed to build step snapshot", e);
+        }
+    }
+
+    private Map<String, TrafficLightState> collectTrafficLights() {
+        if (trafficLights == null) return Map.of();
+        if (trafficLightIds == null) {
+            trafficLightIds = new ArrayList<>(trafficLights.getTrafficLightIds());
+        }
+        String watched = watchedTrafficLightId;
+        Map<String, TrafficLightState> out = new HashMap<>(trafficLightIds.size() * 2);
+        for (String id : trafficLightIds) {
+            if (id == null || id.isEmpty()) continue;
+            String state = trafficLights.getTrafficLightState(id);
+            if (id.equals(watched)) {
+                out.put(id, new TrafficLightState(id, state,
+                        trafficLights.getPhaseIndex(id), trafficLights.getPhaseDuration(id)));
+            } else {
+                out.put(id, new TrafficLightState(id, state, -1, Double.NaN));
+            }
+        }
+        return out;
+    }
+
+    private Map<String, Double> collectEdgeMeanSpeeds(VehicleStateTable.Generation vehicles) {
+        if (edges == null || !collectEdgeMeanSpeeds) return Map.of();
+        Map<String, Double> out = new HashMap<>();
+        BitSet seen = new BitSet();
+        for (int row = 0; row < vehicles.size(); row++) {
+            int edgeIdx = vehicles.edgeIndex(row);
+            if (edgeIdx < 0 || seen.get(edgeIdx)) continue;
+            seen.set(edgeIdx);
+            String edge = vehicles.name(edgeIdx);
+            if (edge.isEmpty()) continue;
+            out.put(edge, edges.getLastStepMeanSpeed(edge)); // -1 on error
+        }
+        return out;
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SnapshotPublisher
+ * ----------------
+ * Hands completed {@link StepSnapshot}s from the simulation thread to any number
+ * of reader threads (renderer, exporters, metrics, remote viewers).
+ *
+ * Characteristics:
+ * - The current snapshot sits in one AtomicReference; snapshots are immutable,
+ *   so a reader that loads the reference sees one complete, consistent step.
+ * - Every published snapshot carries an epoch one higher than its predecessor.
+ *   Readers remember the last epoch they processed to detect new data and to
+ *   count skipped steps.
+ * - Neither side takes a lock. The writer never waits for readers; slow readers
+ *   simply skip intermediate snapshots.
+ * - Readers that want to block until the next step use {@link #awaitNewer};
+ *   the writer only unparks them, it never waits on them.
+ */
+public final class SnapshotPublisher {
+
+    private final AtomicReference<StepSnapshot> current = new AtomicReference<>(StepSnapshot.EMPTY);
+
+    // Threads parked in awaitNewer(); drained and unparked on every publish
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Publishes a snapshot as the newest one. Meant for the simulation thread;
+     * concurrent publishers still get distinct, increasing epochs.
+     * @param snapshot snapshot of a completed step (non-null)
+     * @return the published snapshot, stamped with its epoch
+     */
+    public StepSnapshot publish(StepSnapshot snapshot) {
+        Objects.requireNonNull(snapshot, "snapshot");
+        StepSnapshot prev;
+        StepSnapshot next;
+        do {
+            prev = current.get();
+            next = snapshot.withEpoch(prev.epoch + 1);
+        } while (!current.compareAndSet(prev, next));
+
+        Thread waiter;
+        while ((waiter = waiters.poll()) != null) {
+            LockSupport.unpark(waiter);
+        }
+        return next;
+    }
+
+    /**
+     * @return newest published snapshot; {@link StepSnapshot#EMPTY} (epoch 0) before the first one
+     */
+    public StepSnapshot latest() {
+        return current.get();
+    }
+
+    /**
+     * @return epoch of the newest published snapshot, 0 before the first one
+     */
+    public long epoch() {
+        return current.get().epoch;
+    }
+
+    /**
+     * Waits until a snapshot newer than the given epoch is published.
+     * @param epoch last epoch the caller has seen
+     * @param timeout maximum time to wait
+     * @param unit unit of timeout
+     * @return newest snapshot, or null if none newer arrived in time
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public StepSnapshot awaitNewer(long epoch, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread self = Thread.currentThread();
+        while (true) {
+            StepSnapshot s = current.get();
+            if (s.epoch > epoch) return s;
+
+            // Register first, then re-check, so a publish in between cannot be missed.
+            waiters.add(self);
+            s = current.get();
+            if (s.epoch > epoch) {
+                waiters.remove(self);
+                return s;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                waiters.remove(self);
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+            waiters.remove(self); // no-op if the writer already drained it
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+}
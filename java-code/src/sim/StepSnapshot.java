@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StepSnapshot
+ * ----------------
+ * Immutable view of all vehicles at one simulation step.
+ *
+ * Characteristics:
+ * - Built once per step by {@link VehicleManager}; every consumer (map, table,
+ *   charts, filters) reads the same instance instead of querying SUMO itself.
+ * - All vehicles come from the same step, so views never disagree about which
+ *   vehicles exist.
+ * - Safe to share between threads once constructed.
+ * - Vehicles are held as a {@link VehicleStateTable.Generation}; VehicleState
+ *   objects are only built if a reader asks for {@link #getVehicles()}.
+ * - {@link #epoch} is stamped by {@link SnapshotPublisher} and orders published
+ *   snapshots; unpublished snapshots have epoch 0.
+ */
+public final class StepSnapshot {
+
+    /** Snapshot with no vehicles; used before the first step */
+    public static final StepSnapshot EMPTY = new StepSnapshot(0, 0.0, List.of());
+
+    /** Publication number, increasing by one per published snapshot; 0 if never published */
+    public final long epoch;
+
+    /** Simulation step this snapshot was taken at */
+    public final int step;
+
+    /** Simulation time in seconds this snapshot was taken at */
+    public final double simTimeSeconds;
+
+    // Vehicles in stable order (departure order in subscription mode, SUMO order otherwise)
+    private final VehicleStateTable.Generation table;
+
+    // Built on first use by a reader; immutable once set
+    private volatile List<VehicleState> vehicles;
+    private volatile Map<String, VehicleState> byId;
+
+    // Signal states by traffic light ID; empty if not collected
+    private final Map<String, TrafficLightState> trafficLights;
+
+    // Last-step mean speed by edge ID; only edges that carried vehicles, empty if not collected
+    private final Map<String, Double> edgeMeanSpeeds;
+
+    /**
+     * Constructs a snapshot. The vehicle list is copied.
+     *
+     * @param step simulation step
+     * @param simTimeSeconds simulation time in seconds
+     * @param vehicles vehicle states of this step
+     */
+    public StepSnapshot(int step, double simTimeSeconds, List<VehicleState> vehicles) {
+        this(step, simTimeSeconds, vehicles, Map.of(), Map.of());
+    }
+
+    /**
+     * Constructs a snapshot including traffic light and edge data. All collections are copied
+     * (vehicles into a new state table).
+     *
+     * @param step simulation step
+     * @param simTimeSeconds simulation time in seconds
+     * @param vehicles vehicle states of this step
+     * @param trafficLights traffic light states by ID
+     * @param edgeMeanSpeeds last-step mean speed by edge ID
+     */
+    public StepSnapshot(int step, double simTimeSeconds, List<VehicleState> vehicles,
+                        Map<String, TrafficLightState> trafficLights, Map<String, Double> edgeMeanSpeeds) {
+        this(step, simTimeSeconds, toTable(vehicles), trafficLights, edgeMeanSpeeds);
+    }
+
+    /**
+     * Constructs a snapshot over a published state table generation (not copied).
+     *
+     * @param step simulation step
+     * @param simTimeSeconds simulation time in seconds
+     * @param table vehicle states of this step
+     */
+    public StepSnapshot(int step, double simTimeSeconds, VehicleStateTable.Generation table) {
+        this(step, simTimeSeconds, table, Map.of(), Map.of());
+    }
+
+    /**
+     * Constructs a snapshot over a published state table generation (not copied)
+     * including traffic light and edge data (copied).
+     */
+    public StepSnapshot(int step, double simTimeSeconds, VehicleStateTable.Generation table,
+                        Map<String, TrafficLightState> trafficLights, Map<String, Double> edgeMeanSpeeds) {
+        this.epoch = 0L;
+        this.step = step;
+        this.simTimeSeconds = simTimeSeconds;
+        this.table = table;
+        this.trafficLights = Map.copyOf(trafficLights);
+        this.edgeMeanSpeeds = Map.copyOf(edgeMeanSpeeds);
+    }
+
+    // Shares all (immutable) data with the source snapshot
+    private StepSnapshot(StepSnapshot source, long epoch) {
+        this.epoch = epoch;
+        this.step = source.step;
+        this.simTimeSeconds = source.simTimeSeconds;
+        this.table = source.table;
+        this.trafficLights = source.trafficLights;
+        this.edgeMeanSpeeds = source.edgeMeanSpeeds;
+        this.vehicles = source.vehicles;
+        this.byId = source.byId;
+    }
+
+    /**
+     * Returns this snapshot stamped with a publication epoch; nothing is copied.
+     * @param epoch publication number
+     * @return snapshot with the given epoch
+     */
+    StepSnapshot withEpoch(long epoch) {
+        return (epoch == this.epoch) ? this : new StepSnapshot(this, epoch);
+    }
+
+    /**
+     * @return column view of all vehicles of this step; prefer this for bulk loops
+     */
+    public VehicleStateTable.Generation getTable() {
+        return table;
+    }
+
+    /**
+     * @return all vehicle states of this step (read-only)
+     */
+    public List<VehicleState> getVehicles() {
+        List<VehicleState> list = vehicles;
+        if (list == null) {
+            List<VehicleState> built = new ArrayList<>(table.size());
+            for (int row = 0; row < table.size(); row++) {
+                built.add(table.toState(row));
+            }
+            list = Collections.unmodifiableList(built);
+            vehicles = list;
+        }
+        return list;
+    }
+
+    /**
+     * @param id vehicle ID
+     * @return state of the vehicle or null if it was not in the network at this step
+     */
+    public VehicleState get(String id) {
+        Map<String, VehicleState> index = byId;
+        if (index == null) {
+            List<VehicleState> list = getVehicles();
+            Map<String, VehicleState> built = new HashMap<>(list.size() * 2);
+            for (VehicleState s : list) {
+                built.put(s.id, s);
+            }
+            index = Collections.unmodifiableMap(built);
+            byId = index;
+        }
+        return index.get(id);
+    }
+
+    /**
+     * @return number of vehicles in this step
+     */
+    public int size() {
+        return table.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return traffic light states by ID (read-only); empty if not collected
+     */
+    public Map<String, TrafficLightState> getTrafficLights() {
+        return trafficLights;
+    }
+
+    /**
+     * @param edgeId edge ID
+     * @return last-step mean speed of the edge [m/s] or NaN if not collected
+     */
+    public double getEdgeMeanSpeed(String edgeId) {
+        Double v = (edgeId != null) ? edgeMeanSpeeds.get(edgeId) : null;
+        return (v != null) ? v : Double.NaN;
+    }
+
+    private static VehicleStateTable.Generation toTable(List<VehicleState> vehicles) {
+        if (vehicles.isEmpty()) return VehicleStateTable.Generation.EMPTY;
+        VehicleStateTable t = new VehicleStateTable(vehicles.size());
+        int[] handles = new int[vehicles.size()];
+        for (int i = 0; i < handles.length; i++) {
+            t.set(i, vehicles.get(i));
+            handles[i] = i;
+        }
+        return t.publish(handles, handles.length);
+    }
+
+    @Override
+    public String toString() {
+        return "StepSnapshot{" +
+                "epoch=" + epoch +
+                ", step=" + step +
+                ", simTimeSeconds=" + simTimeSeconds +
+                ", vehicles=" + size() +
+                ", trafficLights=" + trafficLights.size() +
+                '}';
+    }
+}
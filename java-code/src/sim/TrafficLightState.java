@@ -0,0 +1,56 @@
+import java.util.Objects;
+
+/**
+ * TrafficLightState
+ * ----------------
+ * Immutable signal state of one traffic light at a specific simulation step.
+ *
+ * Characteristics:
+ * - state is the SUMO signal string, one character per controlled link (e.g. "GrGr").
+ * - Phase index and duration are only fetched for the traffic light shown in the UI;
+ *   they are -1 and NaN for all others.
+ */
+public final class TrafficLightState {
+
+    /** Traffic light ID (non-null) */
+    public final String id;
+
+    /** Signal string, one character per controlled link; may be empty */
+    public final String state;
+
+    /** Current phase index; -1 if not fetched */
+    public final int phaseIndex;
+
+    /** Duration of the current phase in seconds; NaN if not fetched */
+    public final double phaseDuration;
+
+    /**
+     * @param id traffic light ID (non-null)
+     * @param state signal string (null is stored as empty)
+     * @param phaseIndex current phase index or -1
+     * @param phaseDuration current phase duration in seconds or NaN
+     */
+    public TrafficLightState(String id, String state, int phaseIndex, double phaseDuration) {
+        this.id = Objects.requireNonNull(id, "id");
+        this.state = (state != null) ? state : "";
+        this.phaseIndex = phaseIndex;
+        this.phaseDuration = phaseDuration;
+    }
+
+    /**
+     * @return true if phase index and duration were fetched for this step
+     */
+    public boolean hasPhaseInfo() {
+        return phaseIndex >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficLightState{" +
+                "id='" + id + '\'' +
+                ", state='" + state + '\'' +
+                ", phaseIndex=" + phaseIndex +
+                ", phaseDuration=" + phaseDuration +
+                '}';
+    }
+}
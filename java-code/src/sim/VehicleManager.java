@@ -3,30 +3,78 @@ import java.util.*;
 /**
  * VehicleManager – Manages SUMO vehicles and their cached states.
  * Owns VehicleWrapper instances bound to a single TraCIConnector.
- * All methods assume they are called from a single simulation thread.
+ * Single writer: all methods except {@link #getLastSnapshot()} must be called
+ * from the simulation thread that steps SUMO. Other threads never read the
+ * manager's mutable state; they read immutable {@link StepSnapshot}s that the
+ * loop ({@link SimulationLoop} or {@link VehicleSimulator}) publishes through a
+ * {@link SnapshotPublisher}, without locks and without blocking the writer.
  * Optimized for performance with large vehicle counts.
+ *
+ * In subscription mode (default) vehicle states come from TraCI variable
+ * subscriptions delivered with each step, so a step costs one round trip
+ * instead of three per vehicle. Polling mode queries every vehicle directly.
+ *
+ * The set of vehicles is kept by a {@link VehicleRegistry}: in subscription
+ * mode it is driven by departed/arrived/teleport events, so keeping the fleet
+ * costs work proportional to churn; polling mode diffs the full ID list into it.
+ *
+ * States are stored column-wise in a {@link VehicleStateTable} indexed by the
+ * registry handle; a step writes primitives into existing rows and publishes
+ * one immutable {@link VehicleStateTable.Generation} instead of one object per vehicle.
  */
 public final class VehicleManager {
 
     private final TraCIConnector traci; // Connection to SUMO via TraCI
     private final VehicleWrapper vehicleWrapper;
+    private final VehicleSubscriptions subscriptions; // null in polling mode
+    private final VehicleRegistry registry; // live vehicles with dense indices
 
-    // Current set of known vehicle IDs
+    // Current set of known vehicle IDs, in stable order for snapshots
     private final Set<String> vehicleIds;
 
-    // Mapping from vehicle ID to latest immutable snapshot (VehicleState)
-    private final Map<String, VehicleState> stateCache;
+    // Latest state of every live vehicle, one row per registry handle
+    private final VehicleStateTable table;
+
+    // Handles in vehicleIds order, reused for every publish
+    private int[] orderScratch = new int[0];
+
+    // Last snapshot built by captureSnapshot(); volatile so any thread may read it
+    private volatile StepSnapshot lastSnapshot = StepSnapshot.EMPTY;
 
     /**
      * Constructs a VehicleManager with pre-allocated maps for efficiency.
      * @param traci TraCI connector (non-null)
      * @param estimatedVehicleCount initial map capacity for large fleets
+     * @param useSubscriptions true to read states from TraCI subscriptions, false to poll
+     */
+    public VehicleManager(TraCIConnector traci, int estimatedVehicleCount, boolean useSubscriptions) {
+        this(new VehicleWrapper(Objects.requireNonNull(traci, "traci")), estimatedVehicleCount, useSubscriptions);
+    }
+
+    /**
+     * Constructs a VehicleManager around an existing wrapper, so vehicles injected
+     * through that wrapper get their pending updates applied by this manager.
+     * @param vehicleWrapper vehicle wrapper (non-null)
+     * @param estimatedVehicleCount initial map capacity for large fleets
+     * @param useSubscriptions true to read states from TraCI subscriptions, false to poll
+     */
+    public VehicleManager(VehicleWrapper vehicleWrapper, int estimatedVehicleCount, boolean useSubscriptions) {
+        this.vehicleWrapper = Objects.requireNonNull(vehicleWrapper, "vehicleWrapper");
+        this.traci = vehicleWrapper.getTraCI();
+        this.subscriptions = useSubscriptions ? new VehicleSubscriptions(this.vehicleWrapper) : null;
+        this.registry = useSubscriptions ? subscriptions.getRegistry() : new VehicleRegistry(estimatedVehicleCount);
+        this.vehicleIds = new LinkedHashSet<>(estimatedVehicleCount);
+        this.table = new VehicleStateTable(estimatedVehicleCount);
+        this.registry.addListener(table);
+    }
+
+    /**
+     * Constructs a VehicleManager in subscription mode.
+     * @param traci TraCI connector (non-null)
+     * @param estimatedVehicleCount initial map capacity for large fleets
      */
     public VehicleManager(TraCIConnector traci, int estimatedVehicleCount) {
-        this.traci = Objects.requireNonNull(traci, "traci");
-        this.vehicleWrapper = new VehicleWrapper(this.traci);
-        this.vehicleIds = new HashSet<>(estimatedVehicleCount);
-        this.stateCache = new HashMap<>(estimatedVehicleCount);
+        this(traci, estimatedVehicleCount, true);
     }
 
     /**
@@ -50,32 +98,104 @@ public final class VehicleManager {
      * Synchronizes the internal vehicle list with SUMO.
      * - Adds new vehicles discovered in SUMO
      * - Removes vehicles that left the simulation
+     * In subscription mode this uses the lifecycle events of the last step
+     * and does not query SUMO for the full ID list.
+     * Only the registry deltas are applied, then cleared. Static attributes (type,
+     * class, color) of new vehicles are read in one batch; those of departed vehicles are dropped.
      */
     public void refreshVehicles() {
-        List<String> ids = vehicleWrapper.getVehicleIds();
-        vehicleIds.clear();
-        vehicleIds.addAll(ids);
+        if (isSubscriptionMode()) {
+            subscriptions.sync();
+        } else {
+            registry.replaceAll(vehicleWrapper.getVehicleIds());
+        }
+        for (String id : registry.getRemoved()) {
+            vehicleIds.remove(id);
+            vehicleWrapper.forgetAttributes(id);
+        }
+        vehicleIds.addAll(registry.getAdded());
+        vehicleWrapper.prefetchAttributes(registry.getAdded()); // static attributes, one batch
+        registry.clearDeltas();
     }
 
     /**
-     * Updates and caches the state of all known vehicles.
+     * Updates the table row of all known vehicles.
      * Must be called AFTER refreshVehicles() to ensure consistency.
      */
     public void updateAllStates() {
         vehicleWrapper.applyPendingUpdates();
+        boolean subscribed = isSubscriptionMode();
+        for (String id : vehicleIds) {
+            int handle = registry.indexOf(id);
+            if (handle < 0) continue;
+            if (!subscribed || !subscriptions.writeRow(id, handle, table)) {
+                // Not subscribed, or departed this step and no step response carried values yet.
+                table.set(handle, vehicleWrapper.updateState(id));
+            }
+        }
+    }
+
+    /**
+     * Returns true if states are read from TraCI subscriptions.
+     * Subscriptions are set up lazily, once the connector is connected.
+     */
+    public boolean isSubscriptionMode() {
+        return subscriptions != null && subscriptions.start();
+    }
+
+    /**
+     * Publishes the current rows of all known vehicles, in stable order.
+     * The result is immutable and safe to hand to other threads.
+     * @return generation of all vehicle states
+     */
+    public VehicleStateTable.Generation getAllStates() {
+        if (orderScratch.length < vehicleIds.size()) {
+            orderScratch = new int[Math.max(vehicleIds.size(), orderScratch.length * 2)];
+        }
+        int n = 0;
         for (String id : vehicleIds) {
-            VehicleState state = vehicleWrapper.updateState(id);
-            stateCache.put(state.id, state);
+            int handle = registry.indexOf(id);
+            if (handle >= 0) orderScratch[n++] = handle;
         }
+        return table.publish(orderScratch, n);
+    }
+
+    /**
+     * Refreshes vehicles and states and publishes them as one immutable snapshot.
+     * Call once per simulation step; all consumers should read the returned snapshot.
+     * @return snapshot of the current step
+     */
+    public StepSnapshot captureSnapshot() {
+        refreshVehicles();
+        updateAllStates();
+        lastSnapshot = new StepSnapshot(traci.getCurrentStep(), traci.getSimTimeSeconds(), getAllStates());
+        return lastSnapshot;
+    }
+
+    /**
+     * Returns the snapshot built by the last {@link #captureSnapshot()} call.
+     * Safe to call from any thread.
+     * @return last snapshot, {@link StepSnapshot#EMPTY} before the first capture
+     */
+    public StepSnapshot getLastSnapshot() {
+        return lastSnapshot;
+    }
+
+    /**
+     * Returns the registry of live vehicles. Listeners registered here learn about
+     * every vehicle that enters or leaves, together with its dense index.
+     * @return vehicle registry
+     */
+    public VehicleRegistry getRegistry() {
+        return registry;
     }
 
     /**
-     * Returns an immutable snapshot of all cached vehicle states.
-     * Safe for reading without affecting internal state.
-     * @return Map of vehicle ID to VehicleState
+     * Returns the connector this manager reads from.
+     * @return TraCI connector
      */
-    public Map<String, VehicleState> getAllStates() {
-        return Map.copyOf(stateCache);
+    public TraCIConnector getTraCI() {
+        return traci;
     }
 
     /**
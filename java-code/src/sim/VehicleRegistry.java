@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * VehicleRegistry
+ * ----------------
+ * Set of live vehicle IDs maintained from lifecycle events (departed, arrived,
+ * teleport start/end) instead of rebuilding it from a full ID list every step.
+ *
+ * Characteristics:
+ * - Each live vehicle owns a dense integer index in [0, capacity()). The index
+ *   stays the same while the vehicle lives; freed indices are reused, so
+ *   per-vehicle arrays sized to capacity() stay compact.
+ * - Changes since the last {@link #clearDeltas()} are available as added/removed
+ *   sets (in event order), and listeners are told about every change as it happens.
+ * - Work per step is proportional to the number of changes, not the fleet size.
+ * - Not thread-safe; used by the simulation thread only, like {@link VehicleManager}.
+ */
+public final class VehicleRegistry {
+
+    /**
+     * Receives vehicle lifecycle changes, e.g. to size or clear per-vehicle caches.
+     */
+    public interface Listener {
+        void vehicleAdded(String id, int index);
+
+        void vehicleRemoved(String id, int index);
+    }
+
+    private final Map<String, Integer> indexById;
+    private String[] idByIndex;
+    private int capacity; // highest index handed out + 1
+
+    // Freed indices, reused last-in first-out
+    private int[] freeIndices = new int[16];
+    private int freeCount;
+
+    // Deltas can build up over many steps between drains (decimated publishing), so
+    // cancelling an add against a remove must not scan them.
+    private final Set<String> added = new LinkedHashSet<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public VehicleRegistry() {
+        this(128);
+    }
+
+    /**
+     * @param estimatedVehicleCount initial capacity for large fleets
+     */
+    public VehicleRegistry(int estimatedVehicleCount) {
+        int n = Math.max(16, estimatedVehicleCount);
+        this.indexById = new HashMap<>(n * 2);
+        this.idByIndex = new String[n];
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    /**
+     * Registers a live vehicle; does nothing if it is already registered.
+     * @return index of the vehicle
+     */
+    public int add(String id) {
+        Integer existing = indexById.get(id);
+        if (existing != null) return existing;
+
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            index = capacity++;
+            if (index == idByIndex.length) {
+                idByIndex = Arrays.copyOf(idByIndex, idByIndex.length * 2);
+            }
+        }
+        idByIndex[index] = id;
+        indexById.put(id, index);
+        // Removing and re-adding a vehicle before clearDeltas() cancels out in the delta sets.
+        if (!removed.remove(id)) added.add(id);
+        for (Listener l : listeners) l.vehicleAdded(id, index);
+        return index;
+    }
+
+    /**
+     * Unregisters a vehicle and frees its index; does nothing for unknown IDs.
+     * @return former index of the vehicle or -1
+     */
+    public int remove(String id) {
+        Integer index = indexById.remove(id);
+        if (index == null) return -1;
+
+        idByIndex[index] = null;
+        if (freeCount == freeIndices.length) {
+            freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+        }
+        freeIndices[freeCount++] = index;
+        if (!added.remove(id)) removed.add(id); // likewise for add then remove
+        for (Listener l : listeners) l.vehicleRemoved(id, index);
+        return index;
+    }
+
+    /**
+     * Makes the registry equal to a full ID list; used when no lifecycle events are available.
+     * Costs O(fleet size), unlike add/remove.
+     */
+    public void replaceAll(Collection<String> ids) {
+        Set<String> keep = new HashSet<>(ids);
+        for (String id : new ArrayList<>(indexById.keySet())) {
+            if (!keep.contains(id)) remove(id);
+        }
+        for (String id : ids) {
+            add(id);
+        }
+    }
+
+    public boolean contains(String id) {
+        return indexById.containsKey(id);
+    }
+
+    /**
+     * @return index of a live vehicle or -1
+     */
+    public int indexOf(String id) {
+        Integer index = indexById.get(id);
+        return (index != null) ? index : -1;
+    }
+
+    /**
+     * @return ID at the given index or null if the index is free
+     */
+    public String idAt(int index) {
+        return (index >= 0 && index < capacity) ? idByIndex[index] : null;
+    }
+
+    /**
+     * @return number of live vehicles
+     */
+    public int size() {
+        return indexById.size();
+    }
+
+    /**
+     * @return upper bound (exclusive) of all indices handed out so far
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return vehicles added since the last {@link #clearDeltas()} (read-only)
+     */
+    public Set<String> getAdded() {
+        return Collections.unmodifiableSet(added);
+    }
+
+    /**
+     * @return vehicles removed since the last {@link #clearDeltas()} (read-only)
+     */
+    public Set<String> getRemoved() {
+        return Collections.unmodifiableSet(removed);
+    }
+
+    public void clearDeltas() {
+        added.clear();
+        removed.clear();
+    }
+
+    /**
+     * Removes every vehicle, e.g. after a reconnect. Listeners are notified per vehicle.
+     */
+    public void clear() {
+        for (String id : new ArrayList<>(indexById.keySet())) {
+            remove(id);
+        }
+    }
+}
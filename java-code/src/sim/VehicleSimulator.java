@@ -1,4 +1,3 @@
-import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -18,6 +17,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * - Step simulation periodically.
  * - Refresh vehicle list and update state snapshots via VehicleManager.
  * - Apply vehicle configuration via VehicleWrapper.
+ * - Publish each completed step as a {@link StepSnapshot}; other threads read it
+ *   through {@link #getLatestSnapshot()} and never touch the manager directly.
  */
 public final class VehicleSimulator {
 
@@ -30,6 +31,7 @@ public final class VehicleSimulator {
     private final long periodMs;             // loop period in milliseconds
 
     private final AtomicBoolean running = new AtomicBoolean(false); // indicates if simulator is running
+    private final SnapshotPublisher publisher = new SnapshotPublisher(); // completed steps for other threads
 
     // Guarded by synchronized start/stop
     private ScheduledExecutorService executor; // single-threaded executor for simulation loop
@@ -102,6 +104,21 @@ public final class VehicleSimulator {
         return running.get();
     }
 
+    /**
+     * Returns the newest completed step. Safe to call from any thread.
+     * @return latest snapshot, {@link StepSnapshot#EMPTY} before the first step
+     */
+    public StepSnapshot getLatestSnapshot() {
+        return publisher.latest();
+    }
+
+    /**
+     * Returns the publisher of completed steps, for readers that track epochs or wait for steps.
+     */
+    public SnapshotPublisher getPublisher() {
+        return publisher;
+    }
+
     // ---------------- internal ----------------
 
     /**
@@ -123,6 +140,7 @@ public final class VehicleSimulator {
      * - Advances the SUMO simulation
      * - Refreshes vehicle list and state snapshots
      * - Applies configuration to each vehicle
+     * - Publishes the step's vehicle states
      */
     private void stepOnce() {
         if (traci == null || !traci.isConnected()) return;
@@ -137,15 +155,29 @@ public final class VehicleSimulator {
         manager.updateAllStates();
 
         // Apply vehicle configurations in batch
-        Map<String, VehicleState> states = manager.getAllStates();
-        for (VehicleState s : states.values()) {
-            vehicles.configureVehicle(
-                    s.id,
-                    s.speed,
+        // (three setters per vehicle, sent to SUMO as one TraCI message)
+        VehicleStateTable.Generation states = manager.getAllStates();
+        TraCIBatch batch = traci.newBatch();
+        final int[] rgba = {255, 0, 0, 255}; // default RGBA color
+        int[] colorSlots = new int[states.size()];
+        for (int row = 0; row < states.size(); row++) {
+            colorSlots[row] = vehicles.configureVehicle(
+                    batch,
+                    states.id(row),
+                    states.speed(row),
                     0.7,         // speed ratio applied to max speed
-                    255, 0, 0, 255 // default RGBA color
+                    rgba[0], rgba[1], rgba[2], rgba[3]
             );
         }
+        if (batch.execute()) {
+            // Cache only the colors SUMO accepted
+            for (int row = 0; row < states.size(); row++) {
+                vehicles.applyConfiguredColor(batch, colorSlots[row], states.id(row),
+                        rgba[0], rgba[1], rgba[2], rgba[3]);
+            }
+        }
+
+        publisher.publish(new StepSnapshot(traci.getCurrentStep(), traci.getSimTimeSeconds(), states));
     }
 
     /**
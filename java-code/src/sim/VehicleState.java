@@ -10,9 +10,13 @@ import java.util.Objects;
  * - Represents a single point in time (timestep) in the simulation.
  * - Does NOT reflect live vehicle data; safe for caching and multi-threaded reads.
  * - Edge may be null if the vehicle is off-network, spawned/despawned, or teleported.
+ * - Lane and class may be null, angle NaN and color {@link #NO_COLOR} when they were not fetched.
  */
 public final class VehicleState {
 
+    /** Color value for "unknown" (same bits as fully transparent black) */
+    public static final int NO_COLOR = 0;
+
     /** Unique vehicle identifier (non-null) */
     public final String id;
 
@@ -28,6 +32,18 @@ public final class VehicleState {
     /** Current road edge ID; may be null if vehicle is off-network */
     public final String edge;
 
+    /** Current lane ID; may be null if unknown */
+    public final String lane;
+
+    /** Heading in degrees as reported by SUMO (0 = North, clockwise); NaN if unknown */
+    public final double angle;
+
+    /** Lower-case vehicle class (e.g. "passenger", "bus"); may be null if unknown */
+    public final String vehicleClass;
+
+    /** Vehicle color packed as 0xRRGGBBAA; {@link #NO_COLOR} if unknown */
+    public final int color;
+
     /**
      * Constructs a new VehicleState snapshot.
      *
@@ -39,11 +55,45 @@ public final class VehicleState {
      * @throws NullPointerException if id is null
      */
     public VehicleState(String id, double x, double y, double speed, String edge) {
+        this(id, x, y, speed, edge, null, Double.NaN, null, NO_COLOR);
+    }
+
+    /**
+     * Constructs a new VehicleState snapshot with the attributes needed for rendering.
+     *
+     * @param id unique vehicle ID (non-null)
+     * @param x X-coordinate
+     * @param y Y-coordinate
+     * @param speed current speed
+     * @param edge road edge ID (may be null)
+     * @param lane lane ID (may be null)
+     * @param angle heading in degrees (NaN if unknown)
+     * @param vehicleClass lower-case vehicle class (may be null)
+     * @param color vehicle color as 0xRRGGBBAA ({@link #NO_COLOR} if unknown)
+     * @throws NullPointerException if id is null
+     */
+    public VehicleState(String id, double x, double y, double speed, String edge,
+                        String lane, double angle, String vehicleClass, int color) {
         this.id = Objects.requireNonNull(id, "id");
         this.x = x;
         this.y = y;
         this.speed = speed;
         this.edge = edge; // may be null if vehicle is off-network
+        this.lane = lane;
+        this.angle = angle;
+        this.vehicleClass = vehicleClass;
+        this.color = color;
+    }
+
+    /**
+     * Packs color channels (0-255 each, clamped) as 0xRRGGBBAA.
+     */
+    public static int rgba(int r, int g, int b, int a) {
+        return (clamp255(r) << 24) | (clamp255(g) << 16) | (clamp255(b) << 8) | clamp255(a);
+    }
+
+    private static int clamp255(int v) {
+        return Math.max(0, Math.min(v, 255));
     }
 
     /**
@@ -58,6 +108,10 @@ public final class VehicleState {
                 ", y=" + y +
                 ", speed=" + speed +
                 ", edge='" + edge + '\'' +
+                ", lane='" + lane + '\'' +
+                ", angle=" + angle +
+                ", vehicleClass='" + vehicleClass + '\'' +
+                ", color=" + String.format("%08x", color) +
                 '}';
     }
 }
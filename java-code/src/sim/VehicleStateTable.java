@@ -0,0 +1,330 @@
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * VehicleStateTable
+ * ----------------
+ * Column-oriented store of the latest vehicle states.
+ *
+ * Characteristics:
+ * - One row per vehicle handle (the dense index from {@link VehicleRegistry});
+ *   x/y/speed/angle live in primitive double[] columns.
+ * - Edge, lane and vehicle class IDs are interned once and stored as int indices,
+ *   so a step writes no Strings and no per-vehicle objects.
+ * - {@link #publish(int[], int)} gathers the live rows into an immutable
+ *   {@link Generation}: a fixed number of arrays per step instead of one
+ *   VehicleState per vehicle. Readers get read-only, zero-copy views of it.
+ *
+ * The table itself is written by the simulation thread only; published
+ * generations are immutable and safe to share between threads.
+ */
+public final class VehicleStateTable implements VehicleRegistry.Listener {
+
+    /** Name index stored for unknown edge/lane/class values */
+    public static final int NO_NAME = -1;
+
+    // Write side, indexed by handle
+    private String[] ids;
+    private double[] x;
+    private double[] y;
+    private double[] speed;
+    private double[] angle;
+    private int[] edge;
+    private int[] lane;
+    private int[] vehicleClass;
+    private int[] color;       // 0xRRGGBBAA, VehicleState.NO_COLOR if unknown
+    private boolean[] present; // true once a row has been written for the current vehicle
+
+    // Interned names; append-only, so published generations can share the array
+    private String[] names = new String[256];
+    private int nameCount;
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+
+    public VehicleStateTable(int estimatedVehicleCount) {
+        allocate(Math.max(16, estimatedVehicleCount));
+    }
+
+    // ---------------- registry events ----------------
+
+    @Override
+    public void vehicleAdded(String id, int handle) {
+        ensureCapacity(handle + 1);
+        clearRow(handle);
+        ids[handle] = id;
+    }
+
+    @Override
+    public void vehicleRemoved(String id, int handle) {
+        if (handle < ids.length) {
+            clearRow(handle);
+        }
+    }
+
+    // ---------------- write side (simulation thread) ----------------
+
+    /**
+     * Writes one row. Strings are interned; null means unknown.
+     */
+    public void set(int handle, String id, double x, double y, double speed, String edge, String lane,
+                    double angle, String vehicleClass, int color) {
+        ensureCapacity(handle + 1);
+        this.ids[handle] = id;
+        this.x[handle] = x;
+        this.y[handle] = y;
+        this.speed[handle] = speed;
+        this.angle[handle] = angle;
+        this.edge[handle] = intern(edge);
+        this.lane[handle] = intern(lane);
+        this.vehicleClass[handle] = intern(vehicleClass);
+        this.color[handle] = color;
+        this.present[handle] = true;
+    }
+
+    /**
+     * Writes one row from a state object (polling path).
+     */
+    public void set(int handle, VehicleState s) {
+        set(handle, s.id, s.x, s.y, s.speed, s.edge, s.lane, s.angle, s.vehicleClass, s.color);
+    }
+
+    public boolean hasRow(int handle) {
+        return handle >= 0 && handle < present.length && present[handle];
+    }
+
+    /**
+     * Interns a name (edge, lane or vehicle class ID).
+     * @return stable index of the name, or {@link #NO_NAME} for null
+     */
+    public int intern(String name) {
+        if (name == null) return NO_NAME;
+        Integer idx = nameIndex.get(name);
+        if (idx != null) return idx;
+        if (nameCount == names.length) {
+            // Copy instead of growing in place: published generations keep the old array.
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[nameCount] = name;
+        nameIndex.put(name, nameCount);
+        return nameCount++;
+    }
+
+    /**
+     * Publishes the given rows as an immutable generation.
+     * Rows without data are skipped.
+     * @param handles handles in the order readers should see them
+     * @param count number of valid entries in handles
+     */
+    public Generation publish(int[] handles, int count) {
+        int n = 0;
+        int[] rowHandles = new int[count];
+        String[] gIds = new String[count];
+        double[] gX = new double[count];
+        double[] gY = new double[count];
+        double[] gSpeed = new double[count];
+        double[] gAngle = new double[count];
+        int[] gEdge = new int[count];
+        int[] gLane = new int[count];
+        int[] gClass = new int[count];
+        int[] gColor = new int[count];
+        for (int i = 0; i < count; i++) {
+            int h = handles[i];
+            if (!hasRow(h)) continue;
+            rowHandles[n] = h;
+            gIds[n] = ids[h];
+            gX[n] = x[h];
+            gY[n] = y[h];
+            gSpeed[n] = speed[h];
+            gAngle[n] = angle[h];
+            gEdge[n] = edge[h];
+            gLane[n] = lane[h];
+            gClass[n] = vehicleClass[h];
+            gColor[n] = color[h];
+            n++;
+        }
+        return new Generation(n, rowHandles, gIds, gX, gY, gSpeed, gAngle, gEdge, gLane, gClass, gColor,
+                names, nameCount);
+    }
+
+    // ---------------- internal ----------------
+
+    private void clearRow(int h) {
+        ids[h] = null;
+        color[h] = VehicleState.NO_COLOR;
+        present[h] = false;
+        edge[h] = NO_NAME;
+        lane[h] = NO_NAME;
+        vehicleClass[h] = NO_NAME;
+    }
+
+    private void allocate(int n) {
+        ids = new String[n];
+        x = new double[n];
+        y = new double[n];
+        speed = new double[n];
+        angle = new double[n];
+        edge = new int[n];
+        lane = new int[n];
+        vehicleClass = new int[n];
+        color = new int[n];
+        present = new boolean[n];
+        Arrays.fill(edge, NO_NAME);
+        Arrays.fill(lane, NO_NAME);
+        Arrays.fill(vehicleClass, NO_NAME);
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= ids.length) return;
+        int old = ids.length;
+        int cap = Math.max(n, old * 2);
+        ids = Arrays.copyOf(ids, cap);
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        speed = Arrays.copyOf(speed, cap);
+        angle = Arrays.copyOf(angle, cap);
+        edge = Arrays.copyOf(edge, cap);
+        lane = Arrays.copyOf(lane, cap);
+        vehicleClass = Arrays.copyOf(vehicleClass, cap);
+        color = Arrays.copyOf(color, cap);
+        present = Arrays.copyOf(present, cap);
+        Arrays.fill(edge, old, cap, NO_NAME);
+        Arrays.fill(lane, old, cap, NO_NAME);
+        Arrays.fill(vehicleClass, old, cap, NO_NAME);
+    }
+
+    /**
+     * Immutable, published vehicle states of one step.
+     * Rows are dense [0, size()) in departure order; row r belongs to vehicle handle(r).
+     */
+    public static final class Generation {
+
+        /** Generation with no vehicles */
+        public static final Generation EMPTY = new Generation(0, new int[0], new String[0], new double[0],
+                new double[0], new double[0], new double[0], new int[0], new int[0], new int[0], new int[0],
+                new String[0], 0);
+
+        private final int size;
+        private final int[] handles;
+        private final String[] ids;
+        private final double[] x;
+        private final double[] y;
+        private final double[] speed;
+        private final double[] angle;
+        private final int[] edge;
+        private final int[] lane;
+        private final int[] vehicleClass;
+        private final int[] color;
+        private final String[] names;
+        private final int nameCount;
+
+        private Generation(int size, int[] handles, String[] ids, double[] x, double[] y, double[] speed,
+                           double[] angle, int[] edge, int[] lane, int[] vehicleClass, int[] color,
+                           String[] names, int nameCount) {
+            this.size = size;
+            this.handles = handles;
+            this.ids = ids;
+            this.x = x;
+            this.y = y;
+            this.speed = speed;
+            this.angle = angle;
+            this.edge = edge;
+            this.lane = lane;
+            this.vehicleClass = vehicleClass;
+            this.color = color;
+            this.names = names;
+            this.nameCount = nameCount;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /** @return registry handle of the vehicle in this row */
+        public int handle(int row) {
+            return handles[row];
+        }
+
+        public String id(int row) {
+            return ids[row];
+        }
+
+        public double x(int row) {
+            return x[row];
+        }
+
+        public double y(int row) {
+            return y[row];
+        }
+
+        public double speed(int row) {
+            return speed[row];
+        }
+
+        /** @return heading in degrees, NaN if unknown */
+        public double angle(int row) {
+            return angle[row];
+        }
+
+        /** @return interned edge index or {@link #NO_NAME} */
+        public int edgeIndex(int row) {
+            return edge[row];
+        }
+
+        public String edge(int row) {
+            return name(edge[row]);
+        }
+
+        public String lane(int row) {
+            return name(lane[row]);
+        }
+
+        public String vehicleClass(int row) {
+            return name(vehicleClass[row]);
+        }
+
+        /** @return vehicle color as 0xRRGGBBAA, {@link VehicleState#NO_COLOR} if unknown */
+        public int color(int row) {
+            return color[row];
+        }
+
+        /**
+         * @return edge, lane or class ID for an interned index, null for {@link #NO_NAME}
+         */
+        public String name(int nameIdx) {
+            return (nameIdx >= 0 && nameIdx < nameCount) ? names[nameIdx] : null;
+        }
+
+        /** @return read-only view of the x column, rows [0, size()) */
+        public DoubleBuffer xColumn() {
+            return DoubleBuffer.wrap(x, 0, size).asReadOnlyBuffer();
+        }
+
+        /** @return read-only view of the y column, rows [0, size()) */
+        public DoubleBuffer yColumn() {
+            return DoubleBuffer.wrap(y, 0, size).asReadOnlyBuffer();
+        }
+
+        /** @return read-only view of the speed column, rows [0, size()) */
+        public DoubleBuffer speedColumn() {
+            return DoubleBuffer.wrap(speed, 0, size).asReadOnlyBuffer();
+        }
+
+        /** @return read-only view of the angle column, rows [0, size()) */
+        public DoubleBuffer angleColumn() {
+            return DoubleBuffer.wrap(angle, 0, size).asReadOnlyBuffer();
+        }
+
+        /**
+         * Builds a state object for one row, for consumers that work with VehicleState.
+         */
+        public VehicleState toState(int row) {
+            return new VehicleState(ids[row], x[row], y[row], speed[row], edge(row), lane(row), angle[row],
+                    vehicleClass(row), color[row]);
+        }
+    }
+}
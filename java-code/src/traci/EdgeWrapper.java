@@ -133,6 +133,10 @@ public class EdgeWrapper {
         if (this.traci.getConnection() == null || !this.traci.isConnected()) {
             return new ArrayList<>(); // empty list of strings
         }
+        NetworkMetadata metadata = this.traci.getNetworkMetadata();
+        if (metadata != null) {
+            return metadata.getEdgeIds();
+        }
         try {
             Object response = this.traci.getConnection().do_job_get(Edge.getIDList());
             if (response instanceof String[]) {
@@ -297,4 +301,48 @@ public class EdgeWrapper {
         }
         return 0;
     }
+
+    /**
+     * Totals over all edges for the export report.
+     */
+    public static final class EdgeTotals {
+        public final int lanes;
+        public final double waitingTimeSum;  // seconds
+        public final int haltingVehicles;
+
+        EdgeTotals(int lanes, double waitingTimeSum, int haltingVehicles) {
+            this.lanes = lanes;
+            this.waitingTimeSum = waitingTimeSum;
+            this.haltingVehicles = haltingVehicles;
+        }
+    }
+
+    /**
+     * Sums lane count, waiting time and halting vehicles of every edge.
+     * Fetches all of them in one TraCI batch instead of three round trips per edge.
+     * @return totals; zero if not connected (failed edges count as zero)
+     */
+    public EdgeTotals getEdgeTotals() {
+        List<String> ids = this.edgeIDs;
+        if (ids.isEmpty() || this.traci.getConnection() == null || !this.traci.isConnected()) {
+            return new EdgeTotals(0, 0, 0);
+        }
+        TraCIBatch batch = this.traci.newBatch();
+        for (String id : ids) {
+            batch.get(Edge.getLaneNumber(id));
+            batch.get(Edge.getWaitingTime(id));            // 0 on empty edges
+            batch.get(Edge.getLastStepHaltingNumber(id));
+        }
+        if (!batch.execute()) return new EdgeTotals(0, 0, 0);
+
+        int lanes = 0;
+        double waitingTime = 0;
+        int halting = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            lanes += batch.getInt(i * 3, 0);
+            waitingTime += batch.getDouble(i * 3 + 1, 0);
+            halting += batch.getInt(i * 3 + 2, 0);
+        }
+        return new EdgeTotals(lanes, waitingTime, halting);
+    }
 }
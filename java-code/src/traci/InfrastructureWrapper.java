@@ -175,6 +175,10 @@ public class InfrastructureWrapper {
         if (isReady() == false) return 0;
         if(edgeID == null || edgeID.isEmpty()) return 0;
 
+        NetworkMetadata metadata = connector.getNetworkMetadata();
+        int cached = (metadata != null) ? metadata.getLaneCount(edgeID) : -1;
+        if (cached >= 0) return cached;
+
         try {
             int laneCount = (int) connector.getConnection().do_job_get(Edge.getLaneNumber(edgeID));
             return laneCount;
@@ -222,6 +226,10 @@ public class InfrastructureWrapper {
         if (isReady() == false) return 0.0;
         if(laneID == null || laneID.isEmpty()) return 0.0;
 
+        NetworkMetadata metadata = connector.getNetworkMetadata();
+        double cached = (metadata != null) ? metadata.getLaneLength(laneID) : Double.NaN;
+        if (!Double.isNaN(cached)) return cached;
+
         try {
             return (double) connector.getConnection().do_job_get(Lane.getLength(laneID));
         }
@@ -0,0 +1,386 @@
+import de.tudresden.sumo.config.Constants;
+import it.polito.appeal.traci.TraCIException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * NativeTraCIClient
+ * ----------------
+ * {@link SimulationBackend} that speaks the TraCI binary protocol directly.
+ *
+ * Characteristics:
+ * - Requests are framed into one reusable direct ByteBuffer and answers are read
+ *   into another; both only grow, they are never reallocated per call.
+ * - Doubles and positions are decoded straight into primitives or the caller's
+ *   arrays; only string results allocate (the String itself).
+ * - Bulk reads put all commands into one message, so N values cost one round trip.
+ *
+ * SUMO serves several TraCI clients strictly in turn (one client until it steps,
+ * then the next), so a second socket could not read between steps while TraaS is
+ * connected. This client therefore shares the TraaS socket: it locks on the TraaS
+ * connection (whose calls are synchronized on itself) and always consumes whole
+ * response messages, so both clients stay in sync on the same stream. It uses the
+ * socket's channel when there is one and channels over its streams otherwise.
+ *
+ * Single reads are memoized in the connection's {@link StepReadCache} (guarded by
+ * the same lock), so a value already read in the current step is not fetched
+ * again. Bulk reads always go to SUMO.
+ */
+public final class NativeTraCIClient implements SimulationBackend {
+
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    // Bounds one message; larger bulk reads are split
+    private static final int MAX_COMMANDS_PER_MESSAGE = 1024;
+
+    // Extended command header: 0 marker, int length, command ID, variable ID
+    private static final int COMMAND_HEADER_BYTES = 1 + 4 + 1 + 1;
+
+    private final ReadableByteChannel in;
+    private final WritableByteChannel out;
+    private final Object lock;
+    private final StepReadCache cache; // null to disable; guarded by lock
+
+    // Guarded by lock
+    private ByteBuffer sendBuf = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+    private ByteBuffer recvBuf = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+    private byte[] stringBytes = new byte[256];
+    private int valueEnd; // end of the response command currently being decoded
+    private String lastError;
+
+    private NativeTraCIClient(ReadableByteChannel in, WritableByteChannel out, Object lock, StepReadCache cache) {
+        this.in = in;
+        this.out = out;
+        this.lock = lock;
+        this.cache = cache;
+    }
+
+    /**
+     * Attaches to the socket of an existing TraCI connection.
+     * @param socket connected TraCI socket
+     * @param lock object every other user of the socket synchronizes on
+     * @param cache per-step read cache guarded by lock; null to always ask SUMO
+     * @return client sharing the socket
+     */
+    static NativeTraCIClient attach(Socket socket, Object lock, StepReadCache cache) throws IOException {
+        SocketChannel channel = socket.getChannel();
+        if (channel != null && channel.isBlocking()) {
+            return over(channel, channel, lock, cache);
+        }
+        return over(Channels.newChannel(socket.getInputStream()),
+                Channels.newChannel(socket.getOutputStream()), lock, cache);
+    }
+
+    /**
+     * Speaks TraCI over the given blocking channels (used by {@link #attach} and by tests).
+     * @param lock object every other user of the channels synchronizes on
+     * @param cache per-step read cache guarded by lock; null to always ask SUMO
+     */
+    static NativeTraCIClient over(ReadableByteChannel in, WritableByteChannel out, Object lock, StepReadCache cache) {
+        return new NativeTraCIClient(in, out, lock, cache);
+    }
+
+    @Override
+    public String getName() {
+        return "native";
+    }
+
+    @Override
+    public double getDouble(int domain, int variable, String objectId) throws IOException {
+        synchronized (lock) {
+            Object cached = cached(domain, variable, objectId);
+            if (cached instanceof Number) return ((Number) cached).doubleValue();
+            double v = readDouble(query(domain, variable, objectId));
+            remember(domain, variable, objectId, v);
+            return v;
+        }
+    }
+
+    @Override
+    public int getInt(int domain, int variable, String objectId) throws IOException {
+        synchronized (lock) {
+            Object cached = cached(domain, variable, objectId);
+            if (cached instanceof Number) return ((Number) cached).intValue();
+            int type = query(domain, variable, objectId);
+            int v;
+            if (type == Constants.TYPE_INTEGER) v = recvBuf.getInt();
+            else if (type == Constants.TYPE_UBYTE) v = recvBuf.get() & 0xff;
+            else if (type == Constants.TYPE_BYTE) v = recvBuf.get();
+            else throw unexpectedType("integer", type);
+            remember(domain, variable, objectId, v);
+            return v;
+        }
+    }
+
+    @Override
+    public String getString(int domain, int variable, String objectId) throws IOException {
+        synchronized (lock) {
+            Object cached = cached(domain, variable, objectId);
+            if (cached instanceof String) return (String) cached;
+            int type = query(domain, variable, objectId);
+            if (type != Constants.TYPE_STRING) throw unexpectedType("string", type);
+            String v = readString();
+            remember(domain, variable, objectId, v);
+            return v;
+        }
+    }
+
+    @Override
+    public boolean getPosition(int domain, int variable, String objectId, double[] xy) throws IOException {
+        synchronized (lock) {
+            Object cached = cached(domain, variable, objectId);
+            if (cached instanceof double[]) {
+                xy[0] = ((double[]) cached)[0];
+                xy[1] = ((double[]) cached)[1];
+                return true;
+            }
+            if (!readPosition(query(domain, variable, objectId), xy, 0)) return false;
+            remember(domain, variable, objectId, new double[] {xy[0], xy[1]});
+            return true;
+        }
+    }
+
+    @Override
+    public int getStringList(int domain, int variable, String objectId, Collection<? super String> sink) throws IOException {
+        synchronized (lock) {
+            Object cached = cached(domain, variable, objectId);
+            if (cached instanceof String[]) {
+                Collections.addAll(sink, (String[]) cached);
+                return ((String[]) cached).length;
+            }
+            int type = query(domain, variable, objectId);
+            if (type != Constants.TYPE_STRINGLIST) throw unexpectedType("string list", type);
+            int n = recvBuf.getInt();
+            String[] values = new String[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = readString();
+                sink.add(values[i]);
+            }
+            remember(domain, variable, objectId, values);
+            return n;
+        }
+    }
+
+    @Override
+    public int getDoubles(int domain, int variable, List<String> objectIds, double[] values) throws IOException {
+        synchronized (lock) {
+            int read = 0;
+            for (int from = 0; from < objectIds.size(); from += MAX_COMMANDS_PER_MESSAGE) {
+                int to = Math.min(objectIds.size(), from + MAX_COMMANDS_PER_MESSAGE);
+                exchange(domain, variable, objectIds, from, to);
+                for (int i = from; i < to; i++) {
+                    values[i] = Double.NaN;
+                    if (!readStatus()) continue;
+                    int type = readValueHeader();
+                    if (type == Constants.TYPE_DOUBLE) {
+                        values[i] = recvBuf.getDouble();
+                        read++;
+                    } else if (type == Constants.TYPE_INTEGER) {
+                        values[i] = recvBuf.getInt();
+                        read++;
+                    }
+                    recvBuf.position(valueEnd);
+                }
+            }
+            return read;
+        }
+    }
+
+    @Override
+    public int getPositions(int domain, int variable, List<String> objectIds, double[] xy) throws IOException {
+        synchronized (lock) {
+            int read = 0;
+            for (int from = 0; from < objectIds.size(); from += MAX_COMMANDS_PER_MESSAGE) {
+                int to = Math.min(objectIds.size(), from + MAX_COMMANDS_PER_MESSAGE);
+                exchange(domain, variable, objectIds, from, to);
+                for (int i = from; i < to; i++) {
+                    xy[2 * i] = Double.NaN;
+                    xy[2 * i + 1] = Double.NaN;
+                    if (!readStatus()) continue;
+                    if (readPosition(readValueHeader(), xy, 2 * i)) read++;
+                    recvBuf.position(valueEnd);
+                }
+            }
+            return read;
+        }
+    }
+
+    // ---------------- step cache ----------------
+
+    private Object cached(int domain, int variable, String objectId) {
+        return (cache != null) ? cache.get(domain | StepReadCache.NATIVE, variable, objectId) : null;
+    }
+
+    private void remember(int domain, int variable, String objectId, Object value) {
+        if (cache != null) cache.put(domain | StepReadCache.NATIVE, variable, objectId, value);
+    }
+
+    // ---------------- request ----------------
+
+    // Sends one get command and positions recvBuf on its value; returns the value type.
+    private int query(int domain, int variable, String objectId) throws IOException {
+        beginMessage();
+        putGetCommand(domain, variable, objectId);
+        sendMessage();
+        readMessage();
+        if (!readStatus()) {
+            throw new TraCIException("SUMO rejected variable 0x" + Integer.toHexString(variable)
+                    + " of '" + objectId + "': " + lastError);
+        }
+        return readValueHeader();
+    }
+
+    private void exchange(int domain, int variable, List<String> objectIds, int from, int to) throws IOException {
+        beginMessage();
+        for (int i = from; i < to; i++) {
+            putGetCommand(domain, variable, objectIds.get(i));
+        }
+        sendMessage();
+        readMessage();
+    }
+
+    private void beginMessage() {
+        sendBuf.clear();
+        sendBuf.putInt(0); // total length, patched in sendMessage
+    }
+
+    // Always uses the extended length form so the length can be patched after the ID is written.
+    private void putGetCommand(int domain, int variable, String objectId) {
+        ensureSendCapacity(COMMAND_HEADER_BYTES + 4 + objectId.length() * 3);
+        int start = sendBuf.position();
+        sendBuf.put((byte) 0);
+        sendBuf.putInt(0);
+        sendBuf.put((byte) domain);
+        sendBuf.put((byte) variable);
+        putString(objectId);
+        sendBuf.putInt(start + 1, sendBuf.position() - start);
+    }
+
+    // ASCII IDs (the common case) are written char by char without an intermediate byte[].
+    private void putString(String s) {
+        int lengthPos = sendBuf.position();
+        sendBuf.putInt(0);
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                sendBuf.position(lengthPos);
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                sendBuf.putInt(utf8.length);
+                sendBuf.put(utf8);
+                return;
+            }
+            sendBuf.put((byte) c);
+        }
+        sendBuf.putInt(lengthPos, n);
+    }
+
+    private void ensureSendCapacity(int needed) {
+        if (sendBuf.remaining() >= needed) return;
+        ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(sendBuf.capacity() * 2, sendBuf.position() + needed));
+        sendBuf.flip();
+        bigger.put(sendBuf);
+        sendBuf = bigger;
+    }
+
+    private void sendMessage() throws IOException {
+        sendBuf.putInt(0, sendBuf.position());
+        sendBuf.flip();
+        while (sendBuf.hasRemaining()) {
+            out.write(sendBuf);
+        }
+    }
+
+    // ---------------- response ----------------
+
+    // Reads exactly one whole message so the stream stays aligned for TraaS.
+    private void readMessage() throws IOException {
+        recvBuf.clear();
+        recvBuf.limit(4);
+        readFully();
+        int length = recvBuf.getInt(0) - 4;
+        if (length < 0) {
+            throw new EOFException("Invalid TraCI message length " + (length + 4));
+        }
+        if (recvBuf.capacity() < length) {
+            recvBuf = ByteBuffer.allocateDirect(Math.max(length, recvBuf.capacity() * 2));
+        }
+        recvBuf.clear();
+        recvBuf.limit(length);
+        readFully();
+        recvBuf.flip();
+    }
+
+    private void readFully() throws IOException {
+        while (recvBuf.hasRemaining()) {
+            if (in.read(recvBuf) < 0) {
+                throw new EOFException("TraCI connection closed");
+            }
+        }
+    }
+
+    // Returns the position right after the command that starts at the current position.
+    private int commandEnd() {
+        int start = recvBuf.position();
+        int length = recvBuf.get() & 0xff;
+        if (length == 0) length = recvBuf.getInt();
+        return start + length;
+    }
+
+    private boolean readStatus() {
+        int end = commandEnd();
+        recvBuf.get(); // command ID
+        int result = recvBuf.get() & 0xff;
+        if (result != Constants.RTYPE_OK) {
+            lastError = readString();
+        }
+        recvBuf.position(end);
+        return result == Constants.RTYPE_OK;
+    }
+
+    // Get responses carry: response ID, variable ID, object ID, value type, value.
+    private int readValueHeader() {
+        valueEnd = commandEnd();
+        recvBuf.get(); // response ID
+        recvBuf.get(); // variable ID
+        recvBuf.position(recvBuf.position() + 4 + recvBuf.getInt(recvBuf.position())); // object ID
+        return recvBuf.get() & 0xff;
+    }
+
+    private double readDouble(int type) throws TraCIException {
+        if (type == Constants.TYPE_DOUBLE) return recvBuf.getDouble();
+        if (type == Constants.TYPE_INTEGER) return recvBuf.getInt();
+        throw unexpectedType("double", type);
+    }
+
+    private boolean readPosition(int type, double[] xy, int offset) {
+        if (type != Constants.POSITION_2D && type != Constants.POSITION_3D) return false;
+        xy[offset] = recvBuf.getDouble();
+        xy[offset + 1] = recvBuf.getDouble();
+        return true;
+    }
+
+    private String readString() {
+        int n = recvBuf.getInt();
+        if (stringBytes.length < n) {
+            stringBytes = new byte[Math.max(n, stringBytes.length * 2)];
+        }
+        recvBuf.get(stringBytes, 0, n);
+        return new String(stringBytes, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static TraCIException unexpectedType(String expected, int type) {
+        return new TraCIException("Expected " + expected + " but got TraCI type 0x" + Integer.toHexString(type));
+    }
+}
@@ -0,0 +1,277 @@
+import de.tudresden.sumo.cmd.Edge;
+import de.tudresden.sumo.cmd.Lane;
+import de.tudresden.sumo.cmd.Trafficlight;
+import de.tudresden.sumo.objects.SumoLink;
+import it.polito.appeal.traci.SumoTraciConnection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NetworkMetadata
+ * ----------------
+ * Static facts about the loaded network that TraCI would otherwise be asked
+ * for on every connect: edge IDs, lanes per edge, lane lengths, traffic light
+ * IDs, their controlled links and the edges suitable for spawning.
+ *
+ * Characteristics:
+ * - Immutable once built; safe to share between threads.
+ * - Built once from SUMO with batched queries ({@link #fetch(TraCIConnector)}),
+ *   then persisted by {@link NetworkMetadataCache} and read back on later connects.
+ * - Lane IDs are not stored; SUMO names lane i of edge e "e_i".
+ * - SumoLink objects are shared and must not be modified.
+ */
+public final class NetworkMetadata {
+
+    // Non-internal edges whose first lane is at least this long are offered for spawning;
+    // shorter edges are usually intersection stubs where spawning looks bad.
+    static final double MIN_SPAWN_LANE_LENGTH = 40.0; // meters
+
+    private final List<String> edgeIds;
+    private final Map<String, double[]> laneLengthsByEdge; // edge ID -> length of lane i
+    private final List<String> trafficLightIds;
+    private final Map<String, List<SumoLink>> controlledLinks;
+    private final List<String> spawnEdgeIds;
+
+    private NetworkMetadata(List<String> edgeIds, Map<String, double[]> laneLengthsByEdge,
+                            List<String> trafficLightIds, Map<String, List<SumoLink>> controlledLinks) {
+        this.edgeIds = Collections.unmodifiableList(edgeIds);
+        this.laneLengthsByEdge = laneLengthsByEdge;
+        this.trafficLightIds = Collections.unmodifiableList(trafficLightIds);
+        this.controlledLinks = controlledLinks;
+
+        List<String> spawn = new ArrayList<>();
+        for (String id : edgeIds) {
+            if (id.isEmpty() || id.startsWith(":")) continue; // internal / junction edge
+            double[] lengths = laneLengthsByEdge.get(id);
+            if (lengths != null && lengths.length > 0 && lengths[0] >= MIN_SPAWN_LANE_LENGTH) {
+                spawn.add(id);
+            }
+        }
+        this.spawnEdgeIds = Collections.unmodifiableList(spawn);
+    }
+
+    /**
+     * @return all edge IDs including internal ones (read-only)
+     */
+    public List<String> getEdgeIds() {
+        return edgeIds;
+    }
+
+    /**
+     * @return number of lanes of the edge, or -1 if the edge is unknown
+     */
+    public int getLaneCount(String edgeId) {
+        double[] lengths = laneLengthsByEdge.get(edgeId);
+        return (lengths != null) ? lengths.length : -1;
+    }
+
+    /**
+     * @param laneId lane ID of the form edge_index
+     * @return lane length in meters, or NaN if the lane is unknown
+     */
+    public double getLaneLength(String laneId) {
+        if (laneId == null) return Double.NaN;
+        int sep = laneId.lastIndexOf('_');
+        if (sep <= 0 || sep == laneId.length() - 1) return Double.NaN;
+        double[] lengths = laneLengthsByEdge.get(laneId.substring(0, sep));
+        if (lengths == null) return Double.NaN;
+        try {
+            int index = Integer.parseInt(laneId.substring(sep + 1));
+            return (index >= 0 && index < lengths.length) ? lengths[index] : Double.NaN;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return all traffic light IDs (read-only)
+     */
+    public List<String> getTrafficLightIds() {
+        return trafficLightIds;
+    }
+
+    /**
+     * @return true if the traffic light was part of the network when the metadata was built
+     */
+    public boolean hasTrafficLight(String tlId) {
+        return controlledLinks.containsKey(tlId);
+    }
+
+    /**
+     * @return links controlled by the traffic light, in signal index order; empty if unknown
+     */
+    public List<SumoLink> getControlledLinks(String tlId) {
+        List<SumoLink> links = controlledLinks.get(tlId);
+        return (links != null) ? links : List.of();
+    }
+
+    /**
+     * @return non-internal edges long enough to spawn vehicles on (read-only)
+     */
+    public List<String> getSpawnEdgeIds() {
+        return spawnEdgeIds;
+    }
+
+    // ---------------- discovery over TraCI ----------------
+
+    /**
+     * Queries all static network data from SUMO. Per-edge, per-lane and per-traffic-light
+     * values are fetched in TraCI batches, so this costs a handful of round trips.
+     * @return metadata, or null if the connection is unavailable
+     */
+    public static NetworkMetadata fetch(TraCIConnector traci) throws Exception {
+        SumoTraciConnection conn = traci.getConnection();
+        if (conn == null || !traci.isConnected()) return null;
+
+        List<String> edgeIds = toStringList(conn.do_job_get(Edge.getIDList()));
+        List<String> tlIds = toStringList(conn.do_job_get(Trafficlight.getIDList()));
+
+        // Lane counts (slots [0, edges)) and controlled links (slots [edges, edges + lights))
+        TraCIBatch laneCounts = traci.newBatch();
+        for (String id : edgeIds) {
+            laneCounts.get(Edge.getLaneNumber(id));
+        }
+        for (String tlId : tlIds) {
+            laneCounts.get(Trafficlight.getControlledLinks(tlId));
+        }
+        if (!laneCounts.execute()) return null;
+
+        TraCIBatch laneLengths = traci.newBatch();
+        int[] counts = new int[edgeIds.size()];
+        for (int i = 0; i < edgeIds.size(); i++) {
+            counts[i] = Math.max(0, laneCounts.getInt(i, 0));
+            for (int lane = 0; lane < counts[i]; lane++) {
+                laneLengths.get(Lane.getLength(edgeIds.get(i) + "_" + lane));
+            }
+        }
+        if (!laneLengths.execute()) return null;
+
+        Map<String, double[]> lengthsByEdge = new HashMap<>(edgeIds.size() * 2);
+        int slot = 0;
+        for (int i = 0; i < edgeIds.size(); i++) {
+            double[] lengths = new double[counts[i]];
+            for (int lane = 0; lane < counts[i]; lane++) {
+                lengths[lane] = laneLengths.getDouble(slot++, Double.NaN);
+            }
+            lengthsByEdge.put(edgeIds.get(i), lengths);
+        }
+
+        Map<String, List<SumoLink>> links = new HashMap<>(tlIds.size() * 2);
+        for (int i = 0; i < tlIds.size(); i++) {
+            List<SumoLink> out = new ArrayList<>();
+            TrafficLightWrapper.flattenControlledLinks(laneCounts.result(edgeIds.size() + i), out);
+            links.put(tlIds.get(i), Collections.unmodifiableList(out));
+        }
+        return new NetworkMetadata(edgeIds, lengthsByEdge, tlIds, links);
+    }
+
+    private static List<String> toStringList(Object response) {
+        List<String> out = new ArrayList<>();
+        if (response instanceof String[]) {
+            Collections.addAll(out, (String[]) response);
+        } else if (response instanceof List<?>) {
+            for (Object o : (List<?>) response) out.add(String.valueOf(o));
+        }
+        return out;
+    }
+
+    // ---------------- binary form ----------------
+
+    /**
+     * Writes the metadata in the cache file layout:
+     * edges (ID, lane lengths), traffic lights (ID, links).
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(edgeIds.size());
+        for (String id : edgeIds) {
+            out.writeUTF(id);
+            double[] lengths = laneLengthsByEdge.get(id);
+            out.writeShort(lengths.length);
+            for (double len : lengths) {
+                out.writeDouble(len); // exact, so a cache hit matches a fresh TraCI fetch
+            }
+        }
+        out.writeInt(trafficLightIds.size());
+        for (String tlId : trafficLightIds) {
+            out.writeUTF(tlId);
+            List<SumoLink> links = getControlledLinks(tlId);
+            out.writeInt(links.size());
+            for (SumoLink l : links) {
+                writeNullableUTF(out, l.from);
+                writeNullableUTF(out, l.to);
+                writeNullableUTF(out, l.over);
+                writeNullableUTF(out, l.notInternalLane);
+                writeNullableUTF(out, l.internalLane);
+                writeNullableUTF(out, l.state);
+                writeNullableUTF(out, l.direction);
+                out.writeByte(l.hasPriority);
+                out.writeByte(l.isOpen);
+                out.writeByte(l.hasApproachingFoe);
+                out.writeDouble(l.length);
+            }
+        }
+    }
+
+    /**
+     * Reads metadata written by {@link #write(DataOutputStream)}.
+     */
+    static NetworkMetadata read(DataInputStream in) throws IOException {
+        int edgeCount = in.readInt();
+        List<String> edgeIds = new ArrayList<>(edgeCount);
+        Map<String, double[]> lengthsByEdge = new HashMap<>(edgeCount * 2);
+        for (int i = 0; i < edgeCount; i++) {
+            String id = in.readUTF();
+            double[] lengths = new double[in.readUnsignedShort()];
+            for (int lane = 0; lane < lengths.length; lane++) {
+                lengths[lane] = in.readDouble();
+            }
+            edgeIds.add(id);
+            lengthsByEdge.put(id, lengths);
+        }
+        int tlCount = in.readInt();
+        List<String> tlIds = new ArrayList<>(tlCount);
+        Map<String, List<SumoLink>> links = new HashMap<>(tlCount * 2);
+        for (int i = 0; i < tlCount; i++) {
+            String tlId = in.readUTF();
+            int n = in.readInt();
+            List<SumoLink> out = new ArrayList<>(n);
+            for (int k = 0; k < n; k++) {
+                String from = readNullableUTF(in);
+                String to = readNullableUTF(in);
+                String over = readNullableUTF(in);
+                SumoLink l = new SumoLink(from, to, over);
+                l.from = from;
+                l.to = to;
+                l.over = over;
+                l.notInternalLane = readNullableUTF(in);
+                l.internalLane = readNullableUTF(in);
+                l.state = readNullableUTF(in);
+                l.direction = readNullableUTF(in);
+                l.hasPriority = in.readByte();
+                l.isOpen = in.readByte();
+                l.hasApproachingFoe = in.readByte();
+                l.length = in.readDouble();
+                out.add(l);
+            }
+            tlIds.add(tlId);
+            links.put(tlId, Collections.unmodifiableList(out));
+        }
+        return new NetworkMetadata(edgeIds, lengthsByEdge, tlIds, links);
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * NetworkMetadataCache
+ * ----------------
+ * Stores {@link NetworkMetadata} on disk so reconnecting to an unchanged
+ * network skips the static TraCI discovery.
+ *
+ * Characteristics:
+ * - One file per network under {@code settings/network-cache/}, next to
+ *   {@code settings/user.properties}.
+ * - The file name is a SHA-256 over the contents of the .sumocfg and the
+ *   .net.xml, so editing either one selects a fresh entry; stale entries are
+ *   simply never read again.
+ * - Files start with a magic number and format version; anything unreadable
+ *   is rebuilt from SUMO and overwritten.
+ * - Writes go to a temporary file that is then moved into place, so a crash
+ *   never leaves a half-written entry.
+ */
+public final class NetworkMetadataCache {
+    private static final Logger LOGGER = Logger.getLogger(NetworkMetadataCache.class.getName());
+
+    private static final int MAGIC = 0x4E4D4443; // "NMDC"
+    private static final int FORMAT_VERSION = 2; // 2: lane lengths as double
+    private static final String EXTENSION = ".meta";
+
+    private final Path directory;
+
+    /**
+     * Creates a cache stored under {@code settings/network-cache}.
+     */
+    public NetworkMetadataCache() {
+        this(Paths.get("settings", "network-cache"));
+    }
+
+    /**
+     * Creates a cache stored in the given directory.
+     *
+     * @param directory cache directory, created on first write
+     */
+    public NetworkMetadataCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached metadata for the network, or queries SUMO and stores the result.
+     *
+     * @param traci connected connector used on a cache miss
+     * @param configFile .sumocfg of the running simulation
+     * @param netFile .net.xml referenced by the config; may be null if unknown
+     * @return metadata, or null if it is neither cached nor obtainable from SUMO
+     */
+    public NetworkMetadata loadOrBuild(TraCIConnector traci, Path configFile, Path netFile) {
+        String key = contentKey(configFile, netFile);
+        Path file = (key != null) ? directory.resolve(key + EXTENSION) : null;
+
+        if (file != null && Files.isRegularFile(file)) {
+            long start = System.nanoTime();
+            NetworkMetadata cached = read(file);
+            if (cached != null) {
+                LOGGER.info(String.format("Loaded network metadata from %s in %.1f ms (%d edges, %d traffic lights)",
+                        file.getFileName(), (System.nanoTime() - start) / 1e6,
+                        cached.getEdgeIds().size(), cached.getTrafficLightIds().size()));
+                return cached;
+            }
+        }
+
+        NetworkMetadata fresh;
+        try {
+            fresh = NetworkMetadata.fetch(traci);
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+            } else {
+                LOGGER.log(Level.WARNING, "Failed to query network metadata", e);
+            }
+            return null;
+        }
+        if (fresh != null && file != null) {
+            write(file, fresh);
+        }
+        return fresh;
+    }
+
+    private NetworkMetadata read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.fine("Ignoring network metadata cache with unknown format: " + file);
+                return null;
+            }
+            return NetworkMetadata.read(in);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable network metadata cache " + file, e);
+            return null;
+        }
+    }
+
+    private void write(Path file, NetworkMetadata metadata) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(directory);
+            tmp = Files.createTempFile(directory, "network-", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                metadata.write(out);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save network metadata cache " + file, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // best effort
+                }
+            }
+        }
+    }
+
+    /**
+     * @return hex SHA-256 over the config and network file contents, or null if the config cannot be read
+     */
+    static String contentKey(Path configFile, Path netFile) {
+        if (configFile == null) return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((byte) FORMAT_VERSION);
+            digestFile(digest, configFile);
+            if (netFile != null && Files.isRegularFile(netFile)) {
+                digestFile(digest, netFile);
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            LOGGER.log(Level.FINE, "Cannot hash network files; metadata cache disabled for this run", e);
+            return null;
+        }
+    }
+
+    private static void digestFile(MessageDigest digest, Path file) throws IOException {
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        digest.update((byte) 0); // separator so (a, bc) and (ab, c) differ
+    }
+}
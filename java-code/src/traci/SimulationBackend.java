@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * SimulationBackend
+ * ----------------
+ * Read access to SUMO object variables for the per-step hot path.
+ *
+ * Characteristics:
+ * - domain is a TraCI "get variable" command, e.g. Constants.CMD_GET_VEHICLE_VARIABLE;
+ *   variable is the variable ID, e.g. Constants.VAR_SPEED.
+ * - Values are decoded into primitives, caller-supplied arrays or sinks instead of
+ *   boxed objects.
+ * - Single reads throw when SUMO rejects the command; bulk reads mark failed
+ *   entries with NaN and keep going.
+ *
+ * Implementations: {@link TraaSBackend} (TraaS calls) and {@link NativeTraCIClient}
+ * (direct protocol). Use {@link TraCIConnector#getBackend()} to get the active one.
+ */
+public interface SimulationBackend {
+
+    /**
+     * @return short name for logging, e.g. "native" or "traas"
+     */
+    String getName();
+
+    double getDouble(int domain, int variable, String objectId) throws IOException;
+
+    int getInt(int domain, int variable, String objectId) throws IOException;
+
+    String getString(int domain, int variable, String objectId) throws IOException;
+
+    /**
+     * Reads a 2D position into out[0] (x) and out[1] (y).
+     * @return True if a position was read
+     */
+    boolean getPosition(int domain, int variable, String objectId, double[] out) throws IOException;
+
+    /**
+     * Adds every string of a string list variable to the sink.
+     * @return number of strings added
+     */
+    int getStringList(int domain, int variable, String objectId, Collection<? super String> sink) throws IOException;
+
+    /**
+     * Reads one double variable for many objects in one round trip; out[i] belongs to objectIds.get(i).
+     * @return number of values read; failed entries are NaN
+     */
+    int getDoubles(int domain, int variable, List<String> objectIds, double[] out) throws IOException;
+
+    /**
+     * Reads one position variable for many objects in one round trip;
+     * xy[2*i] and xy[2*i+1] belong to objectIds.get(i).
+     * @return number of positions read; failed entries are NaN
+     */
+    int getPositions(int domain, int variable, List<String> objectIds, double[] xy) throws IOException;
+}
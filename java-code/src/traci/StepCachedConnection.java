@@ -0,0 +1,58 @@
+import de.tudresden.sumo.util.SumoCommand;
+import it.polito.appeal.traci.SumoTraciConnection;
+
+/**
+ * StepCachedConnection
+ * ----------------
+ * TraaS connection that answers repeated get commands within one simulation
+ * step from a {@link StepReadCache}.
+ *
+ * Callers keep using do_job_get/do_job_set as before; duplicate round trips
+ * (ID lists fetched by several sweeps, traffic light IDs per frame and per key
+ * press) disappear. Every step clears the cache; a set command drops
+ * the entries of the object it changed.
+ */
+final class StepCachedConnection extends SumoTraciConnection {
+
+    private final StepReadCache cache = new StepReadCache(); // guarded by this
+
+    StepCachedConnection(String sumoBinary, String configFile) {
+        super(sumoBinary, configFile);
+    }
+
+    @Override
+    public synchronized Object do_job_get(SumoCommand cmd) throws Exception {
+        String id = StepReadCache.cacheableId(cmd);
+        if (id == null) return super.do_job_get(cmd);
+        Object cached = cache.get(cmd.input1, cmd.input2, id);
+        if (cached != null) return cached;
+        Object value = super.do_job_get(cmd);
+        cache.put(cmd.input1, cmd.input2, id, value);
+        return value;
+    }
+
+    @Override
+    public synchronized void do_job_set(SumoCommand cmd) throws Exception {
+        cache.invalidate(cmd);
+        super.do_job_set(cmd);
+    }
+
+    @Override
+    public synchronized void do_timestep() throws Exception {
+        cache.clear();
+        super.do_timestep();
+    }
+
+    @Override
+    public synchronized void do_timestep(double targetTime) throws Exception {
+        cache.clear();
+        super.do_timestep(targetTime);
+    }
+
+    /**
+     * @return the read cache; callers must hold this connection's monitor
+     */
+    StepReadCache getReadCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,123 @@
+import de.tudresden.sumo.util.SumoCommand;
+import de.uniluebeck.itm.tcpip.Storage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * StepReadCache
+ * ----------------
+ * Memoizes TraCI get results for the current simulation step.
+ *
+ * Characteristics:
+ * - Keyed by get command domain, variable and object ID; a value read once is
+ *   answered from memory for the rest of the step.
+ * - Cleared completely whenever SUMO is stepped.
+ * - A set command only drops the entries of its own object plus the
+ *   domain-wide entries (object ID "", e.g. ID lists and counts), since adding,
+ *   removing or changing an object may change those.
+ * - Cached objects are shared between callers and must not be modified.
+ * - TraaS objects and the primitive decodings of {@link NativeTraCIClient} have
+ *   different shapes (e.g. SumoPosition2D vs double[]), so native entries live
+ *   under their own domain key ({@link #NATIVE}); invalidation drops both.
+ *
+ * Not thread-safe on its own: every access happens while holding the monitor
+ * of the TraCI connection ({@link StepCachedConnection}), which also serializes
+ * all socket traffic.
+ */
+final class StepReadCache {
+
+    // TraCI set command IDs are the matching get command IDs + 0x20
+    private static final int SET_TO_GET_OFFSET = 0x20;
+
+    /** Added to the domain of entries stored by the native client */
+    static final int NATIVE = 0x100;
+
+    // Get commands without parameters carry: variable (1) + string length (4) + encoded ID
+    private static final int PLAIN_GET_OVERHEAD = 1 + 4;
+
+    private final Map<ObjectKey, Map<Integer, Object>> values = new HashMap<>();
+
+    /**
+     * @return cached value or null
+     */
+    Object get(int domain, int variable, String objectId) {
+        Map<Integer, Object> byVariable = values.get(new ObjectKey(domain, objectId));
+        return (byVariable != null) ? byVariable.get(variable) : null;
+    }
+
+    void put(int domain, int variable, String objectId, Object value) {
+        if (value == null) return;
+        values.computeIfAbsent(new ObjectKey(domain, objectId), k -> new HashMap<>(8)).put(variable, value);
+    }
+
+    /**
+     * Drops everything a set command on the given object may have changed.
+     * @param setDomain TraCI set command ID, e.g. CMD_SET_VEHICLE_VARIABLE
+     */
+    void invalidate(int setDomain, String objectId) {
+        if (values.isEmpty()) return;
+        int getDomain = setDomain - SET_TO_GET_OFFSET;
+        values.remove(new ObjectKey(getDomain, objectId));
+        values.remove(new ObjectKey(getDomain, ""));
+        values.remove(new ObjectKey(getDomain | NATIVE, objectId));
+        values.remove(new ObjectKey(getDomain | NATIVE, ""));
+    }
+
+    void invalidate(SumoCommand setCommand) {
+        Object id = (setCommand.raw.size() > 2) ? setCommand.raw.get(2) : null;
+        if (id instanceof String) {
+            invalidate(setCommand.input1, (String) id);
+        } else {
+            clear(); // unknown shape; stay correct
+        }
+    }
+
+    void clear() {
+        values.clear();
+    }
+
+    /**
+     * @return object ID if the command is a plain get (domain, variable, ID) that may be cached, else null
+     */
+    static String cacheableId(SumoCommand cmd) {
+        if (cmd.raw.size() < 3 || !(cmd.raw.get(2) instanceof String)) return null;
+        String id = (String) cmd.raw.get(2);
+        // Commands with extra parameters (e.g. getParameter, getDrivingDistance) are longer; skip them.
+        // The ID length is read from the encoded command, since its byte count depends on the
+        // charset TraaS encodes with, not on id.length().
+        Storage content = cmd.get_command().content();
+        int size = content.size();
+        if (size < PLAIN_GET_OVERHEAD) return null;
+        List<Byte> bytes = content.getStorageList();
+        int idBytes = ((bytes.get(1) & 0xff) << 24) | ((bytes.get(2) & 0xff) << 16)
+                | ((bytes.get(3) & 0xff) << 8) | (bytes.get(4) & 0xff);
+        return (size == PLAIN_GET_OVERHEAD + idBytes) ? id : null;
+    }
+
+
+    private static final class ObjectKey {
+        final int domain;
+        final String objectId;
+
+        ObjectKey(int domain, String objectId) {
+            this.domain = domain;
+            this.objectId = Objects.requireNonNull(objectId, "objectId");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ObjectKey)) return false;
+            ObjectKey k = (ObjectKey) o;
+            return domain == k.domain && objectId.equals(k.objectId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * domain + objectId.hashCode();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoColor;
+import de.tudresden.sumo.util.CommandProcessor;
+import de.tudresden.sumo.util.SumoCommand;
+import de.uniluebeck.itm.tcpip.Storage;
+import it.polito.appeal.traci.SumoTraciConnection;
+import it.polito.appeal.traci.protocol.Command;
+import it.polito.appeal.traci.protocol.RequestMessage;
+import it.polito.appeal.traci.protocol.ResponseContainer;
+import it.polito.appeal.traci.protocol.ResponseMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TraCIBatch
+ * ----------------
+ * Queues TraCI get/set commands and sends them to SUMO together.
+ *
+ * Characteristics:
+ * - TraCI allows many commands in one message; SUMO answers with one status
+ *   (and, for gets, one result) per command in the same order. Queuing the
+ *   commands turns N socket round trips into one.
+ * - Results are decoded by slot: {@link #get(SumoCommand)} returns the slot
+ *   to read after {@link #execute()}.
+ * - A failing command (e.g. unknown vehicle) only fails its own slot.
+ * - If the raw socket cannot be reached, commands are sent one by one through
+ *   the regular TraaS calls, so callers never need a second code path.
+ *
+ * Not thread-safe; create one batch per caller with {@link TraCIConnector#newBatch()}.
+ */
+public final class TraCIBatch {
+    private static final Logger LOGGER = Logger.getLogger(TraCIBatch.class.getName());
+
+    // Keeps single messages (and the response buffer TraaS allocates for them) bounded.
+    private static final int MAX_COMMANDS_PER_MESSAGE = 1024;
+
+    private final TraCIConnector traci;
+    private final List<SumoCommand> commands = new ArrayList<>();
+    private final List<Boolean> expectsResult = new ArrayList<>();
+
+    private Object[] results = new Object[0];
+    private boolean[] succeeded = new boolean[0];
+
+    TraCIBatch(TraCIConnector traci) {
+        this.traci = traci;
+    }
+
+    /**
+     * Queues a get command.
+     * @param cmd TraaS get command, e.g. Vehicle.getSpeed(id)
+     * @return slot to read the result from after {@link #execute()}
+     */
+    public int get(SumoCommand cmd) {
+        return add(cmd, true);
+    }
+
+    /**
+     * Queues a set command.
+     * @param cmd TraaS set command, e.g. Vehicle.setSpeed(id, v)
+     * @return slot to check with {@link #succeeded(int)} after {@link #execute()}
+     */
+    public int set(SumoCommand cmd) {
+        return add(cmd, false);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    public boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    /**
+     * Drops all queued commands and results so the batch can be reused.
+     */
+    public void clear() {
+        commands.clear();
+        expectsResult.clear();
+        results = new Object[0];
+        succeeded = new boolean[0];
+    }
+
+    /**
+     * Sends all queued commands and decodes their results.
+     * @return False if the connection is unavailable or was lost, True otherwise
+     *         (individual commands may still have failed, see {@link #succeeded(int)})
+     */
+    public boolean execute() {
+        int n = commands.size();
+        results = new Object[n];
+        succeeded = new boolean[n];
+        if (n == 0) return true;
+
+        SumoTraciConnection conn = traci.getConnection();
+        if (conn == null || !traci.isConnected()) return false;
+
+        Socket socket = traci.getSocket();
+        try {
+            if (socket == null) {
+                executeSequential(conn);
+            } else {
+                // do_job_* are synchronized on the connection; holding the same lock keeps
+                // other threads from interleaving their own request/response pairs with ours.
+                synchronized (conn) {
+                    invalidateReadCache(conn);
+                    for (int from = 0; from < n; from += MAX_COMMANDS_PER_MESSAGE) {
+                        executeMessage(socket, from, Math.min(n, from + MAX_COMMANDS_PER_MESSAGE));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return false;
+            }
+            LOGGER.log(Level.WARNING, "TraCI batch failed", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the command in this slot was accepted by SUMO
+     */
+    public boolean succeeded(int slot) {
+        return slot >= 0 && slot < succeeded.length && succeeded[slot];
+    }
+
+    /**
+     * @return decoded result of a get command (Double, Integer, String, SumoColor or
+     *         the TraaS object for compound types) or null if it failed
+     */
+    public Object result(int slot) {
+        return succeeded(slot) ? results[slot] : null;
+    }
+
+    public double getDouble(int slot, double fallback) {
+        Object o = result(slot);
+        return (o instanceof Number) ? ((Number) o).doubleValue() : fallback;
+    }
+
+    public int getInt(int slot, int fallback) {
+        Object o = result(slot);
+        return (o instanceof Number) ? ((Number) o).intValue() : fallback;
+    }
+
+    public String getString(int slot, String fallback) {
+        Object o = result(slot);
+        return (o instanceof String) ? (String) o : fallback;
+    }
+
+    // ---------------- internal ----------------
+
+    private int add(SumoCommand cmd, boolean get) {
+        if (cmd == null) throw new IllegalArgumentException("cmd must not be null");
+        commands.add(cmd);
+        expectsResult.add(get);
+        return commands.size() - 1;
+    }
+
+    // Set commands sent past TraaS still have to drop the step cache entries they change.
+    private void invalidateReadCache(SumoTraciConnection conn) {
+        if (!(conn instanceof StepCachedConnection)) return;
+        StepReadCache cache = ((StepCachedConnection) conn).getReadCache();
+        for (int i = 0; i < commands.size(); i++) {
+            if (!expectsResult.get(i)) cache.invalidate(commands.get(i));
+        }
+    }
+
+    private void executeMessage(Socket socket, int from, int to) throws IOException {
+        RequestMessage request = new RequestMessage();
+        for (int i = from; i < to; i++) {
+            request.append(commands.get(i).get_command());
+        }
+
+        // Frame the whole message in memory and hand it to the socket in one write.
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * (to - from));
+        request.writeTo(new DataOutputStream(buffer));
+        OutputStream out = socket.getOutputStream();
+        buffer.writeTo(out);
+        out.flush();
+
+        // TraaS reads the same socket through an unbuffered DataInputStream,
+        // so reading the answer here cannot steal bytes from it.
+        ResponseMessage response = new ResponseMessage(new DataInputStream(socket.getInputStream()));
+        List<ResponseContainer> containers = response.responses();
+        if (containers.size() != to - from) {
+            throw new IOException("TraCI batch: expected " + (to - from) + " responses, got " + containers.size());
+        }
+
+        for (int i = from; i < to; i++) {
+            ResponseContainer rc = containers.get(i - from);
+            if (rc.getStatus().result() != Constants.RTYPE_OK) {
+                LOGGER.log(Level.FINE, "TraCI batch command failed: " + rc.getStatus().description());
+                continue;
+            }
+            if (expectsResult.get(i)) {
+                Command resp = rc.getResponse();
+                if (resp == null) continue;
+                results[i] = decode(resp.content());
+            }
+            succeeded[i] = true;
+        }
+    }
+
+    private void executeSequential(SumoTraciConnection conn) throws Exception {
+        for (int i = 0; i < commands.size(); i++) {
+            try {
+                if (expectsResult.get(i)) {
+                    results[i] = conn.do_job_get(commands.get(i));
+                } else {
+                    conn.do_job_set(commands.get(i));
+                }
+                succeeded[i] = true;
+            } catch (Exception e) {
+                if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "TraCI command failed", e);
+            }
+        }
+    }
+
+    // Get responses carry: variable id, object id, value type, value.
+    static Object decode(Storage content) {
+        int variable = content.readUnsignedByte();
+        content.readStringUTF8();
+        int type = content.readUnsignedByte();
+        switch (type) {
+            case Constants.TYPE_DOUBLE:
+                return content.readDouble();
+            case Constants.TYPE_INTEGER:
+                return content.readInt();
+            case Constants.TYPE_STRING:
+                return content.readStringUTF8();
+            case Constants.TYPE_UBYTE:
+                return (int) content.readUnsignedByte();
+            case Constants.TYPE_BYTE:
+                return (int) content.readByte();
+            case Constants.TYPE_COLOR:
+                return new SumoColor(content.readUnsignedByte(), content.readUnsignedByte(),
+                        content.readUnsignedByte(), content.readUnsignedByte());
+            case Constants.TYPE_COMPOUND:
+                // TraaS decodes compound values by variable (e.g. controlled links), as do_job_get does.
+                return CommandProcessor.read(variable, content);
+            default:
+                return CommandProcessor.read(type, content);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TraCIBatch{commands=" + commands.size() + '}';
+    }
+}
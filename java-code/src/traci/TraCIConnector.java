@@ -5,6 +5,10 @@ import de.tudresden.sumo.cmd.Trafficlight;
 import de.tudresden.sumo.cmd.Edge;
 import de.tudresden.sumo.cmd.Lane;
 import de.tudresden.sumo.objects.SumoPosition2D;
+import de.tudresden.sumo.subscription.Subscription;
+import de.tudresden.sumo.util.SumoCommand;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.util.Observer;
 
 import java.io.*; // for throwing exceptions
 import java.util.*; // for using List interfaces
@@ -26,8 +30,8 @@ public class TraCIConnector {
     private String configFile;
     private SumoTraciConnection connection;
     private int stepLengthMs; // default 1000, but we want 50
-    private boolean isConnected;
-    private int currentStep;
+    private volatile boolean isConnected; // read by the UI thread while the simulation thread steps
+    private volatile int currentStep;
 
     // Prevent log/close spam when SUMO terminates and the socket is already gone.
     private boolean connectionErrorLogged;
@@ -39,6 +43,24 @@ public class TraCIConnector {
     private double netMaxY;
     private boolean netBoundsInitialized;
 
+    // Raw TraCI socket behind the TraaS connection, used by TraCIBatch; looked up once
+    private java.net.Socket socket;
+    private boolean socketLookedUp;
+
+    // Hot-path reads go through the native client unless -Dtraci.backend=traas is set
+    private static final String BACKEND_PROPERTY = "traci.backend";
+    private boolean nativeClientEnabled = !"traas".equalsIgnoreCase(System.getProperty(BACKEND_PROPERTY, "native"));
+    private SimulationBackend backend; // created on first use per connection
+
+    // sumo-gui "delay" between steps; TraaS has no wrapper for gui.setDelay
+    private static final int VAR_GUI_DELAY = 0x74;
+    private String guiViewId; // first sumo-gui view, asked once per connection; null without a GUI
+    private boolean guiViewLookedUp;
+    private boolean realTimeDelay = true; // launch sumo-gui with delay = step length
+
+    // static network facts, loaded once per connect (from disk when the network is unchanged)
+    private volatile NetworkMetadata networkMetadata;
+
     // currently unused members, can implement later
 
     /**
@@ -64,7 +86,7 @@ public class TraCIConnector {
         // Initialize constructor
         TraCIConnector.sumoBinary = sumoBinary;
         this.configFile = configFile;
-        this.connection = new SumoTraciConnection(sumoBinary, configFile);
+        this.connection = new StepCachedConnection(sumoBinary, configFile); // memoizes reads per step
         this.stepLengthMs = 1000; // SUMO default
         this.isConnected = false;
         this.currentStep = 0;
@@ -106,14 +128,19 @@ public class TraCIConnector {
         //  Start SUMO
         try {
             connection.addOption("start", "false"); // set autostart to false
-            // delay and step-length must be equal to simulate real-time
-            connection.addOption("delay", this.stepLengthMs + ""); // in ms
+            // delay and step-length must be equal to simulate real-time; 0 steps as fast as possible
+            connection.addOption("delay", (this.realTimeDelay ? this.stepLengthMs : 0) + ""); // in ms
             connection.addOption("step-length", Double.toString((double)this.stepLengthMs / 1000)); // in seconds
             connection.addOption("lateral-resolution", "0.1"); // makes lane changing smoother
             connection.runServer(); // throws IOException
             this.isConnected = true;
             this.currentStep = 0;
             this.connectionErrorLogged = false;
+            this.socket = null;
+            this.socketLookedUp = false;
+            this.backend = null;
+            this.guiViewId = null;
+            this.guiViewLookedUp = false;
             LOGGER.info("Connected to SUMO");
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Failed to connect to SUMO", e);
@@ -123,6 +150,70 @@ public class TraCIConnector {
         return true;
     }
 
+    /**
+     * Choose the delay SUMO is launched with; takes effect on the next {@link #connect()}
+     * @param realTime True for delay = step length (default), False for no delay
+     */
+    public void setRealTimeDelay(boolean realTime) {
+        this.realTimeDelay = realTime;
+    }
+
+    /**
+     * Change sumo-gui's delay between steps on a running simulation
+     * @param delayMs delay in ms; 0 lets SUMO step as fast as it responds
+     * @return True if SUMO accepted the delay; False for the command-line binary, which has no view
+     */
+    public boolean setStepDelayMs(double delayMs) {
+        if (connection == null || !this.isConnected) {
+            return false;
+        }
+        String viewId = guiViewId();
+        if (viewId == null) {
+            return false;
+        }
+        try {
+            // The delay belongs to the application; any view accepts it.
+            connection.do_job_set(new SumoCommand(Constants.CMD_SET_GUI_VARIABLE, VAR_GUI_DELAY,
+                    viewId, Math.max(0.0, delayMs)));
+            return true;
+        } catch (Exception e) {
+            if (isConnectionProblem(e)) {
+                handleConnectionError(e);
+            } else {
+                LOGGER.log(Level.FINE, "SUMO did not accept a step delay", e);
+            }
+            return false;
+        }
+    }
+
+    // View IDs depend on the sumo-gui version and settings ("View #0" is only the usual name).
+    private String guiViewId() {
+        if (!guiViewLookedUp) {
+            guiViewLookedUp = true;
+            try {
+                Object ids = connection.do_job_get(Gui.getIDList());
+                if (ids instanceof List && !((List<?>) ids).isEmpty()) {
+                    guiViewId = String.valueOf(((List<?>) ids).get(0));
+                }
+            } catch (Exception e) {
+                if (isConnectionProblem(e)) {
+                    handleConnectionError(e);
+                } else {
+                    LOGGER.log(Level.FINE, "No sumo-gui view to set the step delay on", e);
+                }
+            }
+        }
+        return guiViewId;
+    }
+
+    /**
+     * Get the configured step length
+     * @return step length in ms
+     */
+    public int getStepLengthMs() {
+        return this.stepLengthMs;
+    }
+
     /**
      * Advance the SUMO sim by 1 step
      * @return True on successful step, False otherwise
@@ -270,6 +361,137 @@ public class TraCIConnector {
         return connection; // null if connection doesn't exist
     }
 
+    /**
+     * Register an observer that receives subscription results during {@link #step()}
+     * @param observer observer to notify for every subscribed value
+     */
+    public void addSubscriptionObserver(Observer observer) {
+        if (connection == null || !this.isConnected || observer == null) {
+            return;
+        }
+        connection.addObserver(observer);
+    }
+
+    /**
+     * Send a TraCI subscription; results arrive with each following step
+     * @param subscription variable or context subscription
+     * @return True if the subscription was sent, False otherwise
+     */
+    public boolean subscribe(Subscription subscription) {
+        if (connection == null || !this.isConnected || subscription == null) {
+            return false;
+        }
+        try {
+            connection.do_subscription(subscription);
+        } catch (Exception e) {
+            if (isConnectionProblem(e) || e instanceof IllegalStateException) {
+                handleConnectionError(e);
+                return false;
+            }
+            LOGGER.log(Level.FINE, "Subscription failed", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Choose between the native TraCI client and TraaS for {@link #getBackend()}
+     * @param enabled True to use the native client when the socket is reachable
+     */
+    public synchronized void setNativeClientEnabled(boolean enabled) {
+        if (this.nativeClientEnabled != enabled) {
+            this.nativeClientEnabled = enabled;
+            this.backend = null;
+        }
+    }
+
+    public boolean isNativeClientEnabled() {
+        return this.nativeClientEnabled;
+    }
+
+    /**
+     * Backend for per-step variable reads; falls back to TraaS if the native client is
+     * disabled or cannot attach to the socket
+     * @return active backend, or null if not connected
+     */
+    public synchronized SimulationBackend getBackend() {
+        if (connection == null || !this.isConnected) {
+            return null;
+        }
+        if (backend == null) {
+            java.net.Socket s = nativeClientEnabled ? getSocket() : null;
+            if (s != null) {
+                try {
+                    StepReadCache cache = (connection instanceof StepCachedConnection)
+                            ? ((StepCachedConnection) connection).getReadCache() : null;
+                    backend = NativeTraCIClient.attach(s, connection, cache);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Native TraCI client unavailable; using TraaS", e);
+                }
+            }
+            if (backend == null) {
+                backend = new TraaSBackend(this);
+            }
+            LOGGER.info("TraCI backend: " + backend.getName());
+        }
+        return backend;
+    }
+
+    /**
+     * Create an empty batch that sends many get/set commands in one TraCI message
+     * @return new batch bound to this connector
+     */
+    public TraCIBatch newBatch() {
+        return new TraCIBatch(this);
+    }
+
+    /**
+     * Socket of the TraaS connection. TraaS keeps it private, so it is read reflectively;
+     * callers must fall back to do_job_get/do_job_set when this returns null.
+     * @return connected socket or null if unavailable
+     */
+    synchronized java.net.Socket getSocket() {
+        if (connection == null || !this.isConnected) {
+            return null;
+        }
+        if (!socketLookedUp) {
+            socketLookedUp = true;
+            try {
+                java.lang.reflect.Field f = SumoTraciConnection.class.getDeclaredField("socket");
+                f.setAccessible(true);
+                Object s = f.get(connection);
+                if (s instanceof java.net.Socket) {
+                    socket = (java.net.Socket) s;
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "TraCI socket not accessible; batches are sent command by command", e);
+            }
+        }
+        return (socket != null && !socket.isClosed()) ? socket : null;
+    }
+
+    /**
+     * Loads the static network metadata, from the on-disk cache when the config and
+     * network are unchanged, otherwise from SUMO. Call once after connecting.
+     * @param configFile .sumocfg of this simulation
+     * @param netFile .net.xml of this simulation; may be null if unknown
+     * @return metadata, or null if unavailable (callers then query SUMO directly)
+     */
+    public NetworkMetadata loadNetworkMetadata(java.nio.file.Path configFile, java.nio.file.Path netFile) {
+        if (connection == null || !this.isConnected) {
+            return null;
+        }
+        this.networkMetadata = new NetworkMetadataCache().loadOrBuild(this, configFile, netFile);
+        return this.networkMetadata;
+    }
+
+    /**
+     * @return static network metadata, or null if {@link #loadNetworkMetadata} has not succeeded
+     */
+    public NetworkMetadata getNetworkMetadata() {
+        return networkMetadata;
+    }
+
     /**
      * Decide whether an edge is suitable as a spawn edge.
      *
@@ -290,11 +512,8 @@ public class TraCIConnector {
             String laneId = edgeId + "_0";
             Object lenObj = connection.do_job_get(Lane.getLength(laneId));
             if (lenObj instanceof Double) {
-                double len = (Double) lenObj;
-                // Tune this threshold as needed; short edges are usually
-                // intersection stubs where spawning looks bad.
-                final double minLen = 40.0; // meters
-                return len >= minLen;
+                // short edges are usually intersection stubs where spawning looks bad
+                return (Double) lenObj >= NetworkMetadata.MIN_SPAWN_LANE_LENGTH;
             }
             // If length is not a Double, treat as not spawnable.
             return false;
@@ -306,7 +525,7 @@ public class TraCIConnector {
     }
 
     /**
-     * Get list of all edge IDs in the network
+     * Get list of all edge IDs in the network that vehicles can be spawned on
      * @return List of edge IDs
      */
     public List<String> getGoodSpawnEdgeIds() {
@@ -314,6 +533,11 @@ public class TraCIConnector {
         if (connection == null || !this.isConnected) {
             return edges;
         }
+        NetworkMetadata metadata = networkMetadata;
+        if (metadata != null) {
+            edges.addAll(metadata.getSpawnEdgeIds());
+            return edges;
+        }
 
         // check to see which edges are good spawning edges out of all
         try {
@@ -0,0 +1,135 @@
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoPosition2D;
+import de.tudresden.sumo.util.SumoCommand;
+import it.polito.appeal.traci.SumoTraciConnection;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * TraaSBackend
+ * ----------------
+ * {@link SimulationBackend} on top of the TraaS connection.
+ *
+ * Every value still arrives as a boxed TraaS object; this class only unboxes it.
+ * Used when the native client is disabled or the TraaS socket cannot be reached.
+ */
+public final class TraaSBackend implements SimulationBackend {
+
+    // TraCI answers a get command with the command ID plus this offset
+    private static final int RESPONSE_OFFSET = 0x10;
+
+    private final TraCIConnector traci;
+
+    public TraaSBackend(TraCIConnector traci) {
+        this.traci = traci;
+    }
+
+    @Override
+    public String getName() {
+        return "traas";
+    }
+
+    @Override
+    public double getDouble(int domain, int variable, String objectId) throws IOException {
+        Object o = get(domain, variable, objectId, Constants.TYPE_DOUBLE);
+        if (o instanceof Number) return ((Number) o).doubleValue();
+        throw new IOException("Unexpected value for variable " + variable + ": " + o);
+    }
+
+    @Override
+    public int getInt(int domain, int variable, String objectId) throws IOException {
+        Object o = get(domain, variable, objectId, Constants.TYPE_INTEGER);
+        if (o instanceof Number) return ((Number) o).intValue();
+        throw new IOException("Unexpected value for variable " + variable + ": " + o);
+    }
+
+    @Override
+    public String getString(int domain, int variable, String objectId) throws IOException {
+        Object o = get(domain, variable, objectId, Constants.TYPE_STRING);
+        return (o != null) ? o.toString() : "";
+    }
+
+    @Override
+    public boolean getPosition(int domain, int variable, String objectId, double[] out) throws IOException {
+        Object o = get(domain, variable, objectId, Constants.POSITION_2D);
+        if (!(o instanceof SumoPosition2D)) return false;
+        out[0] = ((SumoPosition2D) o).x;
+        out[1] = ((SumoPosition2D) o).y;
+        return true;
+    }
+
+    @Override
+    public int getStringList(int domain, int variable, String objectId, Collection<? super String> sink) throws IOException {
+        Object o = get(domain, variable, objectId, Constants.TYPE_STRINGLIST);
+        int n = 0;
+        if (o instanceof String[]) {
+            for (String s : (String[]) o) {
+                sink.add(s);
+                n++;
+            }
+        } else if (o instanceof List<?>) {
+            for (Object s : (List<?>) o) {
+                sink.add(String.valueOf(s));
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public int getDoubles(int domain, int variable, List<String> objectIds, double[] out) throws IOException {
+        TraCIBatch batch = traci.newBatch();
+        for (String id : objectIds) {
+            batch.get(command(domain, variable, id, Constants.TYPE_DOUBLE));
+        }
+        if (!batch.execute()) throw new IOException("TraCI connection lost");
+        int n = 0;
+        for (int i = 0; i < objectIds.size(); i++) {
+            out[i] = batch.getDouble(i, Double.NaN);
+            if (!Double.isNaN(out[i])) n++;
+        }
+        return n;
+    }
+
+    @Override
+    public int getPositions(int domain, int variable, List<String> objectIds, double[] xy) throws IOException {
+        TraCIBatch batch = traci.newBatch();
+        for (String id : objectIds) {
+            batch.get(command(domain, variable, id, Constants.POSITION_2D));
+        }
+        if (!batch.execute()) throw new IOException("TraCI connection lost");
+        int n = 0;
+        for (int i = 0; i < objectIds.size(); i++) {
+            Object o = batch.result(i);
+            if (o instanceof SumoPosition2D) {
+                xy[2 * i] = ((SumoPosition2D) o).x;
+                xy[2 * i + 1] = ((SumoPosition2D) o).y;
+                n++;
+            } else {
+                xy[2 * i] = Double.NaN;
+                xy[2 * i + 1] = Double.NaN;
+            }
+        }
+        return n;
+    }
+
+    // ---------------- internal ----------------
+
+    private static SumoCommand command(int domain, int variable, String objectId, int type) {
+        return new SumoCommand(domain, variable, objectId, domain + RESPONSE_OFFSET, type);
+    }
+
+    private Object get(int domain, int variable, String objectId, int type) throws IOException {
+        SumoTraciConnection conn = traci.getConnection();
+        if (conn == null) throw new IllegalStateException("Not connected");
+        try {
+            return conn.do_job_get(command(domain, variable, objectId, type));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
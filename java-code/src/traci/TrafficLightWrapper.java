@@ -57,6 +57,10 @@ public class TrafficLightWrapper {
         if (this.traci.getConnection() == null || !this.traci.isConnected()) {
             return new ArrayList<>(); // empty list of strings
         }
+        NetworkMetadata metadata = this.traci.getNetworkMetadata();
+        if (metadata != null) {
+            return metadata.getTrafficLightIds();
+        }
         try {
             Object response = this.traci.getConnection().do_job_get(Trafficlight.getIDList());
             if (response instanceof String[]) {
@@ -383,6 +387,10 @@ public class TrafficLightWrapper {
         if (this.traci.getConnection() == null || !this.traci.isConnected()) {
             return Collections.emptyList();
         }
+        NetworkMetadata metadata = this.traci.getNetworkMetadata();
+        if (metadata != null && metadata.hasTrafficLight(tlId)) {
+            return metadata.getControlledLinks(tlId);
+        }
         try {
             Object obj = this.traci.getConnection().do_job_get(Trafficlight.getControlledLinks(tlId));
             List<SumoLink> out = new ArrayList<>();
@@ -431,12 +439,22 @@ public class TrafficLightWrapper {
     public List<String> getTrafficLightData() {
         List<String> exportRows = new ArrayList<>();
         List<String> ids = getTrafficLightIds();
+        if (ids.isEmpty()) return exportRows;
 
+        // Fetch state and phase of every traffic light in one TraCI batch
+        TraCIBatch batch = this.traci.newBatch();
         for (String id : ids) {
+            batch.get(Trafficlight.getRedYellowGreenState(id));
+            batch.get(Trafficlight.getPhase(id));
+        }
+        if (!batch.execute()) return exportRows;
+
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
             try {
                 // Get the Data
-                String phaseState = getTrafficLightState(id);
-                int phaseIndex = getPhaseIndex(id);
+                String phaseState = batch.getString(i * 2, "Error");
+                int phaseIndex = batch.getInt(i * 2 + 1, -1);
 
                 if (phaseState == null || phaseState.isEmpty()) {
                     phaseState = "default";
@@ -0,0 +1,307 @@
+import de.tudresden.sumo.cmd.Vehicle;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoPosition2D;
+import de.tudresden.sumo.objects.SumoPrimitive;
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import de.tudresden.sumo.subscription.VariableSubscription;
+import de.tudresden.sumo.util.Observable;
+import de.tudresden.sumo.util.Observer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * VehicleSubscriptions
+ * --------------------
+ * Keeps per-vehicle position, speed, road/lane ID, heading, class and color up
+ * to date through TraCI variable subscriptions instead of one do_job_get per value.
+ *
+ * SUMO pushes all subscribed values inside the response of each simulation
+ * step, so reading the fleet costs a single round trip regardless of size.
+ * Departed/arrived and teleport start/end lists are subscribed on the
+ * simulation domain; they drive a {@link VehicleRegistry}, so new vehicles are
+ * subscribed as they enter, dropped when they leave, and hidden while teleporting,
+ * without ever fetching the full ID list again.
+ *
+ * Results are delivered on the thread calling {@link TraCIConnector#step()};
+ * like {@link VehicleManager}, this class is meant for a single simulation thread.
+ */
+public final class VehicleSubscriptions implements Observer {
+    private static final Logger LOGGER = Logger.getLogger(VehicleSubscriptions.class.getName());
+
+    // INVALID_DOUBLE_VALUE as begin/end means "for the whole simulation" in TraCI.
+    private static final double BEGIN = Constants.INVALID_DOUBLE_VALUE;
+    private static final double END = Constants.INVALID_DOUBLE_VALUE;
+
+    // Dynamic variables only: class and color practically never change after departure,
+    // so they come from VehicleWrapper's attribute cache instead of every step response.
+    private static final int[] VEHICLE_VARIABLES = {
+            Constants.VAR_POSITION,
+            Constants.VAR_SPEED,
+            Constants.VAR_ROAD_ID,
+            Constants.VAR_LANE_ID,
+            Constants.VAR_ANGLE
+    };
+
+    /** Latest subscribed values of one vehicle; filled field by field by the observer. */
+    private static final class Values {
+        double x;
+        double y;
+        double speed;
+        String edge;
+        String lane;
+        double angle = Double.NaN;
+        boolean received; // true once the first step response carried values
+    }
+
+    private final TraCIConnector traci;
+    private final VehicleWrapper vehicleWrapper;
+
+    // Lifecycle events, in the order they were received
+    private static final byte DEPARTED = 0;
+    private static final byte ARRIVED = 1;
+    private static final byte TELEPORT_STARTED = 2;
+    private static final byte TELEPORT_ENDED = 3;
+
+    // Subscribed vehicles, including those currently teleporting
+    private final Map<String, Values> values = new HashMap<>();
+    // Vehicles currently in the network
+    private final VehicleRegistry registry = new VehicleRegistry();
+
+    // Filled by the observer during step(), consumed by sync().
+    private final List<String> eventIds = new ArrayList<>();
+    private byte[] eventTypes = new byte[64];    // parallel to eventIds
+    private boolean[] arrivesLater = new boolean[64];
+    private final Set<String> arrivedScratch = new HashSet<>();
+
+    // A failed subscribe is retried after this delay, doubled up to the maximum; polling meanwhile.
+    private static final long RETRY_DELAY_NS = 1_000_000_000L;
+    private static final long MAX_RETRY_DELAY_NS = 30_000_000_000L;
+
+    private boolean started;
+    private boolean observing;   // observer registered with the connection (once)
+    private long retryDelayNs = RETRY_DELAY_NS;
+    private long nextAttemptNs;  // System.nanoTime() before which start() does not try again
+    private boolean retryPending;
+
+    public VehicleSubscriptions(VehicleWrapper vehicleWrapper) {
+        this.vehicleWrapper = Objects.requireNonNull(vehicleWrapper, "vehicleWrapper");
+        this.traci = vehicleWrapper.getTraCI();
+    }
+
+    /**
+     * Subscribes to the lifecycle lists and to all vehicles that are already in the
+     * network, and registers the observer once that succeeded. Does nothing if already
+     * started. After a failure, callers poll and the next attempt waits for a backoff.
+     * @return true if subscriptions are active
+     */
+    public boolean start() {
+        if (started) return true;
+        if (traci.getConnection() == null || !traci.isConnected()) return false;
+        long now = System.nanoTime();
+        if (retryPending && now - nextAttemptNs < 0) return false;
+
+        VariableSubscription sim = new VariableSubscription(SubscribtionVariable.simulation, BEGIN, END, "");
+        sim.addCommand(Constants.VAR_DEPARTED_VEHICLES_IDS);
+        sim.addCommand(Constants.VAR_TELEPORT_STARTING_VEHICLES_IDS);
+        sim.addCommand(Constants.VAR_TELEPORT_ENDING_VEHICLES_IDS);
+        sim.addCommand(Constants.VAR_ARRIVED_VEHICLES_IDS);
+
+        if (!traci.subscribe(sim)) {
+            retryPending = true;
+            nextAttemptNs = now + retryDelayNs;
+            LOGGER.log(Level.FINE, "Vehicle subscriptions unavailable; polling, retry in {0} ms",
+                    retryDelayNs / 1_000_000L);
+            retryDelayNs = Math.min(MAX_RETRY_DELAY_NS, retryDelayNs * 2);
+            return false;
+        }
+        if (!observing) {
+            traci.addSubscriptionObserver(this);
+            observing = true;
+        }
+        started = true;
+        retryPending = false;
+        retryDelayNs = RETRY_DELAY_NS;
+
+        // Vehicles inserted before we subscribed never show up in a departed list.
+        try {
+            Object response = traci.getConnection().do_job_get(Vehicle.getIDList());
+            List<?> ids = response instanceof String[] ? Arrays.asList((String[]) response)
+                    : response instanceof List<?> ? (List<?>) response : List.of();
+            for (Object id : ids) {
+                subscribeVehicle(String.valueOf(id));
+            }
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return false;
+            }
+            LOGGER.log(Level.FINE, "Failed to fetch initial vehicle IDs", e);
+        }
+        return true;
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Applies the lifecycle events received since the last call, in order:
+     * - departed: subscribe and add to the registry
+     * - teleport start/end: remove from / add back to the registry; the subscription stays
+     * - arrived: remove and forget (SUMO drops the subscription on its own)
+     * Call after {@link TraCIConnector#step()}; events of skipped steps accumulate.
+     */
+    public void sync() {
+        int n = eventIds.size();
+        if (n == 0) return;
+        // A vehicle may depart and arrive between two syncs; never subscribe it then.
+        // Only an arrival after the event counts, so an ID that arrives and departs again stays.
+        if (arrivesLater.length < n) arrivesLater = new boolean[Math.max(n, arrivesLater.length * 2)];
+        arrivedScratch.clear();
+        for (int i = n - 1; i >= 0; i--) {
+            String id = eventIds.get(i);
+            arrivesLater[i] = arrivedScratch.contains(id);
+            if (eventTypes[i] == ARRIVED) arrivedScratch.add(id);
+        }
+        arrivedScratch.clear();
+
+        for (int i = 0; i < n; i++) {
+            String id = eventIds.get(i);
+            switch (eventTypes[i]) {
+                case DEPARTED:
+                    if (!arrivesLater[i]) subscribeVehicle(id);
+                    break;
+                case TELEPORT_STARTED:
+                    registry.remove(id);
+                    break;
+                case TELEPORT_ENDED:
+                    if (arrivesLater[i]) break;
+                    if (values.containsKey(id)) {
+                        registry.add(id);
+                    } else {
+                        subscribeVehicle(id); // was teleporting when we started
+                    }
+                    break;
+                case ARRIVED:
+                    registry.remove(id);
+                    values.remove(id);
+                    break;
+                default:
+                    break;
+            }
+        }
+        eventIds.clear();
+    }
+
+    /**
+     * Live vehicles with their dense indices and add/remove deltas.
+     * The deltas are consumed (cleared) by {@link VehicleManager#refreshVehicles()}.
+     * @return registry of vehicles currently in the network
+     */
+    public VehicleRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Writes the subscription results of the last step into a table row.
+     * @return false if no step response has carried values for this vehicle yet
+     */
+    public boolean writeRow(String vehId, int handle, VehicleStateTable table) {
+        Values v = values.get(vehId);
+        if (v == null || !v.received) return false;
+        table.set(handle, vehId, v.x, v.y, v.speed, v.edge, v.lane, v.angle,
+                vehicleWrapper.getVehicleClass(vehId), vehicleWrapper.getVehicleRgba(vehId));
+        return true;
+    }
+
+    @Override
+    public void update(Observable o, SubscriptionObject so) {
+        if (so == null) return;
+        if (so.response == ResponseType.SIM_VARIABLE) {
+            if (so.variable == Constants.VAR_DEPARTED_VEHICLES_IDS) {
+                addEvents(DEPARTED, so.object);
+            } else if (so.variable == Constants.VAR_TELEPORT_STARTING_VEHICLES_IDS) {
+                addEvents(TELEPORT_STARTED, so.object);
+            } else if (so.variable == Constants.VAR_TELEPORT_ENDING_VEHICLES_IDS) {
+                addEvents(TELEPORT_ENDED, so.object);
+            } else if (so.variable == Constants.VAR_ARRIVED_VEHICLES_IDS) {
+                addEvents(ARRIVED, so.object);
+            }
+            return;
+        }
+        if (so.response != ResponseType.VEHICLE_VARIABLE || so.id == null) return;
+
+        Values v = values.get(so.id);
+        if (v == null) return; // stale result for a vehicle we already dropped
+
+        switch (so.variable) {
+            case Constants.VAR_POSITION:
+                if (so.object instanceof SumoPosition2D) {
+                    SumoPosition2D p = (SumoPosition2D) so.object;
+                    v.x = p.x;
+                    v.y = p.y;
+                }
+                break;
+            case Constants.VAR_SPEED:
+                if (so.object instanceof SumoPrimitive && ((SumoPrimitive) so.object).val instanceof Number) {
+                    v.speed = ((Number) ((SumoPrimitive) so.object).val).doubleValue();
+                }
+                break;
+            case Constants.VAR_ROAD_ID:
+                v.edge = primitiveString(so.object);
+                break;
+            case Constants.VAR_LANE_ID:
+                v.lane = primitiveString(so.object);
+                break;
+            case Constants.VAR_ANGLE:
+                if (so.object instanceof SumoPrimitive && ((SumoPrimitive) so.object).val instanceof Number) {
+                    v.angle = ((Number) ((SumoPrimitive) so.object).val).doubleValue();
+                }
+                break;
+            default:
+                return;
+        }
+        v.received = true;
+    }
+
+    private void subscribeVehicle(String vehId) {
+        if (vehId == null || vehId.isEmpty() || values.containsKey(vehId)) return;
+        VariableSubscription vs = new VariableSubscription(SubscribtionVariable.vehicle, BEGIN, END, vehId);
+        for (int var : VEHICLE_VARIABLES) {
+            vs.addCommand(var);
+        }
+        if (traci.subscribe(vs)) {
+            values.put(vehId, new Values());
+            registry.add(vehId);
+        }
+    }
+
+    private static String primitiveString(Object obj) {
+        if (!(obj instanceof SumoPrimitive)) return null;
+        Object val = ((SumoPrimitive) obj).val;
+        return (val != null) ? val.toString() : null;
+    }
+
+    private void addEvents(byte type, Object listObj) {
+        if (listObj instanceof List<?>) {
+            for (Object o : (List<?>) listObj) {
+                if (o == null) continue;
+                int i = eventIds.size();
+                if (i == eventTypes.length) eventTypes = Arrays.copyOf(eventTypes, i * 2);
+                eventTypes[i] = type;
+                eventIds.add(o.toString());
+            }
+        }
+    }
+}
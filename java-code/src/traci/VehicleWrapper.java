@@ -2,6 +2,7 @@ import de.tudresden.sumo.cmd.Edge;
 import de.tudresden.sumo.cmd.Route;
 import de.tudresden.sumo.cmd.Simulation;
 import de.tudresden.sumo.cmd.Vehicle;
+import de.tudresden.sumo.config.Constants;
 import de.tudresden.sumo.objects.SumoColor;
 import de.tudresden.sumo.util.SumoCommand;
 import de.tudresden.sumo.objects.SumoStage;
@@ -9,11 +10,11 @@ import de.tudresden.sumo.objects.SumoStringList;
 import it.polito.appeal.traci.SumoTraciConnection;
 import de.tudresden.sumo.objects.SumoPosition2D;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +53,18 @@ public class VehicleWrapper {
     private Map<String, Color> preferredVehicleColors = new HashMap<>();
     private Map<String, VehicleRow> vehRows = new HashMap<>();
 
+    // Attributes that do not change after departure unless we change them ourselves:
+    // read once per vehicle (batched on departure, or on first use), updated by our own
+    // setters (write-through) and evicted on arrival.
+    private final Map<String, VehicleAttributes> attributes = new HashMap<>();
+
+    private static final class VehicleAttributes {
+        String typeId;        // null until read
+        String vehicleClass;  // lower case; null until read
+        Color color;          // null until read
+        List<String> route;   // edge IDs; null until read
+    }
+
     private static final int RANDOM_ROUTE_TRIES = 10;
     private static final int ROUTING_MODE_DEFAULT = 0;
 
@@ -87,18 +100,15 @@ public class VehicleWrapper {
      * Returns a list of ids of all vehicles currently running within the scenario
      * @return
      */
-    @SuppressWarnings("unchecked")
     public List<String> getVehicleIds() {
-        if (traci.getConnection() == null || !traci.isConnected()) {
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null) {
             return new ArrayList<String>();
         }
         try {
-            Object response = traci.getConnection().do_job_get(Vehicle.getIDList());
-            if (response instanceof String[]) {
-                return Arrays.asList((String[]) response);
-            } else if (response instanceof List) {
-                return (List<String>) response;
-            }
+            List<String> ids = new ArrayList<>();
+            backend.getStringList(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.TRACI_ID_LIST, "", ids);
+            return ids;
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                 traci.handleConnectionError(e);
@@ -132,24 +142,13 @@ public class VehicleWrapper {
 
             for (String id : ids) {
                 try {
-                    Color color = preferredVehicleColors.getOrDefault(id, Color.RED);
-
                     Object speedObj = traci.getConnection().do_job_get(Vehicle.getSpeed(id));
                     double speed = (speedObj instanceof Number) ? ((Number)speedObj).doubleValue() : 0.0;
 
                     Object edgeObj = traci.getConnection().do_job_get(Vehicle.getRoadID(id));
                     String edge = (edgeObj != null) ? edgeObj.toString() : "";
 
-                    Object cl = traci.getConnection().do_job_get(Vehicle.getColor(id));
-                    int[] rgba = extractRgba(cl);
-                    if (rgba != null) {
-                        int r = clampInt(rgba[0], 0, 255);
-                        int g = clampInt(rgba[1], 0, 255);
-                        int b = clampInt(rgba[2], 0, 255);
-                        double opacity = clamp(rgba[3] / 255.0, 0.0, 1.0);
-                        // Only override the preferred injected color if SUMO returns a valid color.
-                        color = Color.rgb(r, g, b, opacity);
-                    }
+                    Color color = getVehicleColor(id); // cached after the first read
 
                     rows.add(new VehicleRow(id, speed, edge, color));
                 } catch (Exception perVehicle) {
@@ -157,6 +156,7 @@ public class VehicleWrapper {
                     LOGGER.log(Level.FINE, "Failed to fetch row for vehicle " + id, perVehicle);
                 }
             }
+            retainAttributes(ids);
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                 traci.handleConnectionError(e);
@@ -221,6 +221,26 @@ public class VehicleWrapper {
 //        return new ArrayList<>();
     }
 
+    /**
+     * Converts a TraCI color value to a JavaFX color for rendering.
+     * Falls back to the color requested at injection (or red) if SUMO returns no valid color.
+     * @param vehId vehicle ID
+     * @param colorObj value returned by TraCI for Vehicle.getColor
+     * @return color, never null
+     */
+    public Color toVehicleColor(String vehId, Object colorObj) {
+        int[] rgba = (colorObj != null) ? extractRgba(colorObj) : null;
+        if (rgba == null) {
+            return preferredVehicleColors.getOrDefault(vehId, Color.RED);
+        }
+        int r = clampInt(rgba[0], 0, 255);
+        int g = clampInt(rgba[1], 0, 255);
+        int b = clampInt(rgba[2], 0, 255);
+        double opacity = clamp(rgba[3] / 255.0, 0.0, 1.0);
+        // Only override the preferred injected color if SUMO returns a valid color.
+        return Color.rgb(r, g, b, opacity);
+    }
+
     private int clampInt(int v, int min, int max) {
         return Math.max(min, Math.min(v, max));
     }
@@ -279,29 +299,17 @@ public class VehicleWrapper {
             return out;
         }
 
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null) {
+            return out;
+        }
         try {
-            Object idsObj = conn.do_job_get(Vehicle.getIDList());
-            List<String> ids = new ArrayList<>();
-            if (idsObj instanceof String[]) {
-                for (String s : (String[]) idsObj) ids.add(s);
-            } else if (idsObj instanceof List<?>) {
-                for (Object o : (List<?>) idsObj) {
-                    ids.add(String.valueOf(o));
-                }
-            }
-
-            for (String id : ids) {
-                try {
-                    Object posObj = conn.do_job_get(Vehicle.getPosition(id));
-                    Point2D p = extractPoint(posObj);
-                    if (p != null) out.put(id, p);
-                } catch (Exception perVehicle) {
-                    if (TraCIConnector.isConnectionProblem(perVehicle) || perVehicle instanceof IllegalStateException) {
-                        traci.handleConnectionError(perVehicle);
-                        return out;
-                    }
-                    // ignore per-vehicle failures
-                }
+            List<String> ids = getVehicleIds();
+            double[] xy = new double[ids.size() * 2];
+            backend.getPositions(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.VAR_POSITION, ids, xy);
+            for (int i = 0; i < ids.size(); i++) {
+                // NaN marks vehicles that left between the ID list and the position query
+                if (!Double.isNaN(xy[2 * i])) out.put(ids.get(i), new Point2D(xy[2 * i], xy[2 * i + 1]));
             }
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
@@ -361,115 +369,16 @@ public class VehicleWrapper {
         return out;
     }
 
-    // private helper function
-    private Point2D extractPoint(Object posObj) {
-        if (posObj == null) return null;
-        if (posObj instanceof double[]) {
-            double[] arr = (double[]) posObj;
-            if (arr.length >= 2) return new Point2D(arr[0], arr[1]);
-        }
-        if (posObj instanceof Object[]) {
-            Object[] arr = (Object[]) posObj;
-            if (arr.length >= 2) {
-                Double x = safeParseDouble(arr[0]);
-                Double y = safeParseDouble(arr[1]);
-                if (x != null && y != null) return new Point2D(x, y);
-            }
-        }
-        if (posObj instanceof List<?>) {
-            List<?> list = (List<?>) posObj;
-            if (list.size() >= 2) {
-                Double x = safeParseDouble(list.get(0));
-                Double y = safeParseDouble(list.get(1));
-                if (x != null && y != null) {
-                    return new Point2D(x, y);
-                }
-            }
-        }
-
-        // Common TraaS type is de.tudresden.sumo.objects.SumoPosition2D; handle via reflection
-        // so we work regardless of whether fields are public or accessed via getters.
-        try {
-            Class<?> cls = posObj.getClass();
-            Double x = null;
-            Double y = null;
-
-            // 1) public fields x/y
-            try {
-                Field fx = cls.getField("x");
-                Field fy = cls.getField("y");
-                x = fx.getType() == double.class ? fx.getDouble(posObj) : safeParseDouble(fx.get(posObj));
-                y = fy.getType() == double.class ? fy.getDouble(posObj) : safeParseDouble(fy.get(posObj));
-            } catch (NoSuchFieldException ignored) {
-                // ignore
-            }
-
-            // 2) non-public fields x/y
-            if (x == null || y == null) {
-                try {
-                    Field fx = cls.getDeclaredField("x");
-                    Field fy = cls.getDeclaredField("y");
-                    fx.setAccessible(true);
-                    fy.setAccessible(true);
-                    x = fx.getType() == double.class ? fx.getDouble(posObj) : safeParseDouble(fx.get(posObj));
-                    y = fy.getType() == double.class ? fy.getDouble(posObj) : safeParseDouble(fy.get(posObj));
-                } catch (NoSuchFieldException ignored) {
-                    // ignore
-                }
-            }
-
-            // 3) getters getX/getY
-            if (x == null || y == null) {
-                try {
-                    Method mx = cls.getMethod("getX");
-                    Method my = cls.getMethod("getY");
-                    x = safeParseDouble(mx.invoke(posObj));
-                    y = safeParseDouble(my.invoke(posObj));
-                } catch (NoSuchMethodException ignored) {
-                    // ignore
-                }
-            }
-
-            // 4) methods x()/y()
-            if (x == null || y == null) {
-                try {
-                    Method mx = cls.getMethod("x");
-                    Method my = cls.getMethod("y");
-                    x = safeParseDouble(mx.invoke(posObj));
-                    y = safeParseDouble(my.invoke(posObj));
-                } catch (NoSuchMethodException ignored) {
-                    // ignore
-                }
-            }
-
-            if (x != null && y != null) {
-                return new javafx.geometry.Point2D(x, y);
-            }
-        } catch (Exception ignored) {
-        }
-        return null;
-    }
-
-    private Double safeParseDouble(Object o) {
-        if (o == null) return null;
-        if (o instanceof Number) return ((Number)o).doubleValue();
-        try {
-            return Double.parseDouble(String.valueOf(o));
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
     /**
      * Returns the speed of the named vehicle within the last step [m/s]
      * @param id
      * @return
      */
     public double getSpeed(String vehId) {
-        SumoTraciConnection conn = traci.getConnection();
-        if (conn == null || !traci.isConnected()) return 0;
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null) return 0;
         try {
-            return (double) conn.do_job_get(Vehicle.getSpeed(vehId));
+            return backend.getDouble(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.VAR_SPEED, vehId);
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                 traci.handleConnectionError(e);
@@ -480,6 +389,27 @@ public class VehicleWrapper {
         return 0;
     }
 
+    /**
+     * Reads the speed of many vehicles in one round trip.
+     * @param out receives the speed of vehIds.get(i) at index i; NaN if it could not be read
+     * @return number of speeds read
+     */
+    public int getSpeeds(List<String> vehIds, double[] out) {
+        Arrays.fill(out, 0, vehIds.size(), Double.NaN);
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null || vehIds.isEmpty()) return 0;
+        try {
+            return backend.getDoubles(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.VAR_SPEED, vehIds, out);
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return 0;
+            }
+            LOGGER.log(Level.FINE, "Failed to fetch vehicle speeds", e);
+        }
+        return 0;
+    }
+
     /**
      * Sets the speed in m/s for the named vehicle within the last step. Calling with speed=-1 hands the vehicle control back to SUMO.
      */
@@ -506,19 +436,35 @@ public class VehicleWrapper {
      * @return
      */
     public double[] getPosition(String vehId) {
-        SumoTraciConnection conn = traci.getConnection();
-        if (conn == null || !traci.isConnected()) return new double[] {0, 0};
+        double[] pos = new double[2];
+        getPosition(vehId, pos);
+        return pos;
+    }
+
+    /**
+     * Writes the position of the named vehicle into out[0] (x) and out[1] (y) without allocating;
+     * leaves {0, 0} on error.
+     * @param vehId
+     * @param out array of at least two elements
+     * @return True if the position was read
+     */
+    public boolean getPosition(String vehId, double[] out) {
+        out[0] = 0;
+        out[1] = 0;
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null) return false;
         try {
-            SumoPosition2D pos = (SumoPosition2D)conn.do_job_get(Vehicle.getPosition(vehId));
-            return new double[] {pos.x, pos.y};
+            return backend.getPosition(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.VAR_POSITION, vehId, out);
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                 traci.handleConnectionError(e);
-                return new double[] {0, 0};
+                return false;
             }
             LOGGER.log(Level.FINE, "Failed to fetch position for " + vehId, e);
         }
-        return new double[] {0, 0};
+        out[0] = 0;
+        out[1] = 0;
+        return false;
     }
 
     /**
@@ -527,10 +473,10 @@ public class VehicleWrapper {
      * @return edge ID as String, or null if unavailable
      */
     public String getEdgeId(String vehId) {
-        SumoTraciConnection conn = traci.getConnection();
-        if (conn == null || !traci.isConnected()) return "";
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null) return "";
         try {
-            return (String) conn.do_job_get(Vehicle.getRoadID(vehId));
+            return backend.getString(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.VAR_ROAD_ID, vehId);
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                 traci.handleConnectionError(e);
@@ -547,20 +493,107 @@ public class VehicleWrapper {
      * @return
      */
     public String getLaneId(String vehId) {
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null) return "";
+        try {
+            return backend.getString(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.VAR_LANE_ID, vehId);
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return "";
+            }
+            LOGGER.log(Level.FINE, "Failed to fetch lane for " + vehId, e);
+        }
+        return ""; // error
+    }
+
+    /**
+     * Returns the heading of the named vehicle within the last step [deg]; error value: NaN
+     * @param vehId
+     * @return
+     */
+    public double getAngle(String vehId) {
+        SimulationBackend backend = traci.getBackend();
+        if (backend == null) return Double.NaN;
+        try {
+            return backend.getDouble(Constants.CMD_GET_VEHICLE_VARIABLE, Constants.VAR_ANGLE, vehId);
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return Double.NaN;
+            }
+            LOGGER.log(Level.FINE, "Failed to fetch angle for " + vehId, e);
+        }
+        return Double.NaN; // error
+    }
+
+    /**
+     * Returns the lower-case vehicle class of the named vehicle (e.g. "passenger", "bus");
+     * falls back to the type ID. Error value: ""
+     * @param vehId
+     * @return
+     */
+    public String getVehicleClass(String vehId) {
+        VehicleAttributes cached = attributes.get(vehId);
+        if (cached != null && cached.vehicleClass != null) return cached.vehicleClass;
         SumoTraciConnection conn = traci.getConnection();
         if (conn == null || !traci.isConnected()) return "";
         try {
-            return (String) conn.do_job_get(Vehicle.getLaneID(vehId));
+            Object vClassObj = conn.do_job_get(Vehicle.getVehicleClass(vehId));
+            if (vClassObj != null) return rememberClass(vehId, vClassObj.toString().toLowerCase());
+            Object typeObj = conn.do_job_get(Vehicle.getTypeID(vehId));
+            if (typeObj != null) return rememberClass(vehId, typeObj.toString());
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                 traci.handleConnectionError(e);
                 return "";
             }
-            LOGGER.log(Level.FINE, "Failed to fetch lane for " + vehId, e);
+            LOGGER.log(Level.FINE, "Failed to fetch vehicle class for " + vehId, e);
         }
         return ""; // error
     }
 
+    /**
+     * Returns the color of the named vehicle for rendering, see {@link #toVehicleColor}
+     * @param vehId
+     * @return
+     */
+    public Color getVehicleColor(String vehId) {
+        VehicleAttributes cached = attributes.get(vehId);
+        if (cached != null && cached.color != null) return cached.color;
+        SumoTraciConnection conn = traci.getConnection();
+        if (conn == null || !traci.isConnected()) return toVehicleColor(vehId, null);
+        try {
+            Color color = toVehicleColor(vehId, conn.do_job_get(Vehicle.getColor(vehId)));
+            attributesOf(vehId).color = color;
+            return color;
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+            } else {
+                LOGGER.log(Level.FINE, "Failed to fetch color for " + vehId, e);
+            }
+        }
+        return toVehicleColor(vehId, null);
+    }
+
+    /**
+     * Returns the color of the named vehicle packed for state snapshots, see {@link #getVehicleColor}
+     * @param vehId
+     * @return color as 0xRRGGBBAA (see VehicleState)
+     */
+    public int getVehicleRgba(String vehId) {
+        return toRgba(getVehicleColor(vehId));
+    }
+
+    /**
+     * Packs a JavaFX color as 0xRRGGBBAA (see VehicleState).
+     */
+    public static int toRgba(Color c) {
+        return VehicleState.rgba((int) Math.round(c.getRed() * 255), (int) Math.round(c.getGreen() * 255),
+                (int) Math.round(c.getBlue() * 255), (int) Math.round(c.getOpacity() * 255));
+    }
+
     /**
      * Returns the index of the lane the named vehicle was at within the last step; error value: -2^30
      * @param vehId
@@ -620,6 +653,8 @@ public class VehicleWrapper {
             // when using java to save, the byte is signed, even though SumoColor uses ubyte
             SumoColor color = new SumoColor((byte)newColor[0], (byte)newColor[1], (byte)newColor[2], (byte)newColor[3]);
             traci.getConnection().do_job_set(Vehicle.setColor(typeId, color));
+            VehicleAttributes cached = attributes.get(typeId);
+            if (cached != null) cached.color = toVehicleColor(typeId, color);
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Failed to set color for " + typeId, e);
         }
@@ -757,6 +792,7 @@ public class VehicleWrapper {
                 if (routeEdges != null && routeEdges.size() >= 2) {
                     try {
                         conn.do_job_set(Vehicle.setRoute(vehicleId, routeEdges));
+                        attributesOf(vehicleId).route = List.copyOf(routeEdges);
                     } catch (Exception e) {
                         if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                             traci.handleConnectionError(e);
@@ -780,6 +816,7 @@ public class VehicleWrapper {
             int g = (int) Math.round(color.getGreen() * 255.0);
             int b = (int) Math.round(color.getBlue() * 255.0);
             SumoColor sumoColor = new SumoColor(r, g, b, 255);
+            attributesOf(vehicleId).color = toVehicleColor(vehicleId, sumoColor);
 
             try {
                 conn.do_job_set(Vehicle.setColor(vehicleId, sumoColor));
@@ -812,86 +849,75 @@ public class VehicleWrapper {
         }
     }
 
+    /**
+     * Sends all pending colors, max speeds and routes in one TraCI batch.
+     * Entries that SUMO rejects stay pending (routes up to PENDING_ROUTE_MAX_ATTEMPTS times).
+     */
     public void applyPendingUpdates() {
-        SumoTraciConnection conn = traci.getConnection();
-        if (conn == null || !traci.isConnected()) return;
+        if (traci.getConnection() == null || !traci.isConnected()) return;
+        if (pendingColors.isEmpty() && pendingMaxSpeeds.isEmpty() && pendingRoutes.isEmpty()) return;
+
+        TraCIBatch batch = traci.newBatch();
+        Map<String, Integer> colorSlots = new HashMap<>();
+        Map<String, Integer> maxSpeedSlots = new HashMap<>();
+        Map<String, Integer> routeSlots = new HashMap<>();
+        for (Map.Entry<String, SumoColor> e : pendingColors.entrySet()) {
+            colorSlots.put(e.getKey(), batch.set(Vehicle.setColor(e.getKey(), e.getValue())));
+        }
+        for (Map.Entry<String, Double> e : pendingMaxSpeeds.entrySet()) {
+            maxSpeedSlots.put(e.getKey(), batch.set(Vehicle.setMaxSpeed(e.getKey(), e.getValue())));
+        }
+        for (Map.Entry<String, SumoStringList> e : pendingRoutes.entrySet()) {
+            routeSlots.put(e.getKey(), batch.set(Vehicle.setRoute(e.getKey(), e.getValue())));
+        }
+        if (!batch.execute()) return; // connection lost; everything stays pending
 
-        if (!pendingColors.isEmpty()) {
-            List<String> done = new ArrayList<>();
-            for (Map.Entry<String, SumoColor> e : pendingColors.entrySet()) {
-                try {
-                    conn.do_job_set(Vehicle.setColor(e.getKey(), e.getValue()));
-                    done.add(e.getKey());
-                } catch (Exception ex) {
-                    if (TraCIConnector.isConnectionProblem(ex) || ex instanceof IllegalStateException) {
-                        traci.handleConnectionError(ex);
-                        return;
-                    }
-                }
-            }
-            for (String id : done) pendingColors.remove(id);
+        for (Map.Entry<String, Integer> e : colorSlots.entrySet()) {
+            if (!batch.succeeded(e.getValue())) continue;
+            SumoColor applied = pendingColors.remove(e.getKey());
+            attributesOf(e.getKey()).color = toVehicleColor(e.getKey(), applied);
+        }
+        for (Map.Entry<String, Integer> e : maxSpeedSlots.entrySet()) {
+            if (batch.succeeded(e.getValue())) pendingMaxSpeeds.remove(e.getKey());
         }
 
-        if (!pendingMaxSpeeds.isEmpty()) {
-            List<String> done = new ArrayList<>();
-            for (Map.Entry<String, Double> e : pendingMaxSpeeds.entrySet()) {
-                try {
-                    conn.do_job_set(Vehicle.setMaxSpeed(e.getKey(), e.getValue()));
-                    done.add(e.getKey());
-                } catch (Exception ex) {
-                    if (TraCIConnector.isConnectionProblem(ex) || ex instanceof IllegalStateException) {
-                        traci.handleConnectionError(ex);
-                        return;
-                    }
-                }
+        List<String> done = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : routeSlots.entrySet()) {
+            String vehId = e.getKey();
+            if (batch.succeeded(e.getValue())) {
+                attributesOf(vehId).route = List.copyOf(pendingRoutes.get(vehId));
+                done.add(vehId);
+                continue;
             }
-            for (String id : done) pendingMaxSpeeds.remove(id);
-        }
 
-        if (!pendingRoutes.isEmpty()) {
-            List<String> done = new ArrayList<>();
-            for (Map.Entry<String, SumoStringList> e : pendingRoutes.entrySet()) {
-                try {
-                    conn.do_job_set(Vehicle.setRoute(e.getKey(), e.getValue()));
-                    done.add(e.getKey());
-                } catch (Exception ex) {
-                    if (TraCIConnector.isConnectionProblem(ex) || ex instanceof IllegalStateException) {
-                        traci.handleConnectionError(ex);
-                        return;
-                    }
+            int tries = pendingRouteAttempts.getOrDefault(vehId, 0) + 1;
+            pendingRouteAttempts.put(vehId, tries);
 
-                    int tries = pendingRouteAttempts.getOrDefault(e.getKey(), 0) + 1;
-                    pendingRouteAttempts.put(e.getKey(), tries);
-
-                    // One recovery attempt: recompute from current edge (vehicle may have moved).
-                    if (tries == 1) {
-                        try {
-                            String currentEdge = getEdgeId(e.getKey());
-                            if (currentEdge != null && !currentEdge.isBlank()) {
-                                SumoStringList recovered = pickRandomReachableRoute(currentEdge, "DEFAULT_VEHTYPE");
-                                if (recovered != null && recovered.size() >= 2) {
-                                    pendingRoutes.put(e.getKey(), recovered);
-                                }
-                            }
-                        } catch (Exception ignored) {
-                            // keep original pending route
+            // One recovery attempt: recompute from current edge (vehicle may have moved).
+            if (tries == 1) {
+                try {
+                    String currentEdge = getEdgeId(vehId);
+                    if (currentEdge != null && !currentEdge.isBlank()) {
+                        SumoStringList recovered = pickRandomReachableRoute(currentEdge, "DEFAULT_VEHTYPE");
+                        if (recovered != null && recovered.size() >= 2) {
+                            pendingRoutes.put(vehId, recovered);
                         }
                     }
-
-                    if (tries >= PENDING_ROUTE_MAX_ATTEMPTS) {
-                        LOGGER.log(Level.WARNING,
-                                "Dropping pending route for vehicle '" + e.getKey() + "' after " + tries
-                                        + " failed attempts. Last route=" + e.getValue(),
-                                ex);
-                        done.add(e.getKey());
-                    }
+                } catch (Exception ignored) {
+                    // keep original pending route
                 }
             }
-            for (String id : done) {
-                pendingRoutes.remove(id);
-                pendingRouteAttempts.remove(id);
+
+            if (tries >= PENDING_ROUTE_MAX_ATTEMPTS) {
+                LOGGER.warning("Dropping pending route for vehicle '" + vehId + "' after " + tries
+                        + " failed attempts. Last route=" + pendingRoutes.get(vehId));
+                done.add(vehId);
             }
         }
+        for (String id : done) {
+            pendingRoutes.remove(id);
+            pendingRouteAttempts.remove(id);
+        }
     }
 
     private SumoStringList pickRandomReachableRoute(String startEdgeId, String vehicleTypeId) {
@@ -981,30 +1007,64 @@ public class VehicleWrapper {
     public void configureVehicle(String vehId, double maxSpeed, double speedRatio,
             int r, int g, int b, int a) {
         if (traci.getConnection() == null || !traci.isConnected()) return;
-        if (vehId == null || vehId.isEmpty()) return;   // invalid vehicle ID
-        if (!isValidSpeed(maxSpeed)) return;      // invalid max speed
+        TraCIBatch batch = traci.newBatch();
+        int colorSlot = configureVehicle(batch, vehId, maxSpeed, speedRatio, r, g, b, a);
+        if (!batch.execute()) {
+            LOGGER.fine("configureVehicle not applied: connection unavailable");
+            return;
+        }
+        applyConfiguredColor(batch, colorSlot, vehId, r, g, b, a);
+    }
+
+    /**
+     * Queues the configuration of one vehicle into a batch instead of sending it directly.
+     * Lets callers configure a whole fleet with a single {@link TraCIBatch#execute()}.
+     * The attribute cache is not touched here; pass the returned slot to
+     * {@link #applyConfiguredColor} after the batch was executed.
+     * @param batch batch to append the three setters to
+     * @return slot of the setColor command, or -1 if nothing was queued
+     * @see #configureVehicle(String, double, double, int, int, int, int)
+     */
+    public int configureVehicle(TraCIBatch batch, String vehId, double maxSpeed, double speedRatio,
+            int r, int g, int b, int a) {
+        if (vehId == null || vehId.isEmpty()) return -1;   // invalid vehicle ID
+        if (!isValidSpeed(maxSpeed)) return -1;      // invalid max speed
 
         // Clamp speed ratio to [0.0, 1.0] and compute actual speed
         double clampedRatio = clamp(speedRatio, 0.0, 1.0);
         double actualSpeed = maxSpeed * clampedRatio;
 
-        try {
-            traci.getConnection().do_job_set(Vehicle.setMaxSpeed(vehId, maxSpeed));   // set max speed
-            traci.getConnection().do_job_set(Vehicle.setSpeed(vehId, actualSpeed));   // set current speed
-            setColorRGBA(vehId, new int[] {r, g, b, a});
-        } catch (Exception e) {
-            LOGGER.log(Level.WARNING, "Failed to configure vehicle " + vehId, e);
+        // when using java to save, the byte is signed, even though SumoColor uses ubyte
+        SumoColor color = new SumoColor((byte) r, (byte) g, (byte) b, (byte) a);
+        batch.set(Vehicle.setMaxSpeed(vehId, maxSpeed));   // set max speed
+        batch.set(Vehicle.setSpeed(vehId, actualSpeed));   // set current speed
+        return batch.set(Vehicle.setColor(vehId, color));
+    }
+
+    /**
+     * Writes a color queued by {@link #configureVehicle(TraCIBatch, String, double, double, int, int, int, int)}
+     * through to the attribute cache once the batch has run. Only colors SUMO accepted are
+     * stored, and only for vehicles that already have a cache entry (like {@link #setColorRGBA}).
+     * @param colorSlot slot returned by configureVehicle
+     */
+    public void applyConfiguredColor(TraCIBatch batch, int colorSlot, String vehId, int r, int g, int b, int a) {
+        if (!batch.succeeded(colorSlot)) return;
+        VehicleAttributes cached = attributes.get(vehId);
+        if (cached != null) {
+            cached.color = toVehicleColor(vehId, new SumoColor((byte) r, (byte) g, (byte) b, (byte) a));
         }
     }
 
     // ================= SNAPSHOT =================
     /**
      * Creates an immutable snapshot of the vehicle's current state.
-     * @return VehicleState representing current position, speed, and edge
+     * Queries each attribute separately; prefer subscriptions for whole fleets.
+     * @return VehicleState representing current position, speed, edge, lane, heading, class and color
      */
     public VehicleState updateState(String vehId) {
         double[] pos = this.getPosition(vehId);
-        return new VehicleState(vehId, pos[0], pos[1], this.getSpeed(vehId), this.getEdgeId(vehId));
+        return new VehicleState(vehId, pos[0], pos[1], this.getSpeed(vehId), this.getEdgeId(vehId),
+                this.getLaneId(vehId), this.getAngle(vehId), this.getVehicleClass(vehId), this.getVehicleRgba(vehId));
     }
 
     // ================= HELPERS =================
@@ -1127,28 +1187,13 @@ public class VehicleWrapper {
             }
 
             for (String id : ids) {
-                try {
-                    // First try to get vehicle class (vClass) - more reliable for shape detection
-                    // vClass values: "passenger", "bus", "truck", "motorcycle", "bicycle", etc.
-                    Object vClassObj = conn.do_job_get(Vehicle.getVehicleClass(id));
-                    if (vClassObj != null) {
-                        String vClass = vClassObj.toString().toLowerCase();
-                        out.put(id, vClass);
-                        continue;
-                    }
-
-                    // Fallback: Get vehicle type ID from SUMO
-                    Object typeObj = conn.do_job_get(Vehicle.getTypeID(id));
-                    if (typeObj != null) {
-                        out.put(id, typeObj.toString());
-                    }
-                } catch (Exception perVehicle) {
-                    if (TraCIConnector.isConnectionProblem(perVehicle) || perVehicle instanceof IllegalStateException) {
-                        traci.handleConnectionError(perVehicle);
-                        return out;
-                    }
-                }
+                // vClass values: "passenger", "bus", "truck", "motorcycle", "bicycle", etc.;
+                // cached per vehicle, so only vehicles seen for the first time cost a query.
+                String vClass = getVehicleClass(id);
+                if (!vClass.isEmpty()) out.put(id, vClass);
+                if (!traci.isConnected()) return out;
             }
+            retainAttributes(ids);
         } catch (Exception e) {
             if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
                 traci.handleConnectionError(e);
@@ -1159,20 +1204,151 @@ public class VehicleWrapper {
         return out;
     }
 
+    // ================= ATTRIBUTE CACHE =================
+    /**
+     * Returns the type ID of the named vehicle; read once per vehicle. Error value: ""
+     * @param vehId
+     * @return
+     */
+    public String getTypeId(String vehId) {
+        VehicleAttributes cached = attributes.get(vehId);
+        if (cached != null && cached.typeId != null) return cached.typeId;
+        SumoTraciConnection conn = traci.getConnection();
+        if (conn == null || !traci.isConnected()) return "";
+        try {
+            Object typeObj = conn.do_job_get(Vehicle.getTypeID(vehId));
+            if (typeObj != null) {
+                attributesOf(vehId).typeId = typeObj.toString();
+                return typeObj.toString();
+            }
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return "";
+            }
+            LOGGER.log(Level.FINE, "Failed to fetch type for " + vehId, e);
+        }
+        return ""; // error
+    }
+
+    /**
+     * Returns the edges of the named vehicle's route; read once per vehicle and
+     * updated when routes are set through this wrapper. Error value: empty list
+     * @param vehId
+     * @return read-only list of edge IDs
+     */
+    public List<String> getRoute(String vehId) {
+        VehicleAttributes cached = attributes.get(vehId);
+        if (cached != null && cached.route != null) return cached.route;
+        SumoTraciConnection conn = traci.getConnection();
+        if (conn == null || !traci.isConnected()) return List.of();
+        try {
+            Object routeObj = conn.do_job_get(Vehicle.getRoute(vehId));
+            if (routeObj instanceof List<?>) {
+                List<String> route = new ArrayList<>();
+                for (Object o : (List<?>) routeObj) route.add(String.valueOf(o));
+                attributesOf(vehId).route = List.copyOf(route);
+                return attributesOf(vehId).route;
+            }
+        } catch (Exception e) {
+            if (TraCIConnector.isConnectionProblem(e) || e instanceof IllegalStateException) {
+                traci.handleConnectionError(e);
+                return List.of();
+            }
+            LOGGER.log(Level.FINE, "Failed to fetch route for " + vehId, e);
+        }
+        return List.of(); // error
+    }
+
+    /**
+     * Reads type, class and color of newly departed vehicles in one TraCI batch,
+     * so later per-frame reads are answered from the attribute cache.
+     * @param vehIds vehicles that just entered the network
+     */
+    public void prefetchAttributes(Collection<String> vehIds) {
+        if (vehIds.isEmpty() || traci.getConnection() == null || !traci.isConnected()) return;
+        List<String> ids = new ArrayList<>(vehIds.size());
+        TraCIBatch batch = traci.newBatch();
+        for (String id : vehIds) {
+            VehicleAttributes cached = attributes.get(id);
+            if (cached != null && cached.typeId != null && cached.vehicleClass != null && cached.color != null) continue;
+            ids.add(id);
+            batch.get(Vehicle.getTypeID(id));
+            batch.get(Vehicle.getVehicleClass(id));
+            batch.get(Vehicle.getColor(id));
+        }
+        if (ids.isEmpty() || !batch.execute()) return;
+
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            int slot = i * 3;
+            if (!batch.succeeded(slot)) continue; // already gone again; read on demand
+            VehicleAttributes a = attributesOf(id);
+            if (a.typeId == null) a.typeId = batch.getString(slot, null);
+            if (a.vehicleClass == null) {
+                String vClass = batch.getString(slot + 1, null);
+                a.vehicleClass = (vClass != null) ? vClass.toLowerCase() : a.typeId;
+            }
+            if (a.color == null && batch.succeeded(slot + 2)) {
+                a.color = toVehicleColor(id, batch.result(slot + 2));
+            }
+        }
+    }
+
+    /**
+     * Drops the cached attributes of a vehicle that left the network.
+     * @param vehId
+     */
+    public void forgetAttributes(String vehId) {
+        attributes.remove(vehId);
+    }
+
+    // Evicts vehicles that are no longer in the network when the full ID list is at hand anyway.
+    private void retainAttributes(Collection<String> liveIds) {
+        if (attributes.size() > liveIds.size()) {
+            attributes.keySet().retainAll(new HashSet<>(liveIds));
+        }
+    }
+
+    private VehicleAttributes attributesOf(String vehId) {
+        return attributes.computeIfAbsent(vehId, k -> new VehicleAttributes());
+    }
+
+    private String rememberClass(String vehId, String vehicleClass) {
+        attributesOf(vehId).vehicleClass = vehicleClass;
+        return vehicleClass;
+    }
+
     // Method to Convert Data into PDF, CSV
+    // All four values of every vehicle are fetched in one TraCI batch.
     public List<String> getVehicleData(){
         List<String> exportRows = new ArrayList<>();
         List<String> ids = getVehicleIds();
+        if (ids.isEmpty()) return exportRows;
 
+        TraCIBatch batch = traci.newBatch();
         for (String id : ids) {
+            batch.get(Vehicle.getColor(id));
+            batch.get(Vehicle.getSpeed(id));
+            batch.get(Vehicle.getPosition(id));
+            batch.get(Vehicle.getRoadID(id));
+        }
+        if (!batch.execute()) return exportRows;
+
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            int slot = i * 4;
             try {
                 // DONE: fixed color bug
-                int[] color = getColorRGBA(id);
+                int[] color = extractRgba(batch.result(slot));
+                if (color == null) color = new int[] {0, 0, 0, 0};
                 String colorStr = color[0] + "-" + color[1] + "-" + color[2] + "-" + color[3]; // R-G-B-A ID     0 0 0 0 For Black
-                double speed = this.getSpeed(id);
-                double[] pos = this.getPosition(id); // returns [x, y]
-//                System.out.println(pos[0] + " " + pos[1]);
-                String edge = this.getEdgeId(id);
+                double speed = batch.getDouble(slot + 1, -1);
+                Object posObj = batch.result(slot + 2);
+                double[] pos = (posObj instanceof SumoPosition2D)
+                        ? new double[] {((SumoPosition2D) posObj).x, ((SumoPosition2D) posObj).y}
+                        : new double[] {0, 0};
+                String edge = batch.getString(slot + 3, "");
 
                 // Format: Vehicle-ID, Color, Speed, PosX, PosY, Egde-ID, Empty, Empty, Empty [no Vehicle Data]
                 String row = String.format("%s,%s,%.2f,%.2f,%.2f,%s,",
@@ -1190,7 +1366,6 @@ public class VehicleWrapper {
     // not yet implemented
 //    getRouteID()
 //    getRouteIndex()
-//    getRoute()
 //    getDistance()
 //    getSignals()
 //    getAcceleration()
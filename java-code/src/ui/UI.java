@@ -78,6 +78,7 @@ public class UI {
     @FXML Button btnStart;
     @FXML Button btnStep;
     @FXML Slider sliderSpeed;
+    @FXML javafx.scene.control.CheckBox chkTurbo;
 
     // Top-right export menu
     @FXML MenuButton btnExport;
@@ -158,6 +159,9 @@ public class UI {
     // "Children: duplicate children added".
     final PieChart.Data[] vehicleColorPieSlots = new PieChart.Data[MAX_COLOR_SLICES + 1];
     boolean vehicleColorPieSlotsInitialized = false;
+
+    // Set while the table selection follows the map, so the table listener does not echo it back.
+    boolean syncingVehicleSelection = false;
     final String[] vehicleColorPieSlotCss = new String[MAX_COLOR_SLICES + 1];
 
     public static final class PieSliceExport {
@@ -207,6 +211,11 @@ public class UI {
     // SUMO / TraCI
     TraCIConnector connector;
     VehicleWrapper vehicleWrapper;
+    VehicleManager vehicleManager;
+    // Steps SUMO and builds snapshots on its own thread
+    SimulationLoop simLoop;
+    // Vehicles of the last step; map, table and charts all read from this.
+    StepSnapshot lastSnapshot = StepSnapshot.EMPTY;
     TrafficLightWrapper trafWrapper;
     EdgeWrapper edgeWrapper;
     InfrastructureWrapper infWrapper;
@@ -215,7 +224,6 @@ public class UI {
     double stepLengthSeconds = 0.05; // default 0.05
     AnimationTimer loopTimer;
     boolean running = false; // default false
-    long lastStepNs = 0; // default 0
 
     // Chart throttling: reduce point spam by adding a data point at most every 5 seconds while running.
     static final long VEHICLE_CHART_UPDATE_INTERVAL_NS = 5_000_000_000L;
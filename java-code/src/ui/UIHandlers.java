@@ -106,14 +106,17 @@ final class UIHandlers {
             return;
         }
 
-        // If paused, keep legacy behavior: inject immediately.
+        // If paused, keep legacy behavior: inject immediately (on the simulation thread).
+        VehicleWrapper vehicleWrapper = ui.vehicleWrapper;
+        javafx.scene.paint.Color injectColor = color;
         for (int i = 0; i < count; i++) {
             String vehId = "inj_" + (++ui.injectSeq);
-            if (ui.vehicleWrapper != null) {
-                ui.vehicleWrapper.addVehicle(vehId, routeId, UI.DEFAULT_INJECT_SPEED_MS, color);
+            if (vehicleWrapper != null && ui.simLoop != null) {
+                ui.simLoop.submit(() -> vehicleWrapper.addVehicle(vehId, routeId, UI.DEFAULT_INJECT_SPEED_MS, injectColor));
             }
         }
         ui.setStatusText("Status: Injected " + count + " vehicles");
-        ui.updateMapView();
+        // The render timer updates the map once the new snapshot is published.
+        if (ui.simLoop != null) ui.simLoop.refresh();
     }
 }
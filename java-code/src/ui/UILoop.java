@@ -1,68 +1,116 @@
 import javafx.animation.AnimationTimer;
 
+/**
+ * Render loop on the JavaFX thread.
+ * SUMO is stepped by {@link SimulationLoop} on its own thread; this timer only picks up
+ * the newest finished {@link StepSnapshot} each pulse and renders it, so frame rate does
+ * not depend on TraCI latency.
+ */
 final class UILoop {
+    private static final double MIN_REPORTED_LAG_SECONDS = 0.5;
+
     private UILoop() {
     }
 
+    /**
+     * Starts the render timer (if needed) and lets the simulation thread step continuously.
+     */
     static void startLoop(UI ui) {
+        startRenderTimer(ui);
+        ui.running = true;
+        if (ui.simLoop != null) {
+            ui.simLoop.setStepIntervalNanos(stepIntervalNs(ui));
+            ui.simLoop.start();
+        }
+    }
+
+    /**
+     * Pauses stepping. The render timer keeps running while connected so single
+     * steps and paused injections still show up.
+     */
+    static void stopLoop(UI ui) {
+        ui.running = false;
+        if (ui.simLoop != null) {
+            ui.simLoop.pause();
+        }
+    }
+
+    /**
+     * Starts the AnimationTimer that renders published snapshots; stops itself on disconnect.
+     */
+    static void startRenderTimer(UI ui) {
         if (ui.loopTimer == null) {
             ui.loopTimer = new AnimationTimer() {
                 @Override
                 public void handle(long now) {
-                    if (!ui.running) return;
-
                     // Redraw the map overlay every JavaFX pulse.
                     // TraCI updates are discrete; this enables render-side interpolation/smoothing.
                     if (ui.mapView != null) {
                         ui.mapView.tickOverlay();
                     }
 
-                    if (ui.lastStepNs == 0) {
-                        ui.lastStepNs = now;
+                    if (ui.connector == null || !ui.connector.isConnected() || ui.simLoop == null) {
+                        stop();
+                        if (ui.running) {
+                            ui.running = false;
+                            ui.setStatusText("Status: Disconnected");
+                            ui.setDisconnectedUI();
+                        }
                         return;
                     }
-                    double speedFactor = (ui.sliderSpeed != null) ? ui.sliderSpeed.getValue() : 1.0;
-                    double minSpeedFactor = (ui.sliderSpeed != null) ? ui.sliderSpeed.getMin() : 0.25;
 
-                    // Pace simulation steps to real time based on step length and speed slider.
-                    double stepIntervalNs = (ui.stepLengthSeconds / Math.max(minSpeedFactor, speedFactor)) * 1_000_000_000.0;
-                    if ((now - ui.lastStepNs) >= stepIntervalNs) {
-                        doStep(ui);
-                        ui.lastStepNs = now;
+                    // Speed slider may move at any time; the simulation thread reads this before each step.
+                    if (ui.running) {
+                        ui.simLoop.setStepIntervalNanos(stepIntervalNs(ui));
+                    }
+
+                    StepSnapshot snapshot = ui.simLoop.getLatestSnapshot();
+                    if (snapshot != ui.lastSnapshot) {
+                        ui.lastSnapshot = snapshot;
+                        if (ui.running) ui.setStatusText(runningStatus(ui));
+                        ui.updateAfterStep();
+
+                        // Also keep traffic light info in sync
+                        UITrafficLights.updateTrafficLightUIFromSnapshot(ui);
                     }
                 }
             };
         }
-        ui.running = true;
-        ui.lastStepNs = 0;
         ui.loopTimer.start();
     }
 
-    static void stopLoop(UI ui) {
-        ui.running = false;
+    static void stopRenderTimer(UI ui) {
         if (ui.loopTimer != null) {
             ui.loopTimer.stop();
         }
     }
 
+    /**
+     * Performs a single step on the simulation thread; the render timer shows the result.
+     */
     static void doStep(UI ui) {
-        if (ui.connector == null || !ui.connector.isConnected()) {
+        if (ui.connector == null || !ui.connector.isConnected() || ui.simLoop == null) {
             stopLoop(ui);
             ui.setStatusText("Status: Not connected");
             ui.setDisconnectedUI();
             return;
         }
-        boolean ok = ui.connector.step();
-        if (!ok) {
-            stopLoop(ui);
-            ui.setStatusText("Status: Disconnected");
-            ui.setDisconnectedUI();
-            return;
-        }
-        ui.setStatusText("Status: Running");
-        ui.updateAfterStep();
+        startRenderTimer(ui);
+        ui.simLoop.stepOnce();
+    }
+
+    // Reports when the simulation cannot keep up with real time even with catch-up steps.
+    private static String runningStatus(UI ui) {
+        if (ui.simLoop.isTurbo()) return "Status: Running (turbo)";
+        double lag = ui.simLoop.getRealTimeLagSeconds();
+        if (lag < MIN_REPORTED_LAG_SECONDS) return "Status: Running";
+        return String.format("Status: Running (%.1f s behind real time)", lag);
+    }
 
-        // Also keep traffic light info in sync
-        ui.updateTrafficLightUI();
+    // Pace simulation steps to real time based on step length and speed slider.
+    private static long stepIntervalNs(UI ui) {
+        double speedFactor = (ui.sliderSpeed != null) ? ui.sliderSpeed.getValue() : 1.0;
+        double minSpeedFactor = (ui.sliderSpeed != null) ? ui.sliderSpeed.getMin() : 0.25;
+        return (long) ((ui.stepLengthSeconds / Math.max(minSpeedFactor, speedFactor)) * 1_000_000_000.0);
     }
 }
@@ -1,10 +1,8 @@
-import javafx.geometry.Point2D;
 import javafx.scene.paint.Color;
 import javafx.application.Platform;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
@@ -15,6 +13,52 @@ final class UIMap {
     private UIMap() {
     }
 
+    // Snapshot colors (0xRRGGBBAA) -> JavaFX colors; vehicles share a handful of colors. FX thread only.
+    private static final Map<Integer, Color> SNAPSHOT_COLORS = new HashMap<>();
+    private static final int MAX_SNAPSHOT_COLORS = 4096;
+
+    /**
+     * @return JavaFX color for a packed snapshot color; red if unknown
+     */
+    static Color snapshotColor(int rgba) {
+        if (rgba == VehicleState.NO_COLOR) return Color.RED;
+        Color c = SNAPSHOT_COLORS.get(rgba);
+        if (c == null) {
+            if (SNAPSHOT_COLORS.size() >= MAX_SNAPSHOT_COLORS) SNAPSHOT_COLORS.clear();
+            c = Color.rgb(rgba >>> 24, (rgba >> 16) & 0xFF, (rgba >> 8) & 0xFF, (rgba & 0xFF) / 255.0);
+            SNAPSHOT_COLORS.put(rgba, c);
+        }
+        return c;
+    }
+
+    /**
+     * Selects the table row of a vehicle (e.g. after it was clicked on the map); null clears it.
+     */
+    static void selectVehicleRow(UI ui, String vehicleId) {
+        if (ui.vehicleTable == null) return;
+        VehicleRow row = null;
+        if (vehicleId != null) {
+            for (VehicleRow r : ui.vehicleData) {
+                if (vehicleId.equals(r.getId())) {
+                    row = r;
+                    break;
+                }
+            }
+        }
+        if (row == ui.vehicleTable.getSelectionModel().getSelectedItem()) return;
+        ui.syncingVehicleSelection = true;
+        try {
+            if (row == null) {
+                ui.vehicleTable.getSelectionModel().clearSelection();
+            } else {
+                ui.vehicleTable.getSelectionModel().select(row);
+                ui.vehicleTable.scrollTo(row);
+            }
+        } finally {
+            ui.syncingVehicleSelection = false;
+        }
+    }
+
     static boolean isSimilarColor(Color actual, Color target, double tol) {
         if (actual == null || target == null) return false;
         return Math.abs(actual.getRed() - target.getRed()) <= tol
@@ -35,7 +79,13 @@ final class UIMap {
         if (req == null) return;
 
         String vehId = "inj_" + (++ui.injectSeq);
-        ui.vehicleWrapper.addVehicle(vehId, req.routeId, UI.DEFAULT_INJECT_SPEED_MS, req.color);
+        VehicleWrapper vehicleWrapper = ui.vehicleWrapper;
+        if (ui.simLoop != null) {
+            // TraCI calls belong on the simulation thread; run between two steps.
+            ui.simLoop.submit(() -> vehicleWrapper.addVehicle(vehId, req.routeId, UI.DEFAULT_INJECT_SPEED_MS, req.color));
+        } else {
+            vehicleWrapper.addVehicle(vehId, req.routeId, UI.DEFAULT_INJECT_SPEED_MS, req.color);
+        }
         ui.nextInjectionNs = nowNs + UI.INJECT_MIN_INTERVAL_NS;
         ui.pendingMapRefresh = true;
     }
@@ -82,24 +132,11 @@ final class UIMap {
             ui.setDisconnectedUI();
             return;
         }
-        // Fetch latest positions and data
-        Map<String, Point2D> allPositions = ui.vehicleWrapper.getVehiclePositions(); // gets a new list every time
-        Map<String, String> allLaneIds = ui.vehicleWrapper.getVehicleLaneIds(); // gets a new list every time
-        // Fetch vehicle angles for realistic orientation rendering
-        Map<String, Double> allAngles = ui.vehicleWrapper.getVehicleAngles(); // gets a new list every time
-        // Fetch vehicle types for rendering appropriate vehicle shapes (car, bus, motorbike, etc.)
-        Map<String, String> allTypes = ui.vehicleWrapper.getVehicleTypes(); // gets a new list every time, not efficient
-        List<VehicleRow> allRows = ui.vehicleWrapper.getVehicleRows(); // also update vehicleRows every time, not efficient
-
-        Map<String, Color> colorMap = new HashMap<>();
-        Map<String, Point2D> filteredPositions = new HashMap<>();
-        Map<String, String> filteredLaneIds = new HashMap<>();
-        Map<String, Double> filteredAngles = new HashMap<>();
-        Map<String, String> filteredTypes = new HashMap<>();
-        List<VehicleRow> filteredRows = new ArrayList<>();
+        // All views read the snapshot of the last step; no per-vehicle TraCI queries here.
+        StepSnapshot snapshot = (ui.lastSnapshot != null) ? ui.lastSnapshot : StepSnapshot.EMPTY;
 
-        // Cache for edge mean speeds (only used when congestion filter enabled)
-        Map<String, Double> edgeMeanSpeedCache = new HashMap<>();
+        List<VehicleState> filteredStates = new ArrayList<>();
+        List<VehicleRow> filteredRows = new ArrayList<>();
 
         boolean filterColor = (ui.chkFilterRed != null) && ui.chkFilterRed.isSelected();
         boolean filterSpeed = (ui.chkFilterSpeed != null) && ui.chkFilterSpeed.isSelected();
@@ -115,93 +152,64 @@ final class UIMap {
 
         Map<String, Integer> colorBuckets = new HashMap<>();
 
-        for (VehicleRow row : allRows) {
+        // Column loop over the step's state table; VehicleState objects are only built for shown vehicles.
+        VehicleStateTable.Generation table = snapshot.getTable();
+        for (int row = 0; row < table.size(); row++) {
             total++;
-            double s = row.getSpeed();
+            double s = table.speed(row);
             sumSpeed += s;
             if (s < 2.0) speedBuckets[0]++;
             else if (s < 5.0) speedBuckets[1]++;
             else if (s < 10.0) speedBuckets[2]++;
             else speedBuckets[3]++;
 
+            Color color = snapshotColor(table.color(row));
+
             // Filter by color (user-selected)
             if (filterColor) {
-                Color c = row.getColor();
-                if (!isSimilarColor(c, targetColor, 0.18)) {
+                if (!isSimilarColor(color, targetColor, 0.18)) {
                     continue;
                 }
             }
             // Filter by speed (> 10 m/s)
             if (filterSpeed) {
-                if (row.getSpeed() <= 10.0) {
+                if (s <= 10.0) {
                     continue;
                 }
             }
             // Filter by congestion (speed < 5 m/s) - example logic for "congested"
             if (filterCongested) {
-                String edgeId = row.getEdge();
+                String edgeId = table.edge(row);
                 boolean congested = false;
 
-                // Prefer edge-level mean speed (more like a "congested edge" definition)
-                if (ui.connector != null && ui.connector.isConnected() && edgeId != null && !edgeId.isEmpty()) {
-                    Double mean = edgeMeanSpeedCache.get(edgeId);
-                    if (mean == null && !edgeMeanSpeedCache.containsKey(edgeId)) {
-                        try {
-                            mean = (double) ui.edgeWrapper.getLastStepMeanSpeed(edgeId);
-                        } catch (Exception ignored) {
-                            mean = null;
-                        }
-                        edgeMeanSpeedCache.put(edgeId, mean);
-                    }
-                    if (mean != null && mean >= 0.0) {
-                        congested = mean <= 5.0;
-                    }
+                // Prefer edge-level mean speed (more like a "congested edge" definition);
+                // collected by the simulation thread while this filter is enabled.
+                double mean = snapshot.getEdgeMeanSpeed(edgeId);
+                if (!Double.isNaN(mean) && mean >= 0.0) {
+                    congested = mean <= 5.0;
                 }
 
                 // Fallback: vehicle-level speed heuristic
                 if (!congested) {
-                    congested = row.getSpeed() < 5.0;
+                    congested = s < 5.0;
                 }
                 if (!congested) {
                     continue;
                 }
             }
 
-            // for each vehicleRow that satisfies filter conditions, add it to the filter list
-            filteredRows.add(row);
-            colorMap.put(row.getId(), row.getColor());
+            // for each vehicle that satisfies filter conditions, add it to the filter lists
+            VehicleState state = table.toState(row);
+            filteredStates.add(state);
+            filteredRows.add(new VehicleRow(state.id, state.speed, (state.edge != null) ? state.edge : "", color));
 
             // Pie chart distribution based on displayed rows.
-            String key = ui.colorKey(row.getColor());
+            String key = ui.colorKey(color);
             colorBuckets.merge(key, 1, Integer::sum);
-
-            Point2D pos = (allPositions != null) ? allPositions.get(row.getId()) : null;
-            if (pos != null) {
-                filteredPositions.put(row.getId(), pos);
-            }
-            String laneId = (allLaneIds != null) ? allLaneIds.get(row.getId()) : null;
-            if (laneId != null && !laneId.isEmpty()) {
-                filteredLaneIds.put(row.getId(), laneId);
-            }
-            // Include vehicle angle for orientation in rendering
-            Double angle = (allAngles != null) ? allAngles.get(row.getId()) : null;
-            if (angle != null) {
-                filteredAngles.put(row.getId(), angle);
-            }
-            // Include vehicle type for shape rendering (car, bus, motorbike, etc.)
-            String vehType = (allTypes != null) ? allTypes.get(row.getId()) : null;
-            if (vehType != null && !vehType.isEmpty()) {
-                filteredTypes.put(row.getId(), vehType);
-            }
         }
 
         // Update map (only filtered vehicles) with angles and types for realistic rendering
-        if (filteredPositions.isEmpty() && allRows.isEmpty() && allPositions != null && !allPositions.isEmpty()) {
-            // If row fetching fails for any reason, still render positions so vehicles remain visible.
-            ui.mapView.updateVehicles(allPositions, Collections.emptyMap(), allLaneIds, allAngles, allTypes);
-        } else {
-            ui.mapView.updateVehicles(filteredPositions, colorMap, filteredLaneIds, filteredAngles, filteredTypes);
-        }
+        ui.mapView.updateVehicles(filteredStates, snapshot.simTimeSeconds);
 
         // Overlay traffic-light stop lines (R/Y/G) so it's obvious why vehicles stop.
         Map<String, Color> laneSignalMap = UITrafficLights.buildLaneSignalColorMap(ui);
@@ -211,8 +219,14 @@ final class UIMap {
         double avgSpeed = (total > 0) ? (sumSpeed / (double) total) : 0.0;
         ui.lastChartSnapshot = new UI.ChartSnapshot(total, avgSpeed, speedBuckets);
 
-        // Update table
-        ui.vehicleData.setAll(filteredRows);
+        // Update table (replacing the rows drops the selection; restore the map's)
+        ui.syncingVehicleSelection = true;
+        try {
+            ui.vehicleData.setAll(filteredRows);
+        } finally {
+            ui.syncingVehicleSelection = false;
+        }
+        selectVehicleRow(ui, ui.mapView.getSelectedVehicle());
 
         if (ui.vehicleTable != null) {
             ui.vehicleTable.refresh();
@@ -39,10 +39,24 @@ final class UISimulation {
             ui.chkFilterSpeed.selectedProperty().addListener((obs, oldV, newV) -> ui.updateMapView());
         }
         if (ui.chkFilterCongested != null) {
-            ui.chkFilterCongested.selectedProperty().addListener((obs, oldV, newV) -> ui.updateMapView());
+            ui.chkFilterCongested.selectedProperty().addListener((obs, oldV, newV) -> {
+                // Edge mean speeds are only fetched by the simulation thread while this filter is on.
+                if (ui.simLoop != null) ui.simLoop.setCollectEdgeMeanSpeeds(newV);
+                ui.updateMapView();
+            });
+        }
+        if (ui.chkTurbo != null) {
+            ui.chkTurbo.selectedProperty().addListener((obs, oldV, newV) -> {
+                // Steps back to back; the render timer picks up about one snapshot per frame.
+                if (ui.simLoop != null) ui.simLoop.setTurbo(newV);
+                if (ui.sliderSpeed != null) ui.sliderSpeed.setDisable(newV);
+            });
         }
         if (ui.cmbTrafficLight != null) {
-            ui.cmbTrafficLight.valueProperty().addListener((obs, oldV, newV) -> ui.updateTrafficLightUI());
+            ui.cmbTrafficLight.valueProperty().addListener((obs, oldV, newV) -> {
+                if (ui.simLoop != null) ui.simLoop.setWatchedTrafficLight(newV);
+                ui.updateTrafficLightUI();
+            });
         }
 
         // Table setup
@@ -54,6 +68,11 @@ final class UISimulation {
         }
         if (ui.vehicleTable != null) {
             ui.vehicleTable.setItems(ui.vehicleData);
+            // Selecting a row highlights the vehicle on the map.
+            ui.vehicleTable.getSelectionModel().selectedItemProperty().addListener((obs, oldRow, newRow) -> {
+                if (ui.syncingVehicleSelection || ui.mapView == null) return;
+                ui.mapView.selectVehicle((newRow != null) ? newRow.getId() : null);
+            });
         }
 
         if (ui.vehicleColorPie != null) {
@@ -158,6 +177,15 @@ final class UISimulation {
             ui.mapView.prefHeightProperty().bind(ui.mapPane.heightProperty());
             ui.mapPane.getChildren().clear();
             ui.mapPane.getChildren().add(ui.mapView);
+            ui.mapView.setOverlayDetailThresholds(
+                    intSetting(ui, "map.lod.trianglesAbove", MapView.DEFAULT_LOD_TRIANGLES_ABOVE),
+                    intSetting(ui, "map.lod.pointsAbove", MapView.DEFAULT_LOD_POINTS_ABOVE),
+                    intSetting(ui, "map.lod.densityAbove", MapView.DEFAULT_LOD_DENSITY_ABOVE),
+                    doubleSetting(ui, "map.lod.detailMinPxPerMeter", MapView.DEFAULT_LOD_DETAIL_MIN_PX_PER_METER));
+            // map.overlay.backend=raster draws vehicles with the multi-core software rasterizer.
+            ui.mapView.setSoftwareOverlay("raster".equalsIgnoreCase(ui.userSettings.getString("map.overlay.backend", "canvas").trim()));
+            // Clicking a vehicle on the map selects its row in the vehicle table.
+            ui.mapView.setOnVehicleSelected(id -> UIMap.selectVehicleRow(ui, id));
         }
 
         // Clear traffic light UI until we connect
@@ -195,6 +223,28 @@ final class UISimulation {
         }
     }
 
+    private static int intSetting(UI ui, String key, int defaultValue) {
+        String raw = (ui.userSettings != null) ? ui.userSettings.getString(key, "") : "";
+        if (raw == null || raw.trim().isEmpty()) return defaultValue;
+        try {
+            return Integer.parseInt(raw.trim());
+        } catch (NumberFormatException e) {
+            ui.LOGGER.log(Level.WARNING, "Invalid " + key + " setting; expected an integer", e);
+            return defaultValue;
+        }
+    }
+
+    private static double doubleSetting(UI ui, String key, double defaultValue) {
+        String raw = (ui.userSettings != null) ? ui.userSettings.getString(key, "") : "";
+        if (raw == null || raw.trim().isEmpty()) return defaultValue;
+        try {
+            return Double.parseDouble(raw.trim());
+        } catch (NumberFormatException e) {
+            ui.LOGGER.log(Level.WARNING, "Invalid " + key + " setting; expected a number", e);
+            return defaultValue;
+        }
+    }
+
     static void onStartPause(UI ui) {
         if (ui.running) {
             ui.stopLoop();
@@ -213,18 +263,18 @@ final class UISimulation {
             ui.setStatusText("Status: Not connected");
             return;
         }
-        boolean ok = ui.connector.step();
-        if (!ok) {
-            ui.setStatusText("Status: Step failed");
-            return;
-        }
+        // Stepping happens on the simulation thread; the render timer picks up the snapshot.
+        ui.doStep();
         ui.setStatusText("Status: Stepped");
-        ui.updateAfterStep();
     }
 
     static void shutdown(UI ui) {
         ui.stopLoop();
+        UILoop.stopRenderTimer(ui);
         ui.stopConnectionMonitor();
+        if (ui.simLoop != null) {
+            ui.simLoop.shutdown();
+        }
         if (ui.connector != null) {
             ui.connector.disconnect();
         }
@@ -300,6 +350,8 @@ final class UISimulation {
 
         Thread connectThread = new Thread(() -> {
             TraCIConnector localConnector = new TraCIConnector(sumoBinary, cfgFile.getPath(), (double) ui.stepLengthSeconds);
+            // sumo.realTimeDelay=false launches sumo-gui without its per-step delay.
+            localConnector.setRealTimeDelay(!"false".equalsIgnoreCase(ui.userSettings.getString("sumo.realTimeDelay", "true").trim()));
             boolean ok = localConnector.connect();
             if (!ok) {
                 Platform.runLater(() -> {
@@ -312,11 +364,29 @@ final class UISimulation {
                 return;
             }
 
+            // Static network data (edges, lanes, traffic lights) comes from the on-disk
+            // cache when this config/network was seen before; wrappers below read it.
+            File netFile = UISumoFiles.resolveNetFile(ui, cfgFile.getPath());
+            localConnector.loadNetworkMetadata(cfgFile.toPath(), (netFile != null) ? netFile.toPath() : null);
+
             ui.vehicleWrapper = new VehicleWrapper(localConnector);
+            ui.vehicleManager = new VehicleManager(ui.vehicleWrapper, 128, true);
             ui.trafWrapper = new TrafficLightWrapper(localConnector);
             ui.keyController = new UIKeys(ui.trafWrapper, ui);
             ui.edgeWrapper = new EdgeWrapper(localConnector, ui.vehicleWrapper);
             ui.infWrapper = new InfrastructureWrapper(localConnector);
+            ui.simLoop = new SimulationLoop(ui.vehicleManager, ui.trafWrapper, ui.edgeWrapper,
+                    (long) (ui.stepLengthSeconds * 1_000_000_000.0));
+            ui.simLoop.setCollectEdgeMeanSpeeds(ui.chkFilterCongested != null && ui.chkFilterCongested.isSelected());
+            ui.simLoop.setTurbo(ui.chkTurbo != null && ui.chkTurbo.isSelected());
+            ui.simLoop.setMaxCatchUpSteps(intSetting(ui, "sim.maxCatchUpSteps", 8));
+            ui.simLoop.setTurboPublishing(
+                    Math.round(doubleSetting(ui, "sim.turbo.publishIntervalMs",
+                            SimulationLoop.DEFAULT_TURBO_PUBLISH_INTERVAL_NS / 1_000_000.0) * 1_000_000.0),
+                    intSetting(ui, "sim.turbo.publishEverySteps", 0));
+            // Snapshot every step by default; e.g. 200 ms lowers the whole UI to 5 Hz and the map animates between them
+            ui.simLoop.setPublishInterval(Math.round(doubleSetting(ui, "sim.publishIntervalMs",
+                    SimulationLoop.DEFAULT_PUBLISH_INTERVAL_NS / 1_000_000.0) * 1_000_000.0));
 
             Platform.runLater(() -> {
                 // Adopt the connected instance on the UI thread
@@ -331,7 +401,6 @@ final class UISimulation {
 
                 // Load network asynchronously (parsing can be large)
                 // Bus stops are loaded AFTER network is ready (in the callback)
-                File netFile = UISumoFiles.resolveNetFile(ui, cfgFile.getPath());
                 if (ui.mapView != null) {
                     ui.mapView.loadNetworkAsync(netFile, lanes -> {
                         if (lanes <= 0) ui.setStatusText("Loaded SUMO, but net file missing/empty");
@@ -360,7 +429,9 @@ final class UISimulation {
                 ui.populateTrafficLights();
 
                 ui.setConnectedUI();
-                ui.updateAfterStep();
+                // Publish the initial state; the render timer shows it once it is ready.
+                ui.simLoop.refresh();
+                UILoop.startRenderTimer(ui);
                 if (ui.btnConnect != null) {
                     ui.btnConnect.setDisable(false);
                     ui.btnConnect.setText("Disconnect");
@@ -377,9 +448,11 @@ final class UISimulation {
         long nowNs = System.nanoTime();
         ui.processPendingInjections(nowNs);
 
-        int step = ui.connector.getCurrentStep();
-        double simTime = ui.connector.getSimTimeSeconds();
-        int vehicleCount = (ui.vehicleWrapper != null) ? ui.vehicleWrapper.getVehicleCount() : 0;
+        // Everything below reads the snapshot published by the simulation thread.
+        StepSnapshot snapshot = ui.lastSnapshot;
+        int step = snapshot.step;
+        double simTime = snapshot.simTimeSeconds;
+        int vehicleCount = snapshot.size();
 
         if (ui.lblStep != null) {
             ui.lblStep.setText("Step: " + step);
@@ -69,12 +69,20 @@ final class UIState {
 
     static void disconnectFromSumo(UI ui) {
         ui.stopLoop();
+        UILoop.stopRenderTimer(ui);
         ui.stopConnectionMonitor();
+        // Stop the simulation thread before closing the socket it uses.
+        if (ui.simLoop != null) {
+            ui.simLoop.shutdown();
+            ui.simLoop = null;
+        }
         if (ui.connector != null) {
             ui.connector.disconnect();
         }
         ui.connector = null;
         ui.vehicleWrapper = null;
+        ui.vehicleManager = null;
+        ui.lastSnapshot = StepSnapshot.EMPTY;
         if (ui.cmbTrafficLight != null) {
             ui.cmbTrafficLight.getItems().clear();
         }
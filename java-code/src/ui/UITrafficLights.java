@@ -1,7 +1,6 @@
 import de.tudresden.sumo.objects.SumoLink;
 import javafx.scene.paint.Color;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -17,17 +16,17 @@ final class UITrafficLights {
             return Collections.emptyMap();
         }
         try {
-            List<String> ids = new ArrayList<>();
-            ids = ui.trafWrapper.getTrafficLightIds();
-            if (ids.isEmpty()) return Collections.emptyMap();
+            // Signal states come from the snapshot built by the simulation thread.
+            Map<String, TrafficLightState> states = ui.lastSnapshot.getTrafficLights();
+            if (states.isEmpty()) return Collections.emptyMap();
 
             Map<String, Integer> lanePriority = new HashMap<>();
             Map<String, Color> laneColor = new HashMap<>();
-            for (String tlId : ids) {
+            for (TrafficLightState tl : states.values()) {
                 // draw the TL marker in the correct spot with the correct color
-                if (tlId == null || tlId.isEmpty()) continue;
-                String state = ui.trafWrapper.getTrafficLightState(tlId);
-                if (state == null || state.isEmpty()) continue;
+                String tlId = tl.id;
+                String state = tl.state;
+                if (state.isEmpty()) continue;
 
                 List<SumoLink> links = ui.trafficLightLinksCache.get(tlId);
                 if (links == null) {
@@ -135,6 +134,26 @@ final class UITrafficLights {
         }
     }
 
+    /**
+     * Per-step variant of {@link #updateTrafficLightUI}: reads the selected traffic light
+     * from the last snapshot instead of querying SUMO on the JavaFX thread.
+     */
+    static void updateTrafficLightUIFromSnapshot(UI ui) {
+        if (ui.cmbTrafficLight == null) return;
+        String tlid = ui.cmbTrafficLight.getValue();
+        if (tlid == null || tlid.isEmpty()) return;
+        TrafficLightState tl = ui.lastSnapshot.getTrafficLights().get(tlid);
+        if (tl == null || !tl.hasPhaseInfo()) return;
+
+        if (ui.lblPhaseInfo != null) {
+            ui.lblPhaseInfo.setText("Phase " + tl.phaseIndex + ": " + tl.state);
+        }
+        // Don't overwrite a duration the user is currently editing.
+        if (ui.txtPhaseDuration != null && !ui.txtPhaseDuration.isFocused()) {
+            ui.txtPhaseDuration.setText(String.format(Locale.US, "%.1f", tl.phaseDuration));
+        }
+    }
+
     static void changeTrafficLightPhase(UI ui, int delta) {
         if (ui.connector == null || !ui.connector.isConnected() || ui.cmbTrafficLight == null) return;
         String id = ui.cmbTrafficLight.getValue();
@@ -2,6 +2,7 @@ import javafx.geometry.Point2D;
 import javafx.application.Platform;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
@@ -12,12 +13,15 @@ import javafx.scene.shape.StrokeLineJoin;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,37 +49,55 @@ public class MapView extends Pane {
     List<JunctionShape> junctions = new ArrayList<>();
     Map<String, Point2D> edgeLabelWorldPos = new HashMap<>();
     List<TextMarker> trafficLightMarkers = new ArrayList<>();
-    Map<String, Point2D> vehiclePositions;
-    Map<String, Color> vehicleColors;
-    Map<String, String> vehicleLaneIds;
-    // Vehicle angles in degrees (heading from North, clockwise)
-    Map<String, Double> vehicleAngles;
-    // Vehicle types (e.g., "car", "bus", "motorcycle", "bike")
-    Map<String, String> vehicleTypes;
-
-    // Per-vehicle render smoothing state (keeps headings stable at junctions)
-    Map<String, Point2D> lastVehicleWorldPos = new HashMap<>();
-    Map<String, Point2D> smoothedVehicleDir = new HashMap<>();
-    // Per-vehicle smoothed *positions* for visually smooth motion between TraCI/UI updates.
-    // This is a render-only cache; it does not affect simulation state.
-    Map<String, Point2D> smoothedVehicleWorldPos = new HashMap<>();
+    // Grid indexes over lane / junction bounding boxes (indexes into lanes / junctions);
+    // null until a network is loaded. Used to cull background rendering to the viewport.
+    MapViewSpatialIndex laneIndex;
+    MapViewSpatialIndex junctionIndex;
+    // Shown vehicles: dense handles, reported state, render smoothing state and the spatial hash
+    // used for overlay culling and picking (click / hover)
+    final MapViewVehicles vehicles = new MapViewVehicles();
+    // Pre-rendered vehicle shapes (kind x color x heading) for the current zoom band
+    final MapViewVehicleSprites vehicleSprites = new MapViewVehicleSprites(this);
+    final MapViewDensityRaster densityRaster = new MapViewDensityRaster();
+    // Parallel software rasterizer for vehicle glyphs (alternative to drawing on the overlay canvas)
+    final MapViewOverlayRaster overlayRaster = new MapViewOverlayRaster();
+    boolean softwareOverlay;
+
+    // Overlay level of detail: visible-vehicle counts above which the overlay switches to
+    // triangles / points / a density raster (<= 0 disables a level), and the world scale below
+    // which detailed shapes become triangles. See setOverlayDetailThresholds.
+    public static final int DEFAULT_LOD_TRIANGLES_ABOVE = 1500;
+    public static final int DEFAULT_LOD_POINTS_ABOVE = 8000;
+    public static final int DEFAULT_LOD_DENSITY_ABOVE = 30000;
+    public static final double DEFAULT_LOD_DETAIL_MIN_PX_PER_METER = 0.8;
+    int lodTrianglesAbove = DEFAULT_LOD_TRIANGLES_ABOVE;
+    int lodPointsAbove = DEFAULT_LOD_POINTS_ABOVE;
+    int lodDensityAbove = DEFAULT_LOD_DENSITY_ABOVE;
+    double lodDetailMinPxPerMeter = DEFAULT_LOD_DETAIL_MIN_PX_PER_METER;
+    OverlayDetail overlayDetail = OverlayDetail.DETAILED;
     long lastOverlayRedrawNs = 0L;
     double headingSmoothingAlpha = 0.22;
-    // Position smoothing time constant (seconds). Smaller = more responsive, larger = smoother.
-    // Tuned for JavaFX ~60fps; also works when UI updates are slower.
-    double positionSmoothingTauSec = 0.10;
-    // If a vehicle jumps further than this in world meters, snap (avoid trailing/teleport smear).
-    double positionSnapDistanceMeters = 25.0;
     Map<String, Color> laneSignalColors;
+
+    String selectedVehicleId;
+    Consumer<String> onVehicleSelected;
+    final Tooltip vehicleTooltip = new Tooltip();
+    String hoveredVehicleId;
+
     List<BusStopMarker> busStops = new ArrayList<>();
     double minX = 0, maxX = 1, minY = 0, maxY = 1;
 
-    final Map<String, EdgeInfo> edgesById = new HashMap<>();
+    Map<String, EdgeInfo> edgesById = new HashMap<>();
 
     // Internal connector lanes (":...") that belong to bicycle movements.
     // Populated from SUMO <connection via="..."> so we only draw the relevant dashed guides
     // and avoid cluttering junctions on maps where bicycles are allowed on general lanes.
-    final java.util.HashSet<String> bicycleConnectorLaneIds = new java.util.HashSet<>();
+    java.util.Set<String> bicycleConnectorLaneIds = new java.util.HashSet<>();
+
+    // World-to-screen mapping + scratch buffers for drawing on the view's canvases (FX thread only).
+    final RenderFrame frame = new RenderFrame();
+    // Rasterized background tiles; workers render them, the FX thread composites them.
+    final MapViewTileCache tileCache = new MapViewTileCache(this);
 
     // Render scheduling
     boolean backgroundDirty = true;
@@ -128,32 +150,124 @@ public class MapView extends Pane {
     public void updateVehicles(Map<String, Point2D> positions, Map<String, Color> colors,
                                Map<String, String> laneIds, Map<String, Double> angles,
                                Map<String, String> types) {
-        this.vehiclePositions = positions;
-        this.vehicleColors = colors;
-        this.vehicleLaneIds = laneIds;
-        this.vehicleAngles = angles;
-        this.vehicleTypes = types;
-
-        // Keep smoothing caches bounded, but avoid doing O(n) work every frame.
-        // Only prune when caches grow significantly beyond the current visible set.
-        if (positions != null && !positions.isEmpty()) {
-            int p = positions.size();
-            if (lastVehicleWorldPos.size() > p * 2 + 100 || smoothedVehicleDir.size() > p * 2 + 100 || smoothedVehicleWorldPos.size() > p * 2 + 100) {
-                lastVehicleWorldPos.keySet().retainAll(positions.keySet());
-                smoothedVehicleDir.keySet().retainAll(positions.keySet());
-                // Keep position smoothing cache bounded too.
-                smoothedVehicleWorldPos.keySet().retainAll(positions.keySet());
+        // No sim time or speed here: vehicles are not extrapolated, only eased toward new positions.
+        vehicles.beginUpdate(Double.NaN, System.nanoTime());
+        if (positions != null) {
+            for (Entry<String, Point2D> e : positions.entrySet()) {
+                String id = e.getKey();
+                Point2D p = e.getValue();
+                if (id == null || p == null) continue;
+                String laneId = (laneIds != null) ? laneIds.get(id) : null;
+                Double angle = (angles != null) ? angles.get(id) : null;
+                Color color = (colors != null) ? colors.get(id) : null;
+                vehicles.put(id, p.getX(), p.getY(), 0.0,
+                        (color != null) ? VehicleWrapper.toRgba(color) : VehicleState.NO_COLOR,
+                        (laneId != null) ? lanesById.get(laneId) : null,
+                        (angle != null) ? angle : Double.NaN,
+                        (types != null) ? types.get(id) : null);
             }
         }
+        endVehicleUpdate();
+    }
+
+    /**
+     * Update vehicles from the states of one simulation step (see StepSnapshot).
+     * Only the given vehicles are drawn, so callers pass the already filtered set.
+     */
+    public void updateVehicles(Collection<VehicleState> states) {
+        updateVehicles(states, Double.NaN);
+    }
+
+    /**
+     * Same as {@link #updateVehicles(Collection)}, with the sim time of the step. Between such
+     * updates vehicles are moved along their reported heading and speed at the simulation rate,
+     * so the map animates smoothly even when snapshots arrive only a few times per second.
+     * @param simTimeSeconds sim time of the states, NaN if unknown
+     */
+    public void updateVehicles(Collection<VehicleState> states, double simTimeSeconds) {
+        vehicles.beginUpdate(simTimeSeconds, System.nanoTime());
+        for (VehicleState s : states) {
+            LaneShape lane = (s.lane != null && !s.lane.isEmpty()) ? lanesById.get(s.lane) : null;
+            String type = (s.vehicleClass != null && !s.vehicleClass.isEmpty()) ? s.vehicleClass : null;
+            vehicles.put(s.id, s.x, s.y, s.speed, s.color, lane, s.angle, type);
+        }
+        endVehicleUpdate();
+    }
+
+    private void endVehicleUpdate() {
+        // Vehicles that are gone lose their handle and render state here.
+        vehicles.endUpdate();
+        if (selectedVehicleId != null && vehicles.handleOf(selectedVehicleId) < 0) {
+            selectVehicle(null);
+        }
         scheduleOverlayRedraw();
     }
 
     // Called from the UI AnimationTimer every JavaFX pulse.
-    // This keeps the overlay repainting at a steady rate so position smoothing can take effect.
+    // This keeps the overlay repainting at a steady rate so vehicles move between updates.
     void tickOverlay() {
         scheduleOverlayRedraw();
     }
 
+    /**
+     * Finds the vehicle drawn at a point of the view.
+     * @param x X in view coordinates (e.g. MouseEvent.getX())
+     * @param y Y in view coordinates
+     * @return vehicle ID, or null if there is none close enough
+     */
+    public String vehicleAt(double x, double y) {
+        return MapViewRender.vehicleAt(this, x, y);
+    }
+
+    /**
+     * @return ID of the vehicle selected by clicking on it, or null
+     */
+    public String getSelectedVehicle() {
+        return selectedVehicleId;
+    }
+
+    /**
+     * Selects a vehicle (highlighted on the map); null clears the selection.
+     */
+    public void selectVehicle(String vehicleId) {
+        if (Objects.equals(selectedVehicleId, vehicleId)) return;
+        selectedVehicleId = vehicleId;
+        if (onVehicleSelected != null) onVehicleSelected.accept(vehicleId);
+        scheduleOverlayRedraw();
+    }
+
+    /**
+     * @param listener called with the vehicle ID when the selection changes (null when cleared)
+     */
+    public void setOnVehicleSelected(Consumer<String> listener) {
+        this.onVehicleSelected = listener;
+    }
+
+    /**
+     * Sets when the vehicle overlay trades detail for speed.
+     * @param trianglesAbove visible vehicles above which cars/buses are drawn as triangles (<= 0: never)
+     * @param pointsAbove visible vehicles above which they are drawn as points (<= 0: never)
+     * @param densityAbove visible vehicles above which a density raster is drawn instead (<= 0: never)
+     * @param detailMinPxPerMeter map scale (pixels per meter) below which detailed shapes become triangles
+     */
+    public void setOverlayDetailThresholds(int trianglesAbove, int pointsAbove, int densityAbove,
+                                           double detailMinPxPerMeter) {
+        this.lodTrianglesAbove = trianglesAbove;
+        this.lodPointsAbove = pointsAbove;
+        this.lodDensityAbove = densityAbove;
+        this.lodDetailMinPxPerMeter = detailMinPxPerMeter;
+        scheduleOverlayRedraw();
+    }
+
+    /**
+     * Chooses how vehicles are drawn: false draws them on the overlay canvas (default), true
+     * rasterizes them on all cores into a pixel buffer that is then shown as one image.
+     */
+    public void setSoftwareOverlay(boolean enabled) {
+        this.softwareOverlay = enabled;
+        scheduleOverlayRedraw();
+    }
+
     public void updateTrafficSignals(Map<String, Color> laneSignalColors) {
         this.laneSignalColors = laneSignalColors;
         scheduleOverlayRedraw();
@@ -191,15 +305,15 @@ public class MapView extends Pane {
         MapViewRender.scheduleOverlayRedraw(this);
     }
 
-    static Point2D centroid(List<Point2D> poly) {
+    static Point2D centroid(PackedPolyline poly) {
         return MapViewGeometry.centroid(poly);
     }
 
-    static Point2D pointAlongPolyline(List<Point2D> polyline, double t) {
+    static Point2D pointAlongPolyline(PackedPolyline polyline, double t) {
         return MapViewGeometry.pointAlongPolyline(polyline, t);
     }
 
-    List<Point2D> parseShape(String shape) {
+    PackedPolyline parseShape(String shape) {
         return MapViewGeometry.parseShape(shape);
     }
 
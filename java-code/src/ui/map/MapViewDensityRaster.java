@@ -0,0 +1,78 @@
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.Arrays;
+
+/**
+ * Aggregated vehicle density overlay for {@link MapView}, used when too many vehicles are in
+ * view to draw them individually: vehicles are counted per screen cell and the counts are
+ * drawn as one smoothed, color-ramped image. Cost is linear in the vehicle count plus the
+ * number of cells; buffers are reused between frames. FX thread only.
+ */
+final class MapViewDensityRaster {
+
+    static final int CELL_PX = 4;
+
+    // Count ramp: translucent yellow for single vehicles to opaque dark red for the densest cell
+    private static final int[] RAMP = buildRamp();
+
+    private int cols;
+    private int rows;
+    private int[] counts = new int[0];
+    private int[] argb = new int[0];
+    private WritableImage image;
+
+    /**
+     * Draws the density of the given vehicles (reported positions) over the frame.
+     */
+    void draw(GraphicsContext g, RenderFrame f, MapViewVehicles v, int[] handles, int n) {
+        int c = Math.max(1, (int) Math.ceil(f.width / CELL_PX));
+        int r = Math.max(1, (int) Math.ceil(f.height / CELL_PX));
+        if (image == null || c != cols || r != rows) {
+            cols = c;
+            rows = r;
+            counts = new int[c * r];
+            argb = new int[c * r];
+            image = new WritableImage(c, r);
+        } else {
+            Arrays.fill(counts, 0);
+        }
+
+        int max = 0;
+        double inv = 1.0 / CELL_PX;
+        for (int i = 0; i < n; i++) {
+            int h = handles[i];
+            double sx = f.x(v.x[h]) * inv;
+            double sy = f.y(v.y[h]) * inv;
+            if (sx < 0 || sy < 0 || sx >= c || sy >= r) continue;
+            int cell = (int) sy * c + (int) sx;
+            int count = ++counts[cell];
+            if (count > max) max = count;
+        }
+        if (max == 0) return;
+
+        // Log scale so a few jammed cells don't wash out the rest of the network.
+        double norm = (RAMP.length - 1) / Math.log1p(max);
+        for (int i = 0, len = c * r; i < len; i++) {
+            int count = counts[i];
+            argb[i] = (count == 0) ? 0 : RAMP[(int) (Math.log1p(count) * norm)];
+        }
+        image.getPixelWriter().setPixels(0, 0, c, r, PixelFormat.getIntArgbInstance(), argb, 0, c);
+        g.drawImage(image, 0, 0, c * CELL_PX, r * CELL_PX);
+    }
+
+    private static int[] buildRamp() {
+        int[] ramp = new int[256];
+        for (int i = 0; i < ramp.length; i++) {
+            double t = i / 255.0;
+            // #FFEB3B (yellow) -> #B71C1C (dark red)
+            int red = (int) Math.round(255 + (183 - 255) * t);
+            int green = (int) Math.round(235 + (28 - 235) * t);
+            int blue = (int) Math.round(59 + (28 - 59) * t);
+            int alpha = (int) Math.round(255 * (0.55 + 0.40 * t));
+            ramp[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+        return ramp;
+    }
+}
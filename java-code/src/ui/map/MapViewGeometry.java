@@ -1,7 +1,6 @@
 import javafx.geometry.Point2D;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Geometry helpers for {@link MapView}.
@@ -19,89 +18,142 @@ final class MapViewGeometry {
         return new Point2D(v.getX() / len, v.getY() / len);
     }
 
-    static Point2D laneTangentAt(Point2D worldPos, List<Point2D> polyline) {
+    static Point2D laneTangentAt(Point2D worldPos, PackedPolyline polyline) {
+        if (worldPos == null) return null;
+        double[] out = new double[2];
+        return laneTangentAt(worldPos.getX(), worldPos.getY(), polyline, out) ? new Point2D(out[0], out[1]) : null;
+    }
+
+    /**
+     * Allocation-free variant of {@link #laneTangentAt(Point2D, PackedPolyline)}: writes the unit
+     * direction into out[0..1].
+     * @return false if the polyline has no segment of non-zero length
+     */
+    static boolean laneTangentAt(double px, double py, PackedPolyline polyline, double[] out) {
         // This function finds the closest lane segment to the vehicle and returns its direction.
-        if (worldPos == null || polyline == null || polyline.size() < 2) return null;
+        if (polyline == null || polyline.size() < 2) return false;
         double bestDist2 = Double.POSITIVE_INFINITY;
-        Point2D bestDir = null;
+        double bestVx = 0.0;
+        double bestVy = 0.0;
+        double bestLen = 0.0;
 
         for (int i = 1; i < polyline.size(); i++) {
-            Point2D a = polyline.get(i - 1);
-            Point2D b = polyline.get(i);
-            double vx = b.getX() - a.getX();
-            double vy = b.getY() - a.getY();
+            double ax = polyline.x(i - 1);
+            double ay = polyline.y(i - 1);
+            double vx = polyline.x(i) - ax;
+            double vy = polyline.y(i) - ay;
             double len2 = vx * vx + vy * vy;
             if (len2 < 1e-9) continue;
 
-            double wx = worldPos.getX() - a.getX();
-            double wy = worldPos.getY() - a.getY();
+            double wx = px - ax;
+            double wy = py - ay;
             double t = (wx * vx + wy * vy) / len2;
             if (t < 0.0) t = 0.0;
             else if (t > 1.0) t = 1.0;
-            double px = a.getX() + t * vx;
-            double py = a.getY() + t * vy;
-            double dx = worldPos.getX() - px;
-            double dy = worldPos.getY() - py;
+            double dx = wx - t * vx;
+            double dy = wy - t * vy;
             double dist2 = dx * dx + dy * dy;
             if (dist2 < bestDist2) {
                 bestDist2 = dist2;
-                double len = Math.sqrt(len2);
-                bestDir = new Point2D(vx / len, vy / len);
+                bestVx = vx;
+                bestVy = vy;
+                bestLen = Math.sqrt(len2);
             }
         }
 
-        return bestDir;
+        if (bestLen <= 0.0) return false;
+        out[0] = bestVx / bestLen;
+        out[1] = bestVy / bestLen;
+        return true;
     }
 
-    static Point2D centroid(List<Point2D> poly) {
+    static Point2D centroid(PackedPolyline poly) {
         if (poly == null || poly.isEmpty()) return null;
+        int n = poly.size();
         double sx = 0.0;
         double sy = 0.0;
-        for (Point2D p : poly) {
-            sx += p.getX();
-            sy += p.getY();
+        for (int i = 0; i < n; i++) {
+            sx += poly.x(i);
+            sy += poly.y(i);
         }
-        return new Point2D(sx / poly.size(), sy / poly.size());
+        return new Point2D(sx / n, sy / n);
     }
 
-    static Point2D pointAlongPolyline(List<Point2D> polyline, double t) {
-        if (polyline == null || polyline.size() < 2) return null;
+    static Point2D pointAlongPolyline(PackedPolyline polyline, double t) {
+        double[] out = new double[2];
+        return pointAlong(polyline, t, out) ? new Point2D(out[0], out[1]) : null;
+    }
+
+    /**
+     * Allocation-free variant of {@link #pointAlongPolyline}: writes x/y into out[0..1].
+     * @param t fraction of the total length, clamped to [0, 1]
+     * @return false if the polyline has fewer than two points
+     */
+    static boolean pointAlong(PackedPolyline polyline, double t, double[] out) {
+        if (polyline == null || polyline.size() < 2) return false;
+        int n = polyline.size();
         t = Math.max(0.0, Math.min(1.0, t));
-        double total = 0.0;
-        for (int i = 1; i < polyline.size(); i++) {
-            total += polyline.get(i).distance(polyline.get(i - 1));
+        double total = polyline.length();
+        if (total < 1e-9) {
+            out[0] = polyline.x(n / 2);
+            out[1] = polyline.y(n / 2);
+            return true;
         }
-        if (total < 1e-9) return polyline.get(polyline.size() / 2);
         double target = total * t;
-        double acc = 0.0;
-        for (int i = 1; i < polyline.size(); i++) {
-            Point2D a = polyline.get(i - 1);
-            Point2D b = polyline.get(i);
-            double seg = b.distance(a);
-            if (acc + seg >= target) {
-                double localT = (target - acc) / Math.max(1e-9, seg);
-                double x = a.getX() + (b.getX() - a.getX()) * localT;
-                double y = a.getY() + (b.getY() - a.getY()) * localT;
-                return new Point2D(x, y);
-            }
-            acc += seg;
+
+        // First vertex whose cumulative length reaches the target ends the segment we need.
+        float[] cum = polyline.cumLength();
+        int lo = 1;
+        int hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cum[mid] >= target) hi = mid;
+            else lo = mid + 1;
         }
-        return polyline.get(polyline.size() - 1);
+        if (cum[lo] < target) {
+            out[0] = polyline.x(n - 1);
+            out[1] = polyline.y(n - 1);
+            return true;
+        }
+        double seg = cum[lo] - cum[lo - 1];
+        double localT = (target - cum[lo - 1]) / Math.max(1e-9, seg);
+        double ax = polyline.x(lo - 1);
+        double ay = polyline.y(lo - 1);
+        out[0] = ax + (polyline.x(lo) - ax) * localT;
+        out[1] = ay + (polyline.y(lo) - ay) * localT;
+        return true;
     }
 
-    static List<Point2D> parseShape(String shape) {
-        List<Point2D> pts = new ArrayList<>();
-        String[] pairs = shape.trim().split("\\s+");
-        for (String pair : pairs) {
-            String[] parts = pair.split(",");
-            if (parts.length < 2) continue;
+    /**
+     * Parses a SUMO shape attribute ("x,y[,z] x,y[,z] ...") into packed coordinates.
+     * Malformed points are skipped.
+     */
+    static PackedPolyline parseShape(String shape) {
+        if (shape == null) return PackedPolyline.EMPTY;
+        float[] xy = new float[16];
+        int count = 0;
+        int len = shape.length();
+        int i = 0;
+        while (i < len) {
+            while (i < len && Character.isWhitespace(shape.charAt(i))) i++;
+            int start = i;
+            while (i < len && !Character.isWhitespace(shape.charAt(i))) i++;
+            if (start == i) break;
+
+            int c1 = shape.indexOf(',', start);
+            if (c1 < 0 || c1 >= i) continue;
+            int c2 = shape.indexOf(',', c1 + 1);
+            int endY = (c2 < 0 || c2 > i) ? i : c2;
             try {
-                double x = Double.parseDouble(parts[0]);
-                double y = Double.parseDouble(parts[1]);
-                pts.add(new Point2D(x, y));
+                float x = (float) Double.parseDouble(shape.substring(start, c1));
+                float y = (float) Double.parseDouble(shape.substring(c1 + 1, endY));
+                if (count + 2 > xy.length) xy = Arrays.copyOf(xy, xy.length * 2);
+                xy[count++] = x;
+                xy[count++] = y;
             } catch (NumberFormatException ignored) {
             }
         }
-        return pts;
+        if (count == 0) return PackedPolyline.EMPTY;
+        return new PackedPolyline((count == xy.length) ? xy : Arrays.copyOf(xy, count));
     }
 }
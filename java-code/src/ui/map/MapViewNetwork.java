@@ -1,198 +1,47 @@
 import javafx.application.Platform;
 import javafx.geometry.Point2D;
 
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.function.IntConsumer;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Network parsing/loading logic for {@link MapView}.
  *
  * This class exists only to split MapView into smaller, cleaner files.
  * It intentionally preserves MapView's existing parsing behavior.
+ *
+ * The .net.xml is read in a single streaming (StAX) pass, so memory use is
+ * bounded by the produced geometry rather than by a DOM of the whole file.
+ * Gzip-compressed networks (.net.xml.gz) are detected by their header and
+ * decompressed on the fly. The parsed result is compiled to a binary file
+ * ({@link MapViewNetworkCache}) that later loads map instead of parsing.
  */
 final class MapViewNetwork {
     private MapViewNetwork() {}
 
     static int loadNetwork(MapView view, File netFile) {
-        view.lanes.clear();
-        view.lanesById.clear();
-        view.junctions.clear();
-        view.edgeLabelWorldPos.clear();
-        view.trafficLightMarkers.clear();
-        view.edgesById.clear();
-        view.bicycleConnectorLaneIds.clear();
-
-        int laneCount = 0;
         if (netFile == null || !netFile.exists()) {
             MapView.LOGGER.warning("Net file missing: " + (netFile == null ? "null" : netFile.getPath()));
-            view.redraw();
+            applyNetworkData(view, null);
             return 0;
         }
-
-        try {
-            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(netFile);
-            doc.getDocumentElement().normalize();
-            List<Point2D> allPoints = new ArrayList<>();
-
-            // Parse edges (from/to) so we can reliably detect opposite-direction pairs.
-            NodeList edgeNodes = doc.getElementsByTagName("edge");
-            for (int i = 0; i < edgeNodes.getLength(); i++) {
-                Element e = (Element) edgeNodes.item(i);
-                if (!e.hasAttribute("id")) continue;
-                String edgeId = e.getAttribute("id");
-                if (edgeId == null || edgeId.isEmpty()) continue;
-                String function = e.hasAttribute("function") ? e.getAttribute("function") : "";
-                if (edgeId.startsWith(":") || "internal".equalsIgnoreCase(function)) continue;
-                String from = e.hasAttribute("from") ? e.getAttribute("from") : "";
-                String to = e.hasAttribute("to") ? e.getAttribute("to") : "";
-                String name = e.hasAttribute("name") ? e.getAttribute("name") : "";
-                view.edgesById.put(edgeId, new EdgeInfo(edgeId, from, to, name, function));
-            }
-
-            // Parse junction shapes (for nicer black junction areas like SUMO GUI)
-            NodeList juncNodes = doc.getElementsByTagName("junction");
-            for (int i = 0; i < juncNodes.getLength(); i++) {
-                Element j = (Element) juncNodes.item(i);
-                if (!j.hasAttribute("shape")) continue;
-                String jId = j.hasAttribute("id") ? j.getAttribute("id") : "";
-                boolean isTl = false;
-                if (j.hasAttribute("type")) {
-                    String t = j.getAttribute("type");
-                    // net.xml commonly uses 'traffic_light' for TLS-controlled junctions.
-                    isTl = (t != null) && (t.toLowerCase().contains("traffic_light"));
-                    if ("internal".equalsIgnoreCase(t)) continue;
-                }
-                // Skip internal helper junctions
-                List<Point2D> poly = view.parseShape(j.getAttribute("shape"));
-                if (poly.isEmpty()) continue;
-                view.junctions.add(new JunctionShape(jId, isTl, poly));
-                allPoints.addAll(poly);
-                if (isTl && jId != null && !jId.isEmpty()) {
-                    Point2D c = MapView.centroid(poly);
-                    if (c != null) {
-                        view.trafficLightMarkers.add(new TextMarker("TL " + jId, c));
-                    }
-                }
-            }
-
-            NodeList laneNodes = doc.getElementsByTagName("lane");
-            for (int i = 0; i < laneNodes.getLength(); i++) {
-                Element lane = (Element) laneNodes.item(i);
-                if (!lane.hasAttribute("shape")) continue;
-                String laneId = lane.hasAttribute("id") ? lane.getAttribute("id") : null;
-                String shape = lane.getAttribute("shape");
-                String allow = lane.hasAttribute("allow") ? lane.getAttribute("allow") : "";
-                String disallow = lane.hasAttribute("disallow") ? lane.getAttribute("disallow") : "";
-                double width = 3.2;
-                if (lane.hasAttribute("width")) {
-                    try {
-                        width = Double.parseDouble(lane.getAttribute("width"));
-                    } catch (NumberFormatException ignored) {}
-                }
-                List<Point2D> polyline = view.parseShape(shape);
-                if (polyline.isEmpty()) continue;
-                LaneShape ls = new LaneShape(laneId, polyline, width, allow, disallow);
-                view.lanes.add(ls);
-                if (laneId != null && !laneId.isEmpty()) {
-                    view.lanesById.put(laneId, ls);
-                }
-                allPoints.addAll(polyline);
-                laneCount++;
-            }
-
-            // Parse connections to identify internal connector lanes used by bicycle movements.
-            // This is the most robust way to decide which ":..." lanes should be drawn as dashed
-            // bicycle guides (matches SUMO behavior without map-specific rules).
-            NodeList connNodes = doc.getElementsByTagName("connection");
-            for (int i = 0; i < connNodes.getLength(); i++) {
-                Element c = (Element) connNodes.item(i);
-                if (!c.hasAttribute("via")) continue;
-                String via = c.getAttribute("via");
-                if (via == null || via.isEmpty()) continue;
-
-                String fromEdge = c.hasAttribute("from") ? c.getAttribute("from") : "";
-                String toEdge = c.hasAttribute("to") ? c.getAttribute("to") : "";
-                String fromLane = c.hasAttribute("fromLane") ? c.getAttribute("fromLane") : "";
-                String toLane = c.hasAttribute("toLane") ? c.getAttribute("toLane") : "";
-
-                boolean fromBike = false;
-                boolean toBike = false;
-
-                if (!fromEdge.isEmpty() && !fromLane.isEmpty()) {
-                    LaneShape fl = view.lanesById.get(fromEdge + "_" + fromLane);
-                    fromBike = (fl != null) && fl.bikeOnly;
-                }
-                if (!toEdge.isEmpty() && !toLane.isEmpty()) {
-                    LaneShape tl = view.lanesById.get(toEdge + "_" + toLane);
-                    toBike = (tl != null) && tl.bikeOnly;
-                }
-
-                // If lane indices are missing/unusual, fall back to checking whether the edge has ANY bike-only lane.
-                if (!fromBike && !fromEdge.isEmpty() && fromLane.isEmpty()) {
-                    for (LaneShape l : view.lanes) {
-                        if (l == null) continue;
-                        if (!fromEdge.equals(l.edgeId)) continue;
-                        if (l.bikeOnly) { fromBike = true; break; }
-                    }
-                }
-                if (!toBike && !toEdge.isEmpty() && toLane.isEmpty()) {
-                    for (LaneShape l : view.lanes) {
-                        if (l == null) continue;
-                        if (!toEdge.equals(l.edgeId)) continue;
-                        if (l.bikeOnly) { toBike = true; break; }
-                    }
-                }
-
-                if (fromBike || toBike) {
-                    view.bicycleConnectorLaneIds.add(via);
-                }
-            }
-
-            // Build edge label positions from lanes (one label per edge).
-            for (LaneShape lane : view.lanes) {
-                if (lane == null || lane.edgeId == null || lane.edgeId.isEmpty()) continue;
-                if (lane.edgeId.startsWith(":")) continue;
-                if (view.edgeLabelWorldPos.containsKey(lane.edgeId)) continue;
-                Point2D p = MapView.pointAlongPolyline(lane.polyline, 0.55);
-                if (p != null) {
-                    view.edgeLabelWorldPos.put(lane.edgeId, p);
-                }
-            }
-
-            if (!allPoints.isEmpty()) {
-                view.minX = allPoints.stream().mapToDouble(Point2D::getX).min().orElse(0);
-                view.maxX = allPoints.stream().mapToDouble(Point2D::getX).max().orElse(1);
-                view.minY = allPoints.stream().mapToDouble(Point2D::getY).min().orElse(0);
-                view.maxY = allPoints.stream().mapToDouble(Point2D::getY).max().orElse(1);
-            } else {
-                view.minX = view.maxX = view.minY = view.maxY = 0;
-            }
-
-            MapView.LOGGER.info(String.format(Locale.US,
-                    "Loaded %d lanes. Bounds x:[%.2f, %.2f] y:[%.2f, %.2f]",
-                    laneCount, view.minX, view.maxX, view.minY, view.maxY));
-        } catch (Exception e) {
-            MapView.LOGGER.log(java.util.logging.Level.WARNING, "Failed to load network", e);
-        }
-
-        view.offsetX = 0;
-        view.offsetY = 0;
-        view.userScale = 1.0;
-        view.computeBaseScale();
-        view.clampOffsets();
-        view.backgroundDirty = true;
-        view.redraw();
-        return laneCount;
+        NetworkData data = parseNetworkFile(view, netFile);
+        applyNetworkData(view, data);
+        return data.laneCount;
     }
 
     static final class NetworkData {
@@ -205,20 +54,33 @@ final class MapViewNetwork {
         final java.util.HashSet<String> bicycleConnectorLaneIds = new java.util.HashSet<>();
         double minX = 0, maxX = 1, minY = 0, maxY = 1;
         int laneCount = 0;
+        // Built after parsing (XML or compiled), see deriveRenderData()
+        MapViewSpatialIndex laneIndex;
+        MapViewSpatialIndex junctionIndex;
+
+        /**
+         * Computes everything rendering needs that depends only on the network:
+         * spatial indexes and road markings (see MapViewRoadGeometry).
+         */
+        void deriveRenderData() {
+            long start = System.nanoTime();
+            List<PackedPolyline> laneShapes = new ArrayList<>(lanes.size());
+            for (LaneShape l : lanes) laneShapes.add(l.polyline);
+            List<PackedPolyline> junctionShapes = new ArrayList<>(junctions.size());
+            for (JunctionShape j : junctions) junctionShapes.add(j.polygon);
+            laneIndex = MapViewSpatialIndex.build(laneShapes);
+            junctionIndex = MapViewSpatialIndex.build(junctionShapes);
+            MapViewRoadGeometry.derive(lanes, edgesById, bicycleConnectorLaneIds);
+            MapView.LOGGER.fine(String.format(Locale.US, "Derived render data for %d lanes in %.1f ms",
+                    lanes.size(), (System.nanoTime() - start) / 1e6));
+        }
     }
 
     static void loadNetworkAsync(MapView view, File netFile, IntConsumer onDone) {
         // If missing file, just clear and return quickly.
         if (netFile == null || !netFile.exists()) {
             Platform.runLater(() -> {
-                view.lanes.clear();
-                view.lanesById.clear();
-                view.junctions.clear();
-                view.edgeLabelWorldPos.clear();
-                view.trafficLightMarkers.clear();
-                view.minX = 0; view.maxX = 1; view.minY = 0; view.maxY = 1;
-                view.backgroundDirty = true;
-                view.redraw();
+                applyNetworkData(view, null);
                 if (onDone != null) onDone.accept(0);
             });
             return;
@@ -236,166 +98,212 @@ final class MapViewNetwork {
     }
 
     private static NetworkData parseNetworkFile(MapView view, File netFile) {
-        NetworkData out = new NetworkData();
-        try {
-            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(netFile);
-            doc.getDocumentElement().normalize();
-            List<Point2D> allPoints = new ArrayList<>();
-
-            NodeList edgeNodes = doc.getElementsByTagName("edge");
-            for (int i = 0; i < edgeNodes.getLength(); i++) {
-                Element e = (Element) edgeNodes.item(i);
-                if (!e.hasAttribute("id")) continue;
-                String edgeId = e.getAttribute("id");
-                if (edgeId == null || edgeId.isEmpty()) continue;
-                String function = e.hasAttribute("function") ? e.getAttribute("function") : "";
-                if (edgeId.startsWith(":") || "internal".equalsIgnoreCase(function)) continue;
-                String from = e.hasAttribute("from") ? e.getAttribute("from") : "";
-                String to = e.hasAttribute("to") ? e.getAttribute("to") : "";
-                String name = e.hasAttribute("name") ? e.getAttribute("name") : "";
-                out.edgesById.put(edgeId, new EdgeInfo(edgeId, from, to, name, function));
-            }
-
-            NodeList juncNodes = doc.getElementsByTagName("junction");
-            for (int i = 0; i < juncNodes.getLength(); i++) {
-                Element j = (Element) juncNodes.item(i);
-                if (!j.hasAttribute("shape")) continue;
-                String jId = j.hasAttribute("id") ? j.getAttribute("id") : "";
-                boolean isTl = false;
-                if (j.hasAttribute("type")) {
-                    String t = j.getAttribute("type");
-                    isTl = (t != null) && (t.toLowerCase().contains("traffic_light"));
-                    if ("internal".equalsIgnoreCase(t)) continue;
-                }
-                List<Point2D> poly = view.parseShape(j.getAttribute("shape"));
-                if (poly.isEmpty()) continue;
-                out.junctions.add(new JunctionShape(jId, isTl, poly));
-                allPoints.addAll(poly);
-
-                if (isTl && jId != null && !jId.isEmpty()) {
-                    Point2D c = MapView.centroid(poly);
-                    if (c != null) {
-                        out.trafficLightMarkers.add(new TextMarker("TL " + jId, c));
-                    }
-                }
-            }
+        NetworkData compiled = MapViewNetworkCache.load(netFile);
+        if (compiled != null) {
+            compiled.deriveRenderData();
+            return compiled;
+        }
 
-            NodeList laneNodes = doc.getElementsByTagName("lane");
-            for (int i = 0; i < laneNodes.getLength(); i++) {
-                Element lane = (Element) laneNodes.item(i);
-                if (!lane.hasAttribute("shape")) continue;
-                String laneId = lane.hasAttribute("id") ? lane.getAttribute("id") : null;
-                String shape = lane.getAttribute("shape");
-                String allow = lane.hasAttribute("allow") ? lane.getAttribute("allow") : "";
-                String disallow = lane.hasAttribute("disallow") ? lane.getAttribute("disallow") : "";
-                double width = 3.2;
-                if (lane.hasAttribute("width")) {
-                    try {
-                        width = Double.parseDouble(lane.getAttribute("width"));
-                    } catch (NumberFormatException ignored) {}
-                }
-                List<Point2D> polyline = view.parseShape(shape);
-                if (polyline.isEmpty()) continue;
-                LaneShape ls = new LaneShape(laneId, polyline, width, allow, disallow);
-                out.lanes.add(ls);
-                if (laneId != null && !laneId.isEmpty()) {
-                    out.lanesById.put(laneId, ls);
-                }
-                allPoints.addAll(polyline);
-                out.laneCount++;
+        NetworkData out = new NetworkData();
+        long start = System.nanoTime();
+        try (InputStream in = openNetworkStream(netFile)) {
+            XMLStreamReader xml = newInputFactory().createXMLStreamReader(in);
+            try {
+                parseElements(view, xml, out);
+            } finally {
+                xml.close();
             }
+            MapView.LOGGER.info(String.format(Locale.US,
+                    "Loaded %d lanes in %d ms. Bounds x:[%.2f, %.2f] y:[%.2f, %.2f]",
+                    out.laneCount, (System.nanoTime() - start) / 1_000_000,
+                    out.minX, out.maxX, out.minY, out.maxY));
+            MapViewNetworkCache.store(netFile, out);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            MapView.LOGGER.log(java.util.logging.Level.WARNING, "Failed to load network", e);
+        }
+        out.deriveRenderData();
+        return out;
+    }
 
-            // Identify bicycle connector internals via SUMO <connection via="...">.
-            NodeList connNodes = doc.getElementsByTagName("connection");
-            for (int i = 0; i < connNodes.getLength(); i++) {
-                Element c = (Element) connNodes.item(i);
-                if (!c.hasAttribute("via")) continue;
-                String via = c.getAttribute("via");
-                if (via == null || via.isEmpty()) continue;
-
-                String fromEdge = c.hasAttribute("from") ? c.getAttribute("from") : "";
-                String toEdge = c.hasAttribute("to") ? c.getAttribute("to") : "";
-                String fromLane = c.hasAttribute("fromLane") ? c.getAttribute("fromLane") : "";
-                String toLane = c.hasAttribute("toLane") ? c.getAttribute("toLane") : "";
+    /**
+     * Opens the network file, transparently decompressing gzip content
+     * (recognized by its magic bytes, independent of the file name).
+     */
+    private static InputStream openNetworkStream(File netFile) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(Files.newInputStream(netFile.toPath()), 1 << 16);
+        in.mark(2);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.reset();
+        if (b0 == 0x1f && b1 == 0x8b) {
+            return new GZIPInputStream(in, 1 << 16);
+        }
+        return in;
+    }
 
-                boolean fromBike = false;
-                boolean toBike = false;
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        return factory;
+    }
 
-                if (!fromEdge.isEmpty() && !fromLane.isEmpty()) {
-                    LaneShape fl = out.lanesById.get(fromEdge + "_" + fromLane);
-                    fromBike = (fl != null) && fl.bikeOnly;
-                }
-                if (!toEdge.isEmpty() && !toLane.isEmpty()) {
-                    LaneShape tl = out.lanesById.get(toEdge + "_" + toLane);
-                    toBike = (tl != null) && tl.bikeOnly;
+    /**
+     * Single pass over the document. Edges, junctions and lanes are converted as
+     * they stream by; connections are only remembered (via + endpoints) and
+     * resolved at the end, once every lane is known.
+     */
+    private static void parseElements(MapView view, XMLStreamReader xml, NetworkData out) throws XMLStreamException {
+        List<String[]> viaConnections = new ArrayList<>();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+        while (xml.hasNext()) {
+            if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+            PackedPolyline shape = null;
+
+            switch (xml.getLocalName()) {
+                case "edge": {
+                    // Parse edges (from/to) so we can reliably detect opposite-direction pairs.
+                    String edgeId = xml.getAttributeValue(null, "id");
+                    if (edgeId == null || edgeId.isEmpty()) break;
+                    String function = attr(xml, "function");
+                    if (edgeId.startsWith(":") || "internal".equalsIgnoreCase(function)) break;
+                    out.edgesById.put(edgeId, new EdgeInfo(edgeId, attr(xml, "from"), attr(xml, "to"),
+                            attr(xml, "name"), function));
+                    break;
                 }
-
-                if (!fromBike && !fromEdge.isEmpty() && fromLane.isEmpty()) {
-                    for (LaneShape l : out.lanes) {
-                        if (l == null) continue;
-                        if (!fromEdge.equals(l.edgeId)) continue;
-                        if (l.bikeOnly) { fromBike = true; break; }
+                case "junction": {
+                    // Junction shapes give the black junction areas like SUMO GUI
+                    String shapeAttr = xml.getAttributeValue(null, "shape");
+                    if (shapeAttr == null) break;
+                    String jId = attr(xml, "id");
+                    String t = xml.getAttributeValue(null, "type");
+                    // Skip internal helper junctions
+                    if ("internal".equalsIgnoreCase(t)) break;
+                    // net.xml commonly uses 'traffic_light' for TLS-controlled junctions.
+                    boolean isTl = (t != null) && t.toLowerCase(Locale.ROOT).contains("traffic_light");
+                    shape = view.parseShape(shapeAttr);
+                    if (shape.isEmpty()) break;
+                    out.junctions.add(new JunctionShape(jId, isTl, shape));
+                    if (isTl && !jId.isEmpty()) {
+                        Point2D c = MapView.centroid(shape);
+                        if (c != null) {
+                            out.trafficLightMarkers.add(new TextMarker("TL " + jId, c));
+                        }
                     }
+                    break;
                 }
-                if (!toBike && !toEdge.isEmpty() && toLane.isEmpty()) {
-                    for (LaneShape l : out.lanes) {
-                        if (l == null) continue;
-                        if (!toEdge.equals(l.edgeId)) continue;
-                        if (l.bikeOnly) { toBike = true; break; }
+                case "lane": {
+                    String shapeAttr = xml.getAttributeValue(null, "shape");
+                    if (shapeAttr == null) break;
+                    String laneId = xml.getAttributeValue(null, "id");
+                    double width = 3.2;
+                    String widthAttr = xml.getAttributeValue(null, "width");
+                    if (widthAttr != null) {
+                        try {
+                            width = Double.parseDouble(widthAttr);
+                        } catch (NumberFormatException ignored) {}
+                    }
+                    shape = view.parseShape(shapeAttr);
+                    if (shape.isEmpty()) break;
+                    LaneShape ls = new LaneShape(laneId, shape, width, attr(xml, "allow"), attr(xml, "disallow"));
+                    out.lanes.add(ls);
+                    if (laneId != null && !laneId.isEmpty()) {
+                        out.lanesById.put(laneId, ls);
                     }
+                    out.laneCount++;
+                    break;
                 }
-
-                if (fromBike || toBike) {
-                    out.bicycleConnectorLaneIds.add(via);
+                case "connection": {
+                    String via = xml.getAttributeValue(null, "via");
+                    if (via == null || via.isEmpty()) break;
+                    viaConnections.add(new String[] {
+                            via, attr(xml, "from"), attr(xml, "fromLane"), attr(xml, "to"), attr(xml, "toLane")
+                    });
+                    break;
                 }
+                default:
+                    break;
             }
 
-            for (LaneShape lane : out.lanes) {
-                if (lane == null || lane.edgeId == null || lane.edgeId.isEmpty()) continue;
-                if (lane.edgeId.startsWith(":")) continue;
-                if (out.edgeLabelWorldPos.containsKey(lane.edgeId)) continue;
-                Point2D p = MapView.pointAlongPolyline(lane.polyline, 0.55);
-                if (p != null) {
-                    out.edgeLabelWorldPos.put(lane.edgeId, p);
-                }
+            if (shape != null && !shape.isEmpty()) {
+                minX = Math.min(minX, shape.minX);
+                maxX = Math.max(maxX, shape.maxX);
+                minY = Math.min(minY, shape.minY);
+                maxY = Math.max(maxY, shape.maxY);
             }
+        }
 
-            if (!allPoints.isEmpty()) {
-                out.minX = allPoints.stream().mapToDouble(Point2D::getX).min().orElse(0);
-                out.maxX = allPoints.stream().mapToDouble(Point2D::getX).max().orElse(1);
-                out.minY = allPoints.stream().mapToDouble(Point2D::getY).min().orElse(0);
-                out.maxY = allPoints.stream().mapToDouble(Point2D::getY).max().orElse(1);
-            } else {
-                out.minX = out.maxX = out.minY = out.maxY = 0;
+        for (String[] c : viaConnections) {
+            if (isBikeConnection(out, c[1], c[2]) || isBikeConnection(out, c[3], c[4])) {
+                out.bicycleConnectorLaneIds.add(c[0]);
             }
-        } catch (Exception e) {
-            MapView.LOGGER.log(java.util.logging.Level.WARNING, "Failed to load network (async)", e);
         }
-        return out;
-    }
 
-    private static void applyNetworkData(MapView view, NetworkData data) {
-        view.lanes.clear();
-        view.lanesById.clear();
-        view.junctions.clear();
-        view.edgeLabelWorldPos.clear();
-        view.trafficLightMarkers.clear();
-        view.edgesById.clear();
-        view.bicycleConnectorLaneIds.clear();
+        // Build edge label positions from lanes (one label per edge).
+        for (LaneShape lane : out.lanes) {
+            if (lane == null || lane.edgeId == null || lane.edgeId.isEmpty()) continue;
+            if (lane.edgeId.startsWith(":")) continue;
+            if (out.edgeLabelWorldPos.containsKey(lane.edgeId)) continue;
+            Point2D p = MapView.pointAlongPolyline(lane.polyline, 0.55);
+            if (p != null) {
+                out.edgeLabelWorldPos.put(lane.edgeId, p);
+            }
+        }
+
+        if (minX <= maxX) {
+            out.minX = minX;
+            out.maxX = maxX;
+            out.minY = minY;
+            out.maxY = maxY;
+        } else {
+            out.minX = out.maxX = out.minY = out.maxY = 0;
+        }
+    }
 
-        if (data != null) {
-            view.lanes.addAll(data.lanes);
-            view.lanesById.putAll(data.lanesById);
-            view.edgesById.putAll(data.edgesById);
-            view.junctions.addAll(data.junctions);
-            view.edgeLabelWorldPos.putAll(data.edgeLabelWorldPos);
-            view.trafficLightMarkers.addAll(data.trafficLightMarkers);
-            view.bicycleConnectorLaneIds.addAll(data.bicycleConnectorLaneIds);
-            view.minX = data.minX;
-            view.maxX = data.maxX;
-            view.minY = data.minY;
-            view.maxY = data.maxY;
+    /**
+     * Connections whose endpoint is a bike-only lane mark their internal "via" lane
+     * as a bicycle connector, drawn as a dashed guide (matches SUMO behavior without
+     * map-specific rules).
+     */
+    private static boolean isBikeConnection(NetworkData data, String edge, String laneIndex) {
+        if (edge.isEmpty()) return false;
+        if (!laneIndex.isEmpty()) {
+            LaneShape l = data.lanesById.get(edge + "_" + laneIndex);
+            return (l != null) && l.bikeOnly;
+        }
+        // If lane indices are missing/unusual, fall back to checking whether the edge has ANY bike-only lane.
+        for (LaneShape l : data.lanes) {
+            if (l != null && l.bikeOnly && edge.equals(l.edgeId)) return true;
         }
+        return false;
+    }
+
+    private static String attr(XMLStreamReader xml, String name) {
+        String v = xml.getAttributeValue(null, name);
+        return (v != null) ? v : "";
+    }
+
+    private static void applyNetworkData(MapView view, NetworkData data) {
+        // Background tile workers read these collections, so they are replaced wholesale
+        // (never modified in place); the tile cache drops everything rendered from the old ones.
+        view.tileCache.invalidate();
+        if (data == null) data = new NetworkData();
+        view.lanes = data.lanes;
+        view.lanesById = data.lanesById;
+        view.edgesById = data.edgesById;
+        view.junctions = data.junctions;
+        view.edgeLabelWorldPos = data.edgeLabelWorldPos;
+        view.trafficLightMarkers = data.trafficLightMarkers;
+        view.bicycleConnectorLaneIds = data.bicycleConnectorLaneIds;
+        view.laneIndex = data.laneIndex;
+        view.junctionIndex = data.junctionIndex;
+        view.minX = data.minX;
+        view.maxX = data.maxX;
+        view.minY = data.minY;
+        view.maxY = data.maxY;
 
         view.offsetX = 0;
         view.offsetY = 0;
@@ -0,0 +1,365 @@
+import javafx.geometry.Point2D;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Compiled (binary) form of a parsed network for {@link MapView}.
+ *
+ * The first load of a .net.xml parses the XML and writes the resulting
+ * {@link MapViewNetwork.NetworkData} to {@code settings/network-cache/}; later loads
+ * memory-map that file and skip XML parsing, shape parsing, label placement
+ * and bounds computation altogether.
+ *
+ * File layout (big-endian, 4-byte aligned sections):
+ * <pre>
+ *   header     magic, version, source size + mtime, bounds, section counts
+ *   strings    offsets[n + 1] into one UTF-8 blob (IDs, names, permissions)
+ *   edges      id, from, to, name, function (string indexes)
+ *   junctions  id, flags, first point, point count, bounds, marker x/y
+ *   lanes      id, allow, disallow, width, first point, point count, bounds
+ *   labels     edge, x, y
+ *   bicycle    connector lane IDs (string indexes)
+ *   points     packed float x/y pairs for all junction and lane shapes
+ * </pre>
+ *
+ * {@link #load} builds the edge, junction, lane and label records in one pass,
+ * but never reads shape vertices: lane and junction shapes are
+ * {@link PackedPolyline} views over the mapped point section, created from the
+ * bounds stored with each record. Vertices are paged in and decoded only when a
+ * shape is drawn or measured, and stay out of the Java heap.
+ * Entries are matched to their source by absolute path, size and modification
+ * time; a mismatch simply recompiles.
+ */
+final class MapViewNetworkCache {
+    private MapViewNetworkCache() {}
+
+    private static final int MAGIC = 0x4D564E42; // "MVNB"
+    private static final int FORMAT_VERSION = 2; // 2: shape bounds in the records
+    private static final int FLAG_TRAFFIC_LIGHT = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 * 8 + 9 * 4;
+
+    private static final Path CACHE_DIRECTORY = Paths.get("settings", "network-cache");
+
+    /**
+     * Loads the compiled form of the network if it exists and matches the source file.
+     * @return network data read from the compiled file, or null if it must be parsed from XML
+     */
+    static MapViewNetwork.NetworkData load(File netFile) {
+        Path file = cacheFileFor(netFile);
+        if (file == null || !Files.isRegularFile(file)) return null;
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) return null;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION) return null;
+            if (buf.getLong() != netFile.length() || buf.getLong() != netFile.lastModified()) return null;
+
+            MapViewNetwork.NetworkData out = new MapViewNetwork.NetworkData();
+            out.minX = buf.getDouble();
+            out.maxX = buf.getDouble();
+            out.minY = buf.getDouble();
+            out.maxY = buf.getDouble();
+            out.laneCount = buf.getInt();
+            int stringCount = buf.getInt();
+            int edgeCount = buf.getInt();
+            int junctionCount = buf.getInt();
+            int laneCount = buf.getInt();
+            int labelCount = buf.getInt();
+            int bikeCount = buf.getInt();
+            int pointCount = buf.getInt();
+            buf.getInt(); // reserved
+
+            String[] strings = readStrings(buf, stringCount);
+
+            // The point section is at the end; locate it first so shapes can reference it.
+            int sectionsStart = buf.position();
+            int pointsStart = sectionsStart + edgeCount * 5 * 4 + junctionCount * 10 * 4
+                    + laneCount * 10 * 4 + labelCount * 3 * 4 + bikeCount * 4;
+            FloatBuffer points = buf.duplicate().position(pointsStart).slice().asFloatBuffer();
+            if (points.capacity() < pointCount * 2) return null;
+
+            for (int i = 0; i < edgeCount; i++) {
+                String id = str(strings, buf.getInt());
+                out.edgesById.put(id, new EdgeInfo(id, str(strings, buf.getInt()), str(strings, buf.getInt()),
+                        str(strings, buf.getInt()), str(strings, buf.getInt())));
+            }
+            for (int i = 0; i < junctionCount; i++) {
+                String id = str(strings, buf.getInt());
+                boolean isTl = (buf.getInt() & FLAG_TRAFFIC_LIGHT) != 0;
+                PackedPolyline poly = readShape(points, buf);
+                float cx = buf.getFloat();
+                float cy = buf.getFloat();
+                out.junctions.add(new JunctionShape(id, isTl, poly));
+                if (isTl && !id.isEmpty()) {
+                    out.trafficLightMarkers.add(new TextMarker("TL " + id, new Point2D(cx, cy)));
+                }
+            }
+            for (int i = 0; i < laneCount; i++) {
+                String id = str(strings, buf.getInt());
+                String allow = str(strings, buf.getInt());
+                String disallow = str(strings, buf.getInt());
+                double width = buf.getFloat();
+                PackedPolyline polyline = readShape(points, buf);
+                LaneShape ls = new LaneShape(id, polyline, width, allow, disallow);
+                out.lanes.add(ls);
+                if (id != null && !id.isEmpty()) {
+                    out.lanesById.put(id, ls);
+                }
+            }
+            for (int i = 0; i < labelCount; i++) {
+                String edge = str(strings, buf.getInt());
+                out.edgeLabelWorldPos.put(edge, new Point2D(buf.getFloat(), buf.getFloat()));
+            }
+            for (int i = 0; i < bikeCount; i++) {
+                out.bicycleConnectorLaneIds.add(str(strings, buf.getInt()));
+            }
+
+            MapView.LOGGER.info(String.format("Loaded compiled network %s in %d ms (%d lanes)",
+                    file.getFileName(), (System.nanoTime() - start) / 1_000_000, out.laneCount));
+            return out;
+        } catch (IOException | RuntimeException e) {
+            MapView.LOGGER.log(Level.WARNING, "Ignoring unreadable compiled network " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the compiled form of freshly parsed network data. Failures are logged only;
+     * the caller already has the data.
+     */
+    static void store(File netFile, MapViewNetwork.NetworkData data) {
+        Path file = cacheFileFor(netFile);
+        if (file == null || data == null) return;
+
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int pointCount = 0;
+        for (JunctionShape j : data.junctions) pointCount += j.polygon.size();
+        for (LaneShape l : data.lanes) pointCount += l.polyline.size();
+
+        Path tmp = null;
+        try {
+            Files.createDirectories(CACHE_DIRECTORY);
+            tmp = Files.createTempFile(CACHE_DIRECTORY, "network-", ".tmp");
+
+            // Sections reference strings by index, so intern everything before writing.
+            int[] edgeRefs = new int[data.edgesById.size() * 5];
+            int k = 0;
+            for (EdgeInfo e : data.edgesById.values()) {
+                edgeRefs[k++] = intern(e.edgeId, stringIndex, strings);
+                edgeRefs[k++] = intern(e.from, stringIndex, strings);
+                edgeRefs[k++] = intern(e.to, stringIndex, strings);
+                edgeRefs[k++] = intern(e.name, stringIndex, strings);
+                edgeRefs[k++] = intern(e.function, stringIndex, strings);
+            }
+            int[] junctionIds = new int[data.junctions.size()];
+            for (int i = 0; i < junctionIds.length; i++) {
+                junctionIds[i] = intern(data.junctions.get(i).id, stringIndex, strings);
+            }
+            int[] laneRefs = new int[data.lanes.size() * 3];
+            k = 0;
+            for (LaneShape l : data.lanes) {
+                laneRefs[k++] = intern(l.laneId, stringIndex, strings);
+                laneRefs[k++] = intern(l.allow, stringIndex, strings);
+                laneRefs[k++] = intern(l.disallow, stringIndex, strings);
+            }
+            List<Map.Entry<String, Point2D>> labels = new ArrayList<>(data.edgeLabelWorldPos.entrySet());
+            int[] labelIds = new int[labels.size()];
+            for (int i = 0; i < labelIds.length; i++) {
+                labelIds[i] = intern(labels.get(i).getKey(), stringIndex, strings);
+            }
+            int[] bikeIds = new int[data.bicycleConnectorLaneIds.size()];
+            k = 0;
+            for (String id : data.bicycleConnectorLaneIds) {
+                bikeIds[k++] = intern(id, stringIndex, strings);
+            }
+            Map<String, Point2D> markerById = new HashMap<>();
+            for (TextMarker m : data.trafficLightMarkers) {
+                markerById.put(m.text, m.world);
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(netFile.length());
+                out.writeLong(netFile.lastModified());
+                out.writeDouble(data.minX);
+                out.writeDouble(data.maxX);
+                out.writeDouble(data.minY);
+                out.writeDouble(data.maxY);
+                out.writeInt(data.laneCount);
+                out.writeInt(strings.size());
+                out.writeInt(data.edgesById.size());
+                out.writeInt(data.junctions.size());
+                out.writeInt(data.lanes.size());
+                out.writeInt(labels.size());
+                out.writeInt(bikeIds.length);
+                out.writeInt(pointCount);
+                out.writeInt(0); // reserved
+
+                writeStrings(out, strings);
+                for (int ref : edgeRefs) out.writeInt(ref);
+
+                int nextPoint = 0;
+                for (int i = 0; i < junctionIds.length; i++) {
+                    JunctionShape j = data.junctions.get(i);
+                    out.writeInt(junctionIds[i]);
+                    out.writeInt(j.hasTrafficLight ? FLAG_TRAFFIC_LIGHT : 0);
+                    out.writeInt(nextPoint);
+                    out.writeInt(j.polygon.size());
+                    nextPoint += j.polygon.size();
+                    writeBounds(out, j.polygon);
+                    Point2D marker = markerById.get("TL " + j.id);
+                    out.writeFloat(marker != null ? (float) marker.getX() : 0f);
+                    out.writeFloat(marker != null ? (float) marker.getY() : 0f);
+                }
+                for (int i = 0; i < data.lanes.size(); i++) {
+                    LaneShape l = data.lanes.get(i);
+                    out.writeInt(laneRefs[i * 3]);
+                    out.writeInt(laneRefs[i * 3 + 1]);
+                    out.writeInt(laneRefs[i * 3 + 2]);
+                    out.writeFloat((float) l.widthMeters);
+                    out.writeInt(nextPoint);
+                    out.writeInt(l.polyline.size());
+                    nextPoint += l.polyline.size();
+                    writeBounds(out, l.polyline);
+                }
+                for (int i = 0; i < labelIds.length; i++) {
+                    Point2D p = labels.get(i).getValue();
+                    out.writeInt(labelIds[i]);
+                    out.writeFloat((float) p.getX());
+                    out.writeFloat((float) p.getY());
+                }
+                for (int id : bikeIds) out.writeInt(id);
+
+                for (JunctionShape j : data.junctions) writeShape(out, j.polygon);
+                for (LaneShape l : data.lanes) writeShape(out, l.polyline);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException | RuntimeException e) {
+            MapView.LOGGER.log(Level.WARNING, "Failed to write compiled network " + file, e);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // best effort
+                }
+            }
+        }
+    }
+
+    /**
+     * @return cache file for the network, named by a hash of its absolute path; null if unavailable
+     */
+    private static Path cacheFileFor(File netFile) {
+        if (netFile == null) return null;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(netFile.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(48);
+            for (int i = 0; i < 16; i++) {
+                name.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return CACHE_DIRECTORY.resolve(name.append(".netbin").toString());
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private static int intern(String s, Map<String, Integer> index, List<String> strings) {
+        if (s == null) return -1;
+        Integer existing = index.get(s);
+        if (existing != null) return existing;
+        int id = strings.size();
+        strings.add(s);
+        index.put(s, id);
+        return id;
+    }
+
+    private static String str(String[] strings, int index) {
+        return (index >= 0) ? strings[index] : null;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        byte[][] encoded = new byte[strings.size()][];
+        int offset = 0;
+        out.writeInt(0);
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            offset += encoded[i].length;
+            out.writeInt(offset);
+        }
+        for (byte[] b : encoded) out.write(b);
+        for (int pad = (4 - (offset & 3)) & 3; pad > 0; pad--) out.writeByte(0);
+    }
+
+    private static String[] readStrings(MappedByteBuffer buf, int count) {
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i <= count; i++) offsets[i] = buf.getInt();
+        int blobStart = buf.position();
+        byte[] blob = new byte[offsets[count]];
+        buf.get(blob);
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) {
+            out[i] = new String(blob, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+        buf.position(blobStart + ((blob.length + 3) & ~3));
+        return out;
+    }
+
+    private static void writeShape(DataOutputStream out, PackedPolyline shape) throws IOException {
+        for (int i = 0, n = shape.size(); i < n; i++) {
+            out.writeFloat((float) shape.x(i));
+            out.writeFloat((float) shape.y(i));
+        }
+    }
+
+    // Bounds of float vertices are floats, so storing them as floats loses nothing.
+    private static void writeBounds(DataOutputStream out, PackedPolyline shape) throws IOException {
+        out.writeFloat((float) shape.minX);
+        out.writeFloat((float) shape.minY);
+        out.writeFloat((float) shape.maxX);
+        out.writeFloat((float) shape.maxY);
+    }
+
+    // Reads first point, point count and bounds of a record; the vertices stay in the mapping.
+    private static PackedPolyline readShape(FloatBuffer points, MappedByteBuffer buf) {
+        int first = buf.getInt();
+        int count = buf.getInt();
+        float minX = buf.getFloat();
+        float minY = buf.getFloat();
+        float maxX = buf.getFloat();
+        float maxY = buf.getFloat();
+        if (first < 0 || count < 0 || ((long) first + count) * 2 > points.capacity()) {
+            throw new IllegalArgumentException("shape outside point section");
+        }
+        if (count == 0) return PackedPolyline.EMPTY;
+        return new PackedPolyline(points, first * 2, count, minX, minY, maxX, maxY);
+    }
+}
@@ -0,0 +1,311 @@
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Software rasterizer backend for the vehicle overlay of {@link MapView}.
+ *
+ * The FX thread only records each vehicle glyph as a few convex polygons (body outline, body,
+ * windows, lights) with a premultiplied ARGB color. The polygons are then binned into horizontal
+ * bands and the bands are filled in parallel on the fork-join pool into an int[] that backs a
+ * {@link PixelBuffer}; the FX thread finally presents the buffer as one image. Glyphs are not
+ * anti-aliased. Buffers and band tasks are reused between frames.
+ */
+final class MapViewOverlayRaster {
+
+    private static final int BAND_ROWS = 32;
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int YELLOW = argb(Color.YELLOW);
+    private static final int RED = argb(Color.RED);
+
+    // Target buffer
+    private int width;
+    private int height;
+    private int[] pixels = new int[0];
+    private PixelBuffer<IntBuffer> pixelBuffer;
+    private WritableImage image;
+
+    // Recorded polygons (up to 4 vertices each), in painting order
+    private int polyCount;
+    private float[] xs = new float[4 * 256];
+    private float[] ys = new float[4 * 256];
+    private byte[] vertexCount = new byte[256];
+    private int[] colors = new int[256];
+    private int[] minRow = new int[256];
+    private int[] maxRow = new int[256];
+
+    // Band -> polygon indices (CSR)
+    private int bandCount;
+    private int[] bandStart = new int[1];
+    private int[] bandPolys = new int[256];
+    private BandTask[] tasks = new BandTask[0];
+    @SuppressWarnings("serial") // never serialized
+    private final RecursiveAction root = new RecursiveAction() {
+        @Override
+        protected void compute() {
+            for (BandTask t : tasks) t.reinitialize();
+            invokeAll(tasks);
+        }
+    };
+
+    /**
+     * Starts a frame of the given size (clears nothing yet; bands clear themselves).
+     */
+    void begin(double w, double h) {
+        int wi = Math.max(1, (int) Math.ceil(w));
+        int hi = Math.max(1, (int) Math.ceil(h));
+        if (wi != width || hi != height || image == null) {
+            width = wi;
+            height = hi;
+            pixels = new int[wi * hi];
+            pixelBuffer = new PixelBuffer<>(wi, hi, IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+            image = new WritableImage(pixelBuffer);
+            bandCount = (hi + BAND_ROWS - 1) / BAND_ROWS;
+            bandStart = new int[bandCount + 1];
+            tasks = new BandTask[bandCount];
+            for (int i = 0; i < bandCount; i++) tasks[i] = new BandTask(i);
+        }
+        polyCount = 0;
+    }
+
+    /**
+     * Rasterizes the recorded glyphs in parallel and draws the result.
+     */
+    void finish(GraphicsContext g) {
+        rasterize();
+        pixelBuffer.updateBuffer(pb -> null); // whole buffer changed
+        g.drawImage(image, 0, 0);
+    }
+
+    // Fills the buffer from the recorded polygons (no FX thread needed).
+    void rasterize() {
+        binPolygons();
+        root.reinitialize();
+        ForkJoinPool.commonPool().invoke(root);
+    }
+
+    /**
+     * @return premultiplied ARGB of a pixel after {@link #rasterize()}
+     */
+    int pixel(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    void addCar(double cx, double cy, double fx, double fy, double rx, double ry,
+                double length, Color color, Color windowColor) {
+        double bodyWidth = length * 0.45;
+        double halfLen = length / 2.0;
+        double halfWid = bodyWidth / 2.0;
+        addQuad(cx, cy, fx, fy, rx, ry, halfLen + 0.5, -halfLen - 0.5, halfWid + 0.5, WHITE);
+        addQuad(cx, cy, fx, fy, rx, ry, halfLen, -halfLen, halfWid, argb(color));
+
+        double windowLen = length * 0.2;
+        double windowOffset = halfLen - windowLen * 0.8;
+        addQuad(cx, cy, fx, fy, rx, ry, windowOffset, windowOffset - windowLen, bodyWidth * 0.3, argb(windowColor));
+
+        double lightSize = bodyWidth * 0.22;
+        double lightOffset = halfLen - lightSize * 0.5;
+        double lightSide = halfWid - lightSize * 0.3;
+        addLight(cx + fx * lightOffset + rx * lightSide, cy + fy * lightOffset + ry * lightSide, lightSize, YELLOW);
+        addLight(cx + fx * lightOffset - rx * lightSide, cy + fy * lightOffset - ry * lightSide, lightSize, YELLOW);
+    }
+
+    void addBus(double cx, double cy, double fx, double fy, double rx, double ry,
+                double length, double bodyWidth, Color color, Color windowColor) {
+        double halfLen = length / 2.0;
+        double halfWid = bodyWidth / 2.0;
+        addQuad(cx, cy, fx, fy, rx, ry, halfLen + 0.6, -halfLen - 0.6, halfWid + 0.6, WHITE);
+        addQuad(cx, cy, fx, fy, rx, ry, halfLen, -halfLen, halfWid, argb(color));
+
+        int window = argb(windowColor);
+        double windowLen = length * 0.08;
+        double windowSpacing = length * 0.18;
+        double firstWindowOffset = halfLen - windowLen * 1.2;
+        for (int w = 0; w < 4; w++) {
+            double windowOffset = firstWindowOffset - w * windowSpacing;
+            addQuad(cx, cy, fx, fy, rx, ry, windowOffset, windowOffset - windowLen, bodyWidth * 0.275, window);
+        }
+
+        double lightSize = bodyWidth * 0.25;
+        double lightOffset = halfLen - lightSize * 0.4;
+        double lightSide = halfWid - lightSize * 0.2;
+        double tailOffset = -halfLen + lightSize * 0.4;
+        addLight(cx + fx * lightOffset + rx * lightSide, cy + fy * lightOffset + ry * lightSide, lightSize, YELLOW);
+        addLight(cx + fx * lightOffset - rx * lightSide, cy + fy * lightOffset - ry * lightSide, lightSize, YELLOW);
+        addLight(cx + fx * tailOffset + rx * lightSide, cy + fy * tailOffset + ry * lightSide, lightSize, RED);
+        addLight(cx + fx * tailOffset - rx * lightSide, cy + fy * tailOffset - ry * lightSide, lightSize, RED);
+    }
+
+    void addTriangle(double cx, double cy, double fx, double fy, double rx, double ry, double halfLen, Color color) {
+        double halfWid = halfLen * 0.6;
+        int p = newPolygon(3, argb(color));
+        setVertex(p, 0, cx + fx * halfLen, cy + fy * halfLen);
+        setVertex(p, 1, cx - fx * halfLen + rx * halfWid, cy - fy * halfLen + ry * halfWid);
+        setVertex(p, 2, cx - fx * halfLen - rx * halfWid, cy - fy * halfLen - ry * halfWid);
+        finishPolygon(p);
+    }
+
+    void addPoint(double x, double y, double size, Color color) {
+        addLight(x, y, size, argb(color));
+    }
+
+    // Axis-aligned square (lights and points are too small for the round shape to matter)
+    private void addLight(double x, double y, double size, int color) {
+        double r = size * 0.5;
+        int p = newPolygon(4, color);
+        setVertex(p, 0, x - r, y - r);
+        setVertex(p, 1, x + r, y - r);
+        setVertex(p, 2, x + r, y + r);
+        setVertex(p, 3, x - r, y + r);
+        finishPolygon(p);
+    }
+
+    // Quad spanning [back, front] along the forward vector and +-halfWid across it
+    private void addQuad(double cx, double cy, double fx, double fy, double rx, double ry,
+                         double front, double back, double halfWid, int color) {
+        int p = newPolygon(4, color);
+        setVertex(p, 0, cx + fx * front + rx * halfWid, cy + fy * front + ry * halfWid);
+        setVertex(p, 1, cx + fx * front - rx * halfWid, cy + fy * front - ry * halfWid);
+        setVertex(p, 2, cx + fx * back - rx * halfWid, cy + fy * back - ry * halfWid);
+        setVertex(p, 3, cx + fx * back + rx * halfWid, cy + fy * back + ry * halfWid);
+        finishPolygon(p);
+    }
+
+    private int newPolygon(int vertices, int color) {
+        int p = polyCount++;
+        if (p == colors.length) {
+            int cap = p * 2;
+            xs = Arrays.copyOf(xs, cap * 4);
+            ys = Arrays.copyOf(ys, cap * 4);
+            vertexCount = Arrays.copyOf(vertexCount, cap);
+            colors = Arrays.copyOf(colors, cap);
+            minRow = Arrays.copyOf(minRow, cap);
+            maxRow = Arrays.copyOf(maxRow, cap);
+        }
+        vertexCount[p] = (byte) vertices;
+        colors[p] = color;
+        return p;
+    }
+
+    private void setVertex(int p, int i, double x, double y) {
+        xs[p * 4 + i] = (float) x;
+        ys[p * 4 + i] = (float) y;
+    }
+
+    private void finishPolygon(int p) {
+        float y0 = Float.POSITIVE_INFINITY;
+        float y1 = Float.NEGATIVE_INFINITY;
+        for (int i = 0, n = vertexCount[p]; i < n; i++) {
+            float y = ys[p * 4 + i];
+            if (y < y0) y0 = y;
+            if (y > y1) y1 = y;
+        }
+        // Rows whose pixel centers (row + 0.5) can fall inside
+        minRow[p] = Math.max(0, (int) Math.ceil(y0 - 0.5));
+        maxRow[p] = Math.min(height - 1, (int) Math.floor(y1 - 0.5));
+        if (minRow[p] > maxRow[p]) polyCount--; // off screen or thinner than a pixel row
+    }
+
+    private void binPolygons() {
+        int[] start = bandStart;
+        Arrays.fill(start, 0);
+        int total = 0;
+        for (int p = 0; p < polyCount; p++) {
+            int b0 = minRow[p] / BAND_ROWS;
+            int b1 = maxRow[p] / BAND_ROWS;
+            for (int b = b0; b <= b1; b++) start[b + 1]++;
+            total += b1 - b0 + 1;
+        }
+        for (int b = 0; b < bandCount; b++) start[b + 1] += start[b];
+        if (bandPolys.length < total) bandPolys = new int[Math.max(total, bandPolys.length * 2)];
+
+        // Fill in painting order; start[b] is used as the cursor and restored afterwards.
+        for (int p = 0; p < polyCount; p++) {
+            for (int b = minRow[p] / BAND_ROWS, b1 = maxRow[p] / BAND_ROWS; b <= b1; b++) {
+                bandPolys[start[b]++] = p;
+            }
+        }
+        for (int b = bandCount; b > 0; b--) start[b] = start[b - 1];
+        start[0] = 0;
+    }
+
+    private void rasterizeBand(int band) {
+        int row0 = band * BAND_ROWS;
+        int row1 = Math.min(height, row0 + BAND_ROWS) - 1;
+        Arrays.fill(pixels, row0 * width, (row1 + 1) * width, 0);
+
+        for (int k = bandStart[band], end = bandStart[band + 1]; k < end; k++) {
+            int p = bandPolys[k];
+            int color = colors[p];
+            int n = vertexCount[p];
+            int base = p * 4;
+            int y0 = Math.max(row0, minRow[p]);
+            int y1 = Math.min(row1, maxRow[p]);
+            for (int y = y0; y <= y1; y++) {
+                // Convex polygon: the scanline crosses its outline in one interval.
+                double sy = y + 0.5;
+                double left = Double.POSITIVE_INFINITY;
+                double right = Double.NEGATIVE_INFINITY;
+                for (int i = 0, j = n - 1; i < n; j = i++) {
+                    double ay = ys[base + j];
+                    double by = ys[base + i];
+                    if ((ay <= sy) == (by <= sy)) continue;
+                    double ax = xs[base + j];
+                    double x = ax + (sy - ay) * (xs[base + i] - ax) / (by - ay);
+                    if (x < left) left = x;
+                    if (x > right) right = x;
+                }
+                if (left > right) continue; // scanline only touches a vertex
+                int x0 = Math.max(0, (int) Math.ceil(left - 0.5));
+                int x1 = Math.min(width - 1, (int) Math.floor(right - 0.5));
+                if (x0 > x1) continue;
+                int row = y * width;
+                if ((color >>> 24) == 0xFF) {
+                    Arrays.fill(pixels, row + x0, row + x1 + 1, color);
+                } else {
+                    for (int x = x0; x <= x1; x++) pixels[row + x] = over(color, pixels[row + x]);
+                }
+            }
+        }
+    }
+
+    // Source-over for premultiplied ARGB
+    private static int over(int src, int dst) {
+        int inv = 255 - (src >>> 24);
+        int a = (src >>> 24) + ((dst >>> 24) * inv + 127) / 255;
+        int r = ((src >> 16) & 0xFF) + (((dst >> 16) & 0xFF) * inv + 127) / 255;
+        int g = ((src >> 8) & 0xFF) + (((dst >> 8) & 0xFF) * inv + 127) / 255;
+        int b = (src & 0xFF) + ((dst & 0xFF) * inv + 127) / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    // Premultiplied ARGB
+    private static int argb(Color c) {
+        double a = c.getOpacity();
+        return ((int) Math.round(a * 255) << 24)
+                | ((int) Math.round(c.getRed() * a * 255) << 16)
+                | ((int) Math.round(c.getGreen() * a * 255) << 8)
+                | (int) Math.round(c.getBlue() * a * 255);
+    }
+
+    @SuppressWarnings("serial") // never serialized
+    private final class BandTask extends RecursiveAction {
+        private final int band;
+
+        BandTask(int band) {
+            this.band = band;
+        }
+
+        @Override
+        protected void compute() {
+            rasterizeBand(band);
+        }
+    }
+}
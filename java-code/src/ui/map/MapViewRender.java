@@ -1,6 +1,8 @@
 import javafx.application.Platform;
 import javafx.geometry.Point2D;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.StrokeLineCap;
 import javafx.scene.shape.StrokeLineJoin;
@@ -8,12 +10,10 @@ import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 
 /**
  * Rendering + interaction logic for {@link MapView}.
@@ -24,6 +24,21 @@ import java.util.Map.Entry;
 final class MapViewRender {
     private MapViewRender() {}
 
+    // Viewport culling margins for the background pass (see visibleWorldRect).
+    private static final double CULL_MARGIN_PX = 128.0;
+    private static final double CULL_MARGIN_METERS = 40.0;
+
+    static final Color GRASS = Color.web("#e8f5e9");
+    private static final Color SELECTION = Color.web("#1e88e5");
+
+    // A level of detail stays active until the count drops this far below its threshold (no flicker).
+    private static final double LOD_HYSTERESIS = 0.85;
+    private static final double POINT_SIZE_PX = 3.0;
+
+    // Picking tolerance for vehicles under the cursor
+    private static final double PICK_RADIUS_METERS = 3.0;
+    private static final double PICK_RADIUS_PX = 8.0;
+
     static void layoutCanvas(MapView view) {
         view.backgroundCanvas.setWidth(view.getWidth());
         view.backgroundCanvas.setHeight(view.getHeight());
@@ -41,7 +56,8 @@ final class MapViewRender {
     }
 
     static void updateBusStops(MapView view, List<String[]> busStopData) {
-        view.busStops.clear();
+        // Built into a fresh list and swapped in: background tile workers may be reading the old one.
+        List<BusStopMarker> stops = new ArrayList<>();
         if (busStopData != null) {
             for (String[] data : busStopData) {
                 if (data != null && data.length >= 5) {
@@ -58,11 +74,7 @@ final class MapViewRender {
                         if (lane != null && lane.polyline != null && lane.polyline.size() >= 2) {
                             marker.laneWidth = lane.widthMeters;
 
-                            // Calculate total lane length
-                            double laneLength = 0.0;
-                            for (int i = 1; i < lane.polyline.size(); i++) {
-                                laneLength += lane.polyline.get(i).distance(lane.polyline.get(i - 1));
-                            }
+                            double laneLength = lane.polyline.length();
                             if (laneLength > 0.001) {
                                 // Anchor to the START of the stop segment.
                                 // SUMO stops are defined as [startPos, endPos] along a lane; vehicles stop at that segment.
@@ -79,7 +91,7 @@ final class MapViewRender {
 
                         // Only add markers with valid computed positions
                         if (marker.worldPos != null) {
-                            view.busStops.add(marker);
+                            stops.add(marker);
                         }
                     } catch (NumberFormatException ignored) {
                         // Skip entries with invalid numeric data
@@ -87,7 +99,9 @@ final class MapViewRender {
                 }
             }
         }
-        MapView.LOGGER.info("Loaded " + view.busStops.size() + " bus stops for map rendering");
+        view.busStops = stops;
+        view.tileCache.invalidate();
+        MapView.LOGGER.info("Loaded " + stops.size() + " bus stops for map rendering");
         view.backgroundDirty = true;
         redraw(view);
     }
@@ -117,7 +131,12 @@ final class MapViewRender {
         }
         double scaleX = (w - 2 * view.padding) / (view.maxX - view.minX + 1e-6);
         double scaleY = (h - 2 * view.padding) / (view.maxY - view.minY + 1e-6);
-        view.baseScale = Math.max(0.0001, Math.min(scaleX, scaleY));
+        double scale = Math.max(0.0001, Math.min(scaleX, scaleY));
+        if (scale != view.baseScale) {
+            view.baseScale = scale;
+            // Tiles are keyed by level and position only; their strokes and markings depend on userScale.
+            view.tileCache.invalidate();
+        }
     }
 
     static void enableInteractions(MapView view) {
@@ -127,6 +146,14 @@ final class MapViewRender {
             evt.consume();
         });
 
+        view.setOnMouseClicked(evt -> {
+            // A drag (pan) also ends in a click event; only a click in place selects.
+            if (evt.getButton() != MouseButton.PRIMARY || !evt.isStillSincePress()) return;
+            view.selectVehicle(vehicleAt(view, evt.getX(), evt.getY()));
+        });
+
+        view.setOnMouseMoved(evt -> updateHoveredVehicle(view, evt.getX(), evt.getY()));
+
         view.setOnMousePressed(evt -> {
             view.lastMouseX = evt.getX();
             view.lastMouseY = evt.getY();
@@ -216,8 +243,6 @@ final class MapViewRender {
         g.fillRect(0, 0, w, h);
         if (w <= 0 || h <= 0) return;
 
-        double scale = view.baseScale * view.userScale;
-
         // No network loaded? Show hint.
         if (view.lanes.isEmpty()) {
             g.setFill(Color.web("#888888"));
@@ -226,8 +251,35 @@ final class MapViewRender {
             return;
         }
 
-        // Green grass background after config is loaded (network exists)
-        g.setFill(Color.web("#e8f5e9"));
+        // Green grass background after config is loaded (network exists);
+        // shows through where tiles are still being rendered.
+        g.setFill(GRASS);
+        g.fillRect(0, 0, w, h);
+
+        view.tileCache.composite(g, view.frame.setToView(view));
+        view.backgroundDirty = false;
+    }
+
+    /**
+     * Repaints the background from the tile cache (e.g. after new tiles arrived).
+     */
+    static void redrawBackground(MapView view) {
+        view.backgroundDirty = true;
+        redrawBackgroundIfNeeded(view);
+    }
+
+    /**
+     * Draws the static network (roads, junctions, labels, arrows, bus stops) into g through
+     * the given frame. Runs on background tile workers: it only reads view collections that
+     * are replaced wholesale on change, never modified in place, and only uses the frame's
+     * scratch buffers.
+     */
+    static void renderBackground(MapView view, GraphicsContext g, RenderFrame f) {
+        double w = f.width;
+        double h = f.height;
+        double scale = f.scale;
+
+        g.setFill(GRASS);
         g.fillRect(0, 0, w, h);
 
         Color roadEdge = Color.web("#000000");
@@ -242,21 +294,20 @@ final class MapViewRender {
         // Default stroke style for the scene.
         g.setLineJoin(StrokeLineJoin.ROUND);
 
+        // Viewport culling: only lanes/junctions whose bounding box touches the visible world
+        // rectangle (plus a margin) are drawn, so redraw cost follows what is on screen.
+        double[] visible = visibleWorldRect(f);
+        List<LaneShape> visibleLanes = visibleLanes(view, visible);
+        List<JunctionShape> visibleJunctions = visibleJunctions(view, visible);
+
         // Junction polygons (base intersection surface).
         // This is drawn BEFORE lane borders/separators so the junction doesn't become a gray "blob".
         // SUMO-GUI typically shows a clean junction surface; connector internals are optional.
         g.setFill(roadFill);
-        for (JunctionShape j : view.junctions) {
+        for (JunctionShape j : visibleJunctions) {
             if (j.polygon.isEmpty()) continue;
-            int n = j.polygon.size();
-            double[] xs = new double[n];
-            double[] ys = new double[n];
-            for (int i = 0; i < n; i++) {
-                Point2D tp = transform(view, j.polygon.get(i), h, scale);
-                xs[i] = tp.getX();
-                ys[i] = tp.getY();
-            }
-            g.fillPolygon(xs, ys, n);
+            int n = f.project(j.polygon);
+            g.fillPolygon(f.screenX, f.screenY, n);
         }
 
         // Lanes/roads
@@ -268,22 +319,8 @@ final class MapViewRender {
         //  2) Draw ONLY the outer road border (outermost lanes).
         //  3) Draw ONE separator per lane boundary (no duplicates).
 
-        // Precompute lane-index ranges per non-internal edge.
-        Map<String, int[]> edgeLaneRange = new HashMap<>(); // edgeId -> [minIdx,maxIdx]
-        Map<String, Map<Integer, LaneShape>> edgeLanesByIndex = new HashMap<>(); // edgeId -> (laneIndex -> lane)
-        for (LaneShape lane : view.lanes) {
-            if (lane == null || lane.edgeId == null || lane.edgeId.isEmpty()) continue;
-            if (lane.edgeId.startsWith(":")) continue; // internal lanes handled separately
-            if (lane.laneIndex < 0) continue;
-            edgeLanesByIndex.computeIfAbsent(lane.edgeId, k -> new HashMap<>()).put(lane.laneIndex, lane);
-            int[] mm = edgeLaneRange.get(lane.edgeId);
-            if (mm == null) {
-                edgeLaneRange.put(lane.edgeId, new int[]{lane.laneIndex, lane.laneIndex});
-            } else {
-                if (lane.laneIndex < mm[0]) mm[0] = lane.laneIndex;
-                if (lane.laneIndex > mm[1]) mm[1] = lane.laneIndex;
-            }
-        }
+        // Borders, separators, centerlines and arrow lanes are derived once per network
+        // (MapViewRoadGeometry); the passes below only transform and stroke them.
 
         // Roads: use square/flat caps so road ends look like rectangles (closer to SUMO GUI).
         // We restore ROUND caps later for arrows/markers.
@@ -292,7 +329,7 @@ final class MapViewRender {
         // Pass 1: draw road fill (continuous areas).
         // Draw motor lanes first, then special lanes (bike/ped) on top so their colors are not covered.
         for (int pass = 0; pass < 2; pass++) {
-            for (LaneShape lane : view.lanes) {
+            for (LaneShape lane : visibleLanes) {
                 if (lane == null || lane.polyline == null || lane.polyline.size() < 2) continue;
                 double laneScreenWidth = Math.max(1.5, lane.widthMeters * scale);
                 boolean internal = (lane.edgeId != null) && lane.edgeId.startsWith(":");
@@ -311,303 +348,71 @@ final class MapViewRender {
                 Color fill = roadFill;
                 if (lane.pedestrianOnly) fill = pedPathFill;
                 if (lane.bikeOnly) fill = bikeLaneFill;
-                strokePolyline(view, g, lane.polyline, h, scale, laneScreenWidth + 0.25, fill, null, StrokeLineCap.BUTT);
+                strokePolyline(f, g, lane.polyline, laneScreenWidth + 0.25, fill, null, StrokeLineCap.BUTT);
             }
         }
 
         // Pass 2: draw borders + separators for non-internal edges.
-        for (LaneShape lane : view.lanes) {
+        Color dashedSeparatorColor = Color.web("#f2f2f2").deriveColor(0, 1, 1, 0.90);
+        for (LaneShape lane : visibleLanes) {
             if (lane == null || lane.polyline == null || lane.polyline.size() < 2) continue;
-            if (lane.edgeId == null || lane.edgeId.isEmpty()) continue;
-            if (lane.edgeId.startsWith(":")) continue;
-            if (lane.laneIndex < 0) continue;
-            int[] mm = edgeLaneRange.get(lane.edgeId);
-            if (mm == null) continue;
 
             double laneScreenWidth = Math.max(1.5, lane.widthMeters * scale);
 
             // Outer border: only for outermost lanes.
             double borderW = view.clamp(laneScreenWidth * 0.22, 1.4, 2.8);
-            if (lane.laneIndex == mm[0]) {
+            if (lane.borderRight) {
                 // Rightmost lane (SUMO lane index 0 is rightmost in edge direction): draw right border.
-                drawLaneSingleEdge(view, g, lane.polyline, h, scale, laneScreenWidth, roadEdge, borderW, -1);
+                drawLaneSingleEdge(f, g, lane.polyline, laneScreenWidth, roadEdge, borderW, -1);
             }
-            if (lane.laneIndex == mm[1]) {
+            if (lane.borderLeft) {
                 // Leftmost lane: draw left border.
-                drawLaneSingleEdge(view, g, lane.polyline, h, scale, laneScreenWidth, roadEdge, borderW, +1);
+                drawLaneSingleEdge(f, g, lane.polyline, laneScreenWidth, roadEdge, borderW, +1);
             }
 
-            // Lane separator: draw one boundary per lane (between this lane and its neighbor).
-            // Using the right edge avoids duplicates when indices increase leftwards.
-            if (lane.laneIndex > mm[0]) {
-                double sepW = view.clamp(laneScreenWidth * 0.12, 0.9, 1.6);
-                boolean dash = false;
-                LaneShape neighbor = null;
-                Map<Integer, LaneShape> byIdx = edgeLanesByIndex.get(lane.edgeId);
-                if (byIdx != null) {
-                    // Find the immediate neighbor lane on the "right".
-                    // Some nets use non-contiguous lane indices, so laneIndex-1 may not exist.
-                    neighbor = byIdx.get(lane.laneIndex - 1);
-                    if (neighbor == null) {
-                        for (int idx = lane.laneIndex - 2; idx >= mm[0]; idx--) {
-                            neighbor = byIdx.get(idx);
-                            if (neighbor != null) break;
-                        }
-                    }
-                    // User rule:
-                    // - Dashed means 2+ lanes in SAME direction (within the same edge).
-                    // - Solid center divider means OPPOSITE directions (handled in Pass 2b).
-                    // Therefore: only dash between motor lanes within the edge.
-                    if (neighbor != null && LaneShape.isMotorLane(lane) && LaneShape.isMotorLane(neighbor)) {
-                        dash = true;
-                    }
-                } else {
-                    dash = false;
-                }
-                if (dash) {
-                    // SUMO shows same-direction multi-lane separators as dashed lines between lanes.
-                    // Use the midline between the two lane center polylines, not an offset boundary,
-                    // because some nets have irregular lane geometries where boundary-offset is wrong.
-                    List<Point2D> bAligned = (neighbor != null) ? neighbor.polyline : null;
-                    if (bAligned != null && lane.polyline != null && lane.polyline.size() >= 2 && bAligned.size() >= 2) {
-                        double dStart = lane.polyline.get(0).distance(bAligned.get(0));
-                        double dEnd = lane.polyline.get(0).distance(bAligned.get(bAligned.size() - 1));
-                        if (dEnd < dStart) {
-                            bAligned = new ArrayList<>(bAligned);
-                            java.util.Collections.reverse(bAligned);
-                        }
-                    }
-                    List<Point2D> center = buildAveragedCenterline(lane.polyline, bAligned, 32);
-                    if (center.size() >= 2) {
-                        strokePolyline(view, g, center, h, scale,
-                                view.clamp(sepW, 1.0, 1.8),
-                                Color.web("#f2f2f2").deriveColor(0, 1, 1, 0.90),
-                                new double[]{12, 12},
-                                StrokeLineCap.BUTT);
-                    }
-                } else {
-                    drawLaneSingleEdge(view, g, lane.polyline, h, scale, laneScreenWidth, laneLine, sepW, -1);
-                }
+            // Lane separator: one boundary per lane (between this lane and its right neighbor).
+            double sepW = view.clamp(laneScreenWidth * 0.12, 0.9, 1.6);
+            if (lane.dashedSeparator != null && lane.dashedSeparator.size() >= 2) {
+                // SUMO shows same-direction multi-lane separators as dashed lines between lanes.
+                strokePolyline(f, g, lane.dashedSeparator,
+                        view.clamp(sepW, 1.0, 1.8),
+                        dashedSeparatorColor,
+                        new double[]{12, 12},
+                        StrokeLineCap.BUTT);
+            } else if (lane.solidSeparator) {
+                drawLaneSingleEdge(f, g, lane.polyline, laneScreenWidth, laneLine, sepW, -1);
             }
         }
 
         // Pass 2b: solid centerline for two-way roads (opposite-direction edge pairs).
         // SUMO draws a solid divider between opposite-direction edges (A: from->to, B: to->from).
-        // We pair edges using net topology (from/to IDs) rather than geometry heuristics to avoid
-        // incorrect cross-pairing that can "destroy" the map.
         {
-            final class EdgeRep {
-                final String edgeId;
-                final List<LaneShape> motorLanes;
-                final Point2D start;
-                final Point2D end;
-                final double len;
-                final Point2D dir;
-
-                EdgeRep(String edgeId, List<LaneShape> motorLanes) {
-                    this.edgeId = edgeId;
-                    this.motorLanes = motorLanes;
-                    List<Point2D> p = motorLanes.get(0).polyline;
-                    this.start = p.get(0);
-                    this.end = p.get(p.size() - 1);
-                    this.len = polylineLength(p);
-                    // Use a direction estimate away from the junction endpoints.
-                    // Endpoints can include curved junction geometry which makes opposite edges
-                    // fail the dot-product test even though they are true two-way pairs.
-                    this.dir = polylineDirectionMid(p);
-                }
-            }
-
-            final class LanePair {
-                final LaneShape aLane;
-                final List<Point2D> bAligned;
-                final double avgDist;
-                LanePair(LaneShape aLane, List<Point2D> bAligned, double avgDist) {
-                    this.aLane = aLane;
-                    this.bAligned = bAligned;
-                    this.avgDist = avgDist;
-                }
-            }
-
-            java.util.function.BiFunction<EdgeRep, EdgeRep, LanePair> bestLanePair = (a, b) -> {
-                if (a == null || b == null) return null;
-                if (a.motorLanes == null || b.motorLanes == null) return null;
-                if (a.motorLanes.isEmpty() || b.motorLanes.isEmpty()) return null;
-                LaneShape bestA = null;
-                List<Point2D> bestBAligned = null;
-                double bestDist = Double.POSITIVE_INFINITY;
-
-                for (LaneShape la : a.motorLanes) {
-                    if (la == null || la.polyline == null || la.polyline.size() < 2) continue;
-                    for (LaneShape lb : b.motorLanes) {
-                        if (lb == null || lb.polyline == null || lb.polyline.size() < 2) continue;
-
-                        List<Point2D> bAligned = lb.polyline;
-                        double dStart = la.polyline.get(0).distance(bAligned.get(0));
-                        double dEnd = la.polyline.get(0).distance(bAligned.get(bAligned.size() - 1));
-                        if (dEnd < dStart) {
-                            bAligned = new ArrayList<>(bAligned);
-                            java.util.Collections.reverse(bAligned);
-                        }
-
-                        double avgDist = averagePolylineDistanceMid(la.polyline, bAligned, 18);
-                        if (avgDist < bestDist) {
-                            bestDist = avgDist;
-                            bestA = la;
-                            bestBAligned = bAligned;
-                        }
-                    }
-                }
-
-                if (bestA == null || bestBAligned == null || !Double.isFinite(bestDist)) return null;
-                return new LanePair(bestA, bestBAligned, bestDist);
-            };
-
-            Map<String, EdgeRep> repByEdge = new HashMap<>();
-            for (Map.Entry<String, int[]> e : edgeLaneRange.entrySet()) {
-                String edgeId = e.getKey();
-                int[] mm = e.getValue();
-                Map<Integer, LaneShape> byIdx = edgeLanesByIndex.get(edgeId);
-                if (byIdx == null) continue;
-
-                // Collect all MOTOR lanes for this edge.
-                // We'll later choose the lane that is closest to the opposite edge so the divider
-                // lands on the true median (works for 1-lane and multi-lane roads).
-                List<LaneShape> motor = new ArrayList<>();
-                for (int idx = mm[0]; idx <= mm[1]; idx++) {
-                    LaneShape cand = byIdx.get(idx);
-                    if (cand == null) continue;
-                    if (!LaneShape.isMotorLane(cand)) continue;
-                    if (cand.polyline == null || cand.polyline.size() < 2) continue;
-                    motor.add(cand);
-                }
-                // If the edge has no motor lane at all (pure sidewalk/bike edge), skip it.
-                if (!motor.isEmpty()) {
-                    // Keep ordering stable (lower lane index first) if possible.
-                    motor.sort(Comparator.comparingInt(ls -> ls.laneIndex));
-                    repByEdge.put(edgeId, new EdgeRep(edgeId, motor));
-                }
-            }
-
-            Map<String, List<EdgeRep>> repsByFromTo = new HashMap<>();
-            for (EdgeRep r : repByEdge.values()) {
-                EdgeInfo info = view.edgesById.get(r.edgeId);
-                if (info == null) continue;
-                if (info.from.isEmpty() || info.to.isEmpty()) continue;
-                String key = info.from + "->" + info.to;
-                repsByFromTo.computeIfAbsent(key, k -> new ArrayList<>()).add(r);
-            }
-
-            // Pair each edge with candidates that swap from/to; choose the best local match.
-            Map<String, String> pairs = new HashMap<>();
-            for (EdgeRep a : repByEdge.values()) {
-                if (pairs.containsKey(a.edgeId)) continue;
-                EdgeInfo ai = view.edgesById.get(a.edgeId);
-                if (ai == null || ai.from.isEmpty() || ai.to.isEmpty()) continue;
-
-                List<EdgeRep> candidates = repsByFromTo.get(ai.to + "->" + ai.from);
-                if (candidates == null || candidates.isEmpty()) continue;
-
-                // Strong preference: SUMO often uses opposite IDs like E62 and -E62.
-                // If that counterpart exists and is a candidate, pick it.
-                String preferredId = a.edgeId.startsWith("-") ? a.edgeId.substring(1) : ("-" + a.edgeId);
-                EdgeRep preferred = repByEdge.get(preferredId);
-                if (preferred != null && candidates.contains(preferred) && !pairs.containsKey(preferred.edgeId)) {
-                    pairs.put(a.edgeId, preferred.edgeId);
-                    pairs.put(preferred.edgeId, a.edgeId);
-                    continue;
-                }
-
-                EdgeRep best = null;
-                double bestScore = Double.POSITIVE_INFINITY;
-
-                for (EdgeRep b : candidates) {
-                    if (b == null) continue;
-                    if (b.edgeId.equals(a.edgeId)) continue;
-                    if (pairs.containsKey(b.edgeId)) continue;
-
-                    // Must be opposite direction visually.
-                    double dot = a.dir.getX() * b.dir.getX() + a.dir.getY() * b.dir.getY();
-                    if (dot > -0.55) continue;
-
-                    // Score using the closest motor-lane pair between the two edges.
-                    LanePair lp = bestLanePair.apply(a, b);
-                    if (lp == null) continue;
-                    double avgDist = lp.avgDist;
-                    double lenDiff = Math.abs(a.len - b.len);
-                    double score = avgDist + 0.05 * lenDiff;
-
-                    // Skip obviously-wrong pairs (too far apart).
-                    double maxDist = Math.max(7.0, Math.min(35.0, Math.min(a.len, b.len) * 0.20));
-                    if (avgDist > maxDist) continue;
-
-                    if (score < bestScore) {
-                        bestScore = score;
-                        best = b;
-                    }
-                }
-
-                if (best != null) {
-                    pairs.put(a.edgeId, best.edgeId);
-                    pairs.put(best.edgeId, a.edgeId);
-                }
-            }
-
-            // Draw each pair once.
-            java.util.HashSet<String> drawn = new java.util.HashSet<>();
-            for (Map.Entry<String, String> p : pairs.entrySet()) {
-                String aId = p.getKey();
-                String bId = p.getValue();
-                if (aId == null || bId == null) continue;
-                String canonical = (aId.compareTo(bId) < 0) ? (aId + "|" + bId) : (bId + "|" + aId);
-                if (drawn.contains(canonical)) continue;
-                drawn.add(canonical);
-
-                EdgeRep a = repByEdge.get(aId);
-                EdgeRep b = repByEdge.get(bId);
-                if (a == null || b == null) continue;
-
-                LanePair lp = bestLanePair.apply(a, b);
-                if (lp == null) continue;
-                List<Point2D> center = buildAveragedCenterline(lp.aLane.polyline, lp.bAligned, 30);
-                if (center.size() < 2) continue;
-
-                double wPx = view.clamp(1.4 * view.userScale, 1.2, 2.6);
-                strokePolyline(view, g, center, h, scale,
-                        wPx,
-                        Color.web("#f2f2f2").deriveColor(0, 1, 1, 0.95),
-                        null,
-                        StrokeLineCap.BUTT);
+            double wPx = view.clamp(1.4 * f.userScale, 1.2, 2.6);
+            Color divider = Color.web("#f2f2f2").deriveColor(0, 1, 1, 0.95);
+            for (LaneShape lane : visibleLanes) {
+                if (lane == null || lane.twoWayCenterline == null) continue;
+                strokePolyline(f, g, lane.twoWayCenterline, wPx, divider, null, StrokeLineCap.BUTT);
             }
         }
 
         // Pass 2c: dashed bicycle connector lanes inside junctions (SUMO-style).
         // SUMO shows bicycle turning connectors as dashed white curves over the junction surface.
-        // These are typically internal lanes whose edgeId starts with ':' and allow bicycles.
+        // These are internal lanes that are actual bicycle connectors according to SUMO connections,
+        // plus any internal lanes that are explicitly bike-only.
         {
-            double dashLen = view.clamp(6.0 * Math.sqrt(view.clamp(view.userScale, 1.0, 25.0)), 5.0, 14.0);
+            double dashLen = view.clamp(6.0 * Math.sqrt(view.clamp(f.userScale, 1.0, 25.0)), 5.0, 14.0);
             double[] dashes = new double[]{dashLen, dashLen};
             Color guide = Color.web("#f2f2f2").deriveColor(0, 1, 1, 0.75);
 
-            for (LaneShape lane : view.lanes) {
-                if (lane == null || lane.polyline == null || lane.polyline.size() < 2) continue;
-                if (lane.edgeId == null || !lane.edgeId.startsWith(":")) continue;
-                if (lane.pedestrianOnly) continue;
-
-                // Draw only internal lanes that are actual bicycle connectors according to SUMO connections,
-                // plus any internal lanes that are explicitly bike-only.
-                boolean isBikeConnector = lane.bikeOnly;
-                if (!isBikeConnector && lane.laneId != null && !lane.laneId.isEmpty()) {
-                    isBikeConnector = view.bicycleConnectorLaneIds.contains(lane.laneId);
-                }
-                if (!isBikeConnector) continue;
+            for (LaneShape lane : visibleLanes) {
+                if (lane == null || !lane.bikeConnector) continue;
 
                 double laneScreenWidth = Math.max(1.5, lane.widthMeters * scale);
                 double wPx = view.clamp(laneScreenWidth * 0.10, 0.9, 1.7);
 
                 // Use the previous style: dashed boundaries (reads like a dedicated connector lane).
-                drawLaneSingleEdge(view, g, lane.polyline, h, scale, laneScreenWidth, guide, wPx, -1, dashes);
-                drawLaneSingleEdge(view, g, lane.polyline, h, scale, laneScreenWidth, guide, wPx, +1, dashes);
+                drawLaneSingleEdge(f, g, lane.polyline, laneScreenWidth, guide, wPx, -1, dashes);
+                drawLaneSingleEdge(f, g, lane.polyline, laneScreenWidth, guide, wPx, +1, dashes);
             }
         }
 
@@ -617,11 +422,9 @@ final class MapViewRender {
         // NOTE: We only draw bicycle connector internals (not all connectors),
         // to match SUMO's visuals without cluttering the junction.
 
-        drawLabels(view, g, h, scale);
-        drawRoadDirectionArrows(view, g, h, scale, Color.web("#bdbdbd"));
-        drawBusStops(view, g, h, scale);
-
-        view.backgroundDirty = false;
+        drawLabels(view, f, g);
+        drawRoadDirectionArrows(f, g, visibleLanes, Color.web("#bdbdbd"));
+        drawBusStops(view, f, g);
     }
 
     private static void redrawOverlay(MapView view) {
@@ -629,7 +432,7 @@ final class MapViewRender {
         double h = view.canvas.getHeight();
         if (w <= 0 || h <= 0) return;
 
-        // Compute a single smoothing alpha for this redraw (prevents per-vehicle exp/nanoTime cost).
+        // Compute a single heading smoothing alpha for this redraw (prevents per-vehicle exp/nanoTime cost).
         long nowNs = System.nanoTime();
         double dtSec = (view.lastOverlayRedrawNs == 0L) ? 0.0 : Math.max(0.0, (nowNs - view.lastOverlayRedrawNs) / 1_000_000_000.0);
         view.lastOverlayRedrawNs = nowNs;
@@ -637,78 +440,118 @@ final class MapViewRender {
         double alpha = (dtSec <= 0.0) ? 0.30 : (1.0 - Math.exp(-dtSec / tauSec));
         view.headingSmoothingAlpha = view.clamp(alpha, 0.18, 0.95);
 
-        // Position smoothing alpha is based on its own time constant.
-        // We keep this separate from heading smoothing because position and rotation have different perceptual needs.
-        double posAlpha = (dtSec <= 0.0) ? 0.55 : (1.0 - Math.exp(-dtSec / Math.max(1e-6, view.positionSmoothingTauSec)));
-        posAlpha = view.clamp(posAlpha, 0.12, 0.98);
-
         GraphicsContext g = view.canvas.getGraphicsContext2D();
         // Overlay is transparent; clear only this canvas.
         g.clearRect(0, 0, w, h);
 
-        double scale = view.baseScale * view.userScale;
+        RenderFrame f = view.frame.setToView(view);
         if (view.lanes.isEmpty()) return;
 
-        // Vehicles
-        if (view.vehiclePositions != null) {
-            for (Entry<String, Point2D> e : view.vehiclePositions.entrySet()) {
-                String vehicleId = e.getKey();
-                Color c = Color.RED;
-                if (view.vehicleColors != null) {
-                    Color mapped = view.vehicleColors.get(vehicleId);
-                    if (mapped != null) c = mapped;
-                }
+        // Vehicles (only those the spatial index finds in view).
+        // Everything below reads and writes the vehicle arrays; nothing is allocated per vehicle.
+        MapViewVehicles v = view.vehicles;
+        if (v.size() > 0) {
+            double[] rect = visibleWorldRect(f);
+            int n = v.index.query(rect[0], rect[1], rect[2], rect[3]);
+            int[] visible = v.index.results();
+            OverlayDetail detail = chooseOverlayDetail(view, f, n);
+            // Software backend: glyphs are recorded here and rasterized in parallel after the loop.
+            MapViewOverlayRaster raster = null;
+            if (detail == OverlayDetail.DENSITY) {
+                view.densityRaster.draw(g, f, v, visible, n);
+                n = 0;
+            } else if (view.softwareOverlay) {
+                raster = view.overlayRaster;
+                raster.begin(w, h);
+            } else if (detail == OverlayDetail.DETAILED) {
+                view.vehicleSprites.beginFrame(view.userScale);
+            }
+            // Positions are predicted for the sim time of this frame, between (and past) the discrete updates.
+            double simNow = v.simTimeAt(nowNs);
+            for (int i = 0; i < n; i++) {
+                int k = visible[i];
+                v.place(k, simNow, nowNs);
+                // The heading follows the predicted position too (reduces direction jitter).
+                drawVehicleShape(view, f, g, v, k, detail, raster);
+            }
+            if (raster != null) raster.finish(g);
+        }
 
-                Point2D worldPos = e.getValue();
-
-                // Smooth the position for rendering to avoid visual jitter when TraCI updates are discrete.
-                // Snap if the vehicle teleports (e.g., reroute, insertion, wrap-around).
-                Point2D drawWorld = worldPos;
-                if (vehicleId != null && worldPos != null) {
-                    Point2D prevSmooth = view.smoothedVehicleWorldPos.get(vehicleId);
-                    if (prevSmooth == null) {
-                        prevSmooth = worldPos;
-                    } else {
-                        double d = prevSmooth.distance(worldPos);
-                        if (d >= view.positionSnapDistanceMeters) {
-                            prevSmooth = worldPos;
-                        } else {
-                            prevSmooth = new Point2D(
-                                    prevSmooth.getX() + (worldPos.getX() - prevSmooth.getX()) * posAlpha,
-                                    prevSmooth.getY() + (worldPos.getY() - prevSmooth.getY()) * posAlpha
-                            );
-                        }
-                    }
-                    view.smoothedVehicleWorldPos.put(vehicleId, prevSmooth);
-                    drawWorld = prevSmooth;
-                }
+        drawSelection(view, f, g);
 
-                LaneShape laneForHeading = null;
-                if (view.vehicleLaneIds != null) {
-                    String laneId = view.vehicleLaneIds.get(vehicleId);
-                    LaneShape lane = (laneId != null) ? view.lanesById.get(laneId) : null;
-                    laneForHeading = lane;
-                }
+        // Traffic light stop lines
+        drawTrafficLightStopLines(view, f, g);
+    }
 
-                Point2D tp = transform(view, drawWorld, h, scale);
+    /**
+     * Picks the overlay level of detail from the number of vehicles in view and the map scale.
+     */
+    private static OverlayDetail chooseOverlayDetail(MapView view, RenderFrame f, int visibleCount) {
+        OverlayDetail current = view.overlayDetail;
+        OverlayDetail detail = OverlayDetail.DETAILED;
+        if (exceeds(visibleCount, view.lodTrianglesAbove, current.compareTo(OverlayDetail.TRIANGLES) >= 0)) {
+            detail = OverlayDetail.TRIANGLES;
+        }
+        if (exceeds(visibleCount, view.lodPointsAbove, current.compareTo(OverlayDetail.POINTS) >= 0)) {
+            detail = OverlayDetail.POINTS;
+        }
+        if (exceeds(visibleCount, view.lodDensityAbove, current == OverlayDetail.DENSITY)) {
+            detail = OverlayDetail.DENSITY;
+        }
+        // Zoomed far out, a car is much shorter than its (minimum-size) shape; the shapes just pile up.
+        if (detail == OverlayDetail.DETAILED && f.scale < view.lodDetailMinPxPerMeter) {
+            detail = OverlayDetail.TRIANGLES;
+        }
+        view.overlayDetail = detail;
+        return detail;
+    }
 
-                Double angleDegrees = (view.vehicleAngles != null) ? view.vehicleAngles.get(vehicleId) : null;
+    private static boolean exceeds(int count, int threshold, boolean active) {
+        if (threshold <= 0) return false;
+        return count > (active ? threshold * LOD_HYSTERESIS : threshold);
+    }
 
-                String vehicleType = "car";
-                if (view.vehicleTypes != null && view.vehicleTypes.containsKey(vehicleId)) {
-                    vehicleType = view.vehicleTypes.get(vehicleId).toLowerCase();
-                }
+    private static void drawSelection(MapView view, RenderFrame f, GraphicsContext g) {
+        MapViewVehicles v = view.vehicles;
+        int h = v.handleOf(view.selectedVehicleId);
+        if (h < 0) return;
+        double wx = v.drawn[h] ? v.drawX[h] : v.x[h];
+        double wy = v.drawn[h] ? v.drawY[h] : v.y[h];
+        double r = Math.max(10.0, 4.0 * f.scale);
+        g.setLineDashes();
+        g.setStroke(SELECTION);
+        g.setLineWidth(2.5);
+        g.strokeOval(f.x(wx) - r, f.y(wy) - r, 2 * r, 2 * r);
+    }
 
-                // Pass the smoothed world position into heading computation too (reduces direction jitter).
-                drawVehicleShape(view, g, vehicleId, drawWorld, laneForHeading, tp.getX(), tp.getY(), angleDegrees, vehicleType, c, view.userScale);
-            }
-        }
+    /**
+     * @return ID of the vehicle closest to the view point, within a small pick radius, or null
+     */
+    static String vehicleAt(MapView view, double x, double y) {
+        RenderFrame f = view.frame.setToView(view);
+        double wx = (x - f.originX) / f.scale;
+        double wy = (f.originY - y) / f.scale;
+        // About half a car length, but never less than a few pixels when zoomed out.
+        double radius = Math.max(PICK_RADIUS_METERS, PICK_RADIUS_PX / f.scale);
+        int h = view.vehicles.nearestDrawn(wx, wy, radius, System.nanoTime());
+        return (h >= 0) ? view.vehicles.id[h] : null;
+    }
 
-        // Traffic light stop lines
-        drawTrafficLightStopLines(view, g, h, scale);
+    private static void updateHoveredVehicle(MapView view, double x, double y) {
+        String id = vehicleAt(view, x, y);
+        if (Objects.equals(id, view.hoveredVehicleId)) return;
+        view.hoveredVehicleId = id;
+        if (id == null) {
+            Tooltip.uninstall(view, view.vehicleTooltip);
+            return;
+        }
+        int h = view.vehicles.handleOf(id);
+        String type = (h >= 0) ? view.vehicles.type[h] : null;
+        view.vehicleTooltip.setText((type != null && !type.isEmpty()) ? id + " (" + type + ")" : id);
+        Tooltip.install(view, view.vehicleTooltip);
     }
 
-    private static void drawTrafficLightStopLines(MapView view, GraphicsContext g, double height, double scale) {
+    private static void drawTrafficLightStopLines(MapView view, RenderFrame f, GraphicsContext g) {
         // This function draws stop lines at the end of each signaled lane.
         // Sizes are clamped in screen pixels so they don't become huge when zooming.
         if (view.laneSignalColors == null || view.laneSignalColors.isEmpty()) return;
@@ -718,13 +561,13 @@ final class MapViewRender {
             if (lane == null || lane.polyline == null || lane.polyline.size() < 2) continue;
             int n = lane.polyline.size();
 
-            Point2D worldPrev = lane.polyline.get(n - 2);
-            Point2D worldEnd = lane.polyline.get(n - 1);
-            Point2D pPrev = transform(view, worldPrev, height, scale);
-            Point2D pEnd = transform(view, worldEnd, height, scale);
+            double prevX = f.x(lane.polyline.x(n - 2));
+            double prevY = f.y(lane.polyline.y(n - 2));
+            double endX = f.x(lane.polyline.x(n - 1));
+            double endY = f.y(lane.polyline.y(n - 1));
 
-            double dx = pEnd.getX() - pPrev.getX();
-            double dy = pEnd.getY() - pPrev.getY();
+            double dx = endX - prevX;
+            double dy = endY - prevY;
             double len = Math.hypot(dx, dy);
             if (len < 0.001) continue;
             double ux = dx / len;
@@ -761,9 +604,9 @@ final class MapViewRender {
             // Place the stop line a small, consistent distance before the lane end in *world meters*.
             // If this is in pixels, the world-distance changes with zoom and cars may appear to cross it.
             double backShiftMeters = view.clamp(lane.widthMeters * 0.20, 0.35, 0.85);
-            double backShiftPx = backShiftMeters * scale;
-            double cx = pEnd.getX() - ux * backShiftPx;
-            double cy = pEnd.getY() - uy * backShiftPx;
+            double backShiftPx = backShiftMeters * f.scale;
+            double cx = endX - ux * backShiftPx;
+            double cy = endY - uy * backShiftPx;
 
             double x1 = cx - nx * (lineLen / 2.0);
             double y1 = cy - ny * (lineLen / 2.0);
@@ -784,21 +627,23 @@ final class MapViewRender {
         }
     }
 
-    private static void drawBusStops(MapView view, GraphicsContext g, double height, double scale) {
-        if (view.busStops == null || view.busStops.isEmpty()) return;
+    private static void drawBusStops(MapView view, RenderFrame f, GraphicsContext g) {
+        List<BusStopMarker> busStops = view.busStops;
+        if (busStops == null || busStops.isEmpty()) return;
+        double scale = f.scale;
 
         // Colors for bus stop
         Color signYellow = Color.web("#FFD600");   // Yellow "H" sign
         Color signBorder = Color.web("#333333");   // Dark border
         Color waitingArea = Color.web("#B0BEC5"); // Light gray waiting area
 
-        for (BusStopMarker stop : view.busStops) {
+        for (BusStopMarker stop : busStops) {
             if (stop.worldPos == null) continue;
 
             // Transform bus stop world position (on the lane) to screen
-            Point2D tp = transform(view, stop.worldPos, height, scale);
-            double cx = tp.getX();
-            double cy = tp.getY();
+            double cx = f.x(stop.worldPos.getX());
+            double cy = f.y(stop.worldPos.getY());
+            if (isOffScreen(f, cx, cy)) continue;
 
             // Get lane direction for orientation
             Point2D dirWorld = (stop.direction != null) ? stop.direction : new Point2D(1.0, 0.0);
@@ -818,12 +663,12 @@ final class MapViewRender {
             // Size based on zoom
             // IMPORTANT: allow shrinking when zoomed out (userScale < 1)
             // so bus stops don't become huge/overlapping at far zoom.
-            double baseSize = view.clamp(6.0 + view.userScale * 2.0, 6.0, 30.0);
+            double baseSize = view.clamp(6.0 + f.userScale * 2.0, 6.0, 30.0);
             double laneWidthPx = stop.laneWidth * scale;
 
             // Zoom boost for "max zoom only" thickness increase
             // 0.0 at <=2x zoom, approaches 1.0 around >=4x zoom.
-            double zoomBoost = view.clamp((view.userScale - 2.0) / 2.0, 0.0, 1.0);
+            double zoomBoost = view.clamp((f.userScale - 2.0) / 2.0, 0.0, 1.0);
 
             // --- Draw waiting area (long and thick rectangle at road edge) ---
             // The stop rectangle represents the stop segment length.
@@ -889,7 +734,7 @@ final class MapViewRender {
                 String label = (stop.name != null && !stop.name.isEmpty()) ? stop.name : stop.id;
                 if (label != null && !label.isEmpty()) {
                     Font oldFont = g.getFont();
-                    double labelFontSize = view.clamp(10.0 + (view.userScale - 1.0) * 2.0, 10.0, 16.0);
+                    double labelFontSize = view.clamp(10.0 + (f.userScale - 1.0) * 2.0, 10.0, 16.0);
                     g.setFont(Font.font(labelFontSize));
 
                     // Match the same label style as road edges and traffic lights
@@ -901,25 +746,29 @@ final class MapViewRender {
         }
     }
 
-    private static void drawLabels(MapView view, GraphicsContext g, double height, double scale) {
+    private static void drawLabels(MapView view, RenderFrame f, GraphicsContext g) {
         // Reduce clutter: only show labels when zoomed in enough.
-        if (scale < 0.8) return;
-        double fontSize = view.clamp(10.0 + (view.userScale - 1.0) * 2.0, 10.0, 16.0);
+        if (f.scale < 0.8) return;
+        double fontSize = view.clamp(10.0 + (f.userScale - 1.0) * 2.0, 10.0, 16.0);
         g.setFont(Font.font(fontSize));
 
         // Edge labels
         for (Entry<String, Point2D> e : view.edgeLabelWorldPos.entrySet()) {
-            Point2D tp = transform(view, e.getValue(), height, scale);
-            drawTag(g, tp.getX(), tp.getY(), e.getKey(), Color.WHITE, Color.web("#333333"));
+            double x = f.x(e.getValue().getX());
+            double y = f.y(e.getValue().getY());
+            if (isOffScreen(f, x, y)) continue;
+            drawTag(g, x, y, e.getKey(), Color.WHITE, Color.web("#333333"));
         }
 
         // Traffic light labels
         for (TextMarker tl : view.trafficLightMarkers) {
-            Point2D tp = transform(view, tl.world, height, scale);
+            double x = f.x(tl.world.getX());
+            double y = f.y(tl.world.getY());
+            if (isOffScreen(f, x, y)) continue;
             // Small marker dot
             g.setFill(Color.web("#ffcc00"));
-            g.fillOval(tp.getX() - 2.5, tp.getY() - 2.5, 5, 5);
-            drawTag(g, tp.getX() + 6, tp.getY() - 6, tl.text, Color.WHITE, Color.web("#333333"));
+            g.fillOval(x - 2.5, y - 2.5, 5, 5);
+            drawTag(g, x + 6, y - 6, tl.text, Color.WHITE, Color.web("#333333"));
         }
     }
 
@@ -939,130 +788,174 @@ final class MapViewRender {
         g.fillText(text, x, y);
     }
 
-    private static void drawVehicleShape(MapView view, GraphicsContext g, String vehicleId, Point2D worldPos, LaneShape lane,
-                                         double x, double y, Double angleDegrees,
-                                         String vehicleType, Color color, double scale) {
+    /**
+     * @param raster software backend to record the glyph in, or null to draw on the canvas
+     */
+    private static void drawVehicleShape(MapView view, RenderFrame f, GraphicsContext g, MapViewVehicles v, int h,
+                                         OverlayDetail detail, MapViewOverlayRaster raster) {
+        if (detail == OverlayDetail.POINTS) {
+            // No heading at this level; keep the motion reference current for when shapes return.
+            double x = f.x(v.drawX[h]);
+            double y = f.y(v.drawY[h]);
+            if (raster != null) {
+                raster.addPoint(x, y, POINT_SIZE_PX, v.color[h]);
+            } else {
+                g.setFill(v.color[h]);
+                g.fillRect(x - POINT_SIZE_PX * 0.5, y - POINT_SIZE_PX * 0.5, POINT_SIZE_PX, POINT_SIZE_PX);
+            }
+            v.lastX[h] = v.drawX[h];
+            v.lastY[h] = v.drawY[h];
+            v.drawn[h] = true;
+            return;
+        }
+
         // This function computes a stable heading direction:
         // 1) Prefer motion direction (best for lane changes)
         // 2) Prefer lane tangent when speed is ~0 (stable at stops)
         // 3) Prefer SUMO angle (works even if position updates are throttled)
         // For SUMO angle, we auto-detect the convention to avoid 90°-off headings.
-        Point2D dirWorld = null;
-
-        Point2D prevWorld = (vehicleId != null) ? view.lastVehicleWorldPos.get(vehicleId) : null;
-        Point2D movementDirWorld = null;
-        if (prevWorld != null && worldPos != null) {
-            double mdx = worldPos.getX() - prevWorld.getX();
-            double mdy = worldPos.getY() - prevWorld.getY();
-            double mlen = Math.hypot(mdx, mdy);
-            if (mlen > 1e-6) {
-                movementDirWorld = new Point2D(mdx / mlen, mdy / mlen);
-            }
-        }
-
-        Point2D laneDirWorld = null;
-        if (lane != null && lane.polyline != null && lane.polyline.size() >= 2 && worldPos != null) {
-            laneDirWorld = MapViewGeometry.laneTangentAt(worldPos, lane.polyline);
-        }
-
-        // (1) Motion direction (world coordinates)
-        if (movementDirWorld != null) {
-            dirWorld = movementDirWorld;
-        }
-
-        // (2) If we're not moving (or missing prev), use lane tangent for stability.
-        if (dirWorld == null && laneDirWorld != null) {
-            dirWorld = laneDirWorld;
-        }
-
-        // (3) SUMO angle (world coordinates) when available.
-        if (dirWorld == null && angleDegrees != null) {
+        double px = v.drawX[h];
+        double py = v.drawY[h];
+        boolean drawn = v.drawn[h];
+        double dirX;
+        double dirY;
+
+        double mdx = drawn ? px - v.lastX[h] : 0.0;
+        double mdy = drawn ? py - v.lastY[h] : 0.0;
+        double mlen = Math.hypot(mdx, mdy);
+        LaneShape lane = v.lane[h];
+        double[] t = f.vec;
+        double angleDegrees = v.angle[h];
+
+        if (mlen > 1e-6) {
+            // (1) Motion direction (world coordinates)
+            dirX = mdx / mlen;
+            dirY = mdy / mlen;
+        } else if (lane != null && MapViewGeometry.laneTangentAt(px, py, lane.polyline, t)) {
+            // (2) If we're not moving (or missing prev), use lane tangent for stability.
+            dirX = t[0];
+            dirY = t[1];
+        } else if (!Double.isNaN(angleDegrees)) {
+            // (3) SUMO angle (world coordinates) when available.
             double angleRad = Math.toRadians(angleDegrees);
 
             // Two common conventions seen in projects:
             // A) 0° = East (+X), 90° = North (+Y)  => (cos, sin)
             // B) 0° = North (+Y), 90° = East (+X)  => (sin, cos)
-            Point2D candA = new Point2D(Math.cos(angleRad), Math.sin(angleRad));
-            Point2D candB = new Point2D(Math.sin(angleRad), Math.cos(angleRad));
-
-            Point2D ref = (movementDirWorld != null) ? movementDirWorld : laneDirWorld;
-            if (ref == null && vehicleId != null) {
+            double cos = Math.cos(angleRad);
+            double sin = Math.sin(angleRad);
+            dirX = cos;
+            dirY = sin;
+            if (drawn) {
                 // Use previous smoothed direction as a tie-breaker (convert back to world-like by unflipping Y).
-                Point2D prevScreen = view.smoothedVehicleDir.get(vehicleId);
-                if (prevScreen != null) {
-                    ref = new Point2D(prevScreen.getX(), -prevScreen.getY());
+                double refX = v.dirX[h];
+                double refY = -v.dirY[h];
+                double dotA = cos * refX + sin * refY;
+                double dotB = sin * refX + cos * refY;
+                if (dotB > dotA) {
+                    dirX = sin;
+                    dirY = cos;
                 }
             }
-
-            if (ref != null) {
-                double dotA = candA.getX() * ref.getX() + candA.getY() * ref.getY();
-                double dotB = candB.getX() * ref.getX() + candB.getY() * ref.getY();
-                dirWorld = (dotA >= dotB) ? candA : candB;
-            } else {
-                dirWorld = candA;
-            }
+        } else {
+            // (4) Final fallback
+            dirX = 1.0;
+            dirY = 0.0;
         }
 
-        // (4) Final fallback
-        if (dirWorld == null) dirWorld = new Point2D(1.0, 0.0);
-
         // Convert world direction to screen direction (screen Y is flipped)
-        Point2D dirScreen = new Point2D(dirWorld.getX(), -dirWorld.getY());
-        dirScreen = MapViewGeometry.normalize(dirScreen);
+        double fx = dirX;
+        double fy = -dirY;
+        double len = Math.hypot(fx, fy);
+        if (len < 1e-9) {
+            fx = 1.0;
+            fy = 0.0;
+        } else {
+            fx /= len;
+            fy /= len;
+        }
 
         // Smooth direction to avoid jitter / sudden flips at junctions.
-        if (vehicleId != null) {
-            boolean isBus = (vehicleType != null) && vehicleType.toLowerCase().contains("bus");
-
-            // Buses should rotate more responsively; otherwise the back-shift can look like drifting.
-            double alpha = isBus ? view.clamp(view.headingSmoothingAlpha * 1.75, 0.35, 0.98) : view.headingSmoothingAlpha;
-
-            Point2D prevDir = view.smoothedVehicleDir.get(vehicleId);
-            if (prevDir != null) {
-                // If the direction flips ~180°, vector blending can collapse to near-zero.
-                // Snap in that case to avoid weird spins.
-                double dot = prevDir.getX() * dirScreen.getX() + prevDir.getY() * dirScreen.getY();
-                if (dot < -0.55) {
-                    prevDir = null;
+        boolean isBus = v.kind[h] == VehicleKind.BUS;
+        // Buses should rotate more responsively; otherwise the back-shift can look like drifting.
+        double alpha = isBus ? view.clamp(view.headingSmoothingAlpha * 1.75, 0.35, 0.98) : view.headingSmoothingAlpha;
+        if (drawn) {
+            double prevX = v.dirX[h];
+            double prevY = v.dirY[h];
+            // If the direction flips ~180°, vector blending can collapse to near-zero.
+            // Snap in that case to avoid weird spins.
+            if (prevX * fx + prevY * fy >= -0.55) {
+                double bx = prevX * (1.0 - alpha) + fx * alpha;
+                double by = prevY * (1.0 - alpha) + fy * alpha;
+                double blen = Math.hypot(bx, by);
+                if (blen < 1e-9) {
+                    fx = 1.0;
+                    fy = 0.0;
+                } else {
+                    fx = bx / blen;
+                    fy = by / blen;
                 }
             }
-
-            if (prevDir != null) {
-                Point2D blended = new Point2D(
-                        prevDir.getX() * (1.0 - alpha) + dirScreen.getX() * alpha,
-                        prevDir.getY() * (1.0 - alpha) + dirScreen.getY() * alpha
-                );
-                dirScreen = MapViewGeometry.normalize(blended);
-            }
-
-            view.smoothedVehicleDir.put(vehicleId, dirScreen);
-            if (worldPos != null) {
-                view.lastVehicleWorldPos.put(vehicleId, worldPos);
-            }
         }
+        v.dirX[h] = fx;
+        v.dirY[h] = fy;
+        v.lastX[h] = px;
+        v.lastY[h] = py;
+        v.drawn[h] = true;
 
-        double fx = dirScreen.getX();
-        double fy = dirScreen.getY();
         // Right vector perpendicular to forward (screen coordinates)
         double rx = fy;
         double ry = -fx;
-
-        // Check if this is a bus vehicle (bus type in SUMO typically contains "bus")
-        boolean isBus = (vehicleType != null) && vehicleType.toLowerCase().contains("bus");
+        double x = f.x(px);
+        double y = f.y(py);
+        double scale = view.userScale;
 
         // SUMO's reported position is typically near the *front* of the vehicle; we draw centered.
         // Shift the vehicle back by half its screen length so vehicles don't visually cross stop lines.
+        double halfLenPx = (isBus ? busLengthPxForZoom(view, scale) : carLengthPxForZoom(view, scale)) * 0.5;
+        double cx = x - fx * halfLenPx;
+        double cy = y - fy * halfLenPx;
+        if (raster != null) {
+            if (detail == OverlayDetail.TRIANGLES) {
+                raster.addTriangle(cx, cy, fx, fy, rx, ry, halfLenPx * 0.8, v.color[h]);
+            } else if (isBus) {
+                raster.addBus(cx, cy, fx, fy, rx, ry, halfLenPx * 2.0, busWidthPxForZoom(view, scale), v.color[h], v.windowColor[h]);
+            } else {
+                raster.addCar(cx, cy, fx, fy, rx, ry, halfLenPx * 2.0, v.color[h], v.windowColor[h]);
+            }
+            return;
+        }
+        if (detail == OverlayDetail.TRIANGLES) {
+            drawTriangle(f, g, cx, cy, fx, fy, rx, ry, halfLenPx * 0.8, v.color[h]);
+            return;
+        }
+        // Pre-rendered sprite when available; vector shape for translucent colors or while atlases are built.
+        if (view.vehicleSprites.draw(g, v.kind[h], v.color[h], cx, cy, fx, fy)) return;
         if (isBus) {
             // Draw bus - longer than a car
-            double halfLenPx = busLengthPxForZoom(view, scale) * 0.5;
-            drawBusShapeWithVectors(view, g, x - fx * halfLenPx, y - fy * halfLenPx, fx, fy, rx, ry, color, scale);
+            drawBusShapeWithVectors(view, f, g, cx, cy, fx, fy, rx, ry, v.color[h], v.windowColor[h], scale);
         } else {
             // Draw regular car
-            double halfLenPx = carLengthPxForZoom(view, scale) * 0.5;
-            drawCarShapeWithVectors(view, g, x - fx * halfLenPx, y - fy * halfLenPx, fx, fy, rx, ry, color, scale);
+            drawCarShapeWithVectors(view, f, g, cx, cy, fx, fy, rx, ry, v.color[h], v.windowColor[h], scale);
         }
     }
 
+    private static void drawTriangle(RenderFrame f, GraphicsContext g, double cx, double cy,
+                                     double fx, double fy, double rx, double ry, double halfLen, Color color) {
+        double halfWid = halfLen * 0.6;
+        double[] xs = f.screenX;
+        double[] ys = f.screenY;
+        // Nose, back-right, back-left
+        xs[0] = cx + fx * halfLen;
+        ys[0] = cy + fy * halfLen;
+        xs[1] = cx - fx * halfLen + rx * halfWid;
+        ys[1] = cy - fy * halfLen + ry * halfWid;
+        xs[2] = cx - fx * halfLen - rx * halfWid;
+        ys[2] = cy - fy * halfLen - ry * halfWid;
+        g.setFill(color);
+        g.fillPolygon(xs, ys, 3);
+    }
+
     private static double carSizeMulForZoom(MapView view, double mapScale) {
         // This function controls how car size changes with zoom.
         // Small when zoomed out, grows smoothly when zooming in.
@@ -1072,11 +965,11 @@ final class MapViewRender {
         return view.clamp(0.75 + 1.35 * t, 0.7, 2.2);
     }
 
-    private static double carLengthPxForZoom(MapView view, double mapScale) {
+    static double carLengthPxForZoom(MapView view, double mapScale) {
         return Math.max(8.5, 12.0 * carSizeMulForZoom(view, mapScale));
     }
 
-    private static double busLengthPxForZoom(MapView view, double mapScale) {
+    static double busLengthPxForZoom(MapView view, double mapScale) {
         // Slightly longer: ~1.8x car length at typical zooms.
         return Math.max(13.0, 22.0 * carSizeMulForZoom(view, mapScale));
     }
@@ -1086,9 +979,9 @@ final class MapViewRender {
         return length * 0.32; // Slightly wider ratio for better proportions
     }
 
-    private static void drawCarShapeWithVectors(MapView view, GraphicsContext g, double cx, double cy,
+    static void drawCarShapeWithVectors(MapView view, RenderFrame f, GraphicsContext g, double cx, double cy,
                                                 double fx, double fy, double rx, double ry,
-                                                Color color, double mapScale) {
+                                                Color color, Color windowColor, double mapScale) {
         // Car dimensions in screen pixels.
         // We intentionally scale with the user's zoom (not world scale) so cars stay readable.
         double length = carLengthPxForZoom(view, mapScale);
@@ -1096,10 +989,10 @@ final class MapViewRender {
         double halfLen = length / 2.0;
         double halfWid = width / 2.0;
 
-        // Calculate the 4 corners of the car body
+        // Calculate the 4 corners of the car body (into the frame's scratch buffers)
         // Front-right, Front-left, Back-left, Back-right
-        double[] xPoints = new double[4];
-        double[] yPoints = new double[4];
+        double[] xPoints = f.screenX;
+        double[] yPoints = f.screenY;
 
         // Front-right corner
         xPoints[0] = cx + fx * halfLen + rx * halfWid;
@@ -1124,15 +1017,15 @@ final class MapViewRender {
         g.fillPolygon(xPoints, yPoints, 4);
 
         // Draw windshield (front window) - darker shade
-        Color windowColor = color.darker().darker();
         double windowLen = length * 0.2;
         double windowWid = width * 0.6;
         double windowHalfWid = windowWid / 2.0;
         // Window position: slightly behind the front
         double windowOffset = halfLen - windowLen * 0.8;
 
-        double[] wxPoints = new double[4];
-        double[] wyPoints = new double[4];
+        // The body polygon has been drawn; its scratch arrays are free again.
+        double[] wxPoints = xPoints;
+        double[] wyPoints = yPoints;
         wxPoints[0] = cx + fx * windowOffset + rx * windowHalfWid;
         wyPoints[0] = cy + fy * windowOffset + ry * windowHalfWid;
         wxPoints[1] = cx + fx * windowOffset - rx * windowHalfWid;
@@ -1162,18 +1055,18 @@ final class MapViewRender {
         g.fillOval(lx2 - lightSize / 2, ly2 - lightSize / 2, lightSize, lightSize);
     }
 
-    private static void drawBusShapeWithVectors(MapView view, GraphicsContext g, double cx, double cy,
+    static void drawBusShapeWithVectors(MapView view, RenderFrame f, GraphicsContext g, double cx, double cy,
                                                 double fx, double fy, double rx, double ry,
-                                                Color color, double mapScale) {
+                                                Color color, Color windowColor, double mapScale) {
         // Bus dimensions in screen pixels - buses are longer than cars
         double length = busLengthPxForZoom(view, mapScale);
         double width = busWidthPxForZoom(view, mapScale);
         double halfLen = length / 2.0;
         double halfWid = width / 2.0;
 
-        // Calculate the 4 corners of the bus body
-        double[] xPoints = new double[4];
-        double[] yPoints = new double[4];
+        // Calculate the 4 corners of the bus body (into the frame's scratch buffers)
+        double[] xPoints = f.screenX;
+        double[] yPoints = f.screenY;
 
         // Front-right corner
         xPoints[0] = cx + fx * halfLen + rx * halfWid;
@@ -1199,7 +1092,6 @@ final class MapViewRender {
         g.fillPolygon(xPoints, yPoints, 4);
 
         // Draw multiple windows along the bus (characteristic bus look)
-        Color windowColor = color.darker().darker();
         g.setFill(windowColor);
 
         double windowLen = length * 0.08;
@@ -1214,8 +1106,8 @@ final class MapViewRender {
         for (int w = 0; w < numWindows; w++) {
             double windowOffset = firstWindowOffset - w * windowSpacing;
 
-            double[] wxPoints = new double[4];
-            double[] wyPoints = new double[4];
+            double[] wxPoints = xPoints;
+            double[] wyPoints = yPoints;
             wxPoints[0] = cx + fx * windowOffset + rx * windowHalfWid;
             wyPoints[0] = cy + fy * windowOffset + ry * windowHalfWid;
             wxPoints[1] = cx + fx * windowOffset - rx * windowHalfWid;
@@ -1259,13 +1151,57 @@ final class MapViewRender {
         g.fillOval(tx2 - lightSize / 2, ty2 - lightSize / 2, lightSize, lightSize);
     }
 
-    private static Point2D transform(MapView view, Point2D p, double height, double scale) {
-        double x = view.padding + (p.getX() - view.minX) * scale + view.offsetX;
-        double y = view.padding + (view.maxY - p.getY()) * scale + view.offsetY; // flip Y for screen coords
-        return new Point2D(x, y);
+    /**
+     * World rectangle currently visible on a canvas of the given size, grown by the cull margin.
+     * @return {minX, minY, maxX, maxY} in world coordinates
+     */
+    private static double[] visibleWorldRect(RenderFrame f) {
+        // The margin keeps neighbours of visible lanes (outermost-lane borders, separators) and the
+        // opposite edge of a two-way road (centerline pairing) in the set, so culling never changes
+        // how the visible part of a road is drawn. It also covers lane width, which the
+        // centerline bounding boxes in the index do not include.
+        double margin = Math.max(CULL_MARGIN_METERS, CULL_MARGIN_PX / f.scale);
+        double x0 = (0 - f.originX) / f.scale;
+        double x1 = (f.width - f.originX) / f.scale;
+        double y0 = (f.originY - f.height) / f.scale;
+        double y1 = (f.originY - 0) / f.scale;
+        double[] r = f.worldRect;
+        r[0] = x0 - margin;
+        r[1] = y0 - margin;
+        r[2] = x1 + margin;
+        r[3] = y1 + margin;
+        return r;
+    }
+
+    private static List<LaneShape> visibleLanes(MapView view, double[] rect) {
+        List<LaneShape> lanes = view.lanes;
+        MapViewSpatialIndex index = view.laneIndex;
+        if (index == null || index.size() != lanes.size()) return lanes;
+        int[] hits = index.query(rect[0], rect[1], rect[2], rect[3]);
+        List<LaneShape> out = new ArrayList<>(hits.length);
+        for (int i : hits) out.add(lanes.get(i));
+        return out;
+    }
+
+    private static List<JunctionShape> visibleJunctions(MapView view, double[] rect) {
+        List<JunctionShape> junctions = view.junctions;
+        MapViewSpatialIndex index = view.junctionIndex;
+        if (index == null || index.size() != junctions.size()) return junctions;
+        int[] hits = index.query(rect[0], rect[1], rect[2], rect[3]);
+        List<JunctionShape> out = new ArrayList<>(hits.length);
+        for (int i : hits) out.add(junctions.get(i));
+        return out;
+    }
+
+    /**
+     * Conservative screen-space test for point-anchored decorations (labels, bus stops):
+     * anything anchored within {@link #CULL_MARGIN_PX} of the canvas is still drawn.
+     */
+    private static boolean isOffScreen(RenderFrame f, double x, double y) {
+        return x < -CULL_MARGIN_PX || y < -CULL_MARGIN_PX || x > f.width + CULL_MARGIN_PX || y > f.height + CULL_MARGIN_PX;
     }
 
-    private static void strokePolyline(MapView view, GraphicsContext g, List<Point2D> worldPolyline, double height, double scale,
+    private static void strokePolyline(RenderFrame f, GraphicsContext g, PackedPolyline worldPolyline,
                                        double width, Color stroke, double[] dashes, StrokeLineCap cap) {
         if (worldPolyline == null || worldPolyline.size() < 2) return;
         g.save();
@@ -1277,23 +1213,17 @@ final class MapViewRender {
         else g.setLineDashes(dashes);
         if (cap != null) g.setLineCap(cap);
 
-        Point2D p0 = transform(view, worldPolyline.get(0), height, scale);
-        g.beginPath();
-        g.moveTo(p0.getX(), p0.getY());
-        for (int i = 1; i < worldPolyline.size(); i++) {
-            Point2D pi = transform(view, worldPolyline.get(i), height, scale);
-            g.lineTo(pi.getX(), pi.getY());
-        }
-        g.stroke();
+        int n = f.project(worldPolyline);
+        g.strokePolyline(f.screenX, f.screenY, n);
         g.restore();
     }
 
-    private static void drawLaneSingleEdge(MapView view, GraphicsContext g, List<Point2D> worldPolyline, double height, double scale,
+    private static void drawLaneSingleEdge(RenderFrame f, GraphicsContext g, PackedPolyline worldPolyline,
                                            double laneScreenWidth, Color stroke, double lineWidth, int sideSign) {
-        drawLaneSingleEdge(view, g, worldPolyline, height, scale, laneScreenWidth, stroke, lineWidth, sideSign, null);
+        drawLaneSingleEdge(f, g, worldPolyline, laneScreenWidth, stroke, lineWidth, sideSign, null);
     }
 
-    private static void drawLaneSingleEdge(MapView view, GraphicsContext g, List<Point2D> worldPolyline, double height, double scale,
+    private static void drawLaneSingleEdge(RenderFrame f, GraphicsContext g, PackedPolyline worldPolyline,
                                            double laneScreenWidth, Color stroke, double lineWidth, int sideSign,
                                            double[] dashes) {
         if (worldPolyline == null || worldPolyline.size() < 2) return;
@@ -1311,65 +1241,56 @@ final class MapViewRender {
         // look like a solid line or like dashes are missing.
         // For dashed separators, draw a single continuous path.
         if (dashes != null) {
-            List<Point2D> pts = buildOffsetPolylineScreen(view, worldPolyline, height, scale, laneScreenWidth, sideSign);
-            if (pts.size() >= 2) {
-                Point2D p0 = pts.get(0);
-                g.beginPath();
-                g.moveTo(p0.getX(), p0.getY());
-                for (int i = 1; i < pts.size(); i++) {
-                    Point2D pi = pts.get(i);
-                    g.lineTo(pi.getX(), pi.getY());
-                }
-                g.stroke();
+            int n = buildOffsetPolylineScreen(f, worldPolyline, laneScreenWidth, sideSign);
+            if (n >= 2) {
+                g.strokePolyline(f.screenX, f.screenY, n);
                 g.restore();
                 return;
             }
         }
 
         int sign = (sideSign >= 0) ? 1 : -1;
-        for (int i = 1; i < worldPolyline.size(); i++) {
-            Point2D w1 = worldPolyline.get(i - 1);
-            Point2D w2 = worldPolyline.get(i);
-            Point2D p1 = transform(view, w1, height, scale);
-            Point2D p2 = transform(view, w2, height, scale);
-            double dx = p2.getX() - p1.getX();
-            double dy = p2.getY() - p1.getY();
+        int n = f.project(worldPolyline);
+        double[] sx = f.screenX;
+        double[] sy = f.screenY;
+        double offset = Math.max(1.8, laneScreenWidth / 2.0) * sign;
+        for (int i = 1; i < n; i++) {
+            double dx = sx[i] - sx[i - 1];
+            double dy = sy[i] - sy[i - 1];
             double len = Math.hypot(dx, dy);
             if (len < 0.0001) continue;
-            double nx = -dy / len;
-            double ny = dx / len;
-
-            double offset = Math.max(1.8, laneScreenWidth / 2.0);
-            double ox = nx * offset * sign;
-            double oy = ny * offset * sign;
-            g.strokeLine(p1.getX() + ox, p1.getY() + oy,
-                    p2.getX() + ox, p2.getY() + oy);
+            double ox = -dy / len * offset;
+            double oy = dx / len * offset;
+            g.strokeLine(sx[i - 1] + ox, sy[i - 1] + oy,
+                    sx[i] + ox, sy[i] + oy);
         }
 
         g.restore();
     }
 
-    private static List<Point2D> buildOffsetPolylineScreen(MapView view, List<Point2D> worldPolyline, double height, double scale,
-                                                           double laneScreenWidth, int sideSign) {
-        List<Point2D> out = new ArrayList<>();
-        if (worldPolyline == null || worldPolyline.size() < 2) return out;
+    /**
+     * Projects the polyline and offsets it sideways in screen space; the result replaces
+     * the projected points in the frame's screenX/screenY.
+     * @return number of points written
+     */
+    private static int buildOffsetPolylineScreen(RenderFrame f, PackedPolyline worldPolyline,
+                                                 double laneScreenWidth, int sideSign) {
+        if (worldPolyline == null || worldPolyline.size() < 2) return 0;
 
         int sign = (sideSign >= 0) ? 1 : -1;
         double offset = Math.max(1.8, laneScreenWidth / 2.0) * sign;
 
         // Transform all points once.
-        int n = worldPolyline.size();
-        Point2D[] p = new Point2D[n];
-        for (int i = 0; i < n; i++) {
-            p[i] = transform(view, worldPolyline.get(i), height, scale);
-        }
+        int n = f.project(worldPolyline);
+        double[] px = f.screenX;
+        double[] py = f.screenY;
 
         // Compute normals per segment in screen space.
-        double[] nx = new double[n - 1];
-        double[] ny = new double[n - 1];
+        double[] nx = f.normalX;
+        double[] ny = f.normalY;
         for (int i = 0; i < n - 1; i++) {
-            double dx = p[i + 1].getX() - p[i].getX();
-            double dy = p[i + 1].getY() - p[i].getY();
+            double dx = px[i + 1] - px[i];
+            double dy = py[i + 1] - py[i];
             double len = Math.hypot(dx, dy);
             if (len < 1e-6) {
                 nx[i] = 0;
@@ -1380,7 +1301,8 @@ final class MapViewRender {
             }
         }
 
-        // Offset each vertex by the averaged adjacent normals.
+        // Offset each vertex by the averaged adjacent normals (in place: vertex i only
+        // depends on its own position and the normals computed above).
         for (int i = 0; i < n; i++) {
             double ax, ay;
             if (i == 0) {
@@ -1407,51 +1329,36 @@ final class MapViewRender {
                     alen = Math.hypot(ax, ay);
                 }
             }
-            if (alen < 1e-6) {
-                out.add(p[i]);
-            } else {
-                ax /= alen;
-                ay /= alen;
-                out.add(new Point2D(p[i].getX() + ax * offset, p[i].getY() + ay * offset));
+            if (alen >= 1e-6) {
+                px[i] += ax / alen * offset;
+                py[i] += ay / alen * offset;
             }
         }
 
-        return out;
+        return n;
     }
 
-    private static void drawRoadDirectionArrows(MapView view, GraphicsContext g, double height, double scale, Color stroke) {
-        // Group lanes by edgeId so arrows are drawn once per road direction.
-        Map<String, List<LaneShape>> byEdge = new HashMap<>();
-        for (LaneShape lane : view.lanes) {
-            if (lane == null || lane.edgeId == null || lane.edgeId.isEmpty()) continue;
-            // Skip internal lanes (SUMO usually prefixes with ':')
-            if (lane.edgeId.startsWith(":")) continue;
-            byEdge.computeIfAbsent(lane.edgeId, k -> new ArrayList<>()).add(lane);
-        }
-        if (byEdge.isEmpty()) return;
-
+    private static void drawRoadDirectionArrows(RenderFrame f, GraphicsContext g, List<LaneShape> lanes, Color stroke) {
         g.setStroke(stroke);
         g.setLineDashes();
         g.setLineCap(StrokeLineCap.ROUND);
         g.setLineJoin(StrokeLineJoin.ROUND);
 
-        for (List<LaneShape> group : byEdge.values()) {
-            if (group == null || group.isEmpty()) continue;
-            group.sort(Comparator.comparingInt(ls -> (ls != null) ? ls.laneIndex : Integer.MAX_VALUE));
-            LaneShape rep = group.get(group.size() / 2);
-            if (rep == null || rep.polyline == null || rep.polyline.size() < 2) continue;
+        // Arrows are drawn once per road direction, on the lane picked at load time.
+        for (LaneShape rep : lanes) {
+            if (rep == null || rep.arrowRoadLanes <= 0) continue;
+            if (rep.polyline == null || rep.polyline.size() < 2) continue;
 
             // Estimate road width from number of lanes.
-            double lanesCount = group.size();
-            double laneScreenWidth = Math.max(1.5, rep.widthMeters * scale);
-            double roadScreenWidth = Math.max(laneScreenWidth, laneScreenWidth * lanesCount);
+            double laneScreenWidth = Math.max(1.5, rep.widthMeters * f.scale);
+            double roadScreenWidth = Math.max(laneScreenWidth, laneScreenWidth * rep.arrowRoadLanes);
             if (roadScreenWidth < 6.0) continue;
 
-            drawSlimArrowsOnPolyline(view, g, rep.polyline, height, scale, roadScreenWidth);
+            drawSlimArrowsOnPolyline(f, g, rep.polyline, roadScreenWidth);
         }
     }
 
-    private static void drawSlimArrowsOnPolyline(MapView view, GraphicsContext g, List<Point2D> worldPolyline, double height, double scale,
+    private static void drawSlimArrowsOnPolyline(RenderFrame f, GraphicsContext g, PackedPolyline worldPolyline,
                                                  double roadScreenWidth) {
         if (worldPolyline == null || worldPolyline.size() < 2) return;
         // Arrow cadence in screen pixels.
@@ -1464,11 +1371,12 @@ final class MapViewRender {
         double traveled = 0.0;
         double nextAt = spacing;
 
-        for (int i = 1; i < worldPolyline.size(); i++) {
-            Point2D p1 = transform(view, worldPolyline.get(i - 1), height, scale);
-            Point2D p2 = transform(view, worldPolyline.get(i), height, scale);
-            double dx = p2.getX() - p1.getX();
-            double dy = p2.getY() - p1.getY();
+        int n = f.project(worldPolyline);
+        double[] sx = f.screenX;
+        double[] sy = f.screenY;
+        for (int i = 1; i < n; i++) {
+            double dx = sx[i] - sx[i - 1];
+            double dy = sy[i] - sy[i - 1];
             double segLen = Math.hypot(dx, dy);
             if (segLen < 0.0001) continue;
             double ux = dx / segLen;
@@ -1476,8 +1384,8 @@ final class MapViewRender {
 
             while (traveled + segLen >= nextAt) {
                 double t = (nextAt - traveled) / segLen;
-                double cx = p1.getX() + dx * t;
-                double cy = p1.getY() + dy * t;
+                double cx = sx[i - 1] + dx * t;
+                double cy = sy[i - 1] + dy * t;
 
                 double baseX = cx;
                 double baseY = cy;
@@ -1505,71 +1413,4 @@ final class MapViewRender {
             traveled += segLen;
         }
     }
-
-    private static List<Point2D> buildAveragedCenterline(List<Point2D> a, List<Point2D> b, int samples) {
-        List<Point2D> out = new ArrayList<>();
-        if (a == null || b == null || a.size() < 2 || b.size() < 2) return out;
-        int n = Math.max(2, samples);
-        for (int i = 0; i < n; i++) {
-            double t = (n == 1) ? 0.0 : ((double) i / (double) (n - 1));
-            Point2D pa = MapViewGeometry.pointAlongPolyline(a, t);
-            Point2D pb = MapViewGeometry.pointAlongPolyline(b, t);
-            if (pa == null || pb == null) continue;
-            out.add(new Point2D((pa.getX() + pb.getX()) * 0.5, (pa.getY() + pb.getY()) * 0.5));
-        }
-        return out;
-    }
-
-    private static double polylineLength(List<Point2D> poly) {
-        if (poly == null || poly.size() < 2) return 0.0;
-        double sum = 0.0;
-        for (int i = 1; i < poly.size(); i++) {
-            sum += poly.get(i).distance(poly.get(i - 1));
-        }
-        return sum;
-    }
-
-    private static double averagePolylineDistanceMid(List<Point2D> a, List<Point2D> b, int samples) {
-        if (a == null || b == null || a.size() < 2 || b.size() < 2) return Double.POSITIVE_INFINITY;
-        int n = Math.max(4, samples);
-        double sum = 0.0;
-        int used = 0;
-        // Ignore the ends (junction curvature) and compare the mid-section.
-        double t0 = 0.15;
-        double t1 = 0.85;
-        for (int i = 0; i < n; i++) {
-            double u = (double) i / (double) (n - 1);
-            double t = t0 + (t1 - t0) * u;
-            Point2D pa = MapViewGeometry.pointAlongPolyline(a, t);
-            Point2D pb = MapViewGeometry.pointAlongPolyline(b, t);
-            if (pa == null || pb == null) continue;
-            sum += pa.distance(pb);
-            used++;
-        }
-        if (used == 0) return Double.POSITIVE_INFINITY;
-        return sum / (double) used;
-    }
-
-    private static Point2D polylineDirectionMid(List<Point2D> poly) {
-        if (poly == null || poly.size() < 2) return new Point2D(0, 0);
-        Point2D a = MapViewGeometry.pointAlongPolyline(poly, 0.20);
-        Point2D b = MapViewGeometry.pointAlongPolyline(poly, 0.80);
-        if (a == null || b == null) return polylineDirection(poly);
-        double dx = b.getX() - a.getX();
-        double dy = b.getY() - a.getY();
-        double len = Math.hypot(dx, dy);
-        if (len < 1e-9) return new Point2D(0, 0);
-        return new Point2D(dx / len, dy / len);
-    }
-
-    private static Point2D polylineDirection(List<Point2D> poly) {
-        if (poly == null || poly.size() < 2) return new Point2D(0, 0);
-        Point2D a = poly.get(0);
-        Point2D b = poly.get(poly.size() - 1);
-        double dx = b.getX() - a.getX();
-        double dy = b.getY() - a.getY();
-        double len = Math.hypot(dx, dy);
-        if (len < 1e-9) return new Point2D(0, 0);
-        return new Point2D(dx / len, dy / len);
-    }
 }
@@ -0,0 +1,297 @@
+import javafx.geometry.Point2D;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Road markings derived from the lane geometry for {@link MapView}: outer borders,
+ * lane separators, two-way centerlines, direction arrow lanes and bicycle connectors.
+ *
+ * All of this depends only on the network, so it is computed once right after a network
+ * is loaded and stored on the {@link LaneShape}s; background rendering then only transforms
+ * and strokes it. Per-edge work runs in parallel on the common fork-join pool.
+ */
+final class MapViewRoadGeometry {
+    private MapViewRoadGeometry() {}
+
+    // Samples of the averaged polylines drawn as markings
+    private static final int SEPARATOR_SAMPLES = 32;
+    private static final int CENTERLINE_SAMPLES = 30;
+    // Samples used to compare two lanes when pairing opposite edges
+    private static final int PAIRING_SAMPLES = 18;
+
+    /**
+     * Motor lanes of one non-internal edge, used to pair it with the opposite direction.
+     */
+    private static final class EdgeRep {
+        final String edgeId;
+        final List<LaneShape> motorLanes;
+        final double len;
+        final Point2D dir;
+
+        EdgeRep(String edgeId, List<LaneShape> motorLanes) {
+            this.edgeId = edgeId;
+            this.motorLanes = motorLanes;
+            PackedPolyline p = motorLanes.get(0).polyline;
+            this.len = p.length();
+            // Use a direction estimate away from the junction endpoints.
+            // Endpoints can include curved junction geometry which makes opposite edges
+            // fail the dot-product test even though they are true two-way pairs.
+            this.dir = polylineDirectionMid(p);
+        }
+    }
+
+    private static final class LanePair {
+        final LaneShape aLane;
+        final PackedPolyline bAligned;
+        final double avgDist;
+
+        LanePair(LaneShape aLane, PackedPolyline bAligned, double avgDist) {
+            this.aLane = aLane;
+            this.bAligned = bAligned;
+            this.avgDist = avgDist;
+        }
+    }
+
+    /**
+     * Fills the derived marking fields of every lane in the network.
+     */
+    static void derive(List<LaneShape> lanes, Map<String, EdgeInfo> edgesById, Set<String> bicycleConnectorLaneIds) {
+        Map<String, List<LaneShape>> lanesByEdge = new HashMap<>();
+        for (LaneShape lane : lanes) {
+            if (lane == null || lane.edgeId == null || lane.edgeId.isEmpty()) continue;
+            if (lane.edgeId.startsWith(":")) {
+                // Internal connector lanes: only bicycle movements get dashed guides.
+                lane.bikeConnector = !lane.pedestrianOnly && lane.polyline.size() >= 2
+                        && (lane.bikeOnly || bicycleConnectorLaneIds.contains(lane.laneId));
+                continue;
+            }
+            if (lane.laneIndex < 0) continue;
+            lanesByEdge.computeIfAbsent(lane.edgeId, k -> new ArrayList<>()).add(lane);
+        }
+
+        // Each edge only writes to its own lanes, so edges can be processed independently.
+        Map<String, EdgeRep> repByEdge = new java.util.concurrent.ConcurrentHashMap<>();
+        lanesByEdge.entrySet().parallelStream().forEach(e -> {
+            EdgeRep rep = deriveEdge(e.getKey(), e.getValue());
+            if (rep != null) repByEdge.put(e.getKey(), rep);
+        });
+
+        // Pairing is a greedy matching (an edge taken by one pair is not offered to another),
+        // so it runs sequentially; the expensive centerline sampling afterwards is parallel again.
+        List<EdgeRep[]> pairs = pairOppositeEdges(new HashMap<>(repByEdge), edgesById);
+        pairs.parallelStream().forEach(p -> {
+            LanePair lp = bestLanePair(p[0], p[1]);
+            if (lp == null) return;
+            PackedPolyline center = buildAveragedCenterline(lp.aLane.polyline, lp.bAligned, CENTERLINE_SAMPLES);
+            if (center.size() >= 2) lp.aLane.twoWayCenterline = center;
+        });
+    }
+
+    /**
+     * Borders, separators and arrows of one edge.
+     * @return motor lanes of the edge for pairing, or null if it has none
+     */
+    private static EdgeRep deriveEdge(String edgeId, List<LaneShape> edgeLanes) {
+        edgeLanes.sort(Comparator.comparingInt(ls -> ls.laneIndex));
+        int minIdx = edgeLanes.get(0).laneIndex;
+        int maxIdx = edgeLanes.get(edgeLanes.size() - 1).laneIndex;
+
+        LaneShape previous = null;
+        for (LaneShape lane : edgeLanes) {
+            // SUMO lane index 0 is rightmost in edge direction.
+            lane.borderRight = (lane.laneIndex == minIdx);
+            lane.borderLeft = (lane.laneIndex == maxIdx);
+
+            // One separator per lane boundary, drawn by the lane on the left of it.
+            // Some nets use non-contiguous lane indices, so the neighbor is the next lower index present.
+            if (lane.laneIndex > minIdx) {
+                LaneShape neighbor = previous;
+                // Dashed means 2+ lanes in the SAME direction; the solid divider between
+                // OPPOSITE directions is the two-way centerline.
+                if (neighbor != null && LaneShape.isMotorLane(lane) && LaneShape.isMotorLane(neighbor)
+                        && lane.polyline.size() >= 2 && neighbor.polyline.size() >= 2) {
+                    // Use the midline between the two lane center polylines, not an offset boundary,
+                    // because some nets have irregular lane geometries where boundary-offset is wrong.
+                    PackedPolyline bAligned = neighbor.polyline;
+                    if (startsNearEnd(lane.polyline, bAligned)) {
+                        bAligned = bAligned.reversed();
+                    }
+                    lane.dashedSeparator = buildAveragedCenterline(lane.polyline, bAligned, SEPARATOR_SAMPLES);
+                } else {
+                    lane.solidSeparator = true;
+                }
+            }
+            previous = lane;
+        }
+
+        // Direction arrows are drawn once per edge, on its middle lane.
+        edgeLanes.get(edgeLanes.size() / 2).arrowRoadLanes = edgeLanes.size();
+
+        // Collect all MOTOR lanes for this edge. The lane closest to the opposite edge is chosen
+        // later so the divider lands on the true median (works for 1-lane and multi-lane roads).
+        List<LaneShape> motor = new ArrayList<>();
+        for (LaneShape cand : edgeLanes) {
+            if (LaneShape.isMotorLane(cand) && cand.polyline.size() >= 2) motor.add(cand);
+        }
+        // If the edge has no motor lane at all (pure sidewalk/bike edge), it has no divider.
+        return motor.isEmpty() ? null : new EdgeRep(edgeId, motor);
+    }
+
+    /**
+     * Pairs opposite-direction edges (A: from->to, B: to->from) using net topology rather than
+     * geometry heuristics, which avoids incorrect cross-pairing.
+     * @return each pair once
+     */
+    private static List<EdgeRep[]> pairOppositeEdges(Map<String, EdgeRep> repByEdge, Map<String, EdgeInfo> edgesById) {
+        Map<String, List<EdgeRep>> repsByFromTo = new HashMap<>();
+        for (EdgeRep r : repByEdge.values()) {
+            EdgeInfo info = edgesById.get(r.edgeId);
+            if (info == null) continue;
+            if (info.from.isEmpty() || info.to.isEmpty()) continue;
+            repsByFromTo.computeIfAbsent(info.from + "->" + info.to, k -> new ArrayList<>()).add(r);
+        }
+
+        // Pair each edge with candidates that swap from/to; choose the best local match.
+        Set<String> paired = new HashSet<>();
+        List<EdgeRep[]> pairs = new ArrayList<>();
+        for (EdgeRep a : repByEdge.values()) {
+            if (paired.contains(a.edgeId)) continue;
+            EdgeInfo ai = edgesById.get(a.edgeId);
+            if (ai == null || ai.from.isEmpty() || ai.to.isEmpty()) continue;
+
+            List<EdgeRep> candidates = repsByFromTo.get(ai.to + "->" + ai.from);
+            if (candidates == null || candidates.isEmpty()) continue;
+
+            // Strong preference: SUMO often uses opposite IDs like E62 and -E62.
+            // If that counterpart exists and is a candidate, pick it.
+            String preferredId = a.edgeId.startsWith("-") ? a.edgeId.substring(1) : ("-" + a.edgeId);
+            EdgeRep preferred = repByEdge.get(preferredId);
+            EdgeRep best = null;
+            if (preferred != null && candidates.contains(preferred) && !paired.contains(preferred.edgeId)) {
+                best = preferred;
+            } else {
+                double bestScore = Double.POSITIVE_INFINITY;
+                for (EdgeRep b : candidates) {
+                    if (b == null) continue;
+                    if (b.edgeId.equals(a.edgeId)) continue;
+                    if (paired.contains(b.edgeId)) continue;
+
+                    // Must be opposite direction visually.
+                    double dot = a.dir.getX() * b.dir.getX() + a.dir.getY() * b.dir.getY();
+                    if (dot > -0.55) continue;
+
+                    // Score using the closest motor-lane pair between the two edges.
+                    LanePair lp = bestLanePair(a, b);
+                    if (lp == null) continue;
+                    double score = lp.avgDist + 0.05 * Math.abs(a.len - b.len);
+
+                    // Skip obviously-wrong pairs (too far apart).
+                    double maxDist = Math.max(7.0, Math.min(35.0, Math.min(a.len, b.len) * 0.20));
+                    if (lp.avgDist > maxDist) continue;
+
+                    if (score < bestScore) {
+                        bestScore = score;
+                        best = b;
+                    }
+                }
+            }
+
+            if (best != null) {
+                paired.add(a.edgeId);
+                paired.add(best.edgeId);
+                pairs.add(new EdgeRep[]{a, best});
+            }
+        }
+        return pairs;
+    }
+
+    private static LanePair bestLanePair(EdgeRep a, EdgeRep b) {
+        LaneShape bestA = null;
+        PackedPolyline bestBAligned = null;
+        double bestDist = Double.POSITIVE_INFINITY;
+
+        for (LaneShape la : a.motorLanes) {
+            for (LaneShape lb : b.motorLanes) {
+                PackedPolyline bAligned = lb.polyline;
+                if (startsNearEnd(la.polyline, bAligned)) {
+                    bAligned = bAligned.reversed();
+                }
+
+                double avgDist = averagePolylineDistanceMid(la.polyline, bAligned, PAIRING_SAMPLES);
+                if (avgDist < bestDist) {
+                    bestDist = avgDist;
+                    bestA = la;
+                    bestBAligned = bAligned;
+                }
+            }
+        }
+
+        if (bestA == null || !Double.isFinite(bestDist)) return null;
+        return new LanePair(bestA, bestBAligned, bestDist);
+    }
+
+    /**
+     * @return true if b's last point is closer to a's first point than b's first point is,
+     *         i.e. b runs the other way and must be reversed before pointwise comparison
+     */
+    private static boolean startsNearEnd(PackedPolyline a, PackedPolyline b) {
+        int last = b.size() - 1;
+        double dStart = Math.hypot(a.x(0) - b.x(0), a.y(0) - b.y(0));
+        double dEnd = Math.hypot(a.x(0) - b.x(last), a.y(0) - b.y(last));
+        return dEnd < dStart;
+    }
+
+    private static PackedPolyline buildAveragedCenterline(PackedPolyline a, PackedPolyline b, int samples) {
+        if (a == null || b == null || a.size() < 2 || b.size() < 2) return PackedPolyline.EMPTY;
+        int n = Math.max(2, samples);
+        float[] xy = new float[n * 2];
+        double[] pa = new double[2];
+        double[] pb = new double[2];
+        for (int i = 0; i < n; i++) {
+            double t = (n == 1) ? 0.0 : ((double) i / (double) (n - 1));
+            MapViewGeometry.pointAlong(a, t, pa);
+            MapViewGeometry.pointAlong(b, t, pb);
+            xy[i * 2] = (float) ((pa[0] + pb[0]) * 0.5);
+            xy[i * 2 + 1] = (float) ((pa[1] + pb[1]) * 0.5);
+        }
+        return new PackedPolyline(xy);
+    }
+
+    private static double averagePolylineDistanceMid(PackedPolyline a, PackedPolyline b, int samples) {
+        if (a == null || b == null || a.size() < 2 || b.size() < 2) return Double.POSITIVE_INFINITY;
+        int n = Math.max(4, samples);
+        double sum = 0.0;
+        double[] pa = new double[2];
+        double[] pb = new double[2];
+        // Ignore the ends (junction curvature) and compare the mid-section.
+        double t0 = 0.15;
+        double t1 = 0.85;
+        for (int i = 0; i < n; i++) {
+            double u = (double) i / (double) (n - 1);
+            double t = t0 + (t1 - t0) * u;
+            MapViewGeometry.pointAlong(a, t, pa);
+            MapViewGeometry.pointAlong(b, t, pb);
+            sum += Math.hypot(pa[0] - pb[0], pa[1] - pb[1]);
+        }
+        return sum / (double) n;
+    }
+
+    private static Point2D polylineDirectionMid(PackedPolyline poly) {
+        if (poly == null || poly.size() < 2) return new Point2D(0, 0);
+        double[] a = new double[2];
+        double[] b = new double[2];
+        MapViewGeometry.pointAlong(poly, 0.20, a);
+        MapViewGeometry.pointAlong(poly, 0.80, b);
+        double dx = b[0] - a[0];
+        double dy = b[1] - a[1];
+        double len = Math.hypot(dx, dy);
+        if (len < 1e-9) return new Point2D(0, 0);
+        return new Point2D(dx / len, dy / len);
+    }
+}
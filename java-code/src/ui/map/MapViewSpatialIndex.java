@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over the bounding boxes of network shapes (lanes or junctions),
+ * used to cull background rendering to the visible part of the map.
+ *
+ * Built once per network load and immutable afterwards, so any thread may query
+ * it. Items are identified by their index in the list the index was built from;
+ * queries return those indexes in ascending order so callers keep the original
+ * draw order.
+ */
+final class MapViewSpatialIndex {
+
+    // Bounds on the grid so huge or degenerate networks do not explode the cell table.
+    private static final int MAX_CELLS_PER_AXIS = 512;
+    private static final double MIN_CELL_SIZE = 20.0; // meters
+
+    private final double originX;
+    private final double originY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    private final int[] cellStart; // CSR layout: items of cell c are cellItems[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellItems;
+    private final float[] bounds;  // per item: minX, minY, maxX, maxY
+    private final int size;
+
+    private MapViewSpatialIndex(double originX, double originY, double cellSize, int cols, int rows,
+                                int[] cellStart, int[] cellItems, float[] bounds, int size) {
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.cols = cols;
+        this.rows = rows;
+        this.cellStart = cellStart;
+        this.cellItems = cellItems;
+        this.bounds = bounds;
+        this.size = size;
+    }
+
+    /**
+     * Builds an index over the bounding boxes of the given shapes; empty shapes are never returned.
+     */
+    static MapViewSpatialIndex build(List<PackedPolyline> shapes) {
+        int n = shapes.size();
+        float[] bounds = new float[n * 4];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int nonEmpty = 0;
+        for (int i = 0; i < n; i++) {
+            PackedPolyline p = shapes.get(i);
+            if (p == null || p.isEmpty()) {
+                // Inverted box: never intersects anything
+                bounds[i * 4] = Float.POSITIVE_INFINITY;
+                bounds[i * 4 + 1] = Float.POSITIVE_INFINITY;
+                bounds[i * 4 + 2] = Float.NEGATIVE_INFINITY;
+                bounds[i * 4 + 3] = Float.NEGATIVE_INFINITY;
+                continue;
+            }
+            bounds[i * 4] = (float) p.minX;
+            bounds[i * 4 + 1] = (float) p.minY;
+            bounds[i * 4 + 2] = (float) p.maxX;
+            bounds[i * 4 + 3] = (float) p.maxY;
+            minX = Math.min(minX, p.minX);
+            minY = Math.min(minY, p.minY);
+            maxX = Math.max(maxX, p.maxX);
+            maxY = Math.max(maxY, p.maxY);
+            nonEmpty++;
+        }
+        if (nonEmpty == 0) {
+            return new MapViewSpatialIndex(0, 0, 1, 1, 1, new int[2], new int[0], bounds, n);
+        }
+
+        // Aim for roughly one item per cell on average, within sane limits.
+        double w = Math.max(1e-3, maxX - minX);
+        double h = Math.max(1e-3, maxY - minY);
+        double cellSize = Math.max(MIN_CELL_SIZE, Math.sqrt(w * h / nonEmpty));
+        cellSize = Math.max(cellSize, Math.max(w, h) / MAX_CELLS_PER_AXIS);
+        int cols = Math.max(1, (int) Math.ceil(w / cellSize));
+        int rows = Math.max(1, (int) Math.ceil(h / cellSize));
+
+        // Two passes: count per cell, then fill (compressed sparse rows, no per-cell lists).
+        int[] cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < n; i++) {
+            if (bounds[i * 4] > bounds[i * 4 + 2]) continue;
+            int c0 = clampCell((bounds[i * 4] - minX) / cellSize, cols);
+            int c1 = clampCell((bounds[i * 4 + 2] - minX) / cellSize, cols);
+            int r0 = clampCell((bounds[i * 4 + 1] - minY) / cellSize, rows);
+            int r1 = clampCell((bounds[i * 4 + 3] - minY) / cellSize, rows);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    cellStart[r * cols + c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = Arrays.copyOf(cellStart, cols * rows);
+        int[] cellItems = new int[cellStart[cols * rows]];
+        for (int i = 0; i < n; i++) {
+            if (bounds[i * 4] > bounds[i * 4 + 2]) continue;
+            int c0 = clampCell((bounds[i * 4] - minX) / cellSize, cols);
+            int c1 = clampCell((bounds[i * 4 + 2] - minX) / cellSize, cols);
+            int r0 = clampCell((bounds[i * 4 + 1] - minY) / cellSize, rows);
+            int r1 = clampCell((bounds[i * 4 + 3] - minY) / cellSize, rows);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    cellItems[fill[r * cols + c]++] = i;
+                }
+            }
+        }
+        return new MapViewSpatialIndex(minX, minY, cellSize, cols, rows, cellStart, cellItems, bounds, n);
+    }
+
+    /**
+     * @return number of items the index was built from
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds all items whose bounding box intersects the given world rectangle.
+     * @return item indexes in ascending order
+     */
+    int[] query(double x0, double y0, double x1, double y1) {
+        int c0 = clampCell((x0 - originX) / cellSize, cols);
+        int c1 = clampCell((x1 - originX) / cellSize, cols);
+        int r0 = clampCell((y0 - originY) / cellSize, rows);
+        int r1 = clampCell((y1 - originY) / cellSize, rows);
+
+        int[] out = new int[64];
+        int count = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int item = cellItems[k];
+                    int b = item * 4;
+                    if (bounds[b] > x1 || bounds[b + 2] < x0 || bounds[b + 1] > y1 || bounds[b + 3] < y0) continue;
+                    // An item spanning several cells is reported only from the cell holding the
+                    // lower-left corner of its overlap with the query, so no "seen" set is needed.
+                    int ownerC = clampCell((Math.max(bounds[b], x0) - originX) / cellSize, cols);
+                    int ownerR = clampCell((Math.max(bounds[b + 1], y0) - originY) / cellSize, rows);
+                    if (ownerC != c || ownerR != r) continue;
+                    if (count == out.length) out = Arrays.copyOf(out, count * 2);
+                    out[count++] = item;
+                }
+            }
+        }
+        Arrays.sort(out, 0, count);
+        return (count == out.length) ? out : Arrays.copyOf(out, count);
+    }
+
+    private static int clampCell(double v, int cells) {
+        if (!(v > 0)) return 0; // also maps NaN to 0
+        int i = (int) v;
+        return (i >= cells) ? cells - 1 : i;
+    }
+}
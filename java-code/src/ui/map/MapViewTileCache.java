@@ -0,0 +1,264 @@
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Raster cache of the static network for {@link MapView}, split into fixed-size tiles
+ * per discrete zoom level.
+ *
+ * Tiles are drawn by worker threads into off-screen canvases (all geometry work: culling,
+ * lane pairing, centerlines, offsets) and turned into images on the FX thread, which is
+ * the only thread allowed to snapshot. The snapshot rasterizes the recorded drawing, so
+ * finished tiles are queued and at most {@link #MAX_SNAPSHOTS_PER_PULSE} are installed per
+ * pulse; panning over many new tiles then fills them in over a few frames instead of
+ * stalling one. Panning only composites cached images; zooming reuses a level until the
+ * zoom moves to the next one, scaling the tiles in between.
+ *
+ * All state except {@link #generation} is touched on the FX thread only.
+ */
+final class MapViewTileCache {
+
+    static final int TILE_SIZE = 512; // pixels
+    // Discrete zoom levels: 4 per doubling, so cached tiles are never scaled by more than ~9%.
+    private static final int LEVELS_PER_OCTAVE = 4;
+    // ~1 MB per tile (ARGB); 160 tiles cover several screens at a few zoom levels.
+    private static final long MAX_CACHE_BYTES = 160L * 1024 * 1024;
+    private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+    // A 512 px snapshot takes a few milliseconds; two per pulse stay well inside a 60 Hz frame.
+    private static final int MAX_SNAPSHOTS_PER_PULSE = 2;
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), new TileThreadFactory());
+
+    private final MapView view;
+    private final LinkedHashMap<Long, WritableImage> tiles = new LinkedHashMap<>(64, 0.75f, true); // LRU order
+    private final Map<Long, Future<?>> pending = new HashMap<>();
+    // Bumped whenever the network or bus stops change; results of older jobs are dropped.
+    private volatile int generation;
+    // Level whose tiles last covered the whole viewport; drawn underneath while a new level fills in.
+    private int lastCompleteLevel = Integer.MIN_VALUE;
+    private boolean repaintScheduled;
+    // Tiles drawn by a worker, waiting for their snapshot (oldest first)
+    private final ArrayDeque<FinishedTile> finished = new ArrayDeque<>();
+    private boolean installing;
+    private final AnimationTimer installer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            installQueued();
+        }
+    };
+
+    MapViewTileCache(MapView view) {
+        this.view = view;
+    }
+
+    /**
+     * Drops all tiles and cancels pending renders (network or bus stops changed).
+     */
+    void invalidate() {
+        generation++;
+        for (Future<?> f : pending.values()) f.cancel(false);
+        pending.clear();
+        finished.clear();
+        tiles.clear();
+        lastCompleteLevel = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Draws the cached tiles covering the frame and requests the missing ones.
+     * Called on the FX thread with the view's current frame.
+     */
+    void composite(GraphicsContext g, RenderFrame f) {
+        int level = levelFor(f.scale);
+        Set<Long> wanted = new HashSet<>();
+        boolean complete = drawLevel(g, f, level, wanted, true);
+
+        if (!complete && lastCompleteLevel != Integer.MIN_VALUE && lastCompleteLevel != level) {
+            // Show the previous zoom level (scaled) underneath, then the new tiles we already have on top.
+            drawLevel(g, f, lastCompleteLevel, null, false);
+            drawLevel(g, f, level, null, false);
+        }
+        if (complete) lastCompleteLevel = level;
+
+        // Tiles that scrolled out of view before a worker got to them are not worth rendering.
+        Iterator<Map.Entry<Long, Future<?>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Future<?>> e = it.next();
+            if (!wanted.contains(e.getKey())) {
+                e.getValue().cancel(false);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Draws the cached tiles of one level that intersect the frame.
+     * @param wanted collects the keys of the visible tiles; null to skip
+     * @param request true to schedule rendering of missing tiles
+     * @return true if every visible tile was cached
+     */
+    private boolean drawLevel(GraphicsContext g, RenderFrame f, int level, Set<Long> wanted, boolean request) {
+        double levelScale = scaleOf(level);
+        double k = f.scale / levelScale;  // screen pixels per tile pixel
+        double span = TILE_SIZE * k;
+        // Screen position of tile pixel (0, 0), i.e. world (minX, maxY)
+        double baseX = f.originX + view.minX * f.scale;
+        double baseY = f.originY - view.maxY * f.scale;
+
+        int maxTx = (int) Math.ceil((view.maxX - view.minX) * levelScale / TILE_SIZE);
+        int maxTy = (int) Math.ceil((view.maxY - view.minY) * levelScale / TILE_SIZE);
+        // One extra tile around the network keeps labels and borders that stick out.
+        int tx0 = Math.max(-1, (int) Math.floor(-baseX / span));
+        int tx1 = Math.min(maxTx, (int) Math.floor((f.width - baseX) / span));
+        int ty0 = Math.max(-1, (int) Math.floor(-baseY / span));
+        int ty1 = Math.min(maxTy, (int) Math.floor((f.height - baseY) / span));
+
+        boolean complete = true;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                long key = key(level, tx, ty);
+                if (wanted != null) wanted.add(key);
+                WritableImage img = tiles.get(key);
+                if (img == null) {
+                    complete = false;
+                    if (request) request(key, level, tx, ty);
+                    continue;
+                }
+                // Snap tile edges to whole pixels so neighbours meet without seams.
+                double x0 = Math.floor(baseX + tx * span);
+                double y0 = Math.floor(baseY + ty * span);
+                double x1 = Math.floor(baseX + (tx + 1) * span);
+                double y1 = Math.floor(baseY + (ty + 1) * span);
+                g.drawImage(img, x0, y0, x1 - x0, y1 - y0);
+            }
+        }
+        return complete;
+    }
+
+    private void request(long key, int level, int tx, int ty) {
+        if (pending.containsKey(key)) return;
+
+        // Everything the worker needs from the view's pan/zoom state is captured here.
+        double levelScale = scaleOf(level);
+        RenderFrame tf = new RenderFrame();
+        tf.scale = levelScale;
+        tf.userScale = levelScale / Math.max(1e-9, view.baseScale);
+        tf.originX = -view.minX * levelScale - (double) tx * TILE_SIZE;
+        tf.originY = view.maxY * levelScale - (double) ty * TILE_SIZE;
+        tf.width = TILE_SIZE;
+        tf.height = TILE_SIZE;
+        int gen = generation;
+
+        pending.put(key, WORKERS.submit(() -> {
+            if (gen != generation) return;
+            Canvas canvas = new Canvas(TILE_SIZE, TILE_SIZE);
+            try {
+                MapViewRender.renderBackground(view, canvas.getGraphicsContext2D(), tf);
+            } catch (RuntimeException e) {
+                // The network may have been swapped mid-render; the tile is discarded either way.
+                MapView.LOGGER.log(Level.FINE, "Background tile render failed", e);
+                Platform.runLater(() -> pending.remove(key));
+                return;
+            }
+            Platform.runLater(() -> enqueue(gen, key, canvas));
+        }));
+    }
+
+    private void enqueue(int gen, long key, Canvas canvas) {
+        if (gen != generation || !pending.containsKey(key)) return;
+        finished.add(new FinishedTile(gen, key, canvas));
+        if (!installing) {
+            installing = true;
+            installer.start();
+        }
+    }
+
+    private void installQueued() {
+        for (int i = 0; i < MAX_SNAPSHOTS_PER_PULSE && !finished.isEmpty(); ) {
+            FinishedTile t = finished.poll();
+            if (install(t.gen, t.key, t.canvas)) i++; // dropped tiles cost nothing
+        }
+        if (finished.isEmpty()) {
+            installing = false;
+            installer.stop();
+        }
+    }
+
+    /**
+     * @return true if the tile was snapshotted (it is still wanted and current)
+     */
+    private boolean install(int gen, long key, Canvas canvas) {
+        if (gen != generation || pending.remove(key) == null) return false;
+        WritableImage img = canvas.snapshot(new SnapshotParameters(), new WritableImage(TILE_SIZE, TILE_SIZE));
+        tiles.put(key, img);
+        while (tiles.size() * TILE_BYTES > MAX_CACHE_BYTES) {
+            Iterator<Long> eldest = tiles.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        scheduleRepaint();
+        return true;
+    }
+
+    // Several tiles usually finish together; repaint once for all of them.
+    private void scheduleRepaint() {
+        if (repaintScheduled) return;
+        repaintScheduled = true;
+        Platform.runLater(() -> {
+            repaintScheduled = false;
+            MapViewRender.redrawBackground(view);
+        });
+    }
+
+    static int levelFor(double scale) {
+        return (int) Math.round(LEVELS_PER_OCTAVE * Math.log(scale) / Math.log(2.0));
+    }
+
+    static double scaleOf(int level) {
+        return Math.pow(2.0, (double) level / LEVELS_PER_OCTAVE);
+    }
+
+    private static long key(int level, int tx, int ty) {
+        return ((long) (level & 0xFFF) << 52) | ((long) (tx & 0x3FFFFFF) << 26) | (ty & 0x3FFFFFF);
+    }
+
+    private static final class FinishedTile {
+        final int gen;
+        final long key;
+        final Canvas canvas;
+
+        FinishedTile(int gen, long key, Canvas canvas) {
+            this.gen = gen;
+            this.key = key;
+            this.canvas = canvas;
+        }
+    }
+
+    private static final class TileThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "MapTile-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 import javafx.geometry.Point2D;
 
-import java.util.List;
+import java.nio.FloatBuffer;
 import java.util.Locale;
 
 /**
@@ -41,14 +41,23 @@ final class LaneShape {
     final String laneId;
     final String edgeId;
     final int laneIndex;
-    final List<Point2D> polyline;
+    final PackedPolyline polyline;
     final double widthMeters;
     final String allow;
     final String disallow;
     final boolean bikeOnly;
     final boolean pedestrianOnly;
 
-    LaneShape(String id, List<Point2D> p, double w, String allow, String disallow) {
+    // Derived road markings (world coordinates), filled once at load by MapViewRoadGeometry
+    boolean borderRight;             // outermost lane on the right: draw the road border there
+    boolean borderLeft;              // outermost lane on the left
+    PackedPolyline dashedSeparator;  // midline to the right neighbour (same-direction motor lanes)
+    boolean solidSeparator;          // plain boundary line to the right neighbour instead
+    PackedPolyline twoWayCenterline; // divider to the opposite-direction edge (stored on one side only)
+    int arrowRoadLanes;              // > 0 on the lane that carries the edge's direction arrows
+    boolean bikeConnector;           // internal lane drawn as a dashed bicycle guide
+
+    LaneShape(String id, PackedPolyline p, double w, String allow, String disallow) {
         this.laneId = id;
         LaneKey k = parseLaneKey(id);
         this.edgeId = (k != null) ? k.edgeId : null;
@@ -150,15 +159,233 @@ final class LaneShape {
 final class JunctionShape {
     final String id;
     final boolean hasTrafficLight;
-    final List<Point2D> polygon;
+    final PackedPolyline polygon;
 
-    JunctionShape(String id, boolean trafficLight, List<Point2D> p) {
+    JunctionShape(String id, boolean trafficLight, PackedPolyline p) {
         this.id = id;
         this.hasTrafficLight = trafficLight;
         this.polygon = p;
     }
 }
 
+/**
+ * Immutable polyline (or polygon outline) stored as packed float x/y pairs.
+ * The pairs live in a float buffer that may be shared with other shapes, e.g. the
+ * mapped point section of the compiled network cache; vertices are read on access.
+ * The bounding box is fixed at construction, cumulative segment lengths are computed
+ * on first use, so length queries and point-along lookups need no per-vertex objects.
+ */
+final class PackedPolyline {
+    static final PackedPolyline EMPTY = new PackedPolyline(new float[0]);
+
+    private final FloatBuffer coords; // x0, y0, x1, y1, ... from offset on; absolute reads only
+    private final int offset;
+    private final int count;          // vertices
+    private volatile float[] cumLength; // distance from vertex 0 to vertex i, in meters
+    final double minX;
+    final double minY;
+    final double maxX;
+    final double maxY;
+
+    PackedPolyline(float[] xy) {
+        if ((xy.length & 1) != 0) throw new IllegalArgumentException("odd coordinate count");
+        this.coords = FloatBuffer.wrap(xy);
+        this.offset = 0;
+        this.count = xy.length >> 1;
+        float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+        for (int k = 0; k < xy.length; k += 2) {
+            float x = xy[k];
+            float y = xy[k + 1];
+            if (x < x0) x0 = x;
+            if (x > x1) x1 = x;
+            if (y < y0) y0 = y;
+            if (y > y1) y1 = y;
+        }
+        this.minX = (count > 0) ? x0 : 0;
+        this.minY = (count > 0) ? y0 : 0;
+        this.maxX = (count > 0) ? x1 : 0;
+        this.maxY = (count > 0) ? y1 : 0;
+    }
+
+    /**
+     * View over count vertices of a shared buffer, starting at float index offset.
+     * Nothing is read here; the caller supplies the bounding box.
+     */
+    PackedPolyline(FloatBuffer coords, int offset, int count,
+                   double minX, double minY, double maxX, double maxY) {
+        if (offset < 0 || count < 0 || (long) offset + 2L * count > coords.capacity()) {
+            throw new IllegalArgumentException("shape outside coordinate buffer");
+        }
+        this.coords = coords;
+        this.offset = offset;
+        this.count = count;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    double x(int i) {
+        return coords.get(offset + (i << 1));
+    }
+
+    double y(int i) {
+        return coords.get(offset + (i << 1) + 1);
+    }
+
+    Point2D point(int i) {
+        return new Point2D(x(i), y(i));
+    }
+
+    /**
+     * @return distance from vertex 0 to each vertex, in meters (shared; do not modify)
+     */
+    float[] cumLength() {
+        float[] cum = cumLength;
+        if (cum == null) {
+            // Idempotent, so racing threads (tile workers) at worst compute it twice.
+            cum = new float[count];
+            double len = 0.0;
+            for (int i = 1; i < count; i++) {
+                len += Math.hypot(x(i) - x(i - 1), y(i) - y(i - 1));
+                cum[i] = (float) len;
+            }
+            cumLength = cum;
+        }
+        return cum;
+    }
+
+    /**
+     * @return total length in meters
+     */
+    double length() {
+        return (count > 0) ? cumLength()[count - 1] : 0.0;
+    }
+
+    PackedPolyline reversed() {
+        float[] r = new float[count * 2];
+        for (int i = 0, j = count - 1; j >= 0; i += 2, j--) {
+            r[i] = (float) x(j);
+            r[i + 1] = (float) y(j);
+        }
+        return new PackedPolyline(r);
+    }
+
+    boolean intersects(double x0, double y0, double x1, double y1) {
+        return !isEmpty() && maxX >= x0 && minX <= x1 && maxY >= y0 && minY <= y1;
+    }
+}
+
+/**
+ * World-to-screen mapping of one render target (the view's canvases or a background tile)
+ * plus the scratch buffers used while projecting polylines into it.
+ * A frame is used by one thread at a time; the view and each tile job own their own.
+ */
+final class RenderFrame {
+    // screen = (originX + worldX * scale, originY - worldY * scale); Y is flipped for screen coords
+    double originX;
+    double originY;
+    double scale = 1.0;
+    // Zoom relative to fit-to-view; several stroke widths and font sizes follow it
+    double userScale = 1.0;
+    double width;
+    double height;
+
+    // Projected screen coordinates and per-segment normals of the polyline currently being drawn.
+    // Grown on demand.
+    double[] screenX = new double[64];
+    double[] screenY = new double[64];
+    double[] normalX = new double[64];
+    double[] normalY = new double[64];
+    // Culling rectangle of the current pass (x0, y0, x1, y1 in world meters) and a 2D vector scratch
+    final double[] worldRect = new double[4];
+    final double[] vec = new double[2];
+
+    /**
+     * Points this frame at the current pan/zoom of the view (canvas size, padding and offsets).
+     */
+    RenderFrame setToView(MapView view) {
+        scale = view.baseScale * view.userScale;
+        userScale = view.userScale;
+        originX = view.padding + view.offsetX - view.minX * scale;
+        originY = view.padding + view.offsetY + view.maxY * scale;
+        width = view.canvas.getWidth();
+        height = view.canvas.getHeight();
+        return this;
+    }
+
+    double x(double worldX) {
+        return originX + worldX * scale;
+    }
+
+    double y(double worldY) {
+        return originY - worldY * scale;
+    }
+
+    Point2D transform(Point2D world) {
+        return new Point2D(x(world.getX()), y(world.getY()));
+    }
+
+    /**
+     * Transforms all vertices of the polyline into screenX/screenY (no allocation
+     * once the scratch buffers have grown to the largest polyline).
+     * @return number of projected points
+     */
+    int project(PackedPolyline poly) {
+        int n = poly.size();
+        ensureScratch(n);
+        double[] sx = screenX;
+        double[] sy = screenY;
+        for (int i = 0; i < n; i++) {
+            sx[i] = originX + poly.x(i) * scale;
+            sy[i] = originY - poly.y(i) * scale;
+        }
+        return n;
+    }
+
+    private void ensureScratch(int n) {
+        if (screenX.length >= n) return;
+        int cap = Math.max(n, screenX.length * 2);
+        screenX = new double[cap];
+        screenY = new double[cap];
+        normalX = new double[cap];
+        normalY = new double[cap];
+    }
+}
+
+/**
+ * Shape a vehicle is drawn with, derived once from its SUMO vehicle class.
+ */
+enum VehicleKind {
+    CAR,
+    BUS;
+
+    static VehicleKind of(String vehicleClass) {
+        // e.g. "bus", "trolleybus"
+        if (vehicleClass != null && vehicleClass.toLowerCase(Locale.ROOT).contains("bus")) return BUS;
+        return CAR;
+    }
+}
+
+/**
+ * Level of detail of the vehicle overlay, from most to least detailed.
+ */
+enum OverlayDetail {
+    DETAILED,  // car / bus shapes
+    TRIANGLES, // oriented triangles
+    POINTS,    // small squares, no heading
+    DENSITY    // aggregated density raster
+}
+
 final class TextMarker {
     final String text;
     final Point2D world;
@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+/**
+ * Spatial hash (uniform grid keyed by cell coordinates) over the reported vehicle positions
+ * of {@link MapView}, used to cull the overlay to the viewport and to narrow down picking
+ * (see {@link MapViewVehicles#nearestDrawn}) without scanning all vehicles.
+ *
+ * Vehicles are the dense handles of {@link MapViewVehicles}. Updates are incremental:
+ * a vehicle that stays in its cell only gets its coordinates refreshed, and moving one
+ * between cells is O(1). Cells live in a primitive open-addressing table and are kept once
+ * created (their number is bounded by the network area), so steady-state updates and
+ * queries allocate nothing. FX thread only.
+ */
+final class MapViewVehicleIndex {
+
+    // A few car lengths: a cell holds a handful of vehicles even in dense traffic.
+    static final double CELL_SIZE = 16.0; // meters
+
+    // Per handle
+    private double[] px = new double[0];
+    private double[] py = new double[0];
+    private int[] cellOf = new int[0]; // cell slot, -1 if not indexed
+    private int[] slotOf = new int[0]; // position inside the cell's item array
+
+    // Per cell slot
+    private int[][] cellItems = new int[16][];
+    private int[] cellCount = new int[16];
+    private int cellSlots;
+
+    // Cell key -> cell slot + 1 (0 = empty), linear probing
+    private long[] tableKeys = new long[64];
+    private int[] tableSlots = new int[64];
+
+    // Results of the last query
+    private int[] results = new int[256];
+
+    /**
+     * Inserts or moves a vehicle.
+     */
+    void put(int handle, double x, double y) {
+        ensureHandle(handle);
+        px[handle] = x;
+        py[handle] = y;
+        int cell = cellSlot(key(cellCoord(x), cellCoord(y)), true);
+        int old = cellOf[handle];
+        if (old == cell) return;
+        if (old >= 0) removeFromCell(handle, old);
+        addToCell(handle, cell);
+    }
+
+    void remove(int handle) {
+        if (handle >= cellOf.length || cellOf[handle] < 0) return;
+        removeFromCell(handle, cellOf[handle]);
+        cellOf[handle] = -1;
+    }
+
+    /**
+     * Finds all vehicles inside the world rectangle.
+     * @return number of handles written to {@link #results()}
+     */
+    int query(double x0, double y0, double x1, double y1) {
+        int count = 0;
+        int cx0 = cellCoord(x0), cx1 = cellCoord(x1);
+        int cy0 = cellCoord(y0), cy1 = cellCoord(y1);
+        long span = (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+        if (span > cellSlots) {
+            // Rectangle covers more cells than exist (zoomed out): walk the existing ones.
+            for (int c = 0; c < cellSlots; c++) {
+                count = collect(c, x0, y0, x1, y1, count);
+            }
+            return count;
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cellSlot(key(cx, cy), false);
+                if (c >= 0) count = collect(c, x0, y0, x1, y1, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return handles found by the last {@link #query}; valid until the next query
+     */
+    int[] results() {
+        return results;
+    }
+
+    private int collect(int cell, double x0, double y0, double x1, double y1, int count) {
+        int[] items = cellItems[cell];
+        for (int i = 0, n = cellCount[cell]; i < n; i++) {
+            int h = items[i];
+            double x = px[h];
+            double y = py[h];
+            if (x >= x0 && x <= x1 && y >= y0 && y <= y1) {
+                if (count == results.length) results = Arrays.copyOf(results, count * 2);
+                results[count++] = h;
+            }
+        }
+        return count;
+    }
+
+    private void addToCell(int handle, int cell) {
+        int[] items = cellItems[cell];
+        int n = cellCount[cell];
+        if (n == items.length) {
+            items = Arrays.copyOf(items, n * 2);
+            cellItems[cell] = items;
+        }
+        items[n] = handle;
+        slotOf[handle] = n;
+        cellCount[cell] = n + 1;
+        cellOf[handle] = cell;
+    }
+
+    private void removeFromCell(int handle, int cell) {
+        // Swap-remove: move the last item into the freed slot.
+        int[] items = cellItems[cell];
+        int last = items[--cellCount[cell]];
+        int slot = slotOf[handle];
+        items[slot] = last;
+        slotOf[last] = slot;
+    }
+
+    /**
+     * @return slot of the cell with the given key, or -1 if absent and create is false
+     */
+    private int cellSlot(long key, boolean create) {
+        int mask = tableKeys.length - 1;
+        int i = mix(key) & mask;
+        while (tableSlots[i] != 0) {
+            if (tableKeys[i] == key) return tableSlots[i] - 1;
+            i = (i + 1) & mask;
+        }
+        if (!create) return -1;
+
+        if (cellSlots == cellCount.length) {
+            cellItems = Arrays.copyOf(cellItems, cellSlots * 2);
+            cellCount = Arrays.copyOf(cellCount, cellSlots * 2);
+        }
+        int slot = cellSlots++;
+        cellItems[slot] = new int[4];
+        tableKeys[i] = key;
+        tableSlots[i] = slot + 1;
+        if (cellSlots * 2 > tableKeys.length) rehash();
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldKeys = tableKeys;
+        int[] oldSlots = tableSlots;
+        tableKeys = new long[oldKeys.length * 2];
+        tableSlots = new int[oldKeys.length * 2];
+        int mask = tableKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldSlots[j] == 0) continue;
+            int i = mix(oldKeys[j]) & mask;
+            while (tableSlots[i] != 0) i = (i + 1) & mask;
+            tableKeys[i] = oldKeys[j];
+            tableSlots[i] = oldSlots[j];
+        }
+    }
+
+    private void ensureHandle(int handle) {
+        if (handle < cellOf.length) return;
+        int cap = Math.max(handle + 1, cellOf.length * 2);
+        int old = cellOf.length;
+        px = Arrays.copyOf(px, cap);
+        py = Arrays.copyOf(py, cap);
+        cellOf = Arrays.copyOf(cellOf, cap);
+        slotOf = Arrays.copyOf(slotOf, cap);
+        Arrays.fill(cellOf, old, cap, -1);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int cellCoord(double v) {
+        return (int) Math.floor(v / CELL_SIZE);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,175 @@
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+
+/**
+ * Sprite atlas for the vehicle shapes of {@link MapView}.
+ *
+ * Each (vehicle kind, color bucket) pair gets one atlas image holding the shape pre-rendered
+ * at {@link #HEADINGS} headings on a square grid, at the size of the current zoom band. Vehicles
+ * are then drawn with a single drawImage of a sub-rectangle instead of polygons, outlines and
+ * lights. Atlases are built lazily on the FX thread (a few per frame) and all of them are
+ * dropped when the zoom band changes. FX thread only.
+ */
+final class MapViewVehicleSprites {
+
+    static final int HEADINGS = 64;
+    private static final int GRID = 8; // HEADINGS = GRID * GRID cells per atlas
+    // Colors are quantized to 4 bits per channel (at most 1/30 off per channel).
+    private static final int COLOR_BITS = 4;
+    private static final int COLOR_LEVELS = (1 << COLOR_BITS) - 1;
+    private static final int MAX_ATLASES = 96;
+    // Atlas builds (canvas render + snapshot) allowed per frame; other vehicles use vector shapes meanwhile.
+    private static final int MAX_BUILDS_PER_FRAME = 6;
+
+    private final MapView view;
+    private final RenderFrame scratch = new RenderFrame();
+    private final SnapshotParameters snapshotParams = new SnapshotParameters();
+    private Canvas canvas;
+
+    private final Atlas[] atlases = new Atlas[VehicleKind.values().length << (3 * COLOR_BITS)];
+    private int atlasCount;
+
+    // Zoom band the atlases were rendered for: car length in whole screen pixels
+    private int band = -1;
+    private double bandScale;     // userScale the sprites were rendered at
+    private double bandCarLength; // car length in pixels at bandScale
+    private double drawScale = 1.0; // current car length / bandCarLength
+    private long frame;
+    private int builtThisFrame;
+
+    private static final class Atlas {
+        final WritableImage image;
+        final int cell;
+        long lastUsed;
+
+        Atlas(WritableImage image, int cell) {
+            this.image = image;
+            this.cell = cell;
+        }
+    }
+
+    MapViewVehicleSprites(MapView view) {
+        this.view = view;
+        snapshotParams.setFill(Color.TRANSPARENT);
+    }
+
+    /**
+     * Called once per overlay redraw before drawing vehicles; switches zoom bands when needed.
+     */
+    void beginFrame(double userScale) {
+        frame++;
+        builtThisFrame = 0;
+        double carLength = MapViewRender.carLengthPxForZoom(view, userScale);
+        int b = (int) Math.round(carLength);
+        if (b != band) {
+            clear();
+            band = b;
+            bandScale = userScale;
+            bandCarLength = carLength;
+        }
+        drawScale = carLength / bandCarLength;
+    }
+
+    void clear() {
+        Arrays.fill(atlases, null);
+        atlasCount = 0;
+    }
+
+    /**
+     * Draws a vehicle from the atlas.
+     * @param cx body center X (screen)
+     * @param cy body center Y (screen)
+     * @param fx unit forward vector X (screen)
+     * @param fy unit forward vector Y (screen)
+     * @return false if no sprite is available (translucent color or build budget used up);
+     *         the caller draws the vector shape instead
+     */
+    boolean draw(GraphicsContext g, VehicleKind kind, Color color, double cx, double cy, double fx, double fy) {
+        if (band < 0 || color.getOpacity() < 1.0) return false;
+        int key = (kind.ordinal() << (3 * COLOR_BITS)) | colorBucket(color);
+        Atlas atlas = atlases[key];
+        if (atlas == null) {
+            if (builtThisFrame >= MAX_BUILDS_PER_FRAME) return false;
+            builtThisFrame++;
+            atlas = build(kind, key);
+            atlases[key] = atlas;
+        }
+        atlas.lastUsed = frame;
+
+        int heading = (int) Math.round(Math.atan2(fy, fx) * (HEADINGS / (2.0 * Math.PI))) & (HEADINGS - 1);
+        int cell = atlas.cell;
+        double size = cell * drawScale;
+        g.drawImage(atlas.image, (heading % GRID) * cell, (heading / GRID) * cell, cell, cell,
+                cx - size * 0.5, cy - size * 0.5, size, size);
+        return true;
+    }
+
+    private Atlas build(VehicleKind kind, int key) {
+        if (atlasCount >= MAX_ATLASES) evictLeastRecentlyUsed();
+
+        Color color = bucketColor(key);
+        Color windowColor = color.darker().darker();
+        double length = (kind == VehicleKind.BUS)
+                ? MapViewRender.busLengthPxForZoom(view, bandScale)
+                : MapViewRender.carLengthPxForZoom(view, bandScale);
+        double width = (kind == VehicleKind.BUS) ? length * 0.32 : length * 0.45;
+        // Room for any rotation plus the outline stroke
+        int cell = (int) Math.ceil(Math.hypot(length, width)) + 4;
+        int size = cell * GRID;
+
+        if (canvas == null) canvas = new Canvas(size, size);
+        if (canvas.getWidth() < size) canvas.setWidth(size);
+        if (canvas.getHeight() < size) canvas.setHeight(size);
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        for (int i = 0; i < HEADINGS; i++) {
+            double a = i * (2.0 * Math.PI / HEADINGS);
+            double fx = Math.cos(a);
+            double fy = Math.sin(a);
+            double cx = (i % GRID) * cell + cell * 0.5;
+            double cy = (i / GRID) * cell + cell * 0.5;
+            if (kind == VehicleKind.BUS) {
+                MapViewRender.drawBusShapeWithVectors(view, scratch, g, cx, cy, fx, fy, fy, -fx, color, windowColor, bandScale);
+            } else {
+                MapViewRender.drawCarShapeWithVectors(view, scratch, g, cx, cy, fx, fy, fy, -fx, color, windowColor, bandScale);
+            }
+        }
+
+        snapshotParams.setViewport(new Rectangle2D(0, 0, size, size));
+        WritableImage image = canvas.snapshot(snapshotParams, new WritableImage(size, size));
+        atlasCount++;
+        return new Atlas(image, cell);
+    }
+
+    private void evictLeastRecentlyUsed() {
+        int oldest = -1;
+        for (int i = 0; i < atlases.length; i++) {
+            if (atlases[i] != null && (oldest < 0 || atlases[i].lastUsed < atlases[oldest].lastUsed)) oldest = i;
+        }
+        if (oldest >= 0) {
+            atlases[oldest] = null;
+            atlasCount--;
+        }
+    }
+
+    private static int colorBucket(Color c) {
+        int r = (int) Math.round(c.getRed() * COLOR_LEVELS);
+        int g = (int) Math.round(c.getGreen() * COLOR_LEVELS);
+        int b = (int) Math.round(c.getBlue() * COLOR_LEVELS);
+        return (r << (2 * COLOR_BITS)) | (g << COLOR_BITS) | b;
+    }
+
+    private static Color bucketColor(int key) {
+        int r = (key >> (2 * COLOR_BITS)) & COLOR_LEVELS;
+        int g = (key >> COLOR_BITS) & COLOR_LEVELS;
+        int b = key & COLOR_LEVELS;
+        return Color.color((double) r / COLOR_LEVELS, (double) g / COLOR_LEVELS, (double) b / COLOR_LEVELS);
+    }
+}
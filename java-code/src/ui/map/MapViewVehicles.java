@@ -0,0 +1,347 @@
+import javafx.scene.paint.Color;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Vehicles shown by {@link MapView}, stored as dense integer handles with their reported
+ * state and the render state in parallel primitive arrays.
+ *
+ * Vehicle IDs are resolved to handles once per update (not per frame); lanes, kinds and
+ * window colors are resolved there too, so the overlay loop only reads arrays and steady-state
+ * frames allocate nothing. Handles of vehicles that disappear are recycled. FX thread only.
+ *
+ * Drawn positions are dead-reckoned: a render clock runs at the simulation rate estimated from
+ * the sim time stamps of the updates, and each vehicle moves from its last report along its
+ * reported heading at its reported speed. When a new report disagrees with the prediction, the
+ * difference becomes an offset that decays within a fraction of a second, so vehicles neither
+ * jump nor lag behind, and updates can come at a few Hz while frames run at 60.
+ */
+final class MapViewVehicles {
+
+    // Time constant for hiding the difference between prediction and a new report
+    private static final double CORRECTION_TAU_SECONDS = 0.12;
+    // Differences larger than this (teleport, reroute, insertion) are snapped instead.
+    private static final double SNAP_DISTANCE_METERS = 25.0;
+    // Never predict further ahead than this past a report (missed updates, pause)
+    private static final double MAX_EXTRAPOLATION_SECONDS = 1.0;
+    // Gaps between updates longer than this (pause, single steps) say nothing about the sim rate.
+    private static final double MAX_RATE_SAMPLE_SECONDS = 1.0;
+
+    private final Map<String, Integer> handles = new HashMap<>();
+    private int[] freeHandles = new int[16];
+    private int freeCount;
+    // Handles in use are < end; id[h] == null marks a free one
+    private int end;
+    private int count;
+    private int round;
+
+    // Spatial hash over the reported positions (culling and picking)
+    final MapViewVehicleIndex index = new MapViewVehicleIndex();
+
+    // Reported state (per update)
+    String[] id = new String[0];
+    String[] type = new String[0];        // vehicle class as reported, may be null
+    VehicleKind[] kind = new VehicleKind[0];
+    Color[] color = new Color[0];
+    private int[] rgba = new int[0];      // packed color[] (0xRRGGBBAA), to convert only on change
+    Color[] windowColor = new Color[0];   // color.darker().darker(), cached per vehicle
+    LaneShape[] lane = new LaneShape[0];  // may be null
+    double[] x = new double[0];
+    double[] y = new double[0];
+    double[] angle = new double[0];       // SUMO angle in degrees, NaN if unknown
+    private int[] stamp = new int[0];
+    private double[] speed = new double[0];   // m/s, 0 if unknown
+    private double[] headX = new double[0];   // unit heading from the SUMO angle (world), 0 if unknown
+    private double[] headY = new double[0];
+    private double[] reportTime = new double[0]; // sim time of the report, NaN if unknown
+    private double[] offX = new double[0];    // correction offset (world meters) ...
+    private double[] offY = new double[0];
+    private long[] offNs = new long[0];       // ... as of this wall-clock time
+
+    // Render clock: sim time of the last update and when it arrived
+    private double anchorSimTime = Double.NaN;
+    private long anchorNs;
+    private double simRate = 1.0;        // sim seconds per wall second
+    private double updateInterval;       // sim seconds between the last two updates
+    // Set by beginUpdate for the puts that follow
+    private long updateNs;
+    private double clockBefore = Double.NaN;
+    private double clockAfter = Double.NaN;
+    // Fastest reported speed since beginUpdate (every live vehicle is put in each update)
+    private double maxSpeed;
+
+    // Render state (per frame)
+    double[] drawX = new double[0];       // predicted world position, see place()
+    double[] drawY = new double[0];
+    double[] lastX = new double[0];       // drawn position of the previous frame (motion direction)
+    double[] lastY = new double[0];
+    double[] dirX = new double[0];        // smoothed heading, normalized screen coordinates
+    double[] dirY = new double[0];
+    boolean[] drawn = new boolean[0];     // false until the first frame that draws the vehicle
+
+    /**
+     * @return number of vehicles
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return one past the highest handle in use; handles below it may be free (see {@link #isLive})
+     */
+    int end() {
+        return end;
+    }
+
+    boolean isLive(int h) {
+        return id[h] != null;
+    }
+
+    /**
+     * @return handle of the vehicle, or -1 if it is not shown
+     */
+    int handleOf(String vehicleId) {
+        if (vehicleId == null) return -1;
+        Integer h = handles.get(vehicleId);
+        return (h != null) ? h : -1;
+    }
+
+    /**
+     * Starts a new update; vehicles not {@link #put} before {@link #endUpdate} are removed.
+     * @param simTime sim time of the reported states in seconds; NaN if unknown (no extrapolation)
+     * @param nowNs System.nanoTime() of the update
+     */
+    void beginUpdate(double simTime, long nowNs) {
+        round++;
+        updateNs = nowNs;
+        maxSpeed = 0.0;
+        clockBefore = simTimeAt(nowNs);
+        if (Double.isNaN(simTime)) {
+            anchorSimTime = Double.NaN;
+        } else if (simTime != anchorSimTime) {
+            double wallSeconds = (nowNs - anchorNs) * 1e-9;
+            if (!Double.isNaN(anchorSimTime) && simTime > anchorSimTime) {
+                updateInterval = simTime - anchorSimTime;
+                if (wallSeconds > 1e-3 && wallSeconds < MAX_RATE_SAMPLE_SECONDS) {
+                    simRate = Math.min(100.0, 0.7 * simRate + 0.3 * (updateInterval / wallSeconds));
+                }
+            } else {
+                // First update, or the simulation restarted
+                updateInterval = 0.0;
+                simRate = 1.0;
+            }
+            anchorSimTime = simTime;
+            anchorNs = nowNs;
+        }
+        clockAfter = simTimeAt(nowNs);
+    }
+
+    /**
+     * @return sim time shown at the given wall-clock time, NaN if updates carry no sim time
+     */
+    double simTimeAt(long nowNs) {
+        if (Double.isNaN(anchorSimTime)) return Double.NaN;
+        // Run at most a bit past the expected next update; stop there if it does not come.
+        double ahead = (nowNs - anchorNs) * 1e-9 * simRate;
+        return anchorSimTime + Math.min(ahead, Math.min(MAX_EXTRAPOLATION_SECONDS, 1.5 * updateInterval));
+    }
+
+    /**
+     * Sets the reported state of a vehicle, adding it if needed.
+     * @param speedMps speed in m/s, 0 if unknown
+     * @param packedColor color as 0xRRGGBBAA, VehicleState.NO_COLOR if unknown (drawn red)
+     * @param angleDegrees SUMO angle (0 = North, clockwise), NaN if unknown
+     */
+    void put(String vehicleId, double wx, double wy, double speedMps, int packedColor, LaneShape l,
+             double angleDegrees, String vehicleClass) {
+        int h = handleOf(vehicleId);
+        boolean known = h >= 0;
+        if (!known) h = add(vehicleId);
+        // Where the vehicle is shown right now, before the report moves it
+        if (known) place(h, clockBefore, updateNs);
+        stamp[h] = round;
+        x[h] = wx;
+        y[h] = wy;
+        angle[h] = angleDegrees;
+        speed[h] = (Double.isNaN(speedMps) || speedMps < 0.0) ? 0.0 : speedMps;
+        if (speed[h] > maxSpeed) maxSpeed = speed[h];
+        reportTime[h] = anchorSimTime;
+        if (Double.isNaN(angleDegrees)) {
+            headX[h] = 0.0;
+            headY[h] = 0.0;
+        } else {
+            double a = Math.toRadians(angleDegrees);
+            headX[h] = Math.sin(a);
+            headY[h] = Math.cos(a);
+        }
+        offX[h] = 0.0;
+        offY[h] = 0.0;
+        offNs[h] = updateNs;
+        if (known) {
+            // Keep showing the old position and let the difference to the new prediction decay.
+            double shownX = drawX[h];
+            double shownY = drawY[h];
+            place(h, clockAfter, updateNs);
+            double dx = shownX - drawX[h];
+            double dy = shownY - drawY[h];
+            if (dx * dx + dy * dy < SNAP_DISTANCE_METERS * SNAP_DISTANCE_METERS) {
+                offX[h] = dx;
+                offY[h] = dy;
+            }
+        }
+        lane[h] = l;
+        if (color[h] == null || packedColor != rgba[h]) {
+            Color c = (packedColor == VehicleState.NO_COLOR) ? Color.RED
+                    : Color.rgb(packedColor >>> 24, (packedColor >> 16) & 0xFF, (packedColor >> 8) & 0xFF,
+                            (packedColor & 0xFF) / 255.0);
+            rgba[h] = packedColor;
+            color[h] = c;
+            windowColor[h] = c.darker().darker();
+        }
+        if (kind[h] == null || !Objects.equals(vehicleClass, type[h])) {
+            type[h] = vehicleClass;
+            kind[h] = VehicleKind.of(vehicleClass);
+        }
+        index.put(h, wx, wy);
+    }
+
+    /**
+     * Sets drawX/drawY to the position of the vehicle at the given sim and wall-clock time:
+     * its last report, moved along its heading for the sim time since, plus the decaying
+     * correction offset.
+     */
+    void place(int h, double simTime, long nowNs) {
+        double px = x[h];
+        double py = y[h];
+        double dt = simTime - reportTime[h]; // NaN if either is unknown
+        if (dt > 0.0) {
+            double d = speed[h] * Math.min(dt, MAX_EXTRAPOLATION_SECONDS);
+            px += headX[h] * d;
+            py += headY[h] * d;
+        }
+        if (offX[h] != 0.0 || offY[h] != 0.0) {
+            double decay = Math.exp(-(nowNs - offNs[h]) * 1e-9 / CORRECTION_TAU_SECONDS);
+            if (decay < 1e-3) {
+                offX[h] = 0.0;
+                offY[h] = 0.0;
+            } else {
+                px += offX[h] * decay;
+                py += offY[h] * decay;
+            }
+        }
+        drawX[h] = px;
+        drawY[h] = py;
+    }
+
+    /**
+     * Finds the vehicle drawn closest to (x, y): tests the dead-reckoned positions (see
+     * {@link #place}), not the reported ones the index holds.
+     * @param nowNs System.nanoTime() of the frame being looked at
+     * @return handle, or -1 if no vehicle is drawn within maxDist meters
+     */
+    int nearestDrawn(double x, double y, double maxDist, long nowNs) {
+        // Vehicles are drawn at most this far from their report: extrapolation plus the
+        // correction offset, which is only kept below the snap distance.
+        double reach = maxDist + maxSpeed * MAX_EXTRAPOLATION_SECONDS + SNAP_DISTANCE_METERS;
+        int n = index.query(x - reach, y - reach, x + reach, y + reach);
+        int[] hits = index.results();
+        double simNow = simTimeAt(nowNs);
+        int best = -1;
+        double bestD2 = maxDist * maxDist;
+        for (int i = 0; i < n; i++) {
+            int h = hits[i];
+            place(h, simNow, nowNs);
+            double dx = drawX[h] - x;
+            double dy = drawY[h] - y;
+            double d2 = dx * dx + dy * dy;
+            if (d2 <= bestD2) {
+                bestD2 = d2;
+                best = h;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Removes the vehicles that were not put since {@link #beginUpdate}.
+     */
+    void endUpdate() {
+        for (int h = 0; h < end; h++) {
+            if (id[h] != null && stamp[h] != round) remove(h);
+        }
+        while (end > 0 && id[end - 1] == null) end--;
+    }
+
+    void clear() {
+        for (int h = 0; h < end; h++) {
+            if (id[h] != null) remove(h);
+        }
+    }
+
+    private int add(String vehicleId) {
+        int h;
+        if (freeCount > 0) {
+            h = freeHandles[--freeCount];
+        } else {
+            h = end;
+            ensureCapacity(h + 1);
+        }
+        if (h >= end) end = h + 1;
+        handles.put(vehicleId, h);
+        id[h] = vehicleId;
+        type[h] = null;
+        kind[h] = null;
+        color[h] = null;
+        drawn[h] = false;
+        dirX[h] = 0.0; // no heading yet; blends toward the first computed one
+        dirY[h] = 0.0;
+        count++;
+        return h;
+    }
+
+    private void remove(int h) {
+        handles.remove(id[h]);
+        index.remove(h);
+        id[h] = null;
+        type[h] = null;
+        color[h] = null;
+        windowColor[h] = null;
+        lane[h] = null;
+        if (freeCount == freeHandles.length) freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+        freeHandles[freeCount++] = h;
+        count--;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= id.length) return;
+        int cap = Math.max(n, Math.max(64, id.length * 2));
+        id = Arrays.copyOf(id, cap);
+        type = Arrays.copyOf(type, cap);
+        kind = Arrays.copyOf(kind, cap);
+        color = Arrays.copyOf(color, cap);
+        rgba = Arrays.copyOf(rgba, cap);
+        windowColor = Arrays.copyOf(windowColor, cap);
+        lane = Arrays.copyOf(lane, cap);
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        angle = Arrays.copyOf(angle, cap);
+        stamp = Arrays.copyOf(stamp, cap);
+        speed = Arrays.copyOf(speed, cap);
+        headX = Arrays.copyOf(headX, cap);
+        headY = Arrays.copyOf(headY, cap);
+        reportTime = Arrays.copyOf(reportTime, cap);
+        offX = Arrays.copyOf(offX, cap);
+        offY = Arrays.copyOf(offY, cap);
+        offNs = Arrays.copyOf(offNs, cap);
+        drawX = Arrays.copyOf(drawX, cap);
+        drawY = Arrays.copyOf(drawY, cap);
+        lastX = Arrays.copyOf(lastX, cap);
+        lastY = Arrays.copyOf(lastY, cap);
+        dirX = Arrays.copyOf(dirX, cap);
+        dirY = Arrays.copyOf(dirY, cap);
+        drawn = Arrays.copyOf(drawn, cap);
+    }
+}
@@ -0,0 +1,135 @@
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the scan conversion of {@link MapViewOverlayRaster} against a per-pixel
+ * point-in-polygon reference.
+ */
+class MapViewOverlayRasterTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150; // last band is partial
+
+    // Pixel centers closer than this to an outline may go either way.
+    private static final double EDGE_TOLERANCE = 1e-3;
+
+    @Test
+    void matchesPointInPolygonReference() {
+        Random random = new Random(42);
+        MapViewOverlayRaster raster = new MapViewOverlayRaster();
+        raster.begin(WIDTH, HEIGHT);
+        List<Shape> shapes = new ArrayList<>();
+
+        for (int i = 0; i < 300; i++) {
+            // Some shapes stick out of the buffer on every side.
+            double cx = -20 + random.nextDouble() * (WIDTH + 40);
+            double cy = -20 + random.nextDouble() * (HEIGHT + 40);
+            int rgb = 0x100000 + random.nextInt(0xEFFFFF);
+            Color color = Color.rgb(rgb >> 16, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            if (random.nextBoolean()) {
+                double heading = random.nextDouble() * 2 * Math.PI;
+                double fx = Math.sin(heading);
+                double fy = -Math.cos(heading);
+                double halfLen = 0.3 + random.nextDouble() * 15;
+                raster.addTriangle(cx, cy, fx, fy, -fy, fx, halfLen, color);
+                shapes.add(triangle(cx, cy, fx, fy, -fy, fx, halfLen, rgb));
+            } else {
+                double size = 0.3 + random.nextDouble() * 12;
+                raster.addPoint(cx, cy, size, color);
+                shapes.add(square(cx, cy, size, rgb));
+            }
+        }
+        raster.rasterize();
+
+        int checked = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int expected = 0;
+                boolean ambiguous = false;
+                for (Shape s : shapes) {
+                    double d = s.signedDistance(x + 0.5, y + 0.5);
+                    if (Math.abs(d) < EDGE_TOLERANCE) {
+                        ambiguous = true;
+                    } else if (d > 0) {
+                        expected = s.argb;
+                        ambiguous = false; // painted over
+                    }
+                }
+                if (ambiguous) continue;
+                assertEquals(expected, raster.pixel(x, y), "pixel " + x + "," + y);
+                checked++;
+            }
+        }
+        assertTrue(checked > WIDTH * HEIGHT * 0.99, "too many ambiguous pixels: " + checked);
+    }
+
+    @Test
+    void nextFrameClearsPreviousGlyphs() {
+        MapViewOverlayRaster raster = new MapViewOverlayRaster();
+        raster.begin(WIDTH, HEIGHT);
+        raster.addPoint(100, 100, 20, Color.BLUE);
+        raster.rasterize();
+        assertEquals(0xFF0000FF, raster.pixel(100, 100));
+
+        raster.begin(WIDTH, HEIGHT);
+        raster.rasterize();
+        assertEquals(0, raster.pixel(100, 100));
+    }
+
+    // Same vertices as MapViewOverlayRaster.addTriangle, rounded to float like the raster stores them.
+    private static Shape triangle(double cx, double cy, double fx, double fy, double rx, double ry,
+                                  double halfLen, int rgb) {
+        double halfWid = halfLen * 0.6;
+        return new Shape(rgb,
+                cx + fx * halfLen, cy + fy * halfLen,
+                cx - fx * halfLen + rx * halfWid, cy - fy * halfLen + ry * halfWid,
+                cx - fx * halfLen - rx * halfWid, cy - fy * halfLen - ry * halfWid);
+    }
+
+    private static Shape square(double x, double y, double size, int rgb) {
+        double r = size * 0.5;
+        return new Shape(rgb, x - r, y - r, x + r, y - r, x + r, y + r, x - r, y + r);
+    }
+
+    private static final class Shape {
+        final int argb;
+        final double[] xs;
+        final double[] ys;
+
+        Shape(int rgb, double... xy) {
+            this.argb = 0xFF000000 | rgb;
+            int n = xy.length / 2;
+            xs = new double[n];
+            ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = (float) xy[2 * i];
+                ys[i] = (float) xy[2 * i + 1];
+            }
+        }
+
+        /** Distance to the nearest edge line; positive inside, negative outside (convex, any winding). */
+        double signedDistance(double px, double py) {
+            int n = xs.length;
+            double area = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) area += xs[j] * ys[i] - xs[i] * ys[j];
+            double sign = Math.signum(area);
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double ex = xs[i] - xs[j];
+                double ey = ys[i] - ys[j];
+                double len = Math.hypot(ex, ey);
+                if (len == 0) continue;
+                double d = sign * (ex * (py - ys[j]) - ey * (px - xs[j])) / len;
+                min = Math.min(min, d);
+            }
+            return min;
+        }
+    }
+}
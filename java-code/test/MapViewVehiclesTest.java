@@ -0,0 +1,42 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Picking in {@link MapViewVehicles} follows the dead-reckoned (drawn) positions.
+ */
+class MapViewVehiclesTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void picksVehicleWhereItIsDrawn() {
+        MapViewVehicles v = new MapViewVehicles();
+        // Heading east (SUMO angle 90) at 20 m/s, reported every 0.2 s of sim and wall time.
+        v.beginUpdate(0.0, 0);
+        v.put("veh0", 0.0, 0.0, 20.0, VehicleState.NO_COLOR, null, 90.0, "passenger");
+        v.endUpdate();
+        v.beginUpdate(0.2, 200 * MS);
+        v.put("veh0", 4.0, 0.0, 20.0, VehicleState.NO_COLOR, null, 90.0, "passenger");
+        v.endUpdate();
+
+        // One second later the next report is overdue: the vehicle stops 1.5 intervals past its report.
+        long now = 1200 * MS;
+        int h = v.handleOf("veh0");
+        assertEquals(h, v.nearestDrawn(10.0, 0.0, 1.0, now));
+        assertEquals(10.0, v.drawX[h], 1e-9);
+        assertEquals(-1, v.nearestDrawn(4.0, 0.0, 1.0, now)); // reported position, no longer drawn there
+    }
+
+    @Test
+    void picksNearestOfSeveral() {
+        MapViewVehicles v = new MapViewVehicles();
+        v.beginUpdate(Double.NaN, 0);
+        v.put("a", 0.0, 0.0, 0.0, VehicleState.NO_COLOR, null, Double.NaN, null);
+        v.put("b", 3.0, 0.0, 0.0, VehicleState.NO_COLOR, null, Double.NaN, null);
+        v.endUpdate();
+
+        assertEquals(v.handleOf("b"), v.nearestDrawn(2.0, 0.5, 5.0, 0));
+        assertEquals(-1, v.nearestDrawn(20.0, 0.0, 5.0, 0));
+    }
+}
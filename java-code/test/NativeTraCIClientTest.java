@@ -0,0 +1,204 @@
+import de.tudresden.sumo.config.Constants;
+import it.polito.appeal.traci.SumoTraciConnection;
+import it.polito.appeal.traci.TraCIException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Decodes canned TraCI responses with {@link NativeTraCIClient} (no SUMO needed).
+ */
+class NativeTraCIClientTest {
+
+    private static final int GET = Constants.CMD_GET_VEHICLE_VARIABLE;
+    private static final int RESPONSE = Constants.RESPONSE_GET_VEHICLE_VARIABLE;
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    private NativeTraCIClient client(Response... messages) {
+        ByteArrayOutputStream in = new ByteArrayOutputStream();
+        for (Response m : messages) in.writeBytes(m.toBytes());
+        return NativeTraCIClient.over(Channels.newChannel(new ByteArrayInputStream(in.toByteArray())),
+                Channels.newChannel(sent), new Object(), null);
+    }
+
+    @Test
+    void decodesDouble() throws Exception {
+        NativeTraCIClient c = client(new Response().ok(GET).value(Constants.VAR_SPEED, "veh0",
+                Constants.TYPE_DOUBLE, b -> b.putDouble(13.25)));
+        assertEquals(13.25, c.getDouble(GET, Constants.VAR_SPEED, "veh0"));
+    }
+
+    @Test
+    void widensIntegerToDouble() throws Exception {
+        NativeTraCIClient c = client(new Response().ok(GET).value(Constants.VAR_SPEED, "veh0",
+                Constants.TYPE_INTEGER, b -> b.putInt(7)));
+        assertEquals(7.0, c.getDouble(GET, Constants.VAR_SPEED, "veh0"));
+    }
+
+    @Test
+    void decodesUtf8String() throws Exception {
+        NativeTraCIClient c = client(new Response().ok(GET).value(Constants.VAR_ROAD_ID, "veh0",
+                Constants.TYPE_STRING, b -> putString(b, "Straße_1")));
+        assertEquals("Straße_1", c.getString(GET, Constants.VAR_ROAD_ID, "veh0"));
+    }
+
+    @Test
+    void decodesPosition() throws Exception {
+        NativeTraCIClient c = client(new Response().ok(GET).value(Constants.VAR_POSITION, "veh0",
+                Constants.POSITION_2D, b -> b.putDouble(101.5).putDouble(-20.0)));
+        double[] xy = new double[2];
+        assertTrue(c.getPosition(GET, Constants.VAR_POSITION, "veh0", xy));
+        assertArrayEquals(new double[] {101.5, -20.0}, xy);
+    }
+
+    @Test
+    void decodesStringListIntoSink() throws Exception {
+        NativeTraCIClient c = client(new Response().ok(GET).value(Constants.LAST_STEP_VEHICLE_ID_LIST, "e1",
+                Constants.TYPE_STRINGLIST, b -> {
+                    b.putInt(3);
+                    putString(b, "a");
+                    putString(b, "bb");
+                    putString(b, "");
+                }));
+        List<String> sink = new ArrayList<>();
+        assertEquals(3, c.getStringList(GET, Constants.LAST_STEP_VEHICLE_ID_LIST, "e1", sink));
+        assertEquals(List.of("a", "bb", ""), sink);
+    }
+
+    @Test
+    void errorStatusThrowsWithSumoMessage() {
+        NativeTraCIClient c = client(new Response().status(GET, Constants.RTYPE_ERR, "Vehicle 'x' is not known"));
+        TraCIException e = assertThrows(TraCIException.class, () -> c.getDouble(GET, Constants.VAR_SPEED, "x"));
+        assertTrue(e.getMessage().contains("Vehicle 'x' is not known"), e.getMessage());
+    }
+
+    @Test
+    void errorStatusKeepsStreamAligned() throws Exception {
+        NativeTraCIClient c = client(
+                new Response().status(GET, Constants.RTYPE_ERR, "unknown"),
+                new Response().ok(GET).value(Constants.VAR_SPEED, "veh1", Constants.TYPE_DOUBLE, b -> b.putDouble(2.5)));
+        assertThrows(TraCIException.class, () -> c.getDouble(GET, Constants.VAR_SPEED, "x"));
+        assertEquals(2.5, c.getDouble(GET, Constants.VAR_SPEED, "veh1"));
+    }
+
+    @Test
+    void bulkDoublesMarkFailedEntriesNaN() throws Exception {
+        NativeTraCIClient c = client(new Response()
+                .ok(GET).value(Constants.VAR_SPEED, "a", Constants.TYPE_DOUBLE, b -> b.putDouble(1.0))
+                .status(GET, Constants.RTYPE_ERR, "gone")
+                .ok(GET).value(Constants.VAR_SPEED, "c", Constants.TYPE_DOUBLE, b -> b.putDouble(3.0)));
+        double[] values = new double[3];
+        assertEquals(2, c.getDoubles(GET, Constants.VAR_SPEED, List.of("a", "b", "c"), values));
+        assertEquals(1.0, values[0]);
+        assertTrue(Double.isNaN(values[1]));
+        assertEquals(3.0, values[2]);
+    }
+
+    @Test
+    void bulkPositionsUseExtendedLengthForm() throws Exception {
+        // A long object ID forces the 0 + int length form of the response command.
+        String longId = "v".repeat(300);
+        NativeTraCIClient c = client(new Response()
+                .ok(GET).value(Constants.VAR_POSITION, longId, Constants.POSITION_2D, b -> b.putDouble(1).putDouble(2))
+                .ok(GET).value(Constants.VAR_POSITION, "b", Constants.POSITION_2D, b -> b.putDouble(3).putDouble(4)));
+        double[] xy = new double[4];
+        assertEquals(2, c.getPositions(GET, Constants.VAR_POSITION, List.of(longId, "b"), xy));
+        assertArrayEquals(new double[] {1, 2, 3, 4}, xy);
+    }
+
+    @Test
+    void framesGetCommand() throws Exception {
+        NativeTraCIClient c = client(new Response().ok(GET).value(Constants.VAR_SPEED, "veh0",
+                Constants.TYPE_DOUBLE, b -> b.putDouble(0.0)));
+        c.getDouble(GET, Constants.VAR_SPEED, "veh0");
+
+        ByteBuffer b = ByteBuffer.wrap(sent.toByteArray());
+        assertEquals(b.capacity(), b.getInt());   // message length
+        assertEquals(0, b.get());                 // extended command length marker
+        assertEquals(b.capacity() - 4, b.getInt());
+        assertEquals((byte) GET, b.get());
+        assertEquals((byte) Constants.VAR_SPEED, b.get());
+        assertEquals(4, b.getInt());
+        byte[] id = new byte[4];
+        b.get(id);
+        assertEquals("veh0", new String(id, StandardCharsets.UTF_8));
+        assertFalse(b.hasRemaining());
+    }
+
+    @Test
+    void traasKeepsItsSocketInTheFieldReadByTheConnector() throws Exception {
+        // TraCIConnector.getSocket() reads this private field reflectively.
+        Field f = SumoTraciConnection.class.getDeclaredField("socket");
+        assertEquals(Socket.class, f.getType());
+    }
+
+    // ---------------- canned responses ----------------
+
+    private interface Value {
+        void write(ByteBuffer b);
+    }
+
+    private static void putString(ByteBuffer b, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        b.putInt(bytes.length).put(bytes);
+    }
+
+    /** One TraCI response message: status and value commands in order. */
+    private static final class Response {
+        private final ByteBuffer body = ByteBuffer.allocate(64 * 1024);
+
+        Response ok(int commandId) {
+            return status(commandId, Constants.RTYPE_OK, "");
+        }
+
+        Response status(int commandId, int result, String description) {
+            byte[] d = description.getBytes(StandardCharsets.UTF_8);
+            body.put((byte) (1 + 1 + 1 + 4 + d.length));
+            body.put((byte) commandId);
+            body.put((byte) result);
+            body.putInt(d.length).put(d);
+            return this;
+        }
+
+        Response value(int variable, String objectId, int type, Value value) {
+            ByteBuffer content = ByteBuffer.allocate(16 * 1024);
+            content.put((byte) RESPONSE);
+            content.put((byte) variable);
+            putString(content, objectId);
+            content.put((byte) type);
+            value.write(content);
+            content.flip();
+            int length = 1 + content.remaining();
+            if (length <= 255) {
+                body.put((byte) length);
+            } else {
+                body.put((byte) 0);
+                body.putInt(length + 4);
+            }
+            body.put(content);
+            return this;
+        }
+
+        byte[] toBytes() {
+            ByteBuffer message = ByteBuffer.allocate(4 + body.position());
+            message.putInt(4 + body.position());
+            message.put(body.array(), 0, body.position());
+            return message.array();
+        }
+    }
+}
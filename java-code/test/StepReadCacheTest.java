@@ -0,0 +1,26 @@
+import de.tudresden.sumo.cmd.Vehicle;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StepReadCacheTest {
+
+    @Test
+    void plainGetIsCacheable() {
+        assertEquals("veh0", StepReadCache.cacheableId(Vehicle.getSpeed("veh0")));
+    }
+
+    @Test
+    void plainGetWithNonAsciiIdIsCacheable() {
+        for (String id : new String[] {"Straße_1", "βus", "日本"}) {
+            assertEquals(id, StepReadCache.cacheableId(Vehicle.getSpeed(id)), id);
+        }
+    }
+
+    @Test
+    void getWithParametersIsNotCacheable() {
+        assertNull(StepReadCache.cacheableId(Vehicle.getParameter("veh0", "device.battery.capacity")));
+        assertNull(StepReadCache.cacheableId(Vehicle.getParameter("Straße_1", "x")));
+    }
+}
@@ -0,0 +1,62 @@
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoLink;
+import de.uniluebeck.itm.tcpip.Storage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Decodes canned get responses the way {@link TraCIBatch} reads them from a batch answer.
+ */
+class TraCIBatchTest {
+
+    @Test
+    void decodesDouble() {
+        Storage s = header(Constants.VAR_SPEED, "veh0", Constants.TYPE_DOUBLE);
+        s.writeDouble(8.5);
+        assertEquals(8.5, TraCIBatch.decode(reread(s)));
+    }
+
+    @Test
+    void decodesControlledLinksByVariable() {
+        Storage s = header(Constants.TL_CONTROLLED_LINKS, "tl0", Constants.TYPE_COMPOUND);
+        s.writeInt(3);
+        s.writeUnsignedByte(Constants.TYPE_INTEGER);
+        s.writeInt(2); // signals
+        for (int signal = 0; signal < 2; signal++) {
+            s.writeUnsignedByte(Constants.TYPE_INTEGER);
+            s.writeInt(1); // links of this signal
+            s.writeUnsignedByte(Constants.TYPE_STRINGLIST);
+            s.writeInt(3);
+            s.writeStringASCII("in_" + signal);
+            s.writeStringASCII("out_" + signal);
+            s.writeStringASCII(":via_" + signal);
+        }
+
+        List<SumoLink> links = new ArrayList<>();
+        TrafficLightWrapper.flattenControlledLinks(TraCIBatch.decode(reread(s)), links);
+        assertEquals(2, links.size());
+        assertEquals("in_1", links.get(1).from);
+        assertEquals("out_1", links.get(1).to);
+        assertEquals(":via_1", links.get(1).over);
+    }
+
+    private static Storage header(int variable, String objectId, int type) {
+        Storage s = new Storage();
+        s.writeUnsignedByte(variable);
+        s.writeStringUTF8(objectId);
+        s.writeUnsignedByte(type);
+        return s;
+    }
+
+    // A response arrives as bytes; decode from a fresh read position.
+    private static Storage reread(Storage written) {
+        List<Byte> list = written.getStorageList();
+        byte[] bytes = new byte[list.size()];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = list.get(i);
+        return new Storage(bytes);
+    }
+}